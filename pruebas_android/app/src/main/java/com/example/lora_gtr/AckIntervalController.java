@@ -0,0 +1,209 @@
+package com.example.lora_gtr;
+
+import android.util.Log;
+
+import com.example.lora_gtr.models.LoRaConfig;
+
+import java.util.Locale;
+
+/**
+ * Ajuste del intervalo de ACK (y opcionalmente de la ventana) durante un
+ * envío LoRa, a partir de los paquetes entregados/perdidos de cada ráfaga.
+ *
+ * AIMD: tras una ráfaga sin pérdidas el intervalo crece en 1 (menos ACKs
+ * en un enlace limpio); con pérdidas por encima del umbral se reduce a la
+ * mitad (ráfagas de retransmisión más pequeñas). La ventana, número de
+ * ráfagas sin confirmar permitidas, solo crece cuando el intervalo está
+ * en el máximo y vuelve a 1 con cualquier pérdida.
+ *
+ * Los valores elegidos se envían al TX con SET_ACK entre ráfagas y se
+ * registran junto con las estadísticas de la transferencia.
+ */
+public class AckIntervalController {
+
+    private static final String TAG = "AckIntervalController";
+
+    // ==================== CONFIGURACIÓN ====================
+    private static final double DECREASE_LOSS_RATIO = 0.10;  // Pérdidas que fuerzan reducir
+    private static final int CLEAN_BURSTS_FOR_WINDOW = 3;    // Ráfagas limpias para ampliar la ventana
+    public static final int MIN_WINDOW = 1;
+    public static final int MAX_WINDOW = 4;
+
+    public interface Listener {
+        /**
+         * Enviar los nuevos valores al gateway antes de la siguiente ráfaga
+         */
+        void onAckSettingsChanged(int ackInterval, int window);
+    }
+
+    private final Listener listener;
+
+    private boolean enabled = false;
+    private boolean windowEnabled = false;
+
+    // Último valor elegido: la siguiente transferencia parte de aquí
+    private int ackInterval = -1;
+    private int window = MIN_WINDOW;
+    private int cleanBursts = 0;
+
+    // Estadísticas de la transferencia en curso
+    private String transferName;
+    private int initialAckInterval;
+    private int totalSent;
+    private int totalLost;
+    private int bursts;
+    private int adjustments;
+    private int minAckInterval;
+    private int maxAckInterval;
+
+    public AckIntervalController(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        Log.d(TAG, enabled ? "Intervalo de ACK automático activado" : "Intervalo de ACK automático desactivado");
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Permitir también varias ráfagas sin confirmar (requiere firmware con ventana)
+     */
+    public synchronized void setWindowEnabled(boolean windowEnabled) {
+        this.windowEnabled = windowEnabled;
+        if (!windowEnabled) {
+            window = MIN_WINDOW;
+        }
+    }
+
+    public synchronized boolean isWindowEnabled() {
+        return windowEnabled;
+    }
+
+    // ==================== TRANSFERENCIAS ====================
+
+    /**
+     * Empieza un envío LoRa
+     * @param config Configuración actual (da el intervalo de partida si aún no hay uno aprendido)
+     */
+    public void onTransferStarted(String filename, LoRaConfig config) {
+        int startAck;
+        int startWindow;
+
+        synchronized (this) {
+            if (ackInterval < 0 || !enabled) {
+                ackInterval = config != null ? config.getAckInterval() : new LoRaConfig().getAckInterval();
+            }
+
+            transferName = filename;
+            initialAckInterval = ackInterval;
+            minAckInterval = ackInterval;
+            maxAckInterval = ackInterval;
+            totalSent = 0;
+            totalLost = 0;
+            bursts = 0;
+            adjustments = 0;
+            cleanBursts = 0;
+
+            if (!enabled) {
+                return;
+            }
+            startAck = ackInterval;
+            startWindow = window;
+        }
+
+        // Aplicar lo aprendido en la transferencia anterior
+        listener.onAckSettingsChanged(startAck, startWindow);
+    }
+
+    /**
+     * Resultado de una ráfaga
+     */
+    public void onBurst(int sent, int lost) {
+        int newAck;
+        int newWindow;
+
+        synchronized (this) {
+            if (transferName == null) {
+                return;
+            }
+
+            totalSent += sent;
+            totalLost += lost;
+            bursts++;
+
+            if (!enabled || sent <= 0) {
+                return;
+            }
+
+            double loss = (double) lost / sent;
+            newAck = ackInterval;
+            newWindow = window;
+
+            if (loss > DECREASE_LOSS_RATIO) {
+                newAck = Math.max(LoRaConfig.MIN_ACK_INTERVAL, ackInterval / 2);
+                newWindow = MIN_WINDOW;
+                cleanBursts = 0;
+            } else if (lost == 0) {
+                cleanBursts++;
+                if (ackInterval < LoRaConfig.MAX_ACK_INTERVAL) {
+                    newAck = ackInterval + 1;
+                } else if (windowEnabled && window < MAX_WINDOW && cleanBursts >= CLEAN_BURSTS_FOR_WINDOW) {
+                    newWindow = window + 1;
+                    cleanBursts = 0;
+                }
+            } else {
+                // Pérdidas leves: mantener, pero sin ventana extra
+                newWindow = MIN_WINDOW;
+                cleanBursts = 0;
+            }
+
+            if (newAck == ackInterval && newWindow == window) {
+                return;
+            }
+
+            ackInterval = newAck;
+            window = newWindow;
+            adjustments++;
+            minAckInterval = Math.min(minAckInterval, newAck);
+            maxAckInterval = Math.max(maxAckInterval, newAck);
+        }
+
+        Log.d(TAG, "ACK cada " + newAck + " paquetes, ventana " + newWindow);
+        listener.onAckSettingsChanged(newAck, newWindow);
+    }
+
+    /**
+     * Terminó el envío: registrar los valores usados junto a sus estadísticas
+     * @param durationMs Duración que reporta el gateway (0 si no la envía)
+     */
+    public synchronized void onTransferFinished(long durationMs) {
+        if (transferName == null) {
+            return;
+        }
+
+        double loss = totalSent == 0 ? 0 : (double) totalLost / totalSent;
+        Log.d(TAG, String.format(Locale.ROOT,
+                "Transferencia %s: %d ráfagas, %d paquetes, pérdidas %.1f%%, %s | " +
+                        "ACK %d -> %d (rango %d-%d, %d ajustes), ventana %d%s",
+                transferName, bursts, totalSent, loss * 100,
+                durationMs > 0 ? (durationMs / 1000.0) + " s" : "duración desconocida",
+                initialAckInterval, ackInterval, minAckInterval, maxAckInterval, adjustments,
+                window, enabled ? "" : " (automático desactivado)"));
+
+        transferName = null;
+    }
+
+    /**
+     * Olvidar lo aprendido (al desconectar o cambiar de enlace)
+     */
+    public synchronized void reset() {
+        ackInterval = -1;
+        window = MIN_WINDOW;
+        cleanBursts = 0;
+        transferName = null;
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.lora_gtr;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.lora_gtr.models.LoRaConfig;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * Control adaptativo de tasa (estilo ADR de LoRaWAN) a partir de las
+ * estadísticas de enlace que reporta el gateway ([LINK_STATS:...]).
+ *
+ * Con el SNR medio de la ventana calcula el margen sobre el SNR mínimo
+ * que demodula el SF actual. Si sobra margen y no hay pérdidas baja un
+ * paso de SF (o sube el BW en SF7); si falta margen o hay pérdidas sube
+ * un paso de SF (o baja el BW en SF12). Un solo paso cada vez y con
+ * histéresis, y tras cada cambio la ventana empieza de cero.
+ *
+ * El cambio se propone y se aplica solo entre transferencias, nunca con
+ * un envío LoRa en curso. Si el gateway no confirma el cambio en
+ * CONFIRMATION_TIMEOUT_MS se da por rechazado y se sigue midiendo.
+ */
+public class AdrController {
+
+    private static final String TAG = "AdrController";
+
+    // ==================== CONFIGURACIÓN ====================
+    private static final int WINDOW_SIZE = 10;             // Ráfagas consideradas
+    private static final int MIN_SAMPLES = 5;              // Ráfagas mínimas antes de decidir
+    private static final float INSTALLATION_MARGIN_DB = 5f;
+    private static final float HYSTERESIS_DB = 3f;
+    private static final float SF_STEP_DB = 2.5f;          // Ganancia de sensibilidad por cada SF
+    private static final float BW_STEP_DB = 3f;            // Pérdida de sensibilidad al doblar el BW
+    private static final double MAX_LOSS_RATIO = 0.3;      // Por encima se sube SF aunque haya margen
+    private static final double CLEAN_LOSS_RATIO = 0.05;   // Por debajo se permite bajar SF
+    private static final int ADR_MIN_SF = 7;
+    private static final int ADR_MAX_SF = 12;
+    private static final float ADR_MIN_BW = 125f;
+    private static final long CONFIRMATION_TIMEOUT_MS = 60_000;   // El gateway avisa al RX por LoRa antes de confirmar
+
+    public interface Listener {
+        /**
+         * Hay una nueva configuración lista para aplicar en ambos extremos
+         */
+        void onConfigProposed(LoRaConfig next, String reason);
+    }
+
+    private static class Sample {
+        final float rssi;
+        final float snr;
+        final int sent;
+        final int lost;
+
+        Sample(float rssi, float snr, int sent, int lost) {
+            this.rssi = rssi;
+            this.snr = snr;
+            this.sent = sent;
+            this.lost = lost;
+        }
+    }
+
+    private final Listener listener;
+    private final ArrayDeque<Sample> window = new ArrayDeque<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable confirmationTimeout = () -> {
+        Log.w(TAG, "Sin confirmación del cambio de configuración");
+        onConfigApplied(false);
+    };
+
+    private boolean enabled = false;
+    private LoRaConfig current;
+    private LoRaConfig pending;
+    private String pendingReason;
+    private int transfersInFlight = 0;
+    private boolean awaitingConfirmation = false;
+
+    public AdrController(Listener listener) {
+        this.listener = listener;
+    }
+
+    // ==================== ESTADO ====================
+
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        window.clear();
+        pending = null;
+        Log.d(TAG, enabled ? "ADR activado" : "ADR desactivado");
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Olvidar muestras y transferencias en curso (al desconectar)
+     */
+    public synchronized void reset() {
+        window.clear();
+        pending = null;
+        transfersInFlight = 0;
+        awaitingConfirmation = false;
+        handler.removeCallbacks(confirmationTimeout);
+        current = null;
+    }
+
+    /**
+     * Configuración vigente en el enlace (la que reporta el gateway)
+     */
+    public synchronized void setCurrentConfig(LoRaConfig config) {
+        boolean changed = current == null || !sameRate(current, config);
+        current = config;
+        if (changed) {
+            window.clear();
+        }
+    }
+
+    // ==================== MUESTRAS ====================
+
+    /**
+     * Estadísticas de una ráfaga de paquetes
+     * @param rssi RSSI medio en el receptor (dBm)
+     * @param snr SNR medio en el receptor (dB)
+     * @param sent Paquetes enviados en la ráfaga
+     * @param lost Paquetes perdidos en la ráfaga
+     */
+    public void onLinkStats(float rssi, float snr, int sent, int lost) {
+        LoRaConfig proposal = null;
+        String reason = null;
+
+        synchronized (this) {
+            if (!enabled || current == null || awaitingConfirmation) {
+                return;
+            }
+
+            window.add(new Sample(rssi, snr, sent, lost));
+            while (window.size() > WINDOW_SIZE) {
+                window.poll();
+            }
+
+            if (window.size() < MIN_SAMPLES) {
+                return;
+            }
+
+            evaluate();
+            if (pending != null && transfersInFlight == 0) {
+                proposal = takePending();
+                reason = pendingReason;
+            }
+        }
+
+        if (proposal != null) {
+            listener.onConfigProposed(proposal, reason);
+        }
+    }
+
+    private void evaluate() {
+        float snr = 0;
+        float rssi = 0;
+        int sent = 0;
+        int lost = 0;
+        for (Sample sample : window) {
+            snr += sample.snr;
+            rssi += sample.rssi;
+            sent += sample.sent;
+            lost += sample.lost;
+        }
+        snr /= window.size();
+        rssi /= window.size();
+        double loss = sent == 0 ? 0 : (double) lost / sent;
+        float margin = snr - requiredSnr(current.getSpreadingFactor()) - INSTALLATION_MARGIN_DB;
+
+        LoRaConfig next = new LoRaConfig(current);
+        String reason;
+
+        if (loss > MAX_LOSS_RATIO || margin < -HYSTERESIS_DB) {
+            // Enlace degradado: más robusto
+            if (current.getSpreadingFactor() < ADR_MAX_SF) {
+                next.setSpreadingFactor(current.getSpreadingFactor() + 1);
+            } else if (current.getBandwidth() > ADR_MIN_BW) {
+                next.setBandwidth(stepBandwidth(current.getBandwidth(), -1));
+            } else {
+                return;
+            }
+            reason = "degradado";
+        } else if (loss < CLEAN_LOSS_RATIO) {
+            // Sobra margen: más rápido
+            if (current.getSpreadingFactor() > ADR_MIN_SF && margin > SF_STEP_DB + HYSTERESIS_DB) {
+                next.setSpreadingFactor(current.getSpreadingFactor() - 1);
+            } else if (current.getSpreadingFactor() == ADR_MIN_SF && margin > BW_STEP_DB + HYSTERESIS_DB
+                    && stepBandwidth(current.getBandwidth(), 1) > current.getBandwidth()) {
+                next.setBandwidth(stepBandwidth(current.getBandwidth(), 1));
+            } else {
+                return;
+            }
+            reason = "margen sobrante";
+        } else {
+            return;
+        }
+
+        if (!next.isValid()) {
+            Log.d(TAG, "Paso descartado (" + next.getValidationError() + ")");
+            return;
+        }
+
+        pending = next;
+        pendingReason = String.format(Locale.ROOT, "%s: RSSI %.0f dBm, SNR %.1f dB, margen %.1f dB, pérdidas %.0f%%",
+                reason, rssi, snr, margin, loss * 100);
+        Log.d(TAG, "Propuesta " + next + " (" + pendingReason + ")");
+    }
+
+    // ==================== FRONTERAS DE TRANSFERENCIA ====================
+
+    /**
+     * Empieza un envío LoRa: los cambios esperan a que termine
+     */
+    public synchronized void onTransferStarted() {
+        transfersInFlight++;
+    }
+
+    /**
+     * Terminó un envío LoRa: momento seguro para aplicar un cambio pendiente
+     */
+    public void onTransferFinished() {
+        LoRaConfig proposal;
+        String reason;
+
+        synchronized (this) {
+            transfersInFlight = Math.max(0, transfersInFlight - 1);
+            if (transfersInFlight > 0 || pending == null || !enabled) {
+                return;
+            }
+            proposal = takePending();
+            reason = pendingReason;
+        }
+
+        listener.onConfigProposed(proposal, reason);
+    }
+
+    /**
+     * Resultado del cambio de config en ambos extremos
+     * (también sin respuesta a tiempo o firmware sin SET_LINK_CONFIG)
+     */
+    public synchronized void onConfigApplied(boolean success) {
+        handler.removeCallbacks(confirmationTimeout);
+        awaitingConfirmation = false;
+        window.clear();
+        if (!success) {
+            Log.w(TAG, "El gateway rechazó el cambio, se mantiene " + current);
+        }
+    }
+
+    private LoRaConfig takePending() {
+        LoRaConfig proposal = pending;
+        pending = null;
+        awaitingConfirmation = true;
+        handler.removeCallbacks(confirmationTimeout);
+        handler.postDelayed(confirmationTimeout, CONFIRMATION_TIMEOUT_MS);
+        return proposal;
+    }
+
+    // ==================== UTILIDADES ====================
+
+    /**
+     * SNR mínimo demodulable por SF (datasheet SX126x)
+     */
+    static float requiredSnr(int spreadingFactor) {
+        return -7.5f - (spreadingFactor - 7) * SF_STEP_DB;
+    }
+
+    private static float stepBandwidth(float bandwidth, int direction) {
+        float[] bandwidths = LoRaConfig.BANDWIDTHS;
+        for (int i = 0; i < bandwidths.length; i++) {
+            if (bandwidths[i] == bandwidth) {
+                int next = Math.max(0, Math.min(bandwidths.length - 1, i + direction));
+                return bandwidths[next];
+            }
+        }
+        return bandwidth;
+    }
+
+    private static boolean sameRate(LoRaConfig a, LoRaConfig b) {
+        return a.getSpreadingFactor() == b.getSpreadingFactor()
+                && a.getBandwidth() == b.getBandwidth()
+                && a.getCodingRate() == b.getCodingRate();
+    }
+}
@@ -15,6 +15,8 @@ import android.os.Message;
 import android.util.Log;
 
 import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class BLEService {
     private static final String TAG = "BLEService";
@@ -56,16 +58,32 @@ public class BLEService {
     private String connectedDeviceName = "";
     private StringBuilder dataBuffer = new StringBuilder();
 
+    // Planificador de escrituras (una escritura GATT en vuelo a la vez)
+    private static final long WRITE_TIMEOUT_MS = 1000;
+    private static final int REQUESTED_MTU = 517;
+    private final WriteScheduler writeScheduler;
+    private final Semaphore writeDone = new Semaphore(0);
+    private static final int WRITE_STATUS_PENDING = -1;
+    private volatile int writeStatus = WRITE_STATUS_PENDING;   // Estado de la última confirmación
+
+    // Turno compartido con las demás conexiones abiertas (null si es la única)
+    private GattArbiter arbiter;
+    private String ownerId = "";
+
     public BLEService(Context context, Handler handler, ConnectionCallback callback) {
         this.context = context;
         this.handler = handler;
         this.callback = callback;
         bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+
+        writeScheduler = new WriteScheduler(this::writeNow);
+        writeScheduler.start();
     }
 
     public synchronized void connect(BluetoothDevice device) {
         Log.d(TAG, "Conectando a: " + device.getName());
         connectedDeviceName = device.getName();
+        ownerId = device.getAddress();
 
         setState(STATE_CONNECTING);
 
@@ -78,8 +96,12 @@ public class BLEService {
         public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
             if (newState == BluetoothProfile.STATE_CONNECTED) {
                 Log.d(TAG, "Conectado a GATT server");
-                Log.d(TAG, "Intentando descubrir servicios...");
-                bluetoothGatt.discoverServices();
+
+                // Negociar MTU antes de descubrir servicios (permite agrupar comandos)
+                if (!gatt.requestMtu(REQUESTED_MTU)) {
+                    Log.d(TAG, "Intentando descubrir servicios...");
+                    gatt.discoverServices();
+                }
 
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
                 Log.d(TAG, "Desconectado de GATT server");
@@ -90,6 +112,19 @@ public class BLEService {
             }
         }
 
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                Log.d(TAG, "MTU negociado: " + mtu);
+                writeScheduler.setMaxFrameSize(mtu - 3);
+            } else {
+                Log.w(TAG, "onMtuChanged status: " + status);
+            }
+
+            Log.d(TAG, "Intentando descubrir servicios...");
+            gatt.discoverServices();
+        }
+
         @Override
         public void onServicesDiscovered(BluetoothGatt gatt, int status) {
             if (status == BluetoothGatt.GATT_SUCCESS) {
@@ -135,6 +170,15 @@ public class BLEService {
             }
         }
 
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            if (status != BluetoothGatt.GATT_SUCCESS) {
+                Log.w(TAG, "onCharacteristicWrite status: " + status);
+            }
+            writeStatus = status;
+            writeDone.release();
+        }
+
         @Override
         public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
             if (CHARACTERISTIC_UUID_TX.equals(characteristic.getUuid())) {
@@ -175,29 +219,145 @@ public class BLEService {
         txCharacteristic = null;
         connectedDeviceName = "";
         dataBuffer.setLength(0);
+        writeScheduler.clear();
+        writeStatus = BluetoothGatt.GATT_FAILURE;
+        writeDone.release();
 
         setState(STATE_NONE);
     }
 
+    /**
+     * Enviar un comando de control (prioridad alta)
+     */
     public void write(byte[] data) {
         if (state != STATE_CONNECTED || rxCharacteristic == null) {
             Log.w(TAG, "No conectado, no se puede enviar");
             return;
         }
 
-        rxCharacteristic.setValue(data);
-        boolean success = bluetoothGatt.writeCharacteristic(rxCharacteristic);
+        writeScheduler.enqueueControl(data);
+    }
+
+    public void write(String message) {
+        write(message.getBytes());
+    }
+
+    /**
+     * Enviar un chunk de datos (prioridad baja). Bloquea si la cola está llena.
+     * @param generation Generación obtenida con beginBulkTransfer()
+     * @return false si la transferencia fue cancelada o no hay conexión
+     */
+    public boolean writeBulk(byte[] data, int generation) {
+        if (state != STATE_CONNECTED || rxCharacteristic == null) {
+            Log.w(TAG, "No conectado, no se puede enviar");
+            return false;
+        }
+
+        return writeScheduler.enqueueBulk(data, generation);
+    }
+
+    public int beginBulkTransfer() {
+        return writeScheduler.beginBulk();
+    }
 
-        if (success) {
-            handler.obtainMessage(MESSAGE_WRITE, -1, -1, data).sendToTarget();
-            Log.d(TAG, "Enviado: " + new String(data));
-        } else {
+    public boolean awaitBulkTransfer(int generation) {
+        return writeScheduler.awaitBulkDrained(generation);
+    }
+
+    public void cancelBulkTransfer() {
+        writeScheduler.cancelBulk();
+    }
+
+    /**
+     * Compartir el enlace con otras conexiones: cada escritura espera turno
+     */
+    public void setArbiter(GattArbiter arbiter) {
+        this.arbiter = arbiter;
+    }
+
+    public WriteScheduler getWriteScheduler() {
+        return writeScheduler;
+    }
+
+    /**
+     * Agrupar comandos cortos en una sola escritura GATT
+     * @param enabled Activar o desactivar
+     * @param flushDelayMs Plazo máximo de espera para completar el grupo
+     * @param maxBatch Comandos máximos por escritura
+     */
+    public void setWriteCoalescing(boolean enabled, long flushDelayMs, int maxBatch) {
+        writeScheduler.setCoalescing(enabled, flushDelayMs, maxBatch);
+    }
+
+    /**
+     * Escritura GATT real, llamada solo desde el hilo del WriteScheduler
+     */
+    private boolean writeNow(byte[] data) {
+        GattArbiter turn = arbiter;
+        String owner = ownerId;
+        if (turn == null) {
+            return writeFrame(data);
+        }
+
+        try {
+            turn.acquire(owner);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            return writeFrame(data);
+        } finally {
+            turn.release(owner);
+        }
+    }
+
+    private boolean writeFrame(byte[] data) {
+        BluetoothGatt gatt = bluetoothGatt;
+        BluetoothGattCharacteristic characteristic = rxCharacteristic;
+
+        if (state != STATE_CONNECTED || gatt == null || characteristic == null) {
+            return false;
+        }
+
+        writeDone.drainPermits();
+        writeStatus = WRITE_STATUS_PENDING;
+        characteristic.setValue(data);
+        boolean success = gatt.writeCharacteristic(characteristic);
+
+        if (!success) {
             Log.e(TAG, "Error escribiendo característica");
+            return false;
+        }
+
+        // Esperar confirmación antes de la siguiente escritura
+        try {
+            if (!writeDone.tryAcquire(WRITE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Timeout esperando confirmación de escritura");
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        int status = writeStatus;
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            Log.e(TAG, "Escritura no confirmada (status " + status + ")");
+            return false;
         }
+
+        handler.obtainMessage(MESSAGE_WRITE, -1, -1, data).sendToTarget();
+        Log.d(TAG, "Enviados " + data.length + " bytes");
+        return true;
     }
 
-    public void write(String message) {
-        write(message.getBytes());
+    /**
+     * Liberar recursos (al destruir la Activity)
+     */
+    public void release() {
+        disconnect();
+        writeScheduler.shutdown();
     }
 
     private synchronized void setState(int state) {
@@ -0,0 +1,693 @@
+package com.example.lora_gtr;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.lora_gtr.models.FileItem;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sincronización automática de un gateway RX con la carpeta de descargas.
+ *
+ * Con la sincronización activada para un gateway, se compara su listado
+ * con lo ya guardado y se bajan por rangos solo los archivos nuevos o lo
+ * que han crecido. Cada trozo es pequeño (CHUNK_BYTES) y se espacia para
+ * no pasar de MAX_BYTES_PER_SECOND. Cualquier acción del usuario (descarga,
+ * vista previa, subida...) la pone en pausa USER_PAUSE_MS, y también cede
+ * mientras haya otros rangos en cola.
+ *
+ * Las copias van a una subcarpeta de Descargas por gateway (<mac> sin ':'),
+ * así dos gateways con archivos del mismo nombre no se pisan. Lo
+ * sincronizado se apunta en filesDir/sync/<mac>.json: nombre, bytes
+ * guardados, fecha remota y hora de la última copia.
+ *
+ * El listado se carga por páginas: cuando no queda nada pendiente en las
+ * ya cargadas se pide la siguiente con el PageLoader.
+ *
+ * Todo el estado se toca solo en el hilo principal (los rangos y el índice
+ * ya avisan ahí; pauseForUser puede llegar desde el hilo del protocolo).
+ * Leer y guardar el registro, revisar las copias locales y escribir los
+ * trozos va en un hilo de E/S propio, que devuelve el resultado al principal.
+ *
+ * Los archivos que la app tiene que reconstruir (símbolos, tramas,
+ * comprimidos, lotes y diccionarios) se dejan para la descarga manual.
+ */
+public class BackgroundSync implements RemoteFileIndex.Listener, RangeFetcher.Callback {
+
+    private static final String TAG = "BackgroundSync";
+    private static final String DIR_NAME = "sync";
+
+    private static final int CHUNK_BYTES = 4 * 1024;
+    private static final long MAX_BYTES_PER_SECOND = 2 * 1024;
+    private static final long USER_PAUSE_MS = 20_000;
+    private static final long BUSY_RETRY_MS = 2_000;
+    private static final long FAILURE_RETRY_MS = 60_000;
+    private static final long INDEX_DEBOUNCE_MS = 1_000;
+
+    private static final String[] SKIPPED_EXTENSIONS = {
+            FountainCode.EXTENSION, LoRaPacketizer.EXTENSION, CompressionDictionary.EXTENSION,
+            CompressionDictionary.DICT_EXTENSION, FileBundle.EXTENSION
+    };
+
+    /**
+     * Archivo ya copiado (entero o en parte)
+     */
+    public static class Record {
+        public final String name;
+        public final long size;         // Bytes guardados en local
+        public final long modified;     // Fecha remota al copiar (0 si no se sabe)
+        public final long syncedAt;
+
+        Record(String name, long size, long modified, long syncedAt) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+            this.syncedAt = syncedAt;
+        }
+    }
+
+    /**
+     * Pedir al gateway la siguiente página del listado
+     */
+    public interface PageLoader {
+        void loadNextPage();
+    }
+
+    public interface Listener {
+        /**
+         * @param filename null si no hay nada pendiente
+         */
+        void onSyncProgress(String filename, long localSize, long remoteSize);
+    }
+
+    // Resultado de revisar las páginas cargadas contra las copias locales
+    private static class Scan {
+        FileItem next;                  // Primer archivo nuevo o crecido (null si no hay)
+        long offset;                    // Bytes que ya se dan por buenos de 'next'
+        long pendingBytes;
+        IOException error;              // No se pudo vaciar la copia de 'next'
+        final List<Record> manual = new ArrayList<>();  // Descargados a mano, para el registro
+    }
+
+    // Registro guardado de un gateway
+    private static class Saved {
+        boolean enabled;
+        final Map<String, Record> records = new LinkedHashMap<>();
+    }
+
+    private final RangeFetcher fetcher;
+    private final RemoteFileIndex fileIndex;
+    private final FileFollower follower;
+    private final File dir;
+    private final File downloadsDir;
+    private File targetDir;             // Subcarpeta del gateway en Descargas
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+    private final Runnable step = this::step;
+
+    private String gateway;
+    private int epoch;                  // Cambia en cada start/stop: descarta E/S de la conexión anterior
+    private boolean loaded;             // Registro leído; antes no se guarda nada
+    private boolean enabled;
+    private final Map<String, Record> records = new LinkedHashMap<>();
+    private Listener listener;
+    private PageLoader pageLoader;
+
+    private String current;             // Archivo con un trozo en vuelo o escribiéndose
+    private boolean scanning;
+    private boolean rescan;             // Algo cambió durante la revisión
+    private long pendingBytes;
+    private long pausedUntil;
+    private final Map<String, Long> failedUntil = new LinkedHashMap<>();
+
+    /**
+     * @param filesDir Directorio de datos de la app (registro de sincronización)
+     * @param downloadsDir Descargas: cada gateway copia en su subcarpeta
+     */
+    public BackgroundSync(RangeFetcher fetcher, RemoteFileIndex fileIndex, FileFollower follower,
+                          File filesDir, File downloadsDir) {
+        this.fetcher = fetcher;
+        this.fileIndex = fileIndex;
+        this.follower = follower;
+        this.dir = new File(filesDir, DIR_NAME);
+        this.downloadsDir = downloadsDir;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void setPageLoader(PageLoader pageLoader) {
+        this.pageLoader = pageLoader;
+    }
+
+    // ==================== CICLO DE VIDA ====================
+
+    /**
+     * Conectado a un gateway RX: cargar su registro y empezar si está activada
+     */
+    public void start(String address) {
+        stop();
+        gateway = address;
+        targetDir = new File(downloadsDir, address.replace(":", ""));
+        fileIndex.addListener(this);
+
+        int started = epoch;
+        File file = recordFile();
+        io.execute(() -> {
+            Saved saved = read(file);
+            handler.post(() -> {
+                if (started != epoch) {
+                    return;
+                }
+                loaded = true;
+                enabled = saved.enabled;
+                records.putAll(saved.records);
+                Log.d(TAG, "Gateway " + address + ": sincronización " + (enabled ? "activada" : "desactivada") +
+                        ", " + records.size() + " archivos registrados");
+                schedule(INDEX_DEBOUNCE_MS);
+            });
+        });
+    }
+
+    /**
+     * Desconectado: lo que quedara a medias se sigue en la próxima conexión
+     */
+    public void stop() {
+        epoch++;
+        if (gateway == null) {
+            return;
+        }
+        fileIndex.removeListener(this);
+        handler.removeCallbacks(step);
+        gateway = null;
+        targetDir = null;
+        loaded = false;
+        enabled = false;
+        current = null;
+        scanning = false;
+        rescan = false;
+        pendingBytes = 0;
+        records.clear();
+        failedUntil.clear();
+        notifyProgress(null, 0, 0);
+    }
+
+    public boolean isActive() {
+        return gateway != null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Activar o desactivar para el gateway conectado
+     */
+    public void setEnabled(boolean enabled) {
+        if (gateway == null || !loaded || this.enabled == enabled) {
+            return;
+        }
+        this.enabled = enabled;
+        save();
+        Log.d(TAG, "Sincronización " + (enabled ? "activada" : "desactivada") + " para " + gateway);
+        if (enabled) {
+            schedule(0);
+        } else {
+            handler.removeCallbacks(step);
+            notifyProgress(null, 0, 0);
+        }
+    }
+
+    /**
+     * El usuario ha pedido algo al gateway: dejarle el enlace libre un rato
+     */
+    public void pauseForUser() {
+        long until = System.currentTimeMillis() + USER_PAUSE_MS;
+        handler.post(() -> {
+            pausedUntil = until;
+            if (gateway != null && enabled && current == null) {
+                schedule(USER_PAUSE_MS);
+            }
+        });
+    }
+
+    /**
+     * Carpeta donde se copian los archivos del gateway (null sin gateway)
+     */
+    public File getTargetDir() {
+        return targetDir;
+    }
+
+    /**
+     * Registro del gateway conectado, lo más reciente primero
+     */
+    public List<Record> getRecords() {
+        List<Record> list = new ArrayList<>(records.values());
+        Collections.sort(list, (a, b) -> Long.compare(b.syncedAt, a.syncedAt));
+        return list;
+    }
+
+    /**
+     * Bytes que faltan por copiar según la última revisión de las páginas cargadas
+     */
+    public long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    // ==================== DIFERENCIAS ====================
+
+    @Override
+    public void onIndexChanged(List<FileItem> files) {
+        handler.post(() -> {
+            // Archivos borrados en el gateway: la copia local se queda, el registro no
+            boolean changed = false;
+            if (!fileIndex.isListing() && !fileIndex.hasMorePages() && !fileIndex.isStale()) {
+                Iterator<Record> it = records.values().iterator();
+                while (it.hasNext()) {
+                    if (find(files, it.next().name) == null) {
+                        it.remove();
+                        changed = true;
+                    }
+                }
+            }
+            if (changed) {
+                save();
+            }
+            if (current == null) {
+                schedule(INDEX_DEBOUNCE_MS);
+            }
+        });
+    }
+
+    private void step() {
+        if (gateway == null || !loaded || current != null) {
+            return;
+        }
+        if (scanning) {
+            rescan = true;
+            return;
+        }
+        // Desactivada: solo refrescar lo pendiente
+        if (!enabled) {
+            scan(false);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now < pausedUntil) {
+            schedule(pausedUntil - now);
+            return;
+        }
+        // Listado sin revalidar o rangos de otros en cola: esperar
+        if (fileIndex.isStale() || fileIndex.isListing() || !fetcher.isIdle()) {
+            schedule(BUSY_RETRY_MS);
+            return;
+        }
+
+        scan(true);
+    }
+
+    /**
+     * Revisar las copias locales en el hilo de E/S
+     * @param fetch Pedir después el siguiente trozo (y vaciar la copia si empieza de nuevo)
+     */
+    private void scan(boolean fetch) {
+        long now = System.currentTimeMillis();
+        List<FileItem> files = new ArrayList<>();
+        for (FileItem file : fileIndex.getFiles()) {
+            if (isSyncable(file)) {
+                files.add(file);
+            }
+        }
+        Set<String> failed = new HashSet<>();
+        for (Map.Entry<String, Long> entry : failedUntil.entrySet()) {
+            if (entry.getValue() > now) {
+                failed.add(entry.getKey());
+            }
+        }
+        Map<String, Record> known = new HashMap<>(records);
+        File target = targetDir;
+        int started = epoch;
+
+        scanning = true;
+        io.execute(() -> {
+            Scan scan = inspect(files, known, failed, target, fetch);
+            handler.post(() -> onScanned(started, scan, fetch));
+        });
+    }
+
+    private void onScanned(int started, Scan scan, boolean fetch) {
+        if (started != epoch) {
+            return;
+        }
+        scanning = false;
+        boolean again = rescan;
+        rescan = false;
+
+        pendingBytes = scan.pendingBytes;
+        if (!scan.manual.isEmpty()) {
+            for (Record record : scan.manual) {
+                records.put(record.name, record);
+            }
+            save();
+        }
+
+        if (!fetch || !enabled) {
+            if (again || enabled) {
+                schedule(0);
+            }
+            return;
+        }
+
+        if (scan.next == null) {
+            // Lo cargado está al día: seguir con la siguiente página del listado
+            if (fileIndex.hasMorePages() && pageLoader != null) {
+                if (!fileIndex.isPageLoading()) {
+                    pageLoader.loadNextPage();
+                }
+                schedule(BUSY_RETRY_MS);
+                return;
+            }
+            notifyProgress(null, 0, 0);
+            if (again) {
+                schedule(0);
+            }
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        String name = scan.next.getDisplayName();
+        if (scan.error != null) {
+            Log.e(TAG, "No se pudo crear la copia de " + name, scan.error);
+            failedUntil.put(name, now + FAILURE_RETRY_MS);
+            schedule(BUSY_RETRY_MS);
+            return;
+        }
+        if (scan.offset == 0) {
+            // Copia empezada de nuevo: lo registrado ya no vale
+            records.remove(name);
+        }
+
+        // Mientras se revisaba llegó una pausa o rangos de otros
+        if (now < pausedUntil || !fetcher.isIdle()) {
+            schedule(BUSY_RETRY_MS);
+            return;
+        }
+
+        current = name;
+        notifyProgress(current, scan.offset, scan.next.getSize());
+        fetcher.fetch(scan.next.getFilename(), scan.offset, CHUNK_BYTES, this);
+    }
+
+    /**
+     * Comparar las páginas cargadas con las copias locales (hilo de E/S)
+     * @param files Archivos sincronizables, en el orden del listado
+     * @param failed Archivos que esperan tras un fallo
+     */
+    private Scan inspect(List<FileItem> files, Map<String, Record> known, Set<String> failed,
+                         File target, boolean prepare) {
+        Scan scan = new Scan();
+        long now = System.currentTimeMillis();
+
+        for (FileItem file : files) {
+            String name = file.getDisplayName();
+            long synced = syncedSize(file, known.get(name), target);
+
+            // Descargado a mano en Descargas: no copiarlo otra vez mientras esté completo
+            if (synced < 0) {
+                synced = file.getSize();
+                Record record = known.get(name);
+                if (record == null || record.size != synced) {
+                    scan.manual.add(new Record(name, synced, file.getModifiedTime(), now));
+                }
+            }
+
+            scan.pendingBytes += Math.max(0, file.getSize() - synced);
+            if (scan.next == null && file.getSize() > synced && !failed.contains(name)) {
+                scan.next = file;
+                scan.offset = synced;
+            }
+        }
+
+        if (prepare && scan.next != null && scan.offset == 0) {
+            try {
+                prepareTarget(target, scan.next);
+            } catch (IOException e) {
+                scan.error = e;
+            }
+        }
+        return scan;
+    }
+
+    private boolean isSyncable(FileItem file) {
+        String name = file.getDisplayName();
+        for (String ext : SKIPPED_EXTENSIONS) {
+            if (name.endsWith(ext)) {
+                return false;
+            }
+        }
+        // El seguimiento en vivo ya está escribiendo esa copia
+        return !follower.isFollowing(file.getFilename());
+    }
+
+    /**
+     * Bytes que se pueden dar por buenos; 0 para copiar de nuevo y -1 si
+     * hay una copia completa descargada a mano en Descargas
+     */
+    private long syncedSize(FileItem file, Record record, File target) {
+        String name = file.getDisplayName();
+        File local = new File(target, name);
+
+        File manual = new File(downloadsDir, name);
+        if (!local.exists() && file.getSize() > 0 && manual.length() == file.getSize()) {
+            return -1;
+        }
+        if (record == null) {
+            return 0;
+        }
+
+        // Más corto que lo copiado: se sustituyó en el gateway. Copia local tocada: rehacer
+        if (file.getSize() < record.size || local.length() != record.size) {
+            return 0;
+        }
+        return record.size;
+    }
+
+    // ==================== TROZOS ====================
+
+    @Override
+    public void onRange(String filename, long offset, byte[] data, long remoteSize) {
+        String name = displayName(filename);
+        if (gateway == null || !name.equals(current)) {
+            return;
+        }
+        if (data.length == 0) {
+            finishRange(name, offset, 0, remoteSize);
+            return;
+        }
+
+        // 'current' sigue puesto hasta que el trozo está en disco
+        File local = new File(targetDir, name);
+        int started = epoch;
+        io.execute(() -> {
+            IOException error = null;
+            try (RandomAccessFile out = new RandomAccessFile(local, "rw")) {
+                out.seek(offset);
+                out.write(data);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            IOException failure = error;
+            handler.post(() -> {
+                if (started != epoch) {
+                    return;
+                }
+                if (failure != null) {
+                    Log.e(TAG, "Error escribiendo " + local, failure);
+                    current = null;
+                    failedUntil.put(name, System.currentTimeMillis() + FAILURE_RETRY_MS);
+                    schedule(BUSY_RETRY_MS);
+                    return;
+                }
+                finishRange(name, offset, data.length, remoteSize);
+            });
+        });
+    }
+
+    private void finishRange(String name, long offset, int length, long remoteSize) {
+        current = null;
+        long now = System.currentTimeMillis();
+
+        Record previous = records.get(name);
+        long modified = previous != null ? previous.modified : 0;
+        FileItem listed = find(fileIndex.getFiles(), name);
+        if (listed != null && listed.getModifiedTime() != 0) {
+            modified = listed.getModifiedTime();
+        }
+        long synced = offset + length;
+        // Rango vacío: el listado promete más de lo que hay, no insistir hasta más tarde
+        if (length == 0) {
+            failedUntil.put(name, now + FAILURE_RETRY_MS);
+        }
+        records.put(name, new Record(name, synced, modified, now));
+        save();
+
+        notifyProgress(name, synced, Math.max(synced, remoteSize));
+        if (synced >= remoteSize) {
+            Log.d(TAG, "Sincronizado " + name + " (" + synced + " bytes)");
+        }
+
+        // Limitar el caudal: esperar lo que habría tardado el trozo a la tasa máxima
+        schedule(length * 1000L / MAX_BYTES_PER_SECOND);
+    }
+
+    @Override
+    public void onRangeFailed(String filename, String reason) {
+        String name = displayName(filename);
+        if (!name.equals(current)) {
+            return;
+        }
+        current = null;
+        Log.w(TAG, "Fallo sincronizando " + name + ": " + reason);
+        failedUntil.put(name, System.currentTimeMillis() + FAILURE_RETRY_MS);
+        schedule(BUSY_RETRY_MS);
+    }
+
+    // ==================== INTERNO ====================
+
+    private void schedule(long delayMs) {
+        handler.removeCallbacks(step);
+        if (gateway != null) {
+            handler.postDelayed(step, Math.max(0, delayMs));
+        }
+    }
+
+    private static void prepareTarget(File target, FileItem file) throws IOException {
+        if (!target.exists() && !target.mkdirs()) {
+            throw new IOException("No se pudo crear " + target);
+        }
+        new FileOutputStream(new File(target, file.getDisplayName())).close();
+    }
+
+    private void notifyProgress(String filename, long localSize, long remoteSize) {
+        if (listener != null) {
+            listener.onSyncProgress(filename, localSize, remoteSize);
+        }
+    }
+
+    private static FileItem find(List<FileItem> files, String name) {
+        for (FileItem file : files) {
+            if (file.getDisplayName().equals(name)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private static String displayName(String name) {
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+
+    private File recordFile() {
+        return new File(dir, gateway.replace(":", "") + ".json");
+    }
+
+    // Hilo de E/S
+    private static Saved read(File file) {
+        Saved saved = new Saved();
+        if (!file.exists()) {
+            return saved;
+        }
+
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+
+            JSONObject json = new JSONObject(new String(data, 0, read, StandardCharsets.UTF_8));
+            saved.enabled = json.optBoolean("enabled", false);
+            JSONObject files = json.optJSONObject("files");
+            if (files != null) {
+                Iterator<String> names = files.keys();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    JSONObject entry = files.getJSONObject(name);
+                    saved.records.put(name, new Record(name, entry.getLong("size"),
+                            entry.optLong("modified", 0), entry.optLong("syncedAt", 0)));
+                }
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Error leyendo " + file.getName(), e);
+        }
+        return saved;
+    }
+
+    /**
+     * Guardar una copia del registro en el hilo de E/S (en orden con las escrituras)
+     */
+    private void save() {
+        if (gateway == null || !loaded) {
+            return;
+        }
+
+        File file = recordFile();
+        boolean syncEnabled = enabled;
+        List<Record> snapshot = new ArrayList<>(records.values());
+        io.execute(() -> write(file, syncEnabled, snapshot));
+    }
+
+    // Hilo de E/S
+    private void write(File file, boolean syncEnabled, List<Record> snapshot) {
+        try {
+            JSONObject files = new JSONObject();
+            for (Record record : snapshot) {
+                JSONObject entry = new JSONObject();
+                entry.put("size", record.size);
+                entry.put("modified", record.modified);
+                entry.put("syncedAt", record.syncedAt);
+                files.put(record.name, entry);
+            }
+            JSONObject json = new JSONObject();
+            json.put("enabled", syncEnabled);
+            json.put("files", files);
+
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("No se pudo crear " + dir);
+            }
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Error guardando " + file.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.example.lora_gtr;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresión con diccionario para telemetría pequeña (CSV/JSON).
+ *
+ * Un deflate normal apenas gana con unos cientos de bytes porque no tiene
+ * historial del que copiar. Con un diccionario entrenado con archivos ya
+ * enviados (nombres de columna, claves JSON, prefijos de valores) el
+ * primer registro ya se puede codificar como referencias.
+ *
+ * Los diccionarios tienen versión y se guardan en el almacenamiento de la
+ * app. Para compartirlos se suben a cada gateway como dict_vN.zdict: un
+ * teléfono que descargue del RX un archivo comprimido con una versión que
+ * no tiene, descarga antes ese archivo y lo importa.
+ *
+ * Archivo comprimido (.dz): versión del diccionario (u16), tamaño
+ * original (u16) y el deflate crudo, sin cabecera zlib.
+ */
+public class CompressionDictionary {
+
+    private static final String TAG = "CompressionDictionary";
+
+    public static final String EXTENSION = ".dz";
+    public static final String DICT_EXTENSION = ".zdict";
+    public static final int MAX_INPUT_BYTES = 0xFFFF;     // Solo compensa en payloads pequeños
+    public static final int MIN_SAMPLES = 3;
+    public static final int NO_DICTIONARY = 0;
+
+    private static final String DICT_PREFIX = "dict_v";
+    private static final int HEADER_BYTES = 4;
+    private static final int MAX_DICT_BYTES = 8 * 1024;
+    private static final int MIN_TOKEN_BYTES = 3;
+    private static final int MAX_TOKEN_BYTES = 64;
+    private static final String DELIMITERS = ",;:\n\r\t {}[]\"=";
+
+    private final File dir;
+    private final Map<Integer, byte[]> loaded = new HashMap<>();
+
+    /**
+     * @param dir Directorio privado donde guardar los diccionarios
+     */
+    public CompressionDictionary(File dir) {
+        this.dir = dir;
+    }
+
+    // ==================== VERSIONES ====================
+
+    /**
+     * Última versión disponible localmente
+     * @return NO_DICTIONARY si aún no se ha entrenado ni importado ninguno
+     */
+    public synchronized int getCurrentVersion() {
+        int latest = NO_DICTIONARY;
+        File[] files = dir.listFiles((d, name) -> name.startsWith(DICT_PREFIX) && name.endsWith(DICT_EXTENSION));
+        if (files == null) {
+            return latest;
+        }
+        for (File file : files) {
+            latest = Math.max(latest, versionOf(file.getName()));
+        }
+        return latest;
+    }
+
+    /**
+     * Nombre con el que se sube el diccionario a los gateways
+     */
+    public static String remoteName(int version) {
+        return DICT_PREFIX + version + DICT_EXTENSION;
+    }
+
+    /**
+     * Versión a partir del nombre de un archivo de diccionario
+     * @return NO_DICTIONARY si el nombre no corresponde a un diccionario
+     */
+    public static int versionOf(String filename) {
+        String name = new File(filename).getName();
+        if (!name.startsWith(DICT_PREFIX) || !name.endsWith(DICT_EXTENSION)) {
+            return NO_DICTIONARY;
+        }
+        try {
+            return Integer.parseInt(name.substring(DICT_PREFIX.length(), name.length() - DICT_EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return NO_DICTIONARY;
+        }
+    }
+
+    public File fileFor(int version) {
+        return new File(dir, remoteName(version));
+    }
+
+    /**
+     * Guardar un diccionario descargado de un gateway
+     */
+    public synchronized boolean importDictionary(String filename, byte[] data) {
+        int version = versionOf(filename);
+        if (version == NO_DICTIONARY || data.length == 0 || data.length > MAX_DICT_BYTES) {
+            Log.w(TAG, "Diccionario no válido: " + filename);
+            return false;
+        }
+        try {
+            write(fileFor(version), data);
+            loaded.put(version, data);
+            Log.d(TAG, "Diccionario v" + version + " importado (" + data.length + " bytes)");
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error guardando diccionario v" + version, e);
+            return false;
+        }
+    }
+
+    private synchronized byte[] load(int version) {
+        byte[] dictionary = loaded.get(version);
+        if (dictionary != null) {
+            return dictionary;
+        }
+        File file = fileFor(version);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            dictionary = readAll(file);
+            loaded.put(version, dictionary);
+            return dictionary;
+        } catch (IOException e) {
+            Log.e(TAG, "Error leyendo diccionario v" + version, e);
+            return null;
+        }
+    }
+
+    // ==================== ENTRENAMIENTO ====================
+
+    /**
+     * Entrenar una versión nueva con archivos ya enviados
+     * Se queda con los fragmentos (entre delimitadores) y las líneas que se
+     * repiten en más archivos; lo más útil va al final, donde las
+     * distancias de deflate son más cortas.
+     * @return la versión creada
+     */
+    public synchronized int train(List<File> samples) throws IOException {
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        int used = 0;
+
+        for (File sample : samples) {
+            if (sample.length() == 0 || sample.length() > MAX_INPUT_BYTES) {
+                continue;
+            }
+            String text = new String(readAll(sample), StandardCharsets.ISO_8859_1);
+            for (String token : tokens(text)) {
+                documentFrequency.merge(token, 1, Integer::sum);
+            }
+            used++;
+        }
+
+        if (used < MIN_SAMPLES) {
+            throw new IOException("Hacen falta al menos " + MIN_SAMPLES + " archivos pequeños para entrenar");
+        }
+
+        // Puntuación: bytes que ahorra en cuántos archivos aparece
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : documentFrequency.entrySet()) {
+            if (entry.getValue() >= 2) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort((a, b) -> Integer.compare(
+                b.getValue() * b.getKey().length(), a.getValue() * a.getKey().length()));
+
+        List<String> chosen = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> entry : candidates) {
+            if (size + entry.getKey().length() > MAX_DICT_BYTES) {
+                continue;
+            }
+            chosen.add(entry.getKey());
+            size += entry.getKey().length();
+        }
+        if (chosen.isEmpty()) {
+            throw new IOException("Los archivos no tienen contenido en común");
+        }
+
+        StringBuilder dictionary = new StringBuilder(size);
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            dictionary.append(chosen.get(i));
+        }
+
+        int version = getCurrentVersion() + 1;
+        byte[] data = dictionary.toString().getBytes(StandardCharsets.ISO_8859_1);
+        dir.mkdirs();
+        write(fileFor(version), data);
+        loaded.put(version, data);
+
+        Log.d(TAG, "Diccionario v" + version + ": " + data.length + " bytes de " + used + " archivos");
+        return version;
+    }
+
+    // Fragmentos hasta cada delimitador (incluido) y líneas completas, sin repetir por archivo
+    private static Set<String> tokens(String text) {
+        Set<String> tokens = new HashSet<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (DELIMITERS.indexOf(text.charAt(i)) >= 0) {
+                addToken(tokens, text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        addToken(tokens, text.substring(start));
+
+        for (String line : text.split("\n")) {
+            addToken(tokens, line + "\n");
+        }
+        return tokens;
+    }
+
+    private static void addToken(Set<String> tokens, String token) {
+        if (token.length() >= MIN_TOKEN_BYTES && token.length() <= MAX_TOKEN_BYTES) {
+            tokens.add(token);
+        }
+    }
+
+    // ==================== COMPRIMIR ====================
+
+    /**
+     * Comprimir con la versión actual del diccionario
+     * @return null si no hay diccionario, el archivo es grande o no se gana nada
+     */
+    public byte[] compress(byte[] data) {
+        return compress(data, getCurrentVersion());
+    }
+
+    /**
+     * Comprimir con una versión concreta (la que ya tiene o recibirá el gateway)
+     * @return null si esa versión no existe, el archivo es grande o no se gana nada
+     */
+    public byte[] compress(byte[] data, int version) {
+        byte[] dictionary = version != NO_DICTIONARY ? load(version) : null;
+        if (dictionary == null || data.length == 0 || data.length > MAX_INPUT_BYTES) {
+            return null;
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setDictionary(dictionary);
+            deflater.setInput(data);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+            out.write(version >> 8);
+            out.write(version);
+            out.write(data.length >> 8);
+            out.write(data.length);
+
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+
+            byte[] compressed = out.toByteArray();
+            return compressed.length < data.length ? compressed : null;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Versión de diccionario que necesita un archivo comprimido
+     */
+    public static int requiredVersion(byte[] compressed) {
+        if (compressed.length < HEADER_BYTES) {
+            return NO_DICTIONARY;
+        }
+        return ((compressed[0] & 0xFF) << 8) | (compressed[1] & 0xFF);
+    }
+
+    /**
+     * Descomprimir un archivo .dz
+     * @throws IOException si falta su diccionario o los datos están dañados
+     */
+    public byte[] decompress(byte[] compressed) throws IOException {
+        int version = requiredVersion(compressed);
+        if (version == NO_DICTIONARY) {
+            throw new IOException("Archivo comprimido no válido");
+        }
+        byte[] dictionary = load(version);
+        if (dictionary == null) {
+            throw new IOException("Falta el diccionario " + remoteName(version));
+        }
+
+        int size = ((compressed[2] & 0xFF) << 8) | (compressed[3] & 0xFF);
+        byte[] data = new byte[size];
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setDictionary(dictionary);
+            inflater.setInput(compressed, HEADER_BYTES, compressed.length - HEADER_BYTES);
+            int offset = 0;
+            while (offset < size) {
+                int count = inflater.inflate(data, offset, size - offset);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                offset += count;
+            }
+            if (offset != size) {
+                throw new IOException("Datos comprimidos incompletos");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Datos comprimidos dañados", e);
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+
+    // ==================== E/S ====================
+
+    private static void write(File file, byte[] data) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("No se pudo guardar " + file.getName());
+        }
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (InputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Archivo truncado: " + file.getName());
+                }
+                offset += read;
+            }
+        }
+        return data;
+    }
+}
@@ -105,14 +105,7 @@ public class ConnectionFragment extends Fragment {
             Log.d(TAG, "🖱️ Item de lista tocado, posición: " + position);
             Log.d(TAG, "   isConnected = " + isConnected);
 
-            if (isConnected) {
-                Log.w(TAG, "⚠️  Ya conectado, mostrando mensaje");
-                Toast.makeText(requireContext(),
-                        "Ya estás conectado. Desconecta primero.",
-                        Toast.LENGTH_SHORT).show();
-                return;
-            }
-
+            // Con otro gateway conectado se abre una sesión más (MainActivity limita cuántas)
             BluetoothDevice device = devicesList.get(position);
             Log.d(TAG, "✅ Dispositivo seleccionado: " + device.getName());
             connectToDevice(device);
@@ -223,7 +216,8 @@ public class ConnectionFragment extends Fragment {
             Log.d(TAG, "✅ Actualizando UI para estado CONECTADO");
 
             cardStatus.setCardBackgroundColor(getResources().getColor(android.R.color.holo_green_light));
-            tvStatus.setText("🟢 CONECTADO");
+            int others = mainActivity != null ? mainActivity.getOpenSessionCount() - 1 : 0;
+            tvStatus.setText(others > 0 ? "🟢 CONECTADO (+" + others + " en segundo plano)" : "🟢 CONECTADO");
 
             String deviceName = mainActivity != null ? mainActivity.getConnectedDeviceName() : "Desconocido";
             tvDeviceName.setText(deviceName);
@@ -240,9 +234,10 @@ public class ConnectionFragment extends Fragment {
             }
 
             btnDisconnect.setVisibility(View.VISIBLE);
-            btnScan.setEnabled(false);
-            listViewDevices.setEnabled(false);
-            listViewDevices.setAlpha(0.5f);
+            // La lista sigue activa para conectar más gateways a la vez
+            btnScan.setEnabled(true);
+            listViewDevices.setEnabled(true);
+            listViewDevices.setAlpha(1.0f);
 
         } else {
             Log.d(TAG, "⚪ Actualizando UI para estado DESCONECTADO");
@@ -0,0 +1,497 @@
+package com.example.lora_gtr;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.lora_gtr.models.FileItem;
+import com.example.lora_gtr.models.LoRaConfig;
+import com.example.lora_gtr.models.LoRaRegion;
+import com.example.lora_gtr.models.TransferEstimate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Cola de envíos LoRa que respeta el ciclo de trabajo de cada sub-banda.
+ *
+ * Lleva la cuenta del tiempo en aire consumido por sub-banda en la última
+ * hora (estimado con el modelo de LoRaConfig) y decide para cada archivo:
+ * - Ráfaga: si cabe en lo que queda de presupuesto, se envía a toda velocidad.
+ * - Esperar: si cabe en el presupuesto pero no ahora, espera a que caduque
+ *   consumo antiguo.
+ * - Pausado: el gateway intercala tras cada paquete un silencio de
+ *   ToA * (1/p - 1). El ritmo p es el mayor que, sumado al consumo
+ *   anterior, no supera el presupuesto en ninguna ventana de una hora que
+ *   se solape con el inicio (como mucho el ciclo de trabajo). Puede
+ *   convenir esperar a que caduque consumo antiguo para pausar menos.
+ * Entre esperar y pausar se elige lo que termine antes. El consumo de un
+ * envío pausado se apunta repartido a lo largo de su duración.
+ *
+ * Los envíos son de uno en uno; cada trabajo tiene una hora estimada de
+ * inicio y de fin que se recalcula al cambiar la cola. Además de archivos
+ * normales, la cola lleva archivos de símbolos (código fuente) y de tramas
+ * empaquetadas en la app: el Sender mira el tipo del trabajo para elegir
+ * el comando.
+ */
+public class DutyCycleScheduler {
+
+    private static final String TAG = "DutyCycleScheduler";
+
+    private static final long WINDOW_MS = 60 * 60 * 1000;      // Ventana de cómputo: 1 hora
+    private static final long DONE_GRACE_MS = 60 * 1000;       // Margen antes de dar un envío por terminado
+    private static final long USAGE_SLICE_MS = 60 * 1000;      // Reparto del consumo de un envío pausado
+    private static final int MAX_USAGE_SLICES = 120;
+
+    public static final int STATE_QUEUED = 0;
+    public static final int STATE_SENDING = 1;
+
+    public static final int KIND_FILE = 0;        // Troceado en el gateway, con ACKs
+    public static final int KIND_FOUNTAIN = 1;    // Archivo de símbolos (FountainCode)
+    public static final int KIND_FRAMES = 2;      // Archivo de tramas (LoRaPacketizer)
+
+    /**
+     * Archivo en la cola de transmisión
+     */
+    public static class Job {
+        public final String filename;
+        public final long size;
+        public final int kind;
+        public final int packets;        // Registros o tramas del archivo (KIND_FOUNTAIN, KIND_FRAMES)
+        public final int recordBytes;    // Bytes por registro o trama (KIND_FOUNTAIN, KIND_FRAMES)
+        public final LoRaConfig config;
+        public final LoRaRegion.SubBand band;
+        public final TransferEstimate estimate;
+
+        public int state = STATE_QUEUED;
+        public volatile boolean cancelled;   // Quitado de la cola sin transmitirse entero
+        public boolean paced;
+        public double pacing = 1.0;   // Fracción de tiempo en aire si va pausado
+        public long startAt;      // Hora estimada de inicio (ms, reloj de pared)
+        public long finishAt;     // Hora estimada de fin
+
+        Job(String filename, long size, LoRaConfig config, LoRaRegion.SubBand band, TransferEstimate estimate) {
+            this(filename, size, KIND_FILE, 0, 0, config, band, estimate);
+        }
+
+        Job(String filename, long size, int kind, int packets, int recordBytes, LoRaConfig config,
+            LoRaRegion.SubBand band, TransferEstimate estimate) {
+            this.filename = filename;
+            this.size = size;
+            this.kind = kind;
+            this.packets = packets;
+            this.recordBytes = recordBytes;
+            this.config = config;
+            this.band = band;
+            this.estimate = estimate;
+        }
+
+        /**
+         * Ciclo de trabajo que debe aplicar el gateway (1.0 = sin pausas)
+         */
+        public double getPacing() {
+            return paced ? pacing : 1.0;
+        }
+    }
+
+    /**
+     * Ejecuta el envío en el gateway
+     */
+    public interface Sender {
+        void send(Job job);
+    }
+
+    public interface Listener {
+        void onQueueChanged(List<Job> jobs);
+    }
+
+    // Consumo registrado en la ventana
+    private static class Usage {
+        final long at;
+        final LoRaRegion.SubBand band;
+        final double airtimeMs;
+
+        Usage(long at, LoRaRegion.SubBand band, double airtimeMs) {
+            this.at = at;
+            this.band = band;
+            this.airtimeMs = airtimeMs;
+        }
+    }
+
+    private final Sender sender;
+    private final List<Job> jobs = new ArrayList<>();
+    private final ArrayDeque<Usage> history = new ArrayDeque<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable dispatchRunnable = this::dispatch;
+
+    public DutyCycleScheduler(Sender sender) {
+        this.sender = sender;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // ==================== COLA ====================
+
+    /**
+     * Calcular cuándo terminaría un archivo si se encolara ahora (sin encolarlo)
+     */
+    public Job preview(FileItem file, LoRaConfig config) {
+        return preview(Collections.singletonList(file), config).get(0);
+    }
+
+    /**
+     * Calcular inicio y fin de varios archivos encolados uno tras otro
+     */
+    public synchronized List<Job> preview(List<FileItem> files, LoRaConfig config) {
+        List<Job> projected = new ArrayList<>(jobs);
+        List<Job> added = new ArrayList<>();
+        for (FileItem file : files) {
+            added.add(createJob(file, config));
+        }
+        projected.addAll(added);
+        project(projected, System.currentTimeMillis());
+        return added;
+    }
+
+    public Job enqueue(FileItem file, LoRaConfig config) {
+        return enqueue(createJob(file, config));
+    }
+
+    /**
+     * Encolar un archivo de símbolos ya subido al TX
+     * @param recordBytes Bytes de cada registro (un paquete LoRa)
+     * @param symbols Registros en el archivo
+     */
+    public Job enqueueFountain(FileItem file, LoRaConfig config, int recordBytes, int symbols) {
+        return enqueue(new Job(file.getFilename(), file.getSize(), KIND_FOUNTAIN, symbols, recordBytes,
+                new LoRaConfig(config), bandFor(config),
+                TransferEstimate.forSymbols(file.getSize(), config, symbols, recordBytes)));
+    }
+
+    /**
+     * Encolar un archivo de tramas ya subido al TX
+     * @param frames Tramas en el archivo
+     * @param frameBytes Payload LoRa de cada trama
+     */
+    public Job enqueueFrames(FileItem file, LoRaConfig config, int frames, int frameBytes) {
+        return enqueue(new Job(file.getFilename(), file.getSize(), KIND_FRAMES, frames, frameBytes,
+                new LoRaConfig(config), bandFor(config),
+                TransferEstimate.forFrames(file.getSize(), config, frames, frameBytes)));
+    }
+
+    private Job enqueue(Job job) {
+        synchronized (this) {
+            jobs.add(job);
+            Log.d(TAG, "Encolado " + job.filename + " en sub-banda " + job.band +
+                    ", " + Math.round(job.estimate.txAirtimeMs) + " ms en aire");
+        }
+        dispatch();
+        return job;
+    }
+
+    /**
+     * Quitar de la cola un archivo que aún no se está enviando
+     */
+    public boolean cancel(Job job) {
+        synchronized (this) {
+            if (job.state != STATE_QUEUED || !jobs.remove(job)) {
+                return false;
+            }
+            job.cancelled = true;
+        }
+        dispatch();
+        return true;
+    }
+
+    /**
+     * Vaciar la cola (al desconectar). El consumo registrado se conserva.
+     */
+    public void clear() {
+        synchronized (this) {
+            for (Job job : jobs) {
+                job.cancelled = true;
+            }
+            jobs.clear();
+        }
+        handler.removeCallbacks(dispatchRunnable);
+        notifyChanged();
+    }
+
+    public synchronized List<Job> getJobs() {
+        return new ArrayList<>(jobs);
+    }
+
+    /**
+     * El gateway terminó un envío ([LORA_DONE])
+     * @param filename Archivo terminado (null si el firmware no lo indica: se da por el de la cola)
+     */
+    public void onTransferFinished(String filename) {
+        synchronized (this) {
+            if (jobs.isEmpty() || jobs.get(0).state != STATE_SENDING) {
+                return;
+            }
+            // Un envío fuera de la cola no termina el que está en curso
+            if (filename != null && !samePath(filename, jobs.get(0).filename)) {
+                Log.d(TAG, "Fin de " + filename + " fuera de la cola");
+                return;
+            }
+            Job done = jobs.remove(0);
+            Log.d(TAG, "Terminado " + done.filename);
+        }
+        dispatch();
+    }
+
+    /**
+     * Tiempo en aire consumido en la última hora en una sub-banda (ms)
+     */
+    public synchronized double getConsumedMs(LoRaRegion.SubBand band) {
+        return consumedAt(new ArrayList<>(history), band, System.currentTimeMillis());
+    }
+
+    // ==================== PLANIFICACIÓN ====================
+
+    private Job createJob(FileItem file, LoRaConfig config) {
+        return new Job(file.getFilename(), file.getSize(), new LoRaConfig(config), bandFor(config),
+                TransferEstimate.forFile(file, config));
+    }
+
+    private static LoRaRegion.SubBand bandFor(LoRaConfig config) {
+        LoRaRegion region = LoRaRegion.byName(config.getRegion());
+        return region != null ? region.subBandFor(config.getFrequency()) : LoRaRegion.UNRESTRICTED;
+    }
+
+    private static boolean samePath(String a, String b) {
+        return stripSlash(a).equals(stripSlash(b));
+    }
+
+    private static String stripSlash(String name) {
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+
+    /**
+     * Arrancar el siguiente envío si toca y reprogramar el temporizador
+     */
+    private void dispatch() {
+        Job toSend = null;
+        long delay = -1;
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            expireHistory(now);
+
+            // Un envío sin [LORA_DONE] (firmware antiguo) se da por terminado tras su fin estimado
+            if (!jobs.isEmpty() && jobs.get(0).state == STATE_SENDING
+                    && now > jobs.get(0).finishAt + DONE_GRACE_MS) {
+                Log.w(TAG, "Sin confirmación de fin para " + jobs.get(0).filename + ", se da por terminado");
+                jobs.remove(0);
+            }
+
+            project(jobs, now);
+
+            if (!jobs.isEmpty()) {
+                Job first = jobs.get(0);
+                if (first.state == STATE_QUEUED && first.startAt <= now) {
+                    first.state = STATE_SENDING;
+                    first.startAt = now;
+                    first.finishAt = now + durationOf(first);
+                    addUsage(history, first);
+                    project(jobs, now);
+                    toSend = first;
+                }
+
+                Job head = jobs.get(0);
+                delay = head.state == STATE_SENDING
+                        ? head.finishAt + DONE_GRACE_MS - now
+                        : head.startAt - now;
+            }
+        }
+
+        handler.removeCallbacks(dispatchRunnable);
+        if (delay >= 0) {
+            handler.postDelayed(dispatchRunnable, Math.max(1000, delay));
+        }
+
+        if (toSend != null) {
+            Log.d(TAG, "Enviando " + toSend.filename + (toSend.paced
+                    ? " pausado al " + String.format(Locale.US, "%.3f", toSend.pacing * 100) + "%"
+                    : " en ráfaga"));
+            sender.send(toSend);
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Calcular inicio, fin y modo de cada trabajo, en orden, simulando el consumo
+     */
+    private void project(List<Job> queue, long now) {
+        List<Usage> simulated = new ArrayList<>(history);
+        long cursor = now;
+
+        for (Job job : queue) {
+            if (job.state == STATE_SENDING) {
+                // Ya está en el historial; su fin estimado es fijo
+                if (job.finishAt == 0) {
+                    job.startAt = now;
+                    job.finishAt = now + durationOf(job);
+                }
+                cursor = Math.max(cursor, job.finishAt);
+                continue;
+            }
+
+            double air = job.estimate.txAirtimeMs;
+            double dutyCycle = job.band.dutyCycle;
+            long burstDuration = (long) job.estimate.totalTimeMs;
+
+            job.paced = false;
+            job.pacing = 1.0;
+            job.startAt = cursor;
+            if (dutyCycle < 1.0) {
+                double budget = dutyCycle * WINDOW_MS;
+                if (consumedAt(simulated, job.band, cursor) + air > budget) {
+                    planConstrained(job, simulated, cursor, budget, burstDuration);
+                }
+            }
+
+            job.finishAt = job.startAt + durationOf(job);
+            addUsage(simulated, job);
+            cursor = job.finishAt;
+        }
+    }
+
+    /**
+     * Trabajo que no cabe ya en ráfaga: probar a empezar ahora o cada vez que
+     * caduca consumo antiguo, en ráfaga si ya cabe o pausado al ritmo que deja
+     * libre lo consumido, y quedarse con lo que termine antes
+     */
+    private static void planConstrained(Job job, List<Usage> usages, long from, double budget,
+                                        long burstDuration) {
+        double air = job.estimate.txAirtimeMs;
+        long bestFinish = Long.MAX_VALUE;
+
+        List<Long> candidates = new ArrayList<>();
+        candidates.add(from);
+        for (Usage usage : usages) {
+            if (usage.band == job.band && usage.at + WINDOW_MS > from) {
+                candidates.add(usage.at + WINDOW_MS);
+            }
+        }
+        Collections.sort(candidates);
+
+        for (long t : candidates) {
+            if (t >= bestFinish) {
+                break;
+            }
+            double free = budget - consumedAt(usages, job.band, t);
+            if (free <= 0) {
+                continue;
+            }
+
+            if (air <= free) {
+                // Cabe en ráfaga: lo más pronto posible a partir de aquí
+                if (t + burstDuration < bestFinish) {
+                    bestFinish = t + burstDuration;
+                    job.paced = false;
+                    job.pacing = 1.0;
+                    job.startAt = t;
+                }
+                break;
+            }
+
+            double pacing = maxPacing(usages, job.band, t, budget);
+            if (pacing <= 0) {
+                continue;
+            }
+            long finish = t + (long) Math.max(burstDuration, air / pacing);
+            if (finish < bestFinish) {
+                bestFinish = finish;
+                job.paced = true;
+                job.pacing = pacing;
+                job.startAt = t;
+            }
+        }
+    }
+
+    /**
+     * Mayor ritmo constante desde 't' que respeta el presupuesto en toda ventana
+     * [a, a + 1h] con a <= t: lo usado desde a más ritmo * (a + 1h - t).
+     * Basta mirar a en cada consumo anterior (la restricción más dura de cada tramo)
+     */
+    private static double maxPacing(List<Usage> usages, LoRaRegion.SubBand band, long t, double budget) {
+        List<Usage> recent = new ArrayList<>();
+        for (Usage usage : usages) {
+            if (usage.band == band && usage.at <= t && usage.at + WINDOW_MS > t) {
+                recent.add(usage);
+            }
+        }
+        Collections.sort(recent, (x, y) -> Long.compare(y.at, x.at));
+
+        double pacing = budget / WINDOW_MS;
+        double usedSince = 0;
+        for (Usage usage : recent) {
+            usedSince += usage.airtimeMs;
+            pacing = Math.min(pacing, (budget - usedSince) / (usage.at + WINDOW_MS - t));
+        }
+        return Math.max(0, pacing);
+    }
+
+    private static long durationOf(Job job) {
+        long burst = (long) job.estimate.totalTimeMs;
+        if (!job.paced) {
+            return burst;
+        }
+        return (long) Math.max(burst, job.estimate.txAirtimeMs / job.pacing);
+    }
+
+    /**
+     * Apuntar el consumo de un trabajo: de golpe si va en ráfaga, repartido
+     * a lo largo de su duración si va pausado (cada porción al final de su
+     * tramo, para no quedarse corto en ventanas que empiecen a mitad)
+     */
+    private static void addUsage(Collection<Usage> usages, Job job) {
+        double air = job.estimate.txAirtimeMs;
+        long duration = job.finishAt - job.startAt;
+        if (!job.paced || duration <= USAGE_SLICE_MS) {
+            usages.add(new Usage(job.startAt, job.band, air));
+            return;
+        }
+
+        int slices = (int) Math.min(MAX_USAGE_SLICES, duration / USAGE_SLICE_MS);
+        for (int i = 0; i < slices; i++) {
+            usages.add(new Usage(job.startAt + duration * (i + 1) / slices, job.band, air / slices));
+        }
+    }
+
+    private static double consumedAt(List<Usage> usages, LoRaRegion.SubBand band, long at) {
+        double total = 0;
+        for (Usage usage : usages) {
+            if (usage.band == band && usage.at <= at && usage.at + WINDOW_MS > at) {
+                total += usage.airtimeMs;
+            }
+        }
+        return total;
+    }
+
+    private void expireHistory(long now) {
+        // Un envío que acaba antes de lo estimado deja porciones futuras: el orden no está garantizado
+        history.removeIf(usage -> usage.at + WINDOW_MS <= now);
+    }
+
+    private void notifyChanged() {
+        List<Job> snapshot = getJobs();
+        for (Listener listener : listeners) {
+            listener.onQueueChanged(snapshot);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.lora_gtr;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Contenedor para enviar muchos archivos pequeños como uno solo.
+ *
+ * Cada archivo suelto paga su UPLOAD_FILE con sus esperas por BLE y, por
+ * LoRa, su paquete de inicio, su ronda de ACK y su vuelta de radio. Dentro
+ * de un contenedor esos costes se pagan una vez por lote. El RX guarda el
+ * contenedor tal cual y la app lo desempaqueta al descargarlo.
+ *
+ * Formato: "LGB" + versión (u8), número de archivos (u16), un índice con
+ * [longitud nombre u8][nombre UTF-8][tamaño u32][crc32 u32] por archivo y
+ * después los datos de todos, seguidos en el mismo orden.
+ */
+public final class FileBundle {
+
+    private static final String TAG = "FileBundle";
+
+    public static final String EXTENSION = ".bdl";
+    public static final long MAX_FILE_BYTES = 16 * 1024;      // Más grande ya no compensa agrupar
+    public static final long MAX_BUNDLE_BYTES = 256 * 1024;
+
+    private static final byte[] MAGIC = {'L', 'G', 'B'};
+    private static final int VERSION = 1;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final int MAX_NAME_BYTES = 0xFF;
+
+    /**
+     * Archivo extraído de un contenedor
+     */
+    public static class Entry {
+        public final String name;
+        public final byte[] data;
+
+        Entry(String name, byte[] data) {
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private FileBundle() {
+    }
+
+    /**
+     * Se puede agrupar: al menos dos archivos, todos pequeños y sin pasarse del total
+     */
+    public static boolean canBundle(List<StagingCache.StagedFile> files) {
+        if (files.size() < 2 || files.size() > MAX_ENTRIES) {
+            return false;
+        }
+        for (StagingCache.StagedFile file : files) {
+            if (file.size > MAX_FILE_BYTES || nameBytes(file.name).length > MAX_NAME_BYTES) {
+                return false;
+            }
+        }
+        return bundleSize(files) <= MAX_BUNDLE_BYTES;
+    }
+
+    /**
+     * Tamaño del contenedor con índice incluido
+     */
+    public static long bundleSize(List<StagingCache.StagedFile> files) {
+        long size = MAGIC.length + 1 + 2;
+        for (StagingCache.StagedFile file : files) {
+            size += 1 + nameBytes(file.name).length + 8 + file.size;
+        }
+        return size;
+    }
+
+    /**
+     * Nombre para un contenedor nuevo
+     */
+    public static String newBundleName() {
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        return "lote_" + stamp + EXTENSION;
+    }
+
+    // ==================== EMPAQUETAR ====================
+
+    /**
+     * Construir el contenedor y dejarlo preparado en la caché de subida
+     */
+    public static StagingCache.StagedFile pack(List<StagingCache.StagedFile> files, String bundleName,
+                                               StagingCache stagingCache) throws IOException {
+        if (!canBundle(files)) {
+            throw new IOException("Los archivos no caben en un contenedor");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) bundleSize(files));
+        out.write(MAGIC);
+        out.write(VERSION);
+        writeShort(out, files.size());
+
+        List<byte[]> contents = new ArrayList<>();
+        for (StagingCache.StagedFile file : files) {
+            byte[] data = readAll(file.file, file.size);
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+
+            byte[] name = nameBytes(file.name);
+            out.write(name.length);
+            out.write(name);
+            writeInt(out, data.length);
+            writeInt(out, (int) crc.getValue());
+            contents.add(data);
+        }
+        for (byte[] data : contents) {
+            out.write(data);
+        }
+
+        Log.d(TAG, bundleName + ": " + files.size() + " archivos, " + out.size() + " bytes");
+        return stagingCache.stage(new ByteArrayInputStream(out.toByteArray()), bundleName);
+    }
+
+    // ==================== DESEMPAQUETAR ====================
+
+    /**
+     * Extraer los archivos de un contenedor descargado
+     * @throws IOException si el contenedor está truncado o algún CRC no coincide
+     */
+    public static List<Entry> unpack(byte[] bundle) throws IOException {
+        int offset = MAGIC.length + 1 + 2;
+        if (bundle.length < offset
+                || bundle[0] != MAGIC[0] || bundle[1] != MAGIC[1] || bundle[2] != MAGIC[2]) {
+            throw new IOException("No es un contenedor");
+        }
+        if ((bundle[3] & 0xFF) != VERSION) {
+            throw new IOException("Versión de contenedor no soportada: " + (bundle[3] & 0xFF));
+        }
+        int count = ((bundle[4] & 0xFF) << 8) | (bundle[5] & 0xFF);
+
+        String[] names = new String[count];
+        int[] sizes = new int[count];
+        long[] crcs = new long[count];
+        for (int i = 0; i < count; i++) {
+            if (offset >= bundle.length) {
+                throw new IOException("Índice truncado");
+            }
+            int nameLength = bundle[offset] & 0xFF;
+            if (offset + 1 + nameLength + 8 > bundle.length) {
+                throw new IOException("Índice truncado");
+            }
+            // Solo el nombre: un contenedor no puede escribir fuera de Descargas
+            String name = new String(bundle, offset + 1, nameLength, StandardCharsets.UTF_8);
+            names[i] = new File(name).getName();
+            offset += 1 + nameLength;
+            sizes[i] = readInt(bundle, offset);
+            crcs[i] = readInt(bundle, offset + 4) & 0xFFFFFFFFL;
+            offset += 8;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (sizes[i] < 0 || offset + sizes[i] > bundle.length) {
+                throw new IOException("Contenedor truncado en " + names[i]);
+            }
+            byte[] data = new byte[sizes[i]];
+            System.arraycopy(bundle, offset, data, 0, data.length);
+            offset += data.length;
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            if (crc.getValue() != crcs[i]) {
+                throw new IOException("CRC no coincide en " + names[i]);
+            }
+            entries.add(new Entry(names[i], data));
+        }
+        return entries;
+    }
+
+    // ==================== UTILIDADES ====================
+
+    private static byte[] nameBytes(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >> 24);
+        out.write(value >> 16);
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+    private static byte[] readAll(File file, long size) throws IOException {
+        byte[] data = new byte[(int) size];
+        try (InputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Archivo truncado: " + file.getName());
+                }
+                offset += read;
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.lora_gtr;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.lora_gtr.models.FileItem;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Descarga progresiva de un archivo que el RX todavía está recibiendo.
+ *
+ * En vez de esperar al final y bajarlo entero, se piden por rangos solo
+ * los bytes nuevos y se añaden a la copia local. Con el índice en vivo
+ * (SUBSCRIBE_FILES) cada [FILE_EVT:GROWING] dispara la siguiente lectura;
+ * sin él se consulta cada POLL_MS.
+ *
+ * Se sigue un solo archivo a la vez, hasta que se pare a mano, se borre
+ * en el gateway o se pierda la conexión.
+ */
+public class FileFollower implements RemoteFileIndex.Listener, RangeFetcher.Callback {
+
+    private static final String TAG = "FileFollower";
+
+    private static final long POLL_MS = 5_000;
+
+    public interface Listener {
+        /**
+         * @param appended Bytes recién añadidos a la copia local
+         */
+        void onFollowProgress(String filename, long localSize, long remoteSize, byte[] appended);
+
+        void onFollowStopped(String filename, String reason);
+    }
+
+    private final RangeFetcher fetcher;
+    private final RemoteFileIndex fileIndex;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private Listener listener;
+    private String filename;
+    private File localFile;
+    private long localSize;
+    private long remoteSize;
+    private boolean inFlight;
+
+    private final Runnable poll = new Runnable() {
+        @Override
+        public void run() {
+            if (filename == null) {
+                return;
+            }
+            // Con eventos en vivo solo se pide cuando crece; si no, sondear
+            if (!fileIndex.isLive()) {
+                requestMore(true);
+            }
+            handler.postDelayed(this, POLL_MS);
+        }
+    };
+
+    public FileFollower(RangeFetcher fetcher, RemoteFileIndex fileIndex) {
+        this.fetcher = fetcher;
+        this.fileIndex = fileIndex;
+    }
+
+    /**
+     * Empezar a seguir un archivo; la copia local se escribe desde cero
+     */
+    public void follow(String remoteName, long knownSize, File target, Listener listener) {
+        stop(null);
+
+        this.filename = remoteName;
+        this.localFile = target;
+        this.localSize = 0;
+        this.remoteSize = knownSize;
+        this.listener = listener;
+        this.inFlight = false;
+
+        try {
+            new FileOutputStream(target).close();
+        } catch (IOException e) {
+            Log.e(TAG, "No se pudo crear " + target, e);
+            stop("No se pudo crear la copia local");
+            return;
+        }
+
+        Log.d(TAG, "Siguiendo " + remoteName + " → " + target);
+        fileIndex.addListener(this);
+        requestMore(true);
+        handler.postDelayed(poll, POLL_MS);
+    }
+
+    public boolean isFollowing(String remoteName) {
+        return filename != null && filename.equals(remoteName);
+    }
+
+    /**
+     * Dejar de seguir
+     * @param reason null si lo para el usuario
+     */
+    public void stop(String reason) {
+        if (filename == null) {
+            return;
+        }
+        String stopped = filename;
+        Listener stoppedListener = listener;
+
+        fileIndex.removeListener(this);
+        handler.removeCallbacks(poll);
+        filename = null;
+        listener = null;
+
+        Log.d(TAG, "Fin del seguimiento de " + stopped + (reason != null ? ": " + reason : ""));
+        if (stoppedListener != null) {
+            stoppedListener.onFollowStopped(stopped, reason);
+        }
+    }
+
+    public File getLocalFile() {
+        return localFile;
+    }
+
+    // ==================== LECTURAS ====================
+
+    /**
+     * @param probe true para preguntar aunque no se sepa que haya crecido
+     */
+    private void requestMore(boolean probe) {
+        if (filename == null || inFlight || (!probe && remoteSize <= localSize)) {
+            return;
+        }
+        inFlight = true;
+        fetcher.fetch(filename, localSize, RangeFetcher.MAX_RANGE_BYTES, this);
+    }
+
+    @Override
+    public void onRange(String name, long offset, byte[] data, long reportedSize) {
+        inFlight = false;
+        if (!name.equals(filename) || offset != localSize) {
+            return;
+        }
+
+        remoteSize = Math.max(remoteSize, reportedSize);
+        if (data.length > 0) {
+            try (FileOutputStream out = new FileOutputStream(localFile, true)) {
+                out.write(data);
+            } catch (IOException e) {
+                Log.e(TAG, "Error escribiendo " + localFile, e);
+                stop("Error escribiendo la copia local");
+                return;
+            }
+            localSize += data.length;
+            if (listener != null) {
+                listener.onFollowProgress(filename, localSize, remoteSize, data);
+            }
+        }
+
+        // Seguir mientras quede algo por bajar
+        requestMore(false);
+    }
+
+    @Override
+    public void onRangeFailed(String name, String reason) {
+        inFlight = false;
+        if (name.equals(filename)) {
+            stop(reason);
+        }
+    }
+
+    // ==================== EVENTOS ====================
+
+    @Override
+    public void onIndexChanged(List<FileItem> files) {
+        handler.post(() -> {
+            if (filename == null) {
+                return;
+            }
+            String followed = displayName(filename);
+            for (FileItem file : files) {
+                if (file.getDisplayName().equals(followed)) {
+                    if (file.getSize() > remoteSize) {
+                        remoteSize = file.getSize();
+                        requestMore(false);
+                    }
+                    return;
+                }
+            }
+            // Un listado en curso puede no traerlo aún: solo parar si el índice está completo
+            if (!fileIndex.isListing() && !fileIndex.hasMorePages()) {
+                stop("El archivo se borró en el gateway");
+            }
+        });
+    }
+
+    private static String displayName(String name) {
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+}
@@ -1,19 +1,32 @@
 package com.example.lora_gtr;
 
 import android.app.Activity;
+import android.content.ClipData;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ProgressBar;
+import android.widget.ScrollView;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
@@ -22,37 +35,141 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.lora_gtr.adapters.FileListAdapter;
 import com.example.lora_gtr.models.FileItem;
+import com.example.lora_gtr.models.LoRaConfig;
+import com.example.lora_gtr.models.TransferEstimate;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class FileFragment extends Fragment implements FileListAdapter.OnFileActionListener {
+public class FileFragment extends Fragment implements FileListAdapter.OnFileActionListener,
+        RemoteFileIndex.Listener {
+
+    private static final String TAG = "FileFragment";
+
+    // Filas restantes antes de pedir la siguiente página
+    private static final int PAGE_PREFETCH_DISTANCE = 10;
+
+    // Espera tras la última tecla antes de buscar
+    private static final long SEARCH_DEBOUNCE_MS = 150;
+    private static final String[] SORT_LABELS = {"A-Z", "Tamaño ↓", "Tamaño ↑"};
+    private static final int[] SORT_VALUES = {
+            FileSearchIndex.SORT_NAME, FileSearchIndex.SORT_SIZE_DESC, FileSearchIndex.SORT_SIZE_ASC
+    };
 
     // UI Components
     private RecyclerView recyclerViewFiles;
     private FloatingActionButton fabUpload;
     private View layoutEmptyMessage;        // ← CORREGIDO
     private View cardConnectionWarning;      // ← CORREGIDO
+    private View layoutProgress;
     private ProgressBar progressBar;
     private TextView tvProgressText;
+    private Button btnCancelTransfer;
+    private TextView tvFilesTitle;
+    private TextView tvTxQueue;
+    private View layoutBatch;
+    private TextView tvBatchStatus;
+    private ProgressBar progressBatch;
+    private EditText etSearch;
+    private Spinner spinnerExtension;
+    private Spinner spinnerSort;
 
     // Data
     private FileListAdapter fileAdapter;
-    private List<FileItem> fileList;
+
+    // Búsqueda: el índice solo se toca desde searchExecutor
+    private final FileSearchIndex searchIndex = new FileSearchIndex();
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger searchSequence = new AtomicInteger();
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = () -> runSearch(null);
+    private volatile FileSearchIndex.Query currentQuery = new FileSearchIndex.Query("", "", FileSearchIndex.SORT_NAME);
+    private ArrayAdapter<String> extensionAdapter;
+    private final List<String> extensionOptions = new ArrayList<>();
     private MainActivity mainActivity;
+    private final DutyCycleScheduler.Listener txQueueListener = jobs -> {
+        if (getActivity() != null) {
+            getActivity().runOnUiThread(() -> showTxQueue(jobs));
+        }
+    };
+    private final TransmitBatch.Listener batchListener = items -> {
+        if (getActivity() != null) {
+            getActivity().runOnUiThread(this::showBatch);
+        }
+    };
+    // El archivo en el aire avanza por tiempo: refrescar la barra del lote
+    private final Handler batchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable batchRefreshRunnable = this::showBatch;
+    private static final long BATCH_REFRESH_MS = 1000;
+
+    // Seguimiento en vivo de un archivo que el RX aún recibe
+    private static final int LIVE_TEXT_CHARS = 8 * 1024;
+    private AlertDialog followDialog;
+    private TextView tvFollowContent;
+    private ScrollView followScroll;
+    private final StringBuilder followText = new StringBuilder();
+    private CharsetDecoder followDecoder;
+    private ByteBuffer followPending;
+    private boolean followBinary;
+    private final FileFollower.Listener followListener = new FileFollower.Listener() {
+        @Override
+        public void onFollowProgress(String filename, long localSize, long remoteSize, byte[] appended) {
+            if (getActivity() != null) {
+                showFollowProgress(filename, localSize, remoteSize, appended);
+            }
+        }
+
+        @Override
+        public void onFollowStopped(String filename, String reason) {
+            if (getActivity() == null) {
+                return;
+            }
+            if (followDialog != null && followDialog.isShowing()) {
+                followDialog.setTitle("⏹️ " + filename);
+            }
+            if (reason != null) {
+                Toast.makeText(requireContext(), "⏹️ " + filename + ": " + reason, Toast.LENGTH_LONG).show();
+            }
+        }
+    };
 
     // Estado
     private boolean isConnected = false;
     private int currentMode = MainActivity.MODE_NONE;
     private boolean isDownloading = false;
     private String currentDownloadingFile = "";
-    private StringBuilder downloadBuffer;
+    private ByteArrayOutputStream downloadBuffer;
     private long expectedFileSize = 0;
+    private boolean isUploading = false;
+    private GatewaySession uploadSession;       // Gateway al que va la subida en curso
+
+    // Descarga completa en curso, para guardar lo recibido si se corta
+    private FileItem downloadItem;
+    private String downloadGateway = "";
+
+    // Vista previa: solo los primeros bytes de cada archivo
+    private static final int PREVIEW_BYTES = 4 * 1024;
+    private static final int PREVIEW_HEX_BYTES = 256;
 
     // File picker launcher
     private ActivityResultLauncher<Intent> filePickerLauncher;
@@ -65,13 +182,25 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         mainActivity = (MainActivity) getActivity();
-        fileList = new ArrayList<>();
 
         filePickerLauncher = registerForActivityResult(
                 new ActivityResultContracts.StartActivityForResult(),
                 result -> {
                     if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null) {
-                        Uri uri = result.getData().getData();
+                        // Selección múltiple: se sube y transmite como un lote
+                        ClipData clipData = result.getData().getClipData();
+                        if (clipData != null && clipData.getItemCount() > 1) {
+                            List<Uri> uris = new ArrayList<>();
+                            for (int i = 0; i < clipData.getItemCount(); i++) {
+                                uris.add(clipData.getItemAt(i).getUri());
+                            }
+                            stageBatch(uris);
+                            return;
+                        }
+
+                        Uri uri = clipData != null && clipData.getItemCount() == 1
+                                ? clipData.getItemAt(0).getUri()
+                                : result.getData().getData();
                         if (uri != null) {
                             uploadFileFromUri(uri);
                         }
@@ -90,26 +219,226 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
         setupListeners();
         updateUI();
 
+        if (mainActivity != null) {
+            mainActivity.getFileIndex().addListener(this);
+            onIndexChanged(mainActivity.getFileIndex().getFiles());
+            mainActivity.getTxScheduler().addListener(txQueueListener);
+            showTxQueue(mainActivity.getTxScheduler().getJobs());
+            mainActivity.getTransmitBatch().addListener(batchListener);
+            showBatch();
+        }
+
         return view;
     }
 
+    @Override
+    public void onDestroyView() {
+        if (mainActivity != null) {
+            mainActivity.getFileIndex().removeListener(this);
+            mainActivity.getTxScheduler().removeListener(txQueueListener);
+            mainActivity.getTransmitBatch().removeListener(batchListener);
+            mainActivity.getFileFollower().stop(null);
+        }
+        searchHandler.removeCallbacks(searchRunnable);
+        batchHandler.removeCallbacks(batchRefreshRunnable);
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onDestroy() {
+        searchExecutor.shutdown();
+        super.onDestroy();
+    }
+
     private void initViews(View view) {
         recyclerViewFiles = view.findViewById(R.id.recycler_files);
         fabUpload = view.findViewById(R.id.fab_upload);
         layoutEmptyMessage = view.findViewById(R.id.tv_empty_message);        // ← CORREGIDO
         cardConnectionWarning = view.findViewById(R.id.tv_connection_warning); // ← CORREGIDO
+        layoutProgress = view.findViewById(R.id.layout_progress);
         progressBar = view.findViewById(R.id.progress_bar);
         tvProgressText = view.findViewById(R.id.tv_progress_text);
+        btnCancelTransfer = view.findViewById(R.id.btn_cancel_transfer);
+        tvFilesTitle = view.findViewById(R.id.tv_files_title);
+        tvTxQueue = view.findViewById(R.id.tv_tx_queue);
+        layoutBatch = view.findViewById(R.id.layout_batch);
+        tvBatchStatus = view.findViewById(R.id.tv_batch_status);
+        progressBatch = view.findViewById(R.id.progress_batch);
+        etSearch = view.findViewById(R.id.et_search);
+        spinnerExtension = view.findViewById(R.id.spinner_extension);
+        spinnerSort = view.findViewById(R.id.spinner_sort);
     }
 
     private void setupRecyclerView() {
-        recyclerViewFiles.setLayoutManager(new LinearLayoutManager(requireContext()));
-        fileAdapter = new FileListAdapter(fileList, this, currentMode);
+        LinearLayoutManager layoutManager = new LinearLayoutManager(requireContext());
+        recyclerViewFiles.setLayoutManager(layoutManager);
+        recyclerViewFiles.setHasFixedSize(true);
+        fileAdapter = new FileListAdapter(this, currentMode);
         recyclerViewFiles.setAdapter(fileAdapter);
+
+        // Pedir la siguiente página al acercarse al final
+        recyclerViewFiles.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0 || mainActivity == null) {
+                    return;
+                }
+
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                if (lastVisible >= fileAdapter.getItemCount() - PAGE_PREFETCH_DISTANCE) {
+                    mainActivity.loadNextFilePage();
+                }
+            }
+        });
     }
 
     private void setupListeners() {
         fabUpload.setOnClickListener(v -> openFilePicker());
+        fabUpload.setOnLongClickListener(v -> {
+            showStagedFiles();
+            return true;
+        });
+        btnCancelTransfer.setOnClickListener(v -> cancelUpload());
+        tvTxQueue.setOnClickListener(v -> showTxQueueDialog());
+        layoutBatch.setOnClickListener(v -> showBatchDialog());
+        tvFilesTitle.setOnLongClickListener(v -> {
+            showDictionaryDialog();
+            return true;
+        });
+        setupSearch();
+    }
+
+    private void setupSearch() {
+        ArrayAdapter<String> sortAdapter = new ArrayAdapter<>(
+                requireContext(), android.R.layout.simple_spinner_item, SORT_LABELS);
+        sortAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerSort.setAdapter(sortAdapter);
+
+        extensionOptions.clear();
+        extensionOptions.add("Todas");
+        extensionAdapter = new ArrayAdapter<>(
+                requireContext(), android.R.layout.simple_spinner_item, extensionOptions);
+        extensionAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerExtension.setAdapter(extensionAdapter);
+
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                updateQuery();
+                searchHandler.removeCallbacks(searchRunnable);
+                searchHandler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
+            }
+        });
+
+        AdapterView.OnItemSelectedListener filterListener = new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                updateQuery();
+                runSearch(null);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        };
+        spinnerSort.setOnItemSelectedListener(filterListener);
+        spinnerExtension.setOnItemSelectedListener(filterListener);
+    }
+
+    private void updateQuery() {
+        int extPosition = spinnerExtension.getSelectedItemPosition();
+        String extension = extPosition > 0 && extPosition < extensionOptions.size()
+                ? extensionOptions.get(extPosition) : "";
+        int sortPosition = Math.max(0, spinnerSort.getSelectedItemPosition());
+
+        currentQuery = new FileSearchIndex.Query(
+                etSearch.getText().toString(), extension, SORT_VALUES[sortPosition]);
+    }
+
+    /**
+     * Buscar en segundo plano
+     * @param files Listado nuevo a indexar antes de buscar, o null si solo cambió la consulta
+     */
+    private void runSearch(@Nullable List<FileItem> files) {
+        FileSearchIndex.Query query = currentQuery;
+        int sequence = searchSequence.incrementAndGet();
+
+        searchExecutor.execute(() -> {
+            if (files != null) {
+                searchIndex.update(files);
+            }
+
+            // Una consulta más nueva ya está en cola
+            if (sequence != searchSequence.get()) {
+                return;
+            }
+
+            List<FileItem> results = searchIndex.query(query);
+            List<String> extensions = searchIndex.getExtensions();
+
+            if (getActivity() == null) {
+                return;
+            }
+
+            runOnUi(() -> {
+                if (getView() == null || sequence != searchSequence.get()) {
+                    return;
+                }
+
+                updateExtensionOptions(extensions);
+                // El diff se calcula en segundo plano; updateUI al aplicarlo
+                fileAdapter.submitList(results, this::updateUI);
+                loadPagesForQuery(query);
+            });
+        });
+    }
+
+    /**
+     * Una búsqueda necesita el listado entero: pedir la siguiente página
+     * (cada página que llega vuelve a buscar y pide la siguiente)
+     */
+    private void loadPagesForQuery(FileSearchIndex.Query query) {
+        if (mainActivity != null && query.needsFullListing() && mainActivity.getFileIndex().hasMorePages()) {
+            mainActivity.loadNextFilePage();
+        }
+    }
+
+    /**
+     * Los resultados no cubren todo el gateway (quedan páginas sin cargar)
+     */
+    private boolean isSearchPartial() {
+        return mainActivity != null && currentQuery != null && currentQuery.needsFullListing()
+                && mainActivity.getFileIndex().hasMorePages();
+    }
+
+    private void updateExtensionOptions(List<String> extensions) {
+        if (extensionOptions.subList(1, extensionOptions.size()).equals(extensions)) {
+            return;
+        }
+
+        extensionOptions.subList(1, extensionOptions.size()).clear();
+        extensionOptions.addAll(extensions);
+        extensionAdapter.notifyDataSetChanged();
+    }
+
+    private void cancelUpload() {
+        GatewaySession session = uploadSession;
+        if (!isUploading || session == null) {
+            return;
+        }
+
+        // Va por la cola de control: no espera a los chunks pendientes
+        session.getConfigManager().cancelTransfer();
+        tvProgressText.setText("Cancelando...");
+        btnCancelTransfer.setEnabled(false);
     }
 
     private void openFilePicker() {
@@ -123,9 +452,10 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
         Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
         intent.setType("*/*");
         intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
 
         try {
-            filePickerLauncher.launch(Intent.createChooser(intent, "Selecciona un archivo"));
+            filePickerLauncher.launch(Intent.createChooser(intent, "Selecciona uno o varios archivos"));
         } catch (Exception e) {
             Toast.makeText(requireContext(),
                     "❌ Error abriendo selector de archivos",
@@ -133,80 +463,939 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
         }
     }
 
-    private void uploadFileFromUri(Uri uri) {
-        try {
-            InputStream inputStream = requireContext().getContentResolver().openInputStream(uri);
-            if (inputStream == null) {
-                Toast.makeText(requireContext(), "❌ Error leyendo archivo", Toast.LENGTH_SHORT).show();
-                return;
+    private void uploadFileFromUri(Uri uri) {
+        if (mainActivity == null) {
+            return;
+        }
+
+        String filename = getFileNameFromUri(uri);
+        StagingCache stagingCache = mainActivity.getStagingCache();
+        showProgress(true, "Preparando " + filename + "...");
+
+        // Copiar a la caché y calcular hashes fuera del hilo UI
+        new Thread(() -> {
+            try (InputStream inputStream = requireContext().getContentResolver().openInputStream(uri)) {
+                if (inputStream == null) {
+                    throw new IOException("No se pudo abrir el archivo");
+                }
+
+                StagingCache.StagedFile staged = stagingCache.stage(inputStream, filename);
+
+                runOnUi(() -> {
+                    showProgress(false, "");
+                    confirmUpload(staged);
+                });
+
+            } catch (IOException e) {
+                runOnUi(() -> {
+                    showProgress(false, "");
+                    Toast.makeText(requireContext(),
+                            "❌ Error procesando archivo: " + e.getMessage(),
+                            Toast.LENGTH_LONG).show();
+                });
+            }
+        }).start();
+    }
+
+    private void confirmUpload(StagingCache.StagedFile staged) {
+        String message = "📤 Subir archivo:\n\n" +
+                "📄 " + staged.name + "\n" +
+                "📊 " + formatFileSize(staged.size) + "\n\n" +
+                "¿Continuar?";
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(requireContext())
+                .setTitle("Subir Archivo")
+                .setMessage(message)
+                .setPositiveButton("✅ Subir", (dialog, which) -> {
+                    uploadFile(staged);
+                })
+                .setNegativeButton("❌ Cancelar", null);
+
+        // En TX: subir ya preparado para LoRa y emitir
+        if (currentMode == MainActivity.MODE_TRANSMITTER) {
+            builder.setNeutralButton("📡 Subir y enviar…", (dialog, which) -> chooseLoRaEncoding(staged));
+        }
+        builder.show();
+    }
+
+    /**
+     * Elegir cómo se prepara el archivo en la app antes de emitirlo
+     * La vista previa de la compresión lee el archivo: se calcula fuera del hilo de UI
+     */
+    private void chooseLoRaEncoding(StagingCache.StagedFile staged) {
+        if (mainActivity == null) {
+            return;
+        }
+
+        CompressionDictionary dictionary = mainActivity.getCompressionDictionary();
+        showProgress(true, "Preparando " + staged.name + "...");
+
+        new Thread(() -> {
+            int version = dictionary.getCurrentVersion();
+            byte[] compressed = null;
+            if (version != CompressionDictionary.NO_DICTIONARY && staged.size <= CompressionDictionary.MAX_INPUT_BYTES) {
+                compressed = compressStaged(staged, version);
+            }
+            byte[] preview = compressed;
+            runOnUi(() -> {
+                showProgress(false, "");
+                showLoRaEncodings(staged, version, preview);
+            });
+        }).start();
+    }
+
+    /**
+     * @param compressed Archivo comprimido con el diccionario 'version', o null si no aplica
+     */
+    private void showLoRaEncodings(StagingCache.StagedFile staged, int version, byte[] compressed) {
+        LoRaConfig config = mainActivity.getLastConfig();
+        if (config == null) {
+            config = new LoRaConfig();
+        }
+
+        List<String> options = new ArrayList<>();
+        List<Runnable> actions = new ArrayList<>();
+
+        // Imagen o audio: reducir a un presupuesto de tiempo en aire
+        int kind = MediaReducer.kindOf(staged.name);
+        if (kind != MediaReducer.KIND_NONE) {
+            options.add(kind == MediaReducer.KIND_IMAGE ? "🖼️ Reducir imagen para LoRa…" : "🎵 Pasar a AMR-NB para LoRa…");
+            actions.add(() -> chooseReductionBudget(staged));
+        }
+
+        // Telemetría pequeña: comprimir contra el diccionario compartido
+        if (compressed != null) {
+            TransferEstimate estimate = TransferEstimate.forSize(compressed.length, config,
+                    TransferEstimate.DEFAULT_PACKET_DATA_BYTES);
+            options.add("🗜️ Diccionario v" + version + ": " + formatFileSize(staged.size) + " → " +
+                    formatFileSize(compressed.length) + " (" +
+                    TransferEstimate.formatDuration(estimate.totalTimeMs) + ")");
+            actions.add(() -> sendCompressed(staged, version, compressed));
+        }
+
+        for (int i = 0; i < LoRaPacketizer.PARITY_RATIOS.length; i++) {
+            double ratio = LoRaPacketizer.PARITY_RATIOS[i];
+            LoRaPacketizer.Layout layout = LoRaPacketizer.layoutFor(staged.size, config, ratio);
+            TransferEstimate estimate = TransferEstimate.forFrames(staged.size, config,
+                    layout.getTotalFrames(), layout.getFrameBytes());
+            options.add("📦 Tramas de " + layout.getFrameBytes() + " B, " + LoRaPacketizer.PARITY_LABELS[i] +
+                    " (" + TransferEstimate.formatDuration(estimate.totalTimeMs) + ")");
+            actions.add(() -> sendViaFrames(staged, ratio));
+        }
+        options.add("🌊 Código fuente, sin ACKs");
+        actions.add(() -> confirmFountain(staged));
+
+        TransferEstimate current = TransferEstimate.forSize(staged.size, config,
+                TransferEstimate.DEFAULT_PACKET_DATA_BYTES);
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Envío LoRa (troceado en el gateway: " +
+                        TransferEstimate.formatDuration(current.totalTimeMs) + ")")
+                .setItems(options.toArray(new String[0]), (dialog, which) -> actions.get(which).run())
+                .setNegativeButton("Cancelar", null)
+                .show();
+    }
+
+    /**
+     * Elegir el tiempo en aire objetivo; de ahí sale el presupuesto en bytes
+     */
+    private void chooseReductionBudget(StagingCache.StagedFile staged) {
+        LoRaConfig config = mainActivity.getLastConfig();
+        if (config == null) {
+            config = new LoRaConfig();
+        }
+
+        long[] targets = MediaReducer.AIRTIME_TARGETS_MS;
+        long[] budgets = new long[targets.length];
+        String[] labels = new String[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            budgets[i] = MediaReducer.budgetFor(config, targets[i]);
+            labels[i] = "⏱️ " + TransferEstimate.formatDuration(targets[i]) + " en aire → máx. " +
+                    formatFileSize(budgets[i]);
+        }
+
+        TransferEstimate original = TransferEstimate.forSize(staged.size, config,
+                TransferEstimate.DEFAULT_PACKET_DATA_BYTES);
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Original: " + formatFileSize(staged.size) + ", " +
+                        TransferEstimate.formatDuration(original.totalTimeMs))
+                .setItems(labels, (dialog, which) -> reduceMedia(staged, budgets[which]))
+                .setNegativeButton("Cancelar", null)
+                .show();
+    }
+
+    private void reduceMedia(StagingCache.StagedFile staged, long budget) {
+        showProgress(true, "Reduciendo " + staged.name + "...");
+
+        mainActivity.getMediaReducer().reduce(staged.file, staged.name, budget, new MediaReducer.Callback() {
+            @Override
+            public void onReduced(MediaReducer.Result result) {
+                if (getActivity() == null) {
+                    return;
+                }
+                runOnUi(() -> {
+                    showProgress(false, "");
+                    showReductionPreview(result);
+                });
+            }
+
+            @Override
+            public void onError(String message) {
+                if (getActivity() == null) {
+                    return;
+                }
+                runOnUi(() -> {
+                    showProgress(false, "");
+                    Toast.makeText(requireContext(), "❌ No se pudo reducir: " + message, Toast.LENGTH_LONG).show();
+                });
+            }
+        });
+    }
+
+    /**
+     * Comparar tamaño y tiempo en aire antes de quedarse con la versión reducida
+     */
+    private void showReductionPreview(MediaReducer.Result result) {
+        LoRaConfig config = mainActivity.getLastConfig();
+        if (config == null) {
+            config = new LoRaConfig();
+        }
+        TransferEstimate before = TransferEstimate.forSize(result.originalSize, config,
+                TransferEstimate.DEFAULT_PACKET_DATA_BYTES);
+        TransferEstimate after = TransferEstimate.forSize(result.reducedSize, config,
+                TransferEstimate.DEFAULT_PACKET_DATA_BYTES);
+
+        String message = "📄 " + result.name + "\n" + result.description + "\n\n" +
+                "📊 " + formatFileSize(result.originalSize) + " → " + formatFileSize(result.reducedSize) + "\n" +
+                "📡 " + TransferEstimate.formatDuration(before.totalTimeMs) + " → " +
+                TransferEstimate.formatDuration(after.totalTimeMs) + "\n" +
+                "⏱️ Ahorro: " + TransferEstimate.formatDuration(Math.max(0, before.totalTimeMs - after.totalTimeMs)) +
+                (result.fitsBudget() ? "" : "\n\n⚠️ No llega al presupuesto de " + formatFileSize(result.budget));
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Vista previa de la reducción")
+                .setMessage(message)
+                .setPositiveButton("✅ Usar reducido", (dialog, which) -> stageReduced(result))
+                .setNegativeButton("Descartar", (dialog, which) -> result.file.delete())
+                .show();
+    }
+
+    // Preparar el archivo reducido como cualquier otro y seguir con la subida normal
+    private void stageReduced(MediaReducer.Result result) {
+        StagingCache stagingCache = mainActivity.getStagingCache();
+
+        new Thread(() -> {
+            try (InputStream in = new FileInputStream(result.file)) {
+                StagingCache.StagedFile staged = stagingCache.stage(in, result.name);
+                runOnUi(() -> confirmUpload(staged));
+            } catch (IOException e) {
+                runOnUi(() ->
+                        Toast.makeText(requireContext(), "❌ Error preparando: " + e.getMessage(),
+                                Toast.LENGTH_LONG).show());
+            } finally {
+                result.file.delete();
+            }
+        }).start();
+    }
+
+    private byte[] compressStaged(StagingCache.StagedFile staged, int version) {
+        try {
+            byte[] data = new byte[(int) staged.size];
+            try (InputStream in = new FileInputStream(staged.file)) {
+                int offset = 0;
+                while (offset < data.length) {
+                    int read = in.read(data, offset, data.length - offset);
+                    if (read < 0) {
+                        return null;
+                    }
+                    offset += read;
+                }
+            }
+            return mainActivity.getCompressionDictionary().compress(data, version);
+        } catch (IOException e) {
+            Log.e(TAG, "Error leyendo " + staged.name, e);
+            return null;
+        }
+    }
+
+    /**
+     * Subir la versión comprimida y ponerla en la cola de transmisión normal
+     * Si el gateway aún no tiene el diccionario, se sube antes
+     * @param compressed Bytes de la vista previa, comprimidos con 'version'
+     */
+    private void sendCompressed(StagingCache.StagedFile staged, int version, byte[] compressed) {
+        GatewaySession session = mainActivity.getFocusedSession();
+        LoRaConfig config = session.getLastConfig();
+        LoRaConfig sendConfig = config != null ? config : new LoRaConfig();
+
+        uploadEncoded(session, staged, staged.name + CompressionDictionary.EXTENSION,
+                target -> {
+                    if (!gatewayHasDictionary(session, version) && !uploadDictionary(session, version)) {
+                        throw new IOException("No se pudo subir " + CompressionDictionary.remoteName(version));
+                    }
+                    try (FileOutputStream out = new FileOutputStream(target)) {
+                        out.write(compressed);
+                    }
+                    return TransferEstimate.forSize(compressed.length, sendConfig,
+                            TransferEstimate.DEFAULT_PACKET_DATA_BYTES).packets;
+                },
+                (remoteName, size, packets) -> session.getTxScheduler().enqueue(
+                        new FileItem(remoteName, size), sendConfig));
+    }
+
+    private boolean gatewayHasDictionary(GatewaySession session, int version) {
+        String name = CompressionDictionary.remoteName(version);
+        for (FileItem file : session.getFileIndex().getFiles()) {
+            String remote = file.getFilename();
+            if (remote.equals(name) || remote.equals("/" + name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Llamar fuera del hilo de UI: usa la cola BULK
+    private boolean uploadDictionary(GatewaySession session, int version) {
+        File file = mainActivity.getCompressionDictionary().fileFor(version);
+        String remoteName = CompressionDictionary.remoteName(version);
+        boolean completed = session.getConfigManager().uploadFile(file, remoteName, null);
+        if (completed) {
+            session.getFileIndex().applyUpload(remoteName, file.length());
+        }
+        return completed;
+    }
+
+    /**
+     * Estado del diccionario: entrenar una versión nueva o subirlo a este gateway
+     */
+    private void showDictionaryDialog() {
+        if (mainActivity == null) {
+            return;
+        }
+
+        CompressionDictionary dictionary = mainActivity.getCompressionDictionary();
+        int version = dictionary.getCurrentVersion();
+        boolean hasVersion = version != CompressionDictionary.NO_DICTIONARY;
+
+        String message;
+        if (!hasVersion) {
+            message = "Aún no hay diccionario.\n\nSe entrena con los archivos pequeños enviados " +
+                    "recientemente (mínimo " + CompressionDictionary.MIN_SAMPLES + ").";
+        } else {
+            message = "Versión actual: v" + version + " (" +
+                    formatFileSize(dictionary.fileFor(version).length()) + ")\n" +
+                    (isConnected
+                            ? (gatewayHasDictionary(mainActivity.getFocusedSession(), version) ? "✅ Este gateway lo tiene" : "⚠️ Este gateway no lo tiene")
+                            : "Sin conexión") +
+                    "\n\nSúbelo a los dos gateways para que el receptor pueda descomprimir.";
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(requireContext())
+                .setTitle("🗜️ Diccionario de compresión")
+                .setMessage(message)
+                .setPositiveButton("🧠 Entrenar", (dialog, which) -> trainDictionary())
+                .setNegativeButton("Cerrar", null);
+
+        if (hasVersion && isConnected) {
+            builder.setNeutralButton("📤 Subir a este gateway", (dialog, which) -> syncDictionary(version));
+        }
+        builder.show();
+    }
+
+    private void trainDictionary() {
+        StagingCache stagingCache = mainActivity.getStagingCache();
+        CompressionDictionary dictionary = mainActivity.getCompressionDictionary();
+
+        new Thread(() -> {
+            String message;
+            try {
+                List<File> samples = new ArrayList<>();
+                for (StagingCache.StagedFile staged : stagingCache.list()) {
+                    samples.add(staged.file);
+                }
+                int version = dictionary.train(samples);
+                message = "🧠 Diccionario v" + version + " listo. Súbelo a los gateways";
+            } catch (IOException e) {
+                message = "❌ " + e.getMessage();
+            }
+
+            String result = message;
+            runOnUi(() ->
+                    Toast.makeText(requireContext(), result, Toast.LENGTH_LONG).show());
+        }).start();
+    }
+
+    private void syncDictionary(int version) {
+        GatewaySession session = mainActivity.getFocusedSession();
+        if (isUploading || session.getTransmitBatch().isUploading()) {
+            Toast.makeText(requireContext(), "⚠️ Espera a que termine la subida en curso", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        isUploading = true;
+        uploadSession = session;
+        showProgress(true, "Subiendo diccionario v" + version + "...");
+
+        new Thread(() -> {
+            boolean completed = uploadDictionary(session, version);
+            runOnUi(() -> {
+                isUploading = false;
+                showProgress(false, "");
+                Toast.makeText(requireContext(),
+                        completed ? "✅ Diccionario v" + version + " en el gateway"
+                                : "❌ No se pudo subir el diccionario",
+                        Toast.LENGTH_SHORT).show();
+            });
+        }).start();
+    }
+
+    private void confirmFountain(StagingCache.StagedFile staged) {
+        if (mainActivity == null) {
+            return;
+        }
+
+        LoRaConfig config = mainActivity.getLastConfig();
+        if (config == null) {
+            config = new LoRaConfig();
+        }
+        int recordBytes = FountainCode.HEADER_BYTES + FountainCode.DEFAULT_SYMBOL_SIZE;
+        TransferEstimate withAcks = TransferEstimate.forSize(staged.size, config,
+                TransferEstimate.DEFAULT_PACKET_DATA_BYTES);
+        TransferEstimate fountain = TransferEstimate.forFountain(staged.size, config,
+                FountainCode.DEFAULT_SYMBOL_SIZE, recordBytes, 0.1);
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("🌊 Envío con código fuente")
+                .setMessage("El TX emite símbolos codificados sin esperar ACKs; el RX guarda " +
+                        staged.name + FountainCode.EXTENSION + " y al descargarlo la app reconstruye " +
+                        "el archivo y envía un único ACK de fin.\n\n" +
+                        "Con ACKs: " + TransferEstimate.formatDuration(withAcks.totalTimeMs) + "\n" +
+                        "Sin ACKs (10% pérdidas): " + TransferEstimate.formatDuration(fountain.totalTimeMs))
+                .setPositiveButton("🌊 Enviar", (dialog, which) -> sendViaFountain(staged))
+                .setNegativeButton("Cancelar", null)
+                .show();
+    }
+
+    /**
+     * Codificar, subir el archivo de símbolos y ponerlo en la cola de transmisión
+     */
+    private void sendViaFountain(StagingCache.StagedFile staged) {
+        GatewaySession session = mainActivity.getFocusedSession();
+        LoRaConfig config = session.getLastConfig();
+        LoRaConfig sendConfig = config != null ? config : new LoRaConfig();
+        int recordBytes = FountainCode.HEADER_BYTES + FountainCode.DEFAULT_SYMBOL_SIZE;
+
+        uploadEncoded(session, staged, staged.name + FountainCode.EXTENSION,
+                target -> FountainCode.encodeFile(staged.file, target,
+                        FountainCode.DEFAULT_SYMBOL_SIZE, FountainCode.DEFAULT_REPAIR_RATIO),
+                (remoteName, size, symbols) -> session.getTxScheduler().enqueueFountain(
+                        new FileItem(remoteName, size), sendConfig, recordBytes, symbols));
+    }
+
+    /**
+     * Empaquetar en tramas del tamaño máximo de la config actual y ponerlas
+     * en la cola de transmisión
+     * @param parityRatio Paridad Reed-Solomon por trama de datos (0 = sin FEC)
+     */
+    private void sendViaFrames(StagingCache.StagedFile staged, double parityRatio) {
+        GatewaySession session = mainActivity.getFocusedSession();
+        LoRaConfig config = session.getLastConfig();
+        LoRaConfig frameConfig = config != null ? config : new LoRaConfig();
+        int frameBytes = LoRaPacketizer.layoutFor(staged.size, frameConfig, parityRatio).getFrameBytes();
+
+        uploadEncoded(session, staged, staged.name + LoRaPacketizer.EXTENSION,
+                target -> LoRaPacketizer.writeFrames(staged.file, target, frameConfig, parityRatio).getTotalFrames(),
+                (remoteName, size, frames) -> session.getTxScheduler().enqueueFrames(
+                        new FileItem(remoteName, size), frameConfig, frames, frameBytes));
+    }
+
+    private interface LoRaEncoder {
+        /**
+         * @return paquetes LoRa escritos en target
+         */
+        int encode(File target) throws IOException;
+    }
+
+    private interface LoRaSend {
+        void send(String remoteName, long size, int packets);
+    }
+
+    /**
+     * Preparar el archivo en la app, subir el resultado al TX y ordenar el envío
+     * @param session Gateway elegido al empezar (no cambia aunque cambie el foco)
+     */
+    private void uploadEncoded(GatewaySession session, StagingCache.StagedFile staged, String remoteName,
+                               LoRaEncoder encoder, LoRaSend sender) {
+        if (!isConnected || !session.isConnected()) {
+            Toast.makeText(requireContext(), "⚠️ No conectado", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        if (session.getTransmitBatch().isUploading()) {
+            Toast.makeText(requireContext(), "⚠️ Hay un lote subiendo archivos", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        File encoded = new File(requireContext().getCacheDir(), "encoded_" + staged.sha256 + "_" + remoteName);
+        isUploading = true;
+        uploadSession = session;
+        showProgress(true, "Preparando " + remoteName + "...");
+
+        new Thread(() -> {
+            try {
+                int packets = encoder.encode(encoded);
+
+                showProgress(true, "Subiendo " + remoteName + "...");
+                boolean completed = session.getConfigManager().uploadFile(encoded, remoteName, null);
+                if (completed) {
+                    session.getFileIndex().applyUpload(remoteName, encoded.length());
+                    sender.send(remoteName, encoded.length(), packets);
+                }
+
+                runOnUi(() -> {
+                    isUploading = false;
+                    showProgress(false, "");
+                    Toast.makeText(requireContext(),
+                            completed ? "📡 Emitiendo " + packets + " paquetes de " + remoteName
+                                    : "✖️ Subida cancelada: " + remoteName,
+                            Toast.LENGTH_SHORT).show();
+                });
+
+            } catch (IOException | IllegalArgumentException e) {
+                runOnUi(() -> {
+                    isUploading = false;
+                    showProgress(false, "");
+                    Toast.makeText(requireContext(),
+                            "❌ Error preparando: " + e.getMessage(),
+                            Toast.LENGTH_LONG).show();
+                });
+            } finally {
+                encoded.delete();
+            }
+        }).start();
+    }
+
+    /**
+     * Reenviar un archivo ya preparado (por ejemplo a otro gateway) sin abrir el selector
+     */
+    private void showStagedFiles() {
+        if (!isConnected || mainActivity == null) {
+            Toast.makeText(requireContext(), "⚠️ Conecta un dispositivo primero", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        StagingCache stagingCache = mainActivity.getStagingCache();
+
+        new Thread(() -> {
+            List<StagingCache.StagedFile> staged = stagingCache.list();
+
+            runOnUi(() -> {
+                if (staged.isEmpty()) {
+                    Toast.makeText(requireContext(), "No hay archivos recientes", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+
+                String[] labels = new String[staged.size()];
+                for (int i = 0; i < staged.size(); i++) {
+                    labels[i] = staged.get(i).name + " (" + formatFileSize(staged.get(i).size) + ")";
+                }
+
+                new AlertDialog.Builder(requireContext())
+                        .setTitle("Archivos recientes")
+                        .setItems(labels, (dialog, which) -> confirmUpload(staged.get(which)))
+                        .setNegativeButton("Cerrar", null)
+                        .show();
+            });
+        }).start();
+    }
+
+    private void uploadFile(StagingCache.StagedFile staged) {
+        if (!isConnected || mainActivity == null) {
+            Toast.makeText(requireContext(), "⚠️ No conectado", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        // La cola BULK es una sola: esperar a que el lote termine de subir
+        GatewaySession session = mainActivity.getFocusedSession();
+        if (session.getTransmitBatch().isUploading()) {
+            Toast.makeText(requireContext(), "⚠️ Hay un lote subiendo archivos", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        isUploading = true;
+        uploadSession = session;
+        showProgress(true, "Subiendo " + staged.name + "...");
+
+        new Thread(() -> {
+            try {
+                boolean completed = session.getConfigManager().uploadFile(staged);
+
+                // Aplicar al índice local sin volver a listar
+                if (completed) {
+                    session.getFileIndex().applyUpload(staged.name, staged.size);
+                }
+
+                runOnUi(() -> {
+                    isUploading = false;
+                    showProgress(false, "");
+                    Toast.makeText(requireContext(),
+                            completed ? "✅ Archivo subido: " + staged.name
+                                    : "✖️ Subida cancelada: " + staged.name,
+                            Toast.LENGTH_SHORT).show();
+                });
+
+            } catch (Exception e) {
+                runOnUi(() -> {
+                    isUploading = false;
+                    showProgress(false, "");
+                    Toast.makeText(requireContext(),
+                            "❌ Error subiendo: " + e.getMessage(),
+                            Toast.LENGTH_LONG).show();
+                });
+            }
+        }).start();
+    }
+
+    // ==================== LOTE ====================
+
+    /**
+     * Preparar varios archivos en la caché y ofrecer subirlos como lote
+     * Quedan fijados en la caché hasta que se cierra el diálogo del lote
+     */
+    private void stageBatch(List<Uri> uris) {
+        if (mainActivity == null) {
+            return;
+        }
+
+        StagingCache stagingCache = mainActivity.getStagingCache();
+        List<String> names = new ArrayList<>();
+        for (Uri uri : uris) {
+            names.add(getFileNameFromUri(uri));
+        }
+
+        new Thread(() -> {
+            List<StagingCache.StagedFile> staged = new ArrayList<>();
+            try {
+                for (int i = 0; i < uris.size(); i++) {
+                    showProgress(true, "Preparando " + (i + 1) + "/" + uris.size() + ": " + names.get(i) + "...");
+                    try (InputStream inputStream = requireContext().getContentResolver().openInputStream(uris.get(i))) {
+                        if (inputStream == null) {
+                            throw new IOException("No se pudo abrir " + names.get(i));
+                        }
+                        StagingCache.StagedFile file = stagingCache.stage(inputStream, names.get(i));
+                        stagingCache.pin(file);
+                        staged.add(file);
+                    }
+                }
+
+                runOnUi(() -> {
+                    showProgress(false, "");
+                    confirmBatch(staged);
+                });
+
+            } catch (IOException e) {
+                release(staged);
+                runOnUi(() -> {
+                    showProgress(false, "");
+                    Toast.makeText(requireContext(),
+                            "❌ Error procesando archivos: " + e.getMessage(),
+                            Toast.LENGTH_LONG).show();
+                });
+            }
+        }).start();
+    }
+
+    private void confirmBatch(List<StagingCache.StagedFile> staged) {
+        if (mainActivity == null) {
+            return;
+        }
+
+        if (isUploading) {
+            release(staged);
+            Toast.makeText(requireContext(), "⚠️ Espera a que termine la subida en curso", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        long totalSize = 0;
+        List<FileItem> files = new ArrayList<>();
+        StringBuilder message = new StringBuilder();
+        for (StagingCache.StagedFile file : staged) {
+            totalSize += file.size;
+            files.add(new FileItem(file.name, file.size));
+            message.append("📄 ").append(file.name).append(" (").append(formatFileSize(file.size)).append(")\n");
+        }
+        message.append("\n📊 Total: ").append(formatFileSize(totalSize));
+
+        // El lote (o el diálogo de agrupar) las fija por su cuenta antes de que se cierre este
+        TransmitBatch batch = mainActivity.getTransmitBatch();
+        AlertDialog.Builder builder = new AlertDialog.Builder(requireContext())
+                .setTitle("Lote de " + staged.size() + " archivos")
+                .setNegativeButton("❌ Cancelar", null)
+                .setOnDismissListener(dialog -> release(staged));
+
+        if (currentMode == MainActivity.MODE_TRANSMITTER) {
+            LoRaConfig config = mainActivity.getLastConfig();
+            if (config == null) {
+                config = new LoRaConfig();
+            }
+            List<DutyCycleScheduler.Job> projected = mainActivity.getTxScheduler().preview(files, config);
+            long finishAt = projected.get(projected.size() - 1).finishAt;
+            message.append("\n📡 Fin estimado de la transmisión: ").append(formatClock(finishAt));
+
+            builder.setPositiveButton("📡 Subir y transmitir", (dialog, which) -> batch.add(staged, true));
+
+            // Muchos archivos pequeños: ofrecer mandarlos en un solo contenedor
+            if (FileBundle.canBundle(staged)) {
+                message.append("\n📦 Se pueden agrupar en un solo envío");
+                builder.setNeutralButton("📦 Agrupar…", (dialog, which) -> confirmBundle(staged));
+            } else {
+                builder.setNeutralButton("📤 Solo subir", (dialog, which) -> batch.add(staged, false));
+            }
+        } else {
+            builder.setPositiveButton("📤 Subir todo", (dialog, which) -> batch.add(staged, false));
+        }
+
+        builder.setMessage(message.toString()).show();
+    }
+
+    /**
+     * Comparar el envío por separado con el contenedor antes de agrupar
+     */
+    private void confirmBundle(List<StagingCache.StagedFile> staged) {
+        if (mainActivity == null) {
+            return;
+        }
+
+        LoRaConfig config = mainActivity.getLastConfig();
+        if (config == null) {
+            config = new LoRaConfig();
+        }
+
+        // Cada archivo suelto paga su paquete de inicio, sus ACK y sus vueltas de radio
+        double separateMs = 0;
+        for (StagingCache.StagedFile file : staged) {
+            separateMs += TransferEstimate.forSize(file.size, config,
+                    TransferEstimate.DEFAULT_PACKET_DATA_BYTES).totalTimeMs;
+        }
+        long bundleSize = FileBundle.bundleSize(staged);
+        double bundledMs = TransferEstimate.forSize(bundleSize, config,
+                TransferEstimate.DEFAULT_PACKET_DATA_BYTES).totalTimeMs;
+
+        String message = "📄 " + staged.size() + " archivos → 📦 1 contenedor de " + formatFileSize(bundleSize) +
+                "\n\n📤 Subidas BLE: " + staged.size() + " → 1" +
+                "\n📡 LoRa por separado: " + TransferEstimate.formatDuration(separateMs) +
+                "\n📡 LoRa agrupado: " + TransferEstimate.formatDuration(bundledMs) +
+                "\n\nEl receptor lo desempaqueta al descargarlo.";
+
+        pin(staged);
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Agrupar archivos")
+                .setMessage(message)
+                .setPositiveButton("📦 Agrupar y transmitir", (dialog, which) -> sendBundle(staged))
+                .setNeutralButton("📤 Solo subir por separado",
+                        (dialog, which) -> mainActivity.getTransmitBatch().add(staged, false))
+                .setNegativeButton("❌ Cancelar", null)
+                .setOnDismissListener(dialog -> release(staged))
+                .show();
+    }
+
+    /**
+     * Empaquetar y pasar el contenedor al lote como un único archivo
+     */
+    private void sendBundle(List<StagingCache.StagedFile> staged) {
+        if (mainActivity == null) {
+            return;
+        }
+
+        StagingCache stagingCache = mainActivity.getStagingCache();
+        TransmitBatch batch = mainActivity.getTransmitBatch();
+        String bundleName = FileBundle.newBundleName();
+        showProgress(true, "Agrupando " + staged.size() + " archivos...");
+        pin(staged);
+
+        new Thread(() -> {
+            try {
+                StagingCache.StagedFile bundle = FileBundle.pack(staged, bundleName, stagingCache);
+                batch.add(Collections.singletonList(bundle), true);
+
+                runOnUi(() -> showProgress(false, ""));
+
+            } catch (IOException e) {
+                runOnUi(() -> {
+                    showProgress(false, "");
+                    Toast.makeText(requireContext(),
+                            "❌ Error agrupando: " + e.getMessage(),
+                            Toast.LENGTH_LONG).show();
+                });
+            } finally {
+                release(staged);
+            }
+        }).start();
+    }
+
+    // Fijar en la caché los archivos de un lote mientras se decide qué hacer con ellos
+    private void pin(List<StagingCache.StagedFile> staged) {
+        StagingCache stagingCache = mainActivity.getStagingCache();
+        for (StagingCache.StagedFile file : staged) {
+            stagingCache.pin(file);
+        }
+    }
+
+    private void release(List<StagingCache.StagedFile> staged) {
+        StagingCache stagingCache = mainActivity.getStagingCache();
+        for (StagingCache.StagedFile file : staged) {
+            stagingCache.unpin(file);
+        }
+    }
+
+    /**
+     * Panel con el progreso de todo el lote
+     */
+    private void showBatch() {
+        batchHandler.removeCallbacks(batchRefreshRunnable);
+        if (mainActivity == null || layoutBatch == null) {
+            return;
+        }
+
+        TransmitBatch batch = mainActivity.getTransmitBatch();
+        List<TransmitBatch.Item> items = batch.getItems();
+        if (items.isEmpty()) {
+            layoutBatch.setVisibility(View.GONE);
+            return;
+        }
+
+        int done = 0;
+        int failed = 0;
+        int active = 0;
+        String uploading = null;
+        String airing = null;
+        for (TransmitBatch.Item item : items) {
+            switch (item.getState()) {
+                case TransmitBatch.STATE_DONE:
+                    done++;
+                    break;
+                case TransmitBatch.STATE_FAILED:
+                    failed++;
+                    break;
+                case TransmitBatch.STATE_UPLOADING:
+                    uploading = item.staged.name;
+                    break;
+                case TransmitBatch.STATE_AIRING:
+                    airing = item.staged.name;
+                    break;
+                default:
+                    break;
+            }
+            if (!item.isFinished()) {
+                active++;
             }
+        }
+
+        StringBuilder status = new StringBuilder("📦 Lote: " + done + "/" + items.size() + " completados");
+        if (failed > 0) {
+            status.append(", ").append(failed).append(" con error");
+        }
+        if (uploading != null) {
+            status.append("\n📤 Subiendo ").append(uploading);
+        }
+        if (airing != null) {
+            status.append("\n📡 Transmitiendo ").append(airing);
+        }
+        if (active > 0) {
+            status.append("\n🕒 Fin estimado ").append(formatClock(batch.estimateFinishAt()))
+                    .append("  (tocar para gestionar)");
+        }
 
-            String filename = getFileNameFromUri(uri);
-            File tempFile = new File(requireContext().getCacheDir(), filename);
-            FileOutputStream outputStream = new FileOutputStream(tempFile);
+        tvBatchStatus.setText(status.toString());
+        progressBatch.setProgress((int) Math.round(batch.getProgress() * progressBatch.getMax()));
+        layoutBatch.setVisibility(View.VISIBLE);
 
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            long totalBytes = 0;
+        if (active > 0) {
+            batchHandler.postDelayed(batchRefreshRunnable, BATCH_REFRESH_MS);
+        }
+    }
 
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-                totalBytes += bytesRead;
-            }
+    /**
+     * Lista del lote: tocar un archivo para moverlo o quitarlo
+     */
+    private void showBatchDialog() {
+        if (mainActivity == null) {
+            return;
+        }
 
-            outputStream.close();
-            inputStream.close();
+        TransmitBatch batch = mainActivity.getTransmitBatch();
+        List<TransmitBatch.Item> items = batch.getItems();
+        if (items.isEmpty()) {
+            return;
+        }
 
-            String message = "📤 Subir archivo:\n\n" +
-                    "📄 " + filename + "\n" +
-                    "📊 " + formatFileSize(totalBytes) + "\n\n" +
-                    "¿Continuar?";
+        String[] labels = new String[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            TransmitBatch.Item item = items.get(i);
+            labels[i] = batchStateIcon(item.getState()) + " " + item.staged.name +
+                    " (" + formatFileSize(item.staged.size) + ")";
+        }
 
-            new AlertDialog.Builder(requireContext())
-                    .setTitle("Subir Archivo")
-                    .setMessage(message)
-                    .setPositiveButton("✅ Subir", (dialog, which) -> {
-                        uploadFile(tempFile);
-                    })
-                    .setNegativeButton("❌ Cancelar", null)
-                    .show();
+        AlertDialog.Builder builder = new AlertDialog.Builder(requireContext())
+                .setTitle("Lote de envío")
+                .setItems(labels, (dialog, which) -> showBatchItemOptions(items.get(which)))
+                .setNegativeButton("Cerrar", null);
 
-        } catch (IOException e) {
-            Toast.makeText(requireContext(),
-                    "❌ Error procesando archivo: " + e.getMessage(),
-                    Toast.LENGTH_LONG).show();
+        if (batch.isActive()) {
+            builder.setNeutralButton("✖️ Cancelar lote", (dialog, which) -> batch.cancelAll());
         }
+        builder.show();
     }
 
-    private void uploadFile(File file) {
-        if (!isConnected || mainActivity == null) {
-            Toast.makeText(requireContext(), "⚠️ No conectado", Toast.LENGTH_SHORT).show();
+    private void showBatchItemOptions(TransmitBatch.Item item) {
+        TransmitBatch batch = mainActivity.getTransmitBatch();
+
+        if (item.isFinished() || item.getState() == TransmitBatch.STATE_AIRING) {
+            Toast.makeText(requireContext(),
+                    item.isFinished() ? "Ya terminó" : "Ya se está transmitiendo",
+                    Toast.LENGTH_SHORT).show();
             return;
         }
 
-        showProgress(true, "Subiendo " + file.getName() + "...");
-
-        new Thread(() -> {
-            try {
-                mainActivity.getConfigManager().uploadFile(file);
+        List<String> options = new ArrayList<>();
+        List<Runnable> actions = new ArrayList<>();
+        if (item.getState() == TransmitBatch.STATE_PENDING) {
+            options.add("⬆️ Adelantar");
+            actions.add(() -> batch.move(item, -1));
+            options.add("⬇️ Retrasar");
+            actions.add(() -> batch.move(item, 1));
+        }
+        options.add("✖️ Quitar del lote");
+        actions.add(() -> batch.cancel(item));
 
-                requireActivity().runOnUiThread(() -> {
-                    showProgress(false, "");
-                    Toast.makeText(requireContext(),
-                            "✅ Archivo subido: " + file.getName(),
-                            Toast.LENGTH_SHORT).show();
-                    refreshFileList();
-                });
+        new AlertDialog.Builder(requireContext())
+                .setTitle(item.staged.name)
+                .setItems(options.toArray(new String[0]), (dialog, which) -> {
+                    actions.get(which).run();
+                    showBatchDialog();
+                })
+                .setNegativeButton("Cerrar", null)
+                .show();
+    }
 
-            } catch (Exception e) {
-                requireActivity().runOnUiThread(() -> {
-                    showProgress(false, "");
-                    Toast.makeText(requireContext(),
-                            "❌ Error subiendo: " + e.getMessage(),
-                            Toast.LENGTH_LONG).show();
-                });
-            }
-        }).start();
+    private static String batchStateIcon(int state) {
+        switch (state) {
+            case TransmitBatch.STATE_UPLOADING:
+                return "📤";
+            case TransmitBatch.STATE_QUEUED:
+                return "🕒";
+            case TransmitBatch.STATE_AIRING:
+                return "📡";
+            case TransmitBatch.STATE_DONE:
+                return "✅";
+            case TransmitBatch.STATE_FAILED:
+                return "❌";
+            case TransmitBatch.STATE_CANCELLED:
+                return "✖️";
+            default:
+                return "⏳";
+        }
     }
 
     private String getFileNameFromUri(Uri uri) {
@@ -241,20 +1430,26 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
             return;
         }
 
-        mainActivity.getConfigManager().listFiles();
+        // Solo pide GET_FILES si la generación del dispositivo cambió
+        mainActivity.refreshFileIndex();
     }
 
     private void showProgress(boolean show, String message) {
-        requireActivity().runOnUiThread(() -> {
+        runOnUi(() -> {
             if (show) {
+                layoutProgress.setVisibility(View.VISIBLE);
                 progressBar.setVisibility(View.VISIBLE);
                 tvProgressText.setVisibility(View.VISIBLE);
                 tvProgressText.setText(message);
+                btnCancelTransfer.setVisibility(isUploading ? View.VISIBLE : View.GONE);
+                btnCancelTransfer.setEnabled(true);
                 fabUpload.setEnabled(false);
                 recyclerViewFiles.setAlpha(0.5f);
             } else {
+                layoutProgress.setVisibility(View.GONE);
                 progressBar.setVisibility(View.GONE);
                 tvProgressText.setVisibility(View.GONE);
+                btnCancelTransfer.setVisibility(View.GONE);
                 fabUpload.setEnabled(true);
                 recyclerViewFiles.setAlpha(1.0f);
             }
@@ -284,7 +1479,18 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
 
         fileAdapter.setCurrentMode(currentMode);
 
-        if (fileList.isEmpty()) {
+        // Contenido de la copia en disco pendiente de revalidar
+        boolean stale = mainActivity != null && mainActivity.getFileIndex().isStale();
+        String title = stale ? "📁 Archivos en el Dispositivo (guardado)" : "📁 Archivos en el Dispositivo";
+        if (isSearchPartial()) {
+            RemoteFileIndex index = mainActivity.getFileIndex();
+            int total = index.getTotalFiles();
+            title += "\n⏳ Resultados parciales: buscando en " + index.getFiles().size() +
+                    (total >= 0 ? " de " + total : "") + " archivos...";
+        }
+        tvFilesTitle.setText(title);
+
+        if (fileAdapter.getItemCount() == 0) {
             layoutEmptyMessage.setVisibility(View.VISIBLE);  // ← CORREGIDO
             recyclerViewFiles.setVisibility(View.GONE);
         } else {
@@ -302,22 +1508,121 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
             return;
         }
 
+        if (mainActivity == null) {
+            return;
+        }
+
+        // Coste en aire con la configuración actual del gateway
+        LoRaConfig config = mainActivity.getLastConfig();
+        if (config == null) {
+            config = new LoRaConfig();
+        }
+        TransferEstimate estimate = TransferEstimate.forFile(file, config);
+
+        // Cuándo terminaría tras lo que ya está en cola, según el ciclo de trabajo
+        DutyCycleScheduler scheduler = mainActivity.getTxScheduler();
+        DutyCycleScheduler.Job preview = scheduler.preview(file, config);
+        LoRaConfig sendConfig = config;
+
         new AlertDialog.Builder(requireContext())
                 .setTitle("📡 Transmitir por LoRa")
                 .setMessage("¿Enviar '" + file.getFilename() + "' por LoRa?\n\n" +
-                        "Tamaño: " + file.getFormattedSize())
+                        "Tamaño: " + file.getFormattedSize() + "\n" +
+                        "Config: " + config + "\n\n" +
+                        estimate + "\n\n" +
+                        describeSchedule(preview))
                 .setPositiveButton("📡 Enviar", (dialog, which) -> {
-                    if (mainActivity != null) {
-                        mainActivity.getConfigManager().sendFileViaLoRa(file.getFilename());
-                        Toast.makeText(requireContext(),
-                                "📡 Transmitiendo " + file.getFilename() + "...",
-                                Toast.LENGTH_SHORT).show();
-                    }
+                    DutyCycleScheduler.Job job = scheduler.enqueue(file, sendConfig);
+                    String message = job.state == DutyCycleScheduler.STATE_SENDING
+                            ? "📡 Transmitiendo " + file.getFilename() + "..."
+                            : "🕒 En cola: " + file.getFilename() + " (fin " + formatClock(job.finishAt) + ")";
+                    Toast.makeText(requireContext(), message, Toast.LENGTH_SHORT).show();
                 })
                 .setNegativeButton("Cancelar", null)
                 .show();
     }
 
+    // ==================== COLA DE TRANSMISIÓN ====================
+
+    private void showTxQueue(List<DutyCycleScheduler.Job> jobs) {
+        if (tvTxQueue == null) {
+            return;
+        }
+
+        if (jobs.isEmpty()) {
+            tvTxQueue.setVisibility(View.GONE);
+            return;
+        }
+
+        DutyCycleScheduler.Job last = jobs.get(jobs.size() - 1);
+        tvTxQueue.setText("📡 " + jobs.size() + " en cola LoRa · fin estimado " +
+                formatClock(last.finishAt) + "  (tocar para ver)");
+        tvTxQueue.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Lista de la cola con hora estimada de fin; tocar un archivo en espera lo cancela
+     */
+    private void showTxQueueDialog() {
+        if (mainActivity == null) {
+            return;
+        }
+
+        DutyCycleScheduler scheduler = mainActivity.getTxScheduler();
+        List<DutyCycleScheduler.Job> jobs = scheduler.getJobs();
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        String[] items = new String[jobs.size()];
+        for (int i = 0; i < jobs.size(); i++) {
+            DutyCycleScheduler.Job job = jobs.get(i);
+            String state = job.state == DutyCycleScheduler.STATE_SENDING ? "📡 " : "🕒 ";
+            items[i] = state + job.filename + "\n" + describeSchedule(job);
+        }
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Cola de transmisión LoRa")
+                .setItems(items, (dialog, which) -> {
+                    DutyCycleScheduler.Job job = jobs.get(which);
+                    if (job.state != DutyCycleScheduler.STATE_QUEUED) {
+                        Toast.makeText(requireContext(), "Ya se está transmitiendo", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    new AlertDialog.Builder(requireContext())
+                            .setMessage("¿Quitar '" + job.filename + "' de la cola?")
+                            .setPositiveButton("Quitar", (d, w) -> scheduler.cancel(job))
+                            .setNegativeButton("Cancelar", null)
+                            .show();
+                })
+                .setNegativeButton("Cerrar", null)
+                .show();
+    }
+
+    private static String describeSchedule(DutyCycleScheduler.Job job) {
+        long now = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder();
+
+        if (job.band.dutyCycle < 1.0) {
+            sb.append("Sub-banda ").append(job.band).append(", ")
+                    .append(TransferEstimate.formatDuration(job.estimate.txAirtimeMs)).append(" en aire\n");
+        }
+        if (job.startAt > now + 1000) {
+            sb.append("Espera presupuesto hasta ").append(formatClock(job.startAt)).append("\n");
+        }
+        if (job.paced) {
+            sb.append("Con pausas por ciclo de trabajo (")
+                    .append(String.format(Locale.US, "%.2f", job.pacing * 100)).append("% en aire)\n");
+        }
+        sb.append("Fin estimado ").append(formatClock(job.finishAt))
+                .append(" (").append(TransferEstimate.formatDuration(Math.max(0, job.finishAt - now))).append(")");
+        return sb.toString();
+    }
+
+    private static String formatClock(long timeMs) {
+        return new SimpleDateFormat("HH:mm", Locale.getDefault()).format(new Date(timeMs));
+    }
+
     @Override
     public void onDownload(FileItem file) {
         new AlertDialog.Builder(requireContext())
@@ -328,10 +1633,265 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
                 .setPositiveButton("📥 Descargar", (dialog, which) -> {
                     downloadFile(file);
                 })
+                .setNeutralButton("👁️ Seguir en vivo", (dialog, which) -> startFollowing(file))
                 .setNegativeButton("Cancelar", null)
                 .show();
     }
 
+    // ==================== VISTA PREVIA ====================
+
+    /**
+     * Leer solo el principio del archivo (DOWNLOAD_RANGE) y enseñarlo
+     * Lo leído queda en caché: una descarga completa posterior sigue desde ahí
+     */
+    @Override
+    public void onPreview(FileItem file) {
+        if (!isConnected || mainActivity == null) {
+            Toast.makeText(requireContext(), "⚠️ No conectado", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        // Acción del usuario: la sincronización automática le deja el enlace
+        mainActivity.getBackgroundSync().pauseForUser();
+        String gateway = mainActivity.getConnectedDeviceAddress();
+        PartialDownloadCache cache = mainActivity.getPartialCache();
+        byte[] cached = cache.get(gateway, file);
+        int wanted = (int) Math.min(PREVIEW_BYTES, file.getSize());
+        if (cached != null && cached.length >= wanted) {
+            showPreview(file, cached);
+            return;
+        }
+
+        byte[] known = cached != null ? cached : new byte[0];
+        Toast.makeText(requireContext(), "👁️ Leyendo " + file.getDisplayName() + "...", Toast.LENGTH_SHORT).show();
+        mainActivity.getRangeFetcher().fetch(file.getFilename(), known.length, wanted - known.length,
+                new RangeFetcher.Callback() {
+                    @Override
+                    public void onRange(String filename, long offset, byte[] data, long remoteSize) {
+                        cache.put(gateway, file, offset, data);
+                        byte[] head = new byte[known.length + data.length];
+                        System.arraycopy(known, 0, head, 0, known.length);
+                        System.arraycopy(data, 0, head, known.length, data.length);
+                        runOnUi(() -> showPreview(new FileItem(file.getFilename(),
+                                Math.max(file.getSize(), remoteSize), file.getHash(), file.getModifiedTime()), head));
+                    }
+
+                    @Override
+                    public void onRangeFailed(String filename, String reason) {
+                        runOnUi(() -> Toast.makeText(requireContext(), "❌ Vista previa: " + reason,
+                                Toast.LENGTH_SHORT).show());
+                    }
+                });
+    }
+
+    private void showPreview(FileItem file, byte[] head) {
+        TextView content = new TextView(requireContext());
+        content.setTypeface(android.graphics.Typeface.MONOSPACE);
+        content.setTextSize(12);
+        content.setTextIsSelectable(true);
+        int padding = (int) (16 * getResources().getDisplayMetrics().density);
+        content.setPadding(padding, padding, padding, padding);
+        content.setText(describePreview(file, head));
+        ScrollView scroll = new ScrollView(requireContext());
+        scroll.addView(content);
+
+        boolean partial = head.length < file.getSize();
+        String title = file.getFileType() + " " + file.getDisplayName() + " · " +
+                (partial ? formatFileSize(head.length) + " de " : "") + file.getFormattedSize();
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(requireContext())
+                .setTitle(title)
+                .setView(scroll)
+                .setNegativeButton("Cerrar", null);
+        if (currentMode == MainActivity.MODE_RECEIVER) {
+            builder.setPositiveButton(partial ? "📥 Descargar el resto" : "📥 Guardar",
+                    (dialog, which) -> downloadFile(file));
+        }
+        builder.show();
+    }
+
+    private static String describePreview(FileItem file, byte[] head) {
+        if (head.length == 0) {
+            return "(archivo vacío)";
+        }
+
+        String ext = file.getExtension();
+        switch (ext) {
+            case "jpg":
+            case "jpeg":
+            case "png":
+            case "gif":
+            case "webp":
+            case "bmp":
+                // Las dimensiones van en la cabecera: basta con los primeros bytes
+                android.graphics.BitmapFactory.Options bounds = new android.graphics.BitmapFactory.Options();
+                bounds.inJustDecodeBounds = true;
+                android.graphics.BitmapFactory.decodeByteArray(head, 0, head.length, bounds);
+                if (bounds.outWidth > 0 && bounds.outHeight > 0) {
+                    return "Imagen " + bounds.outWidth + " × " + bounds.outHeight +
+                            (bounds.outMimeType != null ? " (" + bounds.outMimeType + ")" : "") + "\n\n" +
+                            hexDump(head, 64);
+                }
+                return "Cabecera de imagen no reconocida\n\n" + hexDump(head, PREVIEW_HEX_BYTES);
+            default:
+                break;
+        }
+
+        if (looksBinary(head)) {
+            return hexDump(head, PREVIEW_HEX_BYTES);
+        }
+
+        String text = decodeHead(head, head.length < file.getSize());
+        if ("csv".equals(ext)) {
+            int end = text.indexOf('\n');
+            String header = (end >= 0 ? text.substring(0, end) : text).trim();
+            String separator = header.indexOf(';') > header.indexOf(',') ? ";" : ",";
+            String[] columns = header.split(separator, -1);
+            return "Columnas (" + columns.length + "): " + String.join(", ", columns) + "\n\n" + text;
+        }
+        return text;
+    }
+
+    /**
+     * Texto UTF-8 del principio; si el archivo sigue, cortar en la última línea entera
+     */
+    private static String decodeHead(byte[] head, boolean truncated) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer output = CharBuffer.allocate(head.length);
+        // endOfInput=false: un carácter partido al final se descarta en vez de salir como '�'
+        decoder.decode(ByteBuffer.wrap(head), output, false);
+        output.flip();
+        String text = output.toString();
+
+        if (truncated) {
+            int lastLine = text.lastIndexOf('\n');
+            if (lastLine > 0) {
+                text = text.substring(0, lastLine + 1);
+            }
+            text += "…";
+        }
+        return text;
+    }
+
+    private static String hexDump(byte[] data, int max) {
+        StringBuilder sb = new StringBuilder();
+        int length = Math.min(data.length, max);
+        for (int row = 0; row < length; row += 16) {
+            sb.append(String.format(Locale.ROOT, "%04x  ", row));
+            StringBuilder ascii = new StringBuilder();
+            for (int i = row; i < row + 16; i++) {
+                if (i < length) {
+                    int b = data[i] & 0xFF;
+                    sb.append(String.format(Locale.ROOT, "%02x ", b));
+                    ascii.append(b >= 0x20 && b < 0x7F ? (char) b : '.');
+                } else {
+                    sb.append("   ");
+                }
+            }
+            sb.append(' ').append(ascii).append('\n');
+        }
+        if (data.length > length) {
+            sb.append("…");
+        }
+        return sb.toString();
+    }
+
+    // ==================== SEGUIMIENTO EN VIVO ====================
+
+    /**
+     * Bajar lo que ya hay y seguir añadiendo lo que llegue por LoRa
+     */
+    private void startFollowing(FileItem file) {
+        if (!isConnected || mainActivity == null) {
+            Toast.makeText(requireContext(), "⚠️ No conectado", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        mainActivity.getBackgroundSync().pauseForUser();
+
+        File downloadsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
+        if (!downloadsDir.exists()) {
+            downloadsDir.mkdirs();
+        }
+        File target = new File(downloadsDir, file.getDisplayName());
+
+        followText.setLength(0);
+        followBinary = false;
+        followPending = ByteBuffer.allocate(0);
+        followDecoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        tvFollowContent = new TextView(requireContext());
+        tvFollowContent.setTypeface(android.graphics.Typeface.MONOSPACE);
+        tvFollowContent.setTextSize(12);
+        int padding = (int) (16 * getResources().getDisplayMetrics().density);
+        tvFollowContent.setPadding(padding, padding, padding, padding);
+        tvFollowContent.setText("Esperando datos...");
+        followScroll = new ScrollView(requireContext());
+        followScroll.addView(tvFollowContent);
+
+        FileFollower follower = mainActivity.getFileFollower();
+        followDialog = new AlertDialog.Builder(requireContext())
+                .setTitle("👁️ " + file.getDisplayName())
+                .setView(followScroll)
+                .setNegativeButton("⏹️ Detener", null)
+                .create();
+        followDialog.setOnDismissListener(dialog -> follower.stop(null));
+        followDialog.show();
+
+        follower.follow(file.getFilename(), file.getSize(), target, followListener);
+    }
+
+    private void showFollowProgress(String filename, long localSize, long remoteSize, byte[] appended) {
+        fileAdapter.setProgress(filename, remoteSize > 0 ? (int) Math.min(100, localSize * 100 / remoteSize) : -1);
+
+        if (followDialog == null || !followDialog.isShowing()) {
+            return;
+        }
+        followDialog.setTitle("👁️ " + new FileItem(filename, 0).getDisplayName() + " · " +
+                formatFileSize(localSize) + (remoteSize > localSize ? " / " + formatFileSize(remoteSize) : ""));
+
+        // Texto: mostrar la cola del archivo; binario: solo el tamaño
+        if (!followBinary && looksBinary(appended)) {
+            followBinary = true;
+        }
+        if (followBinary) {
+            tvFollowContent.setText("Archivo binario: " + formatFileSize(localSize) + " guardados en Descargas/");
+            return;
+        }
+
+        // Decodificar en continuo: un carácter UTF-8 puede quedar partido entre rangos
+        ByteBuffer input = ByteBuffer.allocate(followPending.remaining() + appended.length);
+        input.put(followPending).put(appended).flip();
+        CharBuffer output = CharBuffer.allocate(input.remaining());
+        followDecoder.decode(input, output, false);
+        followPending = input.slice();
+        output.flip();
+
+        followText.append(output);
+        if (followText.length() > LIVE_TEXT_CHARS) {
+            followText.delete(0, followText.length() - LIVE_TEXT_CHARS);
+        }
+        tvFollowContent.setText(followText);
+        followScroll.post(() -> followScroll.fullScroll(View.FOCUS_DOWN));
+    }
+
+    private static boolean looksBinary(byte[] data) {
+        int control = 0;
+        for (byte b : data) {
+            if (b == 0) {
+                return true;
+            }
+            if (b > 0 && b < 0x20 && b != '\n' && b != '\r' && b != '\t') {
+                control++;
+            }
+        }
+        return control > data.length / 10;
+    }
+
     @Override
     public void onDelete(FileItem file) {
         new AlertDialog.Builder(requireContext())
@@ -341,11 +1901,12 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
                 .setPositiveButton("🗑️ Eliminar", (dialog, which) -> {
                     if (mainActivity != null) {
                         mainActivity.getConfigManager().deleteFile(file.getFilename());
+                        mainActivity.getPartialCache().remove(
+                                mainActivity.getConnectedDeviceAddress(), file.getFilename());
+                        mainActivity.getFileIndex().applyDelete(file.getFilename());
                         Toast.makeText(requireContext(),
                                 "🗑️ Eliminando " + file.getFilename() + "...",
                                 Toast.LENGTH_SHORT).show();
-
-                        new android.os.Handler().postDelayed(() -> refreshFileList(), 500);
                     }
                 })
                 .setNegativeButton("Cancelar", null)
@@ -358,46 +1919,109 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
             return;
         }
 
+        mainActivity.getBackgroundSync().pauseForUser();
+
+        // Ya se leyó el principio (vista previa o descarga cortada): pedir solo el resto
+        byte[] prefix = mainActivity.getPartialCache().get(mainActivity.getConnectedDeviceAddress(), file);
+        if (prefix != null && prefix.length > 0) {
+            resumeDownload(file, prefix);
+            return;
+        }
+
         isDownloading = true;
         currentDownloadingFile = file.getFilename();
         expectedFileSize = file.getSize();
-        downloadBuffer = new StringBuilder();
+        downloadBuffer = new ByteArrayOutputStream();
+        downloadItem = file;
+        downloadGateway = mainActivity.getConnectedDeviceAddress();
 
         showProgress(true, "Descargando " + file.getFilename() + "...");
+        fileAdapter.setProgress(file.getFilename(), 0);
 
         mainActivity.getConfigManager().downloadFile(file.getFilename());
     }
 
-    public void onDataReceived(String data) {
-        requireActivity().runOnUiThread(() -> {
-            if (data.equals("[FILES_START]")) {
-                fileList.clear();
-                return;
-            }
-
-            if (data.equals("[FILES_END]")) {
-                fileAdapter.notifyDataSetChanged();
-                updateUI();
-                return;
-            }
+    /**
+     * Completar por rangos una descarga de la que ya se tiene el principio
+     */
+    private void resumeDownload(FileItem file, byte[] prefix) {
+        String gateway = mainActivity.getConnectedDeviceAddress();
+        ByteArrayOutputStream assembled = new ByteArrayOutputStream((int) Math.max(prefix.length, file.getSize()));
+        assembled.write(prefix, 0, prefix.length);
+
+        Log.d(TAG, "Reanudando " + file.getFilename() + " desde " + prefix.length);
+        showProgress(true, "Descargando " + file.getFilename() + " desde " + formatFileSize(prefix.length) + "...");
+        fileAdapter.setProgress(file.getFilename(),
+                file.getSize() > 0 ? (int) Math.min(100, prefix.length * 100 / file.getSize()) : 0);
+        fetchRemaining(file, gateway, assembled);
+    }
 
-            if (data.contains(",") && !data.startsWith("[")) {
-                String[] parts = data.split(",");
-                if (parts.length == 2) {
-                    try {
-                        String filename = parts[0].trim();
-                        long size = Long.parseLong(parts[1].trim());
+    private void fetchRemaining(FileItem file, String gateway, ByteArrayOutputStream assembled) {
+        PartialDownloadCache cache = mainActivity.getPartialCache();
+        mainActivity.getRangeFetcher().fetch(file.getFilename(), assembled.size(), RangeFetcher.MAX_RANGE_BYTES,
+                new RangeFetcher.Callback() {
+                    @Override
+                    public void onRange(String filename, long offset, byte[] data, long remoteSize) {
+                        // Guardar siempre: si algo falla después, se sigue desde aquí
+                        cache.put(gateway, file, offset, data);
+                        runOnUi(() -> {
+                            if (offset != assembled.size()) {
+                                return;
+                            }
+                            assembled.write(data, 0, data.length);
+
+                            // Un rango vacío también es fin: el archivo no tiene más
+                            if (data.length == 0 || assembled.size() >= remoteSize) {
+                                cache.remove(gateway, filename);
+                                showProgress(false, "");
+                                fileAdapter.setProgress(filename, -1);
+                                finishDownload(filename, assembled.toByteArray());
+                                return;
+                            }
+
+                            fileAdapter.setProgress(filename, (int) Math.min(100, assembled.size() * 100 / remoteSize));
+                            fetchRemaining(file, gateway, assembled);
+                        });
+                    }
 
-                        FileItem fileItem = new FileItem(filename, size);
-                        fileList.add(fileItem);
-                    } catch (NumberFormatException e) {
-                        android.util.Log.e("FileFragment", "Error parseando archivo: " + data);
+                    @Override
+                    public void onRangeFailed(String filename, String reason) {
+                        runOnUi(() -> {
+                            showProgress(false, "");
+                            fileAdapter.setProgress(filename, -1);
+                            Toast.makeText(requireContext(), "⚠️ Descarga cortada en " +
+                                    formatFileSize(assembled.size()) + ": " + reason +
+                                    ". Se reanudará desde ahí", Toast.LENGTH_LONG).show();
+                        });
                     }
-                }
+                });
+    }
+
+    /**
+     * Ejecutar en el hilo principal si el fragment sigue en pantalla
+     */
+    private void runOnUi(Runnable action) {
+        Activity activity = getActivity();
+        if (activity == null) {
+            return;
+        }
+        activity.runOnUiThread(() -> {
+            if (isAdded()) {
+                action.run();
             }
         });
     }
 
+    @Override
+    public void onIndexChanged(List<FileItem> files) {
+        if (getActivity() == null) {
+            return;
+        }
+
+        // Reindexar por diferencias y volver a aplicar la búsqueda actual
+        runSearch(files);
+    }
+
     public void onFileDownloadStart(String data) {
         try {
             String content = data.substring(12, data.length() - 1);
@@ -406,15 +2030,38 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
             if (parts.length >= 2) {
                 currentDownloadingFile = parts[0];
                 expectedFileSize = Long.parseLong(parts[1]);
-                downloadBuffer = new StringBuilder();
+                downloadBuffer = new ByteArrayOutputStream();
                 isDownloading = true;
 
-                requireActivity().runOnUiThread(() -> {
+                runOnUi(() -> {
                     showProgress(true, "Descargando " + currentDownloadingFile + "...");
                 });
             }
         } catch (Exception e) {
-            android.util.Log.e("FileFragment", "Error parseando FILE_START", e);
+            Log.e(TAG, "Error parseando FILE_START", e);
+        }
+    }
+
+    /**
+     * Bloque de datos de la descarga en curso [FILE_DATA:<base64>]
+     */
+    public void onFileDownloadData(String base64) {
+        if (!isDownloading || downloadBuffer == null) {
+            return;
+        }
+
+        try {
+            byte[] chunk = Base64.getDecoder().decode(base64);
+            downloadBuffer.write(chunk, 0, chunk.length);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Bloque de descarga inválido", e);
+            return;
+        }
+
+        if (expectedFileSize > 0) {
+            String file = currentDownloadingFile;
+            int percent = (int) Math.min(100, downloadBuffer.size() * 100 / expectedFileSize);
+            runOnUi(() -> fileAdapter.setProgress(file, percent));
         }
     }
 
@@ -423,17 +2070,171 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
 
         isDownloading = false;
 
-        saveDownloadedFile(currentDownloadingFile, downloadBuffer.toString().getBytes());
+        String finishedFile = currentDownloadingFile;
+        byte[] data = downloadBuffer.toByteArray();
+        downloadBuffer = null;
+        downloadItem = null;
+        currentDownloadingFile = "";
+        if (mainActivity != null) {
+            mainActivity.getPartialCache().remove(mainActivity.getConnectedDeviceAddress(), finishedFile);
+        }
 
-        requireActivity().runOnUiThread(() -> {
+        runOnUi(() -> {
             showProgress(false, "");
-            Toast.makeText(requireContext(),
-                    "✅ Descarga completa: " + currentDownloadingFile,
-                    Toast.LENGTH_SHORT).show();
+            fileAdapter.setProgress(finishedFile, -1);
         });
+        finishDownload(finishedFile, data);
+    }
 
-        downloadBuffer = null;
-        currentDownloadingFile = "";
+    /**
+     * Guardar un archivo ya descargado entero (de una vez o por rangos)
+     */
+    private void finishDownload(String finishedFile, byte[] data) {
+        // Símbolos, tramas, contenedores o comprimidos: reconstruir en vez de guardar
+        boolean fountain = finishedFile.endsWith(FountainCode.EXTENSION);
+        boolean frames = finishedFile.endsWith(LoRaPacketizer.EXTENSION);
+        boolean compressed = finishedFile.endsWith(CompressionDictionary.EXTENSION);
+        if (fountain || frames || compressed || finishedFile.endsWith(FileBundle.EXTENSION)) {
+            if (fountain) {
+                decodeFountainFile(finishedFile, data);
+            } else if (frames) {
+                decodeFrameFile(finishedFile, data);
+            } else if (compressed) {
+                decompressFile(finishedFile, data);
+            } else {
+                unpackBundle(finishedFile, data);
+            }
+            return;
+        }
+
+        // Diccionario de otro teléfono: importarlo para poder descomprimir
+        if (CompressionDictionary.versionOf(finishedFile) != CompressionDictionary.NO_DICTIONARY
+                && mainActivity != null) {
+            mainActivity.getCompressionDictionary().importDictionary(finishedFile, data);
+        }
+
+        saveDownloadedFile(finishedFile, data);
+
+        runOnUi(() -> Toast.makeText(requireContext(),
+                "✅ Descarga completa: " + finishedFile,
+                Toast.LENGTH_SHORT).show());
+    }
+
+    /**
+     * Reconstruir el archivo original con los símbolos que guardó el RX
+     * Si basta, se guarda y se pide al RX el ACK de fin para que el TX pare
+     */
+    private void decodeFountainFile(String symbolFile, byte[] stored) {
+        // El ACK va al gateway del que se descargó aunque luego cambie el foco
+        LoRaConfigManager configManager = mainActivity != null ? mainActivity.getConfigManager() : null;
+        new Thread(() -> {
+            FountainCode.Decoder decoder = new FountainCode.Decoder();
+            decoder.addStored(stored);
+            boolean complete = decoder.decode();
+
+            String name = symbolFile.startsWith("/") ? symbolFile.substring(1) : symbolFile;
+            String original = name.substring(0, name.length() - FountainCode.EXTENSION.length());
+
+            if (complete) {
+                saveDownloadedFile(original, decoder.getData());
+                if (configManager != null) {
+                    configManager.sendFountainAck(symbolFile);
+                }
+            }
+
+            runOnUi(() -> {
+                String message = complete
+                        ? "✅ " + original + " reconstruido con " + decoder.getReceived() + " símbolos"
+                        : "⏳ Faltan símbolos: " + decoder.getReceived() + " recibidos de " +
+                        Math.max(1, decoder.getSourceSymbols()) + " necesarios. Descarga de nuevo más tarde";
+                Toast.makeText(requireContext(), message, Toast.LENGTH_LONG).show();
+            });
+        }).start();
+    }
+
+    /**
+     * Reconstruir el archivo original con las tramas que guardó el RX,
+     * rellenando las perdidas con la paridad de cada bloque
+     */
+    private void decodeFrameFile(String frameFile, byte[] stored) {
+        new Thread(() -> {
+            LoRaPacketizer.Result result = LoRaPacketizer.readFrames(stored);
+
+            String name = frameFile.startsWith("/") ? frameFile.substring(1) : frameFile;
+            String original = name.substring(0, name.length() - LoRaPacketizer.EXTENSION.length());
+
+            if (result.data != null) {
+                saveDownloadedFile(original, result.data);
+            }
+
+            runOnUi(() -> {
+                String message = result.data != null
+                        ? "✅ " + original + " reconstruido (" + result.recovered + " tramas recuperadas con FEC)"
+                        : "❌ " + original + ": " + result.error;
+                Toast.makeText(requireContext(), message, Toast.LENGTH_LONG).show();
+            });
+        }).start();
+    }
+
+    /**
+     * Guardar por separado los archivos de un contenedor recibido
+     */
+    private void unpackBundle(String bundleFile, byte[] bundle) {
+        new Thread(() -> {
+            String message;
+            try {
+                List<FileBundle.Entry> entries = FileBundle.unpack(bundle);
+                for (FileBundle.Entry entry : entries) {
+                    saveDownloadedFile(entry.name, entry.data);
+                }
+                message = "✅ " + entries.size() + " archivos extraídos de " + bundleFile;
+            } catch (IOException e) {
+                Log.e(TAG, "Contenedor inválido: " + bundleFile, e);
+                message = "❌ " + bundleFile + ": " + e.getMessage();
+            }
+
+            if (getActivity() == null) {
+                return;
+            }
+            String result = message;
+            runOnUi(() ->
+                    Toast.makeText(requireContext(), result, Toast.LENGTH_LONG).show());
+        }).start();
+    }
+
+    /**
+     * Descomprimir con el diccionario compartido y guardar el original
+     */
+    private void decompressFile(String compressedFile, byte[] compressed) {
+        if (mainActivity == null) {
+            return;
+        }
+        CompressionDictionary dictionary = mainActivity.getCompressionDictionary();
+
+        new Thread(() -> {
+            String name = compressedFile.startsWith("/") ? compressedFile.substring(1) : compressedFile;
+            String original = name.substring(0, name.length() - CompressionDictionary.EXTENSION.length());
+
+            String message;
+            try {
+                saveDownloadedFile(original, dictionary.decompress(compressed));
+                message = "✅ " + original + " descomprimido";
+            } catch (IOException e) {
+                Log.e(TAG, "Error descomprimiendo " + compressedFile, e);
+                int version = CompressionDictionary.requiredVersion(compressed);
+                message = "❌ " + original + ": " + e.getMessage() +
+                        (version != CompressionDictionary.NO_DICTIONARY
+                                ? ". Descarga " + CompressionDictionary.remoteName(version) + " de este gateway"
+                                : "");
+            }
+
+            if (getActivity() == null) {
+                return;
+            }
+            String result = message;
+            runOnUi(() ->
+                    Toast.makeText(requireContext(), result, Toast.LENGTH_LONG).show());
+        }).start();
     }
 
     private void saveDownloadedFile(String filename, byte[] data) {
@@ -450,11 +2251,11 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
             fos.write(data);
             fos.close();
 
-            android.util.Log.d("FileFragment", "Archivo guardado: " + file.getAbsolutePath());
+            Log.d(TAG, "Archivo guardado: " + file.getAbsolutePath());
 
         } catch (IOException e) {
-            android.util.Log.e("FileFragment", "Error guardando archivo", e);
-            requireActivity().runOnUiThread(() -> {
+            Log.e(TAG, "Error guardando archivo", e);
+            runOnUi(() -> {
                 Toast.makeText(requireContext(),
                         "❌ Error guardando archivo: " + e.getMessage(),
                         Toast.LENGTH_LONG).show();
@@ -466,8 +2267,27 @@ public class FileFragment extends Fragment implements FileListAdapter.OnFileActi
         currentMode = mode;
         isConnected = (mode != MainActivity.MODE_NONE);
 
+        // Descarga cortada por la desconexión: guardar lo recibido para reanudar
+        if (!isConnected && isDownloading) {
+            if (downloadItem != null && downloadBuffer != null && mainActivity != null
+                    && downloadItem.getFilename().equals(currentDownloadingFile)) {
+                mainActivity.getPartialCache().put(downloadGateway, downloadItem, 0, downloadBuffer.toByteArray());
+            }
+            String interrupted = currentDownloadingFile;
+            isDownloading = false;
+            downloadBuffer = null;
+            downloadItem = null;
+            currentDownloadingFile = "";
+            if (getView() != null) {
+                runOnUi(() -> {
+                    showProgress(false, "");
+                    fileAdapter.setProgress(interrupted, -1);
+                });
+            }
+        }
+
         if (getView() != null) {
-            requireActivity().runOnUiThread(() -> {
+            runOnUi(() -> {
                 updateUI();
                 if (isConnected) {
                     refreshFileList();
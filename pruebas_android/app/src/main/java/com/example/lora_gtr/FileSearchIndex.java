@@ -0,0 +1,262 @@
+package com.example.lora_gtr;
+
+import com.example.lora_gtr.models.FileItem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Índice en memoria para buscar, filtrar y ordenar archivos.
+ *
+ * - Prefijo: árbol ordenado por nombre en minúsculas
+ * - Subcadena: índice de trigramas (consultas de 3+ caracteres)
+ * - Extensión: mapa extensión -> nombres
+ *
+ * Se actualiza por diferencias con cada listado nuevo y no es thread-safe:
+ * usarlo siempre desde el mismo hilo de fondo.
+ */
+public class FileSearchIndex {
+
+    public static final int SORT_NAME = 0;
+    public static final int SORT_SIZE_DESC = 1;
+    public static final int SORT_SIZE_ASC = 2;
+
+    /**
+     * Consulta: texto (prefijo o subcadena), extensión y orden
+     */
+    public static class Query {
+        public final String text;
+        public final String extension;   // "" = todas
+        public final int sort;
+
+        public Query(String text, String extension, int sort) {
+            this.text = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+            this.extension = extension == null ? "" : extension.toLowerCase(Locale.ROOT);
+            this.sort = sort;
+        }
+
+        /**
+         * Filtra u ordena distinto que el listado del gateway (por nombre):
+         * con solo algunas páginas cargadas el resultado sería incompleto
+         */
+        public boolean needsFullListing() {
+            return !text.isEmpty() || !extension.isEmpty() || sort != SORT_NAME;
+        }
+    }
+
+    private static final Comparator<FileItem> BY_NAME =
+            (a, b) -> a.getDisplayName().compareToIgnoreCase(b.getDisplayName());
+    private static final Comparator<FileItem> BY_SIZE_ASC = (a, b) -> {
+        int cmp = Long.compare(a.getSize(), b.getSize());
+        return cmp != 0 ? cmp : BY_NAME.compare(a, b);
+    };
+    private static final Comparator<FileItem> BY_SIZE_DESC = (a, b) -> {
+        int cmp = Long.compare(b.getSize(), a.getSize());
+        return cmp != 0 ? cmp : BY_NAME.compare(a, b);
+    };
+
+    // Clave = nombre visible en minúsculas
+    private final TreeMap<String, FileItem> byName = new TreeMap<>();
+    private final Map<String, Set<String>> byExtension = new HashMap<>();
+    private final Map<String, Set<String>> byTrigram = new HashMap<>();
+
+    // ==================== ACTUALIZACIÓN ====================
+
+    /**
+     * Sincronizar con un listado nuevo: solo se reindexan los cambios
+     */
+    public void update(Collection<FileItem> files) {
+        Map<String, FileItem> incoming = new HashMap<>();
+        for (FileItem item : files) {
+            incoming.put(keyOf(item), item);
+        }
+
+        // Eliminados
+        List<String> removed = new ArrayList<>();
+        for (String key : byName.keySet()) {
+            if (!incoming.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+        for (String key : removed) {
+            remove(key);
+        }
+
+        // Nuevos o modificados (el texto indexado no cambia, solo el objeto)
+        for (Map.Entry<String, FileItem> entry : incoming.entrySet()) {
+            FileItem previous = byName.put(entry.getKey(), entry.getValue());
+            if (previous == null) {
+                addToIndexes(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void addToIndexes(String key, FileItem item) {
+        byExtension.computeIfAbsent(item.getExtension(), k -> new HashSet<>()).add(key);
+        for (String trigram : trigramsOf(key)) {
+            byTrigram.computeIfAbsent(trigram, k -> new HashSet<>()).add(key);
+        }
+    }
+
+    private void remove(String key) {
+        FileItem item = byName.remove(key);
+        if (item == null) {
+            return;
+        }
+
+        removeFrom(byExtension, item.getExtension(), key);
+        for (String trigram : trigramsOf(key)) {
+            removeFrom(byTrigram, trigram, key);
+        }
+    }
+
+    private static void removeFrom(Map<String, Set<String>> index, String bucket, String key) {
+        Set<String> keys = index.get(bucket);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                index.remove(bucket);
+            }
+        }
+    }
+
+    // ==================== CONSULTAS ====================
+
+    public int size() {
+        return byName.size();
+    }
+
+    /**
+     * Extensiones presentes, ordenadas (para el filtro de la UI)
+     */
+    public List<String> getExtensions() {
+        List<String> result = new ArrayList<>(new TreeSet<>(byExtension.keySet()));
+        result.remove("");
+        return result;
+    }
+
+    /**
+     * Ejecutar una consulta. Los resultados de prefijo van antes que los de subcadena.
+     */
+    public List<FileItem> query(Query query) {
+        List<FileItem> result;
+
+        if (query.text.isEmpty()) {
+            result = new ArrayList<>(byName.values());
+            result = filterByExtension(result, query.extension);
+            sort(result, query.sort);
+            return result;
+        }
+
+        // Coincidencias por prefijo (rango del árbol, sin recorrer todo)
+        NavigableMap<String, FileItem> prefixRange =
+                byName.subMap(query.text, true, query.text + Character.MAX_VALUE, false);
+        List<FileItem> prefixMatches = filterByExtension(new ArrayList<>(prefixRange.values()), query.extension);
+
+        // Coincidencias por subcadena
+        List<FileItem> substringMatches = new ArrayList<>();
+        for (String key : substringCandidates(query.text)) {
+            if (!key.startsWith(query.text) && key.contains(query.text)) {
+                substringMatches.add(byName.get(key));
+            }
+        }
+        substringMatches = filterByExtension(substringMatches, query.extension);
+
+        if (query.sort == SORT_NAME) {
+            // Mantener primero los de prefijo
+            sort(substringMatches, SORT_NAME);
+            result = new ArrayList<>(prefixMatches.size() + substringMatches.size());
+            result.addAll(prefixMatches);
+            result.addAll(substringMatches);
+        } else {
+            result = new ArrayList<>(prefixMatches);
+            result.addAll(substringMatches);
+            sort(result, query.sort);
+        }
+        return result;
+    }
+
+    /**
+     * Candidatos para una subcadena: intersección de los trigramas de la consulta.
+     * Con menos de 3 caracteres no hay trigramas y se revisan todos los nombres.
+     */
+    private Collection<String> substringCandidates(String text) {
+        if (text.length() < 3) {
+            return byName.keySet();
+        }
+
+        Set<String> candidates = null;
+        for (String trigram : trigramsOf(text)) {
+            Set<String> keys = byTrigram.get(trigram);
+            if (keys == null) {
+                return Collections.emptySet();
+            }
+
+            if (candidates == null) {
+                candidates = new HashSet<>(keys);
+            } else {
+                candidates.retainAll(keys);
+            }
+
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+        return candidates == null ? Collections.emptySet() : candidates;
+    }
+
+    private List<FileItem> filterByExtension(List<FileItem> items, String extension) {
+        if (extension.isEmpty()) {
+            return items;
+        }
+
+        Set<String> keys = byExtension.get(extension);
+        if (keys == null) {
+            return new ArrayList<>();
+        }
+
+        List<FileItem> result = new ArrayList<>();
+        for (FileItem item : items) {
+            if (keys.contains(keyOf(item))) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    private static void sort(List<FileItem> items, int sort) {
+        switch (sort) {
+            case SORT_SIZE_DESC:
+                Collections.sort(items, BY_SIZE_DESC);
+                break;
+            case SORT_SIZE_ASC:
+                Collections.sort(items, BY_SIZE_ASC);
+                break;
+            default:
+                Collections.sort(items, BY_NAME);
+        }
+    }
+
+    private static Set<String> trigramsOf(String text) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            result.add(text.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    private static String keyOf(FileItem item) {
+        return item.getDisplayName().toLowerCase(Locale.ROOT);
+    }
+}
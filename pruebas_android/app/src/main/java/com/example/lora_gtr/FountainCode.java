@@ -0,0 +1,564 @@
+package com.example.lora_gtr;
+
+import android.util.Log;
+
+import com.example.lora_gtr.models.TransferEstimate;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Código fuente (LT sistemático) para enviar archivos por LoRa sin ACKs
+ * por ráfaga.
+ *
+ * El archivo se parte en K símbolos fuente. Los símbolos 0..K-1 son los
+ * propios bloques; a partir de K son combinaciones XOR de bloques elegidos
+ * con la distribución solitón robusta. Los vecinos de cada símbolo salen de
+ * un PRNG sembrado con su id, así el decodificador los regenera sin que
+ * viajen en el paquete. Cualquier conjunto de ~K símbolos (algo más con
+ * pérdidas) basta para reconstruir el archivo, sin importar cuáles lleguen.
+ *
+ * El decodificador pela lo que puede y resuelve el resto por eliminación
+ * gaussiana, por eso los símbolos de reparación tienen un grado mínimo.
+ *
+ * Cada símbolo es un registro autodescrito de HEADER_BYTES + symbolSize:
+ * id (u16) | K (u16) | symbolSize (u16) | relleno del último bloque (u16),
+ * big-endian. El TX emite los registros como paquetes LoRa y el RX los
+ * guarda tal cual, uno tras otro; la app decodifica ese archivo.
+ */
+public final class FountainCode {
+
+    private static final String TAG = "FountainCode";
+
+    public static final String EXTENSION = ".lt";
+    public static final int HEADER_BYTES = 8;
+    public static final int DEFAULT_SYMBOL_SIZE = TransferEstimate.DEFAULT_PACKET_DATA_BYTES;
+    public static final int MAX_SYMBOLS = 0xFFFF;          // El id viaja en 16 bits
+    public static final double DEFAULT_REPAIR_RATIO = 0.5;  // Símbolos de reparación por símbolo fuente
+
+    // Solitón robusto
+    private static final double SOLITON_C = 0.1;
+    private static final double SOLITON_DELTA = 0.5;
+    private static final double MIN_DEGREE_FACTOR = 4.0;
+    private static final long SEED = 0x4C6F5261L;           // "LoRa"
+
+    private FountainCode() {
+    }
+
+    /**
+     * Número de símbolos fuente para un tamaño de archivo
+     */
+    public static int sourceSymbols(long size, int symbolSize) {
+        return (int) Math.max(1, (size + symbolSize - 1) / symbolSize);
+    }
+
+    /**
+     * Símbolos a generar para tolerar una tasa de pérdidas
+     */
+    public static int symbolsFor(int sourceSymbols, double repairRatio) {
+        int total = (int) Math.ceil(sourceSymbols * (1 + repairRatio)) + 2;
+        return Math.min(MAX_SYMBOLS, total);
+    }
+
+    /**
+     * Codificar un archivo en un archivo de símbolos listo para subir al TX
+     * @return número de símbolos escritos
+     */
+    public static int encodeFile(File source, File target, int symbolSize, double repairRatio) throws IOException {
+        byte[] data = new byte[(int) source.length()];
+        try (FileInputStream in = new FileInputStream(source)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Archivo truncado: " + source.getName());
+                }
+                offset += read;
+            }
+        }
+
+        Encoder encoder = new Encoder(data, symbolSize);
+        int count = symbolsFor(encoder.getSourceSymbols(), repairRatio);
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+            encoder.writeSymbols(out, count);
+        }
+        Log.d(TAG, source.getName() + ": " + encoder.getSourceSymbols() + " símbolos fuente, " + count + " en total");
+        return count;
+    }
+
+    // ==================== CODIFICADOR ====================
+
+    public static class Encoder {
+        private final byte[] data;
+        private final int symbolSize;
+        private final int k;
+        private final int padding;
+        private final double[] cdf;
+
+        public Encoder(byte[] data, int symbolSize) {
+            this.data = data;
+            this.symbolSize = symbolSize;
+            this.k = sourceSymbols(data.length, symbolSize);
+            if (k > MAX_SYMBOLS) {
+                throw new IllegalArgumentException("Archivo demasiado grande para " + symbolSize + " bytes por símbolo");
+            }
+            this.padding = k * symbolSize - data.length;
+            this.cdf = robustSolitonCdf(k);
+        }
+
+        public int getSourceSymbols() {
+            return k;
+        }
+
+        /**
+         * Registro completo (cabecera + datos) del símbolo id
+         */
+        public byte[] symbol(int id) {
+            byte[] record = new byte[HEADER_BYTES + symbolSize];
+            putShort(record, 0, id);
+            putShort(record, 2, k);
+            putShort(record, 4, symbolSize);
+            putShort(record, 6, padding);
+
+            for (int neighbour : neighbours(id, k, cdf)) {
+                int offset = neighbour * symbolSize;
+                int length = Math.min(symbolSize, data.length - offset);
+                for (int i = 0; i < length; i++) {
+                    record[HEADER_BYTES + i] ^= data[offset + i];
+                }
+            }
+            return record;
+        }
+
+        /**
+         * Escribir los símbolos 0..count-1 uno tras otro
+         */
+        public void writeSymbols(OutputStream out, int count) throws IOException {
+            for (int id = 0; id < count; id++) {
+                out.write(symbol(id));
+            }
+        }
+    }
+
+    // ==================== DECODIFICADOR ====================
+
+    /**
+     * Decodificador por pelado (belief propagation) con eliminación
+     * gaussiana sobre lo que quede cuando el pelado se atasca.
+     */
+    public static class Decoder {
+
+        private static class Equation {
+            final List<Integer> neighbours;
+            final byte[] data;
+            boolean active = true;
+
+            Equation(List<Integer> neighbours, byte[] data) {
+                this.neighbours = neighbours;
+                this.data = data;
+            }
+        }
+
+        private int k = -1;
+        private int symbolSize;
+        private int padding;
+        private double[] cdf;
+        private byte[][] source;
+        private List<List<Equation>> byNeighbour;
+        private final List<Equation> equations = new ArrayList<>();
+        private boolean[] seen;
+        private int received = 0;
+        private int decoded = 0;
+
+        /**
+         * Añadir un registro recibido
+         * @return false si no es un símbolo válido o no pertenece a este archivo
+         */
+        public boolean addRecord(byte[] buffer, int offset) {
+            if (buffer.length - offset < HEADER_BYTES) {
+                return false;
+            }
+
+            int id = getShort(buffer, offset);
+            int recordK = getShort(buffer, offset + 2);
+            int recordSize = getShort(buffer, offset + 4);
+            int recordPadding = getShort(buffer, offset + 6);
+
+            if (recordK == 0 || recordSize == 0 || buffer.length - offset < HEADER_BYTES + recordSize) {
+                return false;
+            }
+
+            if (k < 0) {
+                k = recordK;
+                symbolSize = recordSize;
+                padding = recordPadding;
+                cdf = robustSolitonCdf(k);
+                source = new byte[k][];
+                seen = new boolean[MAX_SYMBOLS + 1];
+                byNeighbour = new ArrayList<>(k);
+                for (int i = 0; i < k; i++) {
+                    byNeighbour.add(null);
+                }
+            } else if (recordK != k || recordSize != symbolSize || recordPadding != padding) {
+                Log.w(TAG, "Símbolo " + id + " de otro archivo, descartado");
+                return false;
+            }
+
+            if (seen[id]) {
+                return true;    // Duplicado (el TX repite símbolos al final)
+            }
+            seen[id] = true;
+            received++;
+
+            if (isComplete()) {
+                return true;
+            }
+
+            byte[] data = new byte[symbolSize];
+            System.arraycopy(buffer, offset + HEADER_BYTES, data, 0, symbolSize);
+
+            // Reducir con lo ya conocido
+            List<Integer> unknown = new ArrayList<>();
+            for (int neighbour : neighbours(id, k, cdf)) {
+                if (source[neighbour] != null) {
+                    xor(data, source[neighbour]);
+                } else {
+                    unknown.add(neighbour);
+                }
+            }
+
+            if (unknown.isEmpty()) {
+                return true;
+            }
+            if (unknown.size() == 1) {
+                resolve(unknown.get(0), data);
+                return true;
+            }
+
+            Equation equation = new Equation(unknown, data);
+            equations.add(equation);
+            for (int neighbour : unknown) {
+                if (byNeighbour.get(neighbour) == null) {
+                    byNeighbour.set(neighbour, new ArrayList<>());
+                }
+                byNeighbour.get(neighbour).add(equation);
+            }
+            return true;
+        }
+
+        /**
+         * Añadir todos los registros de un archivo guardado por el RX
+         * @return registros válidos leídos
+         */
+        public int addStored(byte[] stored) {
+            int offset = 0;
+            int count = 0;
+            while (offset + HEADER_BYTES <= stored.length) {
+                if (!addRecord(stored, offset)) {
+                    break;
+                }
+                count++;
+                offset += HEADER_BYTES + symbolSize;
+            }
+            return count;
+        }
+
+        /**
+         * Intentar terminar con eliminación gaussiana si el pelado se atascó
+         * @return true si el archivo está completo
+         */
+        public boolean decode() {
+            if (k < 0) {
+                return false;
+            }
+            if (!isComplete()) {
+                solveRemaining();
+            }
+            return isComplete();
+        }
+
+        public boolean isComplete() {
+            return k > 0 && decoded == k;
+        }
+
+        public int getReceived() {
+            return received;
+        }
+
+        public int getDecoded() {
+            return decoded;
+        }
+
+        /**
+         * Símbolos fuente del archivo (-1 si aún no llegó ninguno)
+         */
+        public int getSourceSymbols() {
+            return k;
+        }
+
+        /**
+         * Archivo reconstruido, sin el relleno final
+         */
+        public byte[] getData() {
+            if (!isComplete()) {
+                return null;
+            }
+            byte[] data = new byte[k * symbolSize - padding];
+            for (int i = 0; i < k; i++) {
+                int length = Math.min(symbolSize, data.length - i * symbolSize);
+                System.arraycopy(source[i], 0, data, i * symbolSize, length);
+            }
+            return data;
+        }
+
+        // Pelado: cada símbolo resuelto reduce las ecuaciones que lo contienen
+        private void resolve(int symbol, byte[] data) {
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            ArrayDeque<byte[]> values = new ArrayDeque<>();
+            queue.add(symbol);
+            values.add(data);
+
+            while (!queue.isEmpty()) {
+                int current = queue.poll();
+                byte[] value = values.poll();
+                if (source[current] != null) {
+                    continue;
+                }
+                source[current] = value;
+                decoded++;
+
+                if (byNeighbour.get(current) == null) {
+                    continue;
+                }
+                for (Equation equation : byNeighbour.get(current)) {
+                    if (!equation.active) {
+                        continue;
+                    }
+                    equation.neighbours.remove(Integer.valueOf(current));
+                    xor(equation.data, value);
+
+                    if (equation.neighbours.size() == 1) {
+                        equation.active = false;
+                        queue.add(equation.neighbours.get(0));
+                        values.add(equation.data);
+                    } else if (equation.neighbours.isEmpty()) {
+                        equation.active = false;
+                    }
+                }
+                byNeighbour.set(current, null);
+            }
+        }
+
+        // Eliminación gaussiana en GF(2) sobre las incógnitas restantes
+        private void solveRemaining() {
+            int[] column = new int[k];
+            List<Integer> unknowns = new ArrayList<>();
+            for (int i = 0; i < k; i++) {
+                column[i] = -1;
+                if (source[i] == null) {
+                    column[i] = unknowns.size();
+                    unknowns.add(i);
+                }
+            }
+
+            List<long[]> rows = new ArrayList<>();
+            List<byte[]> rhs = new ArrayList<>();
+            int words = (unknowns.size() + 63) / 64;
+            for (Equation equation : equations) {
+                if (!equation.active) {
+                    continue;
+                }
+                long[] row = new long[words];
+                byte[] value = equation.data.clone();
+                for (int neighbour : equation.neighbours) {
+                    if (source[neighbour] != null) {
+                        xor(value, source[neighbour]);
+                    } else {
+                        int c = column[neighbour];
+                        row[c >> 6] |= 1L << (c & 63);
+                    }
+                }
+                rows.add(row);
+                rhs.add(value);
+            }
+
+            if (rows.size() < unknowns.size()) {
+                return;
+            }
+
+            // Escalonar
+            int[] pivotRow = new int[unknowns.size()];
+            int rank = 0;
+            for (int c = 0; c < unknowns.size() && rank < rows.size(); c++) {
+                int word = c >> 6;
+                long bit = 1L << (c & 63);
+
+                int pivot = -1;
+                for (int r = rank; r < rows.size(); r++) {
+                    if ((rows.get(r)[word] & bit) != 0) {
+                        pivot = r;
+                        break;
+                    }
+                }
+                if (pivot < 0) {
+                    return;     // Rango insuficiente: faltan símbolos
+                }
+
+                swap(rows, rank, pivot);
+                swap(rhs, rank, pivot);
+                long[] pr = rows.get(rank);
+                byte[] pv = rhs.get(rank);
+
+                for (int r = 0; r < rows.size(); r++) {
+                    if (r != rank && (rows.get(r)[word] & bit) != 0) {
+                        long[] row = rows.get(r);
+                        for (int w = word; w < words; w++) {
+                            row[w] ^= pr[w];
+                        }
+                        // Las columnas anteriores ya están a cero en el pivote
+                        xor(rhs.get(r), pv);
+                    }
+                }
+                pivotRow[c] = rank;
+                rank++;
+            }
+
+            if (rank < unknowns.size()) {
+                return;
+            }
+
+            for (int c = 0; c < unknowns.size(); c++) {
+                int symbol = unknowns.get(c);
+                source[symbol] = rhs.get(pivotRow[c]);
+                decoded++;
+            }
+            for (Equation equation : equations) {
+                equation.active = false;
+            }
+            Log.d(TAG, "Eliminación gaussiana resolvió " + unknowns.size() + " símbolos");
+        }
+    }
+
+    // ==================== DISTRIBUCIÓN ====================
+
+    /**
+     * Símbolos fuente combinados en el símbolo id
+     */
+    static int[] neighbours(int id, int k, double[] cdf) {
+        if (id < k) {
+            return new int[]{id};
+        }
+
+        Random random = new Random(mix(SEED ^ ((long) id << 20) ^ k));
+        double u = random.nextDouble();
+        int degree = 1;
+        while (degree < k && cdf[degree] < u) {
+            degree++;
+        }
+        degree = Math.min(k, Math.max(degree, minRepairDegree(k)));
+
+        // Vecinos distintos
+        int[] result = new int[degree];
+        int count = 0;
+        while (count < degree) {
+            int candidate = random.nextInt(k);
+            boolean repeated = false;
+            for (int i = 0; i < count; i++) {
+                if (result[i] == candidate) {
+                    repeated = true;
+                    break;
+                }
+            }
+            if (!repeated) {
+                result[count++] = candidate;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Grado mínimo de los símbolos de reparación. Con grados bajos muchos
+     * solo cubren bloques que ya llegaron y no aportan nada; con ~4·ln(K)
+     * la eliminación gaussiana completa con K + unos pocos símbolos.
+     */
+    static int minRepairDegree(int k) {
+        return (int) Math.ceil(MIN_DEGREE_FACTOR * Math.log(k + 1));
+    }
+
+    /**
+     * CDF del solitón robusto: cdf[d] = P(grado <= d), d en 1..k
+     */
+    static double[] robustSolitonCdf(int k) {
+        double[] cdf = new double[k + 1];
+        if (k == 1) {
+            cdf[1] = 1.0;
+            return cdf;
+        }
+
+        double r = SOLITON_C * Math.log(k / SOLITON_DELTA) * Math.sqrt(k);
+        int spike = (int) Math.max(1, Math.min(k, Math.round(k / r)));
+
+        double[] mass = new double[k + 1];
+        double total = 0;
+        for (int d = 1; d <= k; d++) {
+            double rho = d == 1 ? 1.0 / k : 1.0 / ((double) d * (d - 1));
+            double tau = 0;
+            if (d < spike) {
+                tau = r / ((double) d * k);
+            } else if (d == spike) {
+                tau = r * Math.log(r / SOLITON_DELTA) / k;
+            }
+            mass[d] = rho + Math.max(0, tau);
+            total += mass[d];
+        }
+
+        double acc = 0;
+        for (int d = 1; d <= k; d++) {
+            acc += mass[d] / total;
+            cdf[d] = acc;
+        }
+        cdf[k] = 1.0;
+        return cdf;
+    }
+
+    // ==================== UTILIDADES ====================
+
+    // SplitMix64: semillas consecutivas dan secuencias de Random independientes
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static void xor(byte[] target, byte[] value) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] ^= value[i];
+        }
+    }
+
+    private static <T> void swap(List<T> list, int a, int b) {
+        if (a != b) {
+            T tmp = list.get(a);
+            list.set(a, list.get(b));
+            list.set(b, tmp);
+        }
+    }
+
+    private static void putShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >> 8);
+        buffer[offset + 1] = (byte) value;
+    }
+
+    private static int getShort(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF);
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.lora_gtr;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+
+import com.example.lora_gtr.models.LoRaConfig;
+
+import java.io.File;
+
+/**
+ * Una conexión con un gateway y todo lo que depende de ella: su cliente
+ * del protocolo (BLEService + LoRaConfigManager), su índice de archivos,
+ * sus colas de transmisión y descarga y el estado que se conoce del
+ * dispositivo (modo, última configuración).
+ *
+ * Varias sesiones pueden estar abiertas a la vez; MainActivity procesa las
+ * líneas de todas y la interfaz muestra solo la enfocada.
+ */
+public class GatewaySession implements BLEService.ConnectionCallback {
+
+    /**
+     * Avisos de la sesión hacia la Activity (siempre con la sesión que los origina)
+     */
+    public interface Callback {
+        void onSessionMessage(GatewaySession session, Message msg);
+
+        void onSessionConnected(GatewaySession session);
+
+        void onSessionDisconnected(GatewaySession session);
+
+        void onSessionData(GatewaySession session, byte[] data);
+
+        void onSessionError(GatewaySession session, String error);
+
+        /**
+         * El planificador de esta sesión da paso a un envío LoRa
+         */
+        void onSessionTransmit(GatewaySession session, DutyCycleScheduler.Job job);
+
+        void onSessionLinkConfig(GatewaySession session, LoRaConfig next, String reason);
+
+        void onSessionSyncProgress(GatewaySession session, String filename, long localSize, long remoteSize);
+    }
+
+    private final Callback callback;
+
+    private final BLEService bluetoothService;
+    private final LoRaConfigManager configManager;
+    private final RemoteFileIndex fileIndex = new RemoteFileIndex();
+    private final AdrController adrController;
+    private final AckIntervalController ackController;
+    private final DutyCycleScheduler txScheduler;
+    private final TransmitBatch transmitBatch;
+    private final RangeFetcher rangeFetcher;
+    private final FileFollower fileFollower;
+    private final BackgroundSync backgroundSync;
+
+    // Estado del dispositivo
+    private volatile String address = "";
+    private volatile String deviceName = "";
+    private volatile int mode = MainActivity.MODE_NONE;
+    private volatile boolean connected = false;
+    private volatile LoRaConfig lastConfig;
+    private volatile boolean pagedListingSupported = true;
+    private volatile LinkTestSweep linkTestSweep;
+    private long connectedAt;
+
+    /**
+     * @param downloadsDir Dónde deja la sincronización automática las copias (una subcarpeta por gateway)
+     * @param stagingCache Caché compartida de archivos preparados para subir
+     */
+    public GatewaySession(Context context, GattArbiter arbiter, File downloadsDir, StagingCache stagingCache,
+                          Callback callback, boolean writeCoalescing, long flushDelayMs, int maxBatch) {
+        this.callback = callback;
+
+        Handler handler = new Handler(Looper.getMainLooper(), msg -> {
+            callback.onSessionMessage(this, msg);
+            return true;
+        });
+        bluetoothService = new BLEService(context, handler, this);
+        bluetoothService.setWriteCoalescing(writeCoalescing, flushDelayMs, maxBatch);
+        bluetoothService.setArbiter(arbiter);
+        configManager = new LoRaConfigManager(bluetoothService);
+
+        adrController = new AdrController((next, reason) -> callback.onSessionLinkConfig(this, next, reason));
+        ackController = new AckIntervalController(configManager::setAckSettings);
+        txScheduler = new DutyCycleScheduler(job -> callback.onSessionTransmit(this, job));
+        transmitBatch = new TransmitBatch(configManager, stagingCache, fileIndex, txScheduler, () -> lastConfig);
+        rangeFetcher = new RangeFetcher(configManager);
+        fileFollower = new FileFollower(rangeFetcher, fileIndex);
+        backgroundSync = new BackgroundSync(rangeFetcher, fileIndex, fileFollower,
+                context.getFilesDir(), downloadsDir);
+        backgroundSync.setListener((filename, localSize, remoteSize) ->
+                callback.onSessionSyncProgress(this, filename, localSize, remoteSize));
+    }
+
+    // ==================== CONEXIÓN ====================
+
+    @Override
+    public void onConnected() {
+        connectedAt = System.currentTimeMillis();
+        callback.onSessionConnected(this);
+    }
+
+    @Override
+    public void onDisconnected() {
+        callback.onSessionDisconnected(this);
+    }
+
+    @Override
+    public void onDataReceived(byte[] data) {
+        callback.onSessionData(this, data);
+    }
+
+    @Override
+    public void onError(String error) {
+        callback.onSessionError(this, error);
+    }
+
+    /**
+     * Olvidar lo que dependía de la conexión (al desconectar)
+     */
+    public void reset() {
+        mode = MainActivity.MODE_NONE;
+        connected = false;
+        deviceName = "";
+        lastConfig = null;
+        fileFollower.stop("Desconectado");
+        backgroundSync.stop();
+        rangeFetcher.cancelAll();
+        fileIndex.clear();
+
+        adrController.reset();
+        ackController.reset();
+        transmitBatch.cancelAll();
+        txScheduler.clear();
+
+        // Un barrido sin conexión no puede terminar
+        LinkTestSweep sweep = linkTestSweep;
+        if (sweep != null) {
+            sweep.cancel();
+        }
+    }
+
+    /**
+     * Cerrar para siempre (sesión descartada o Activity destruida)
+     */
+    public void release() {
+        bluetoothService.release();
+    }
+
+    /**
+     * Texto corto para listas: nombre, modo y colas
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(mode == MainActivity.MODE_TRANSMITTER ? "📡 " : mode == MainActivity.MODE_RECEIVER ? "📥 " : "🔵 ")
+                .append(deviceName.isEmpty() ? address : deviceName);
+        if (!connected) {
+            sb.append(" (conectando...)");
+            return sb.toString();
+        }
+
+        sb.append(" · ").append(fileIndex.getFiles().size()).append(" archivos");
+        int queued = txScheduler.getJobs().size();
+        if (queued > 0) {
+            sb.append(" · ").append(queued).append(" en cola LoRa");
+        }
+        if (backgroundSync.isEnabled()) {
+            sb.append(" · 🔄");
+        }
+        return sb.toString();
+    }
+
+    // ==================== ACCESO ====================
+
+    public BLEService getBluetoothService() {
+        return bluetoothService;
+    }
+
+    public LoRaConfigManager getConfigManager() {
+        return configManager;
+    }
+
+    public RemoteFileIndex getFileIndex() {
+        return fileIndex;
+    }
+
+    public AdrController getAdrController() {
+        return adrController;
+    }
+
+    public AckIntervalController getAckController() {
+        return ackController;
+    }
+
+    public DutyCycleScheduler getTxScheduler() {
+        return txScheduler;
+    }
+
+    public TransmitBatch getTransmitBatch() {
+        return transmitBatch;
+    }
+
+    public RangeFetcher getRangeFetcher() {
+        return rangeFetcher;
+    }
+
+    public FileFollower getFileFollower() {
+        return fileFollower;
+    }
+
+    public BackgroundSync getBackgroundSync() {
+        return backgroundSync;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public void setDeviceName(String deviceName) {
+        this.deviceName = deviceName;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public void setMode(int mode) {
+        this.mode = mode;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public void setConnected(boolean connected) {
+        this.connected = connected;
+    }
+
+    public LoRaConfig getLastConfig() {
+        return lastConfig;
+    }
+
+    public void setLastConfig(LoRaConfig lastConfig) {
+        this.lastConfig = lastConfig;
+    }
+
+    public boolean isPagedListingSupported() {
+        return pagedListingSupported;
+    }
+
+    public void setPagedListingSupported(boolean supported) {
+        this.pagedListingSupported = supported;
+    }
+
+    public LinkTestSweep getLinkTestSweep() {
+        return linkTestSweep;
+    }
+
+    public void setLinkTestSweep(LinkTestSweep sweep) {
+        this.linkTestSweep = sweep;
+    }
+
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.lora_gtr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sesiones abiertas con gateways y cuál de ellas se muestra.
+ *
+ * Siempre hay al menos una sesión: sin conexiones queda una libre (sin
+ * dirección) que es la que usan la navegación sin conexión y la próxima
+ * conexión. Conectar otro gateway abre una sesión nueva sin cerrar las
+ * demás, hasta MAX_SESSIONS (Android admite varias conexiones LE, pero
+ * cada una resta intervalos de conexión a las otras).
+ *
+ * Todas comparten un GattArbiter para repartir el enlace por turnos.
+ */
+public class GatewaySessionManager {
+
+    public static final int MAX_SESSIONS = 4;
+
+    public interface Factory {
+        GatewaySession create(GattArbiter arbiter);
+    }
+
+    private final Factory factory;
+    private final GattArbiter arbiter = new GattArbiter();
+    private final List<GatewaySession> sessions = new CopyOnWriteArrayList<>();
+    private volatile GatewaySession focused;
+
+    public GatewaySessionManager(Factory factory) {
+        this.factory = factory;
+        focused = factory.create(arbiter);
+        sessions.add(focused);
+    }
+
+    /**
+     * Sesión que muestra la interfaz (nunca null)
+     */
+    public GatewaySession getFocused() {
+        return focused;
+    }
+
+    public void focus(GatewaySession session) {
+        if (sessions.contains(session)) {
+            focused = session;
+        }
+    }
+
+    public List<GatewaySession> getSessions() {
+        return new ArrayList<>(sessions);
+    }
+
+    public boolean contains(GatewaySession session) {
+        return sessions.contains(session);
+    }
+
+    /**
+     * Sesiones con un gateway (conectadas o conectando)
+     */
+    public int getOpenCount() {
+        int open = 0;
+        for (GatewaySession session : sessions) {
+            if (!session.getAddress().isEmpty()) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    public GatewaySession find(String address) {
+        for (GatewaySession session : sessions) {
+            if (session.getAddress().equals(address)) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sesión para conectar un gateway nuevo: una libre o una recién creada
+     * @return null si ya hay MAX_SESSIONS abiertas
+     */
+    public GatewaySession open(String address) {
+        GatewaySession free = focused.getAddress().isEmpty() ? focused : null;
+        for (GatewaySession session : sessions) {
+            if (free == null && session.getAddress().isEmpty()) {
+                free = session;
+            }
+        }
+        if (free == null) {
+            if (sessions.size() >= MAX_SESSIONS) {
+                return null;
+            }
+            free = factory.create(arbiter);
+            sessions.add(free);
+        }
+        free.setAddress(address);
+        return free;
+    }
+
+    /**
+     * Sesión que conviene enfocar si se cierra 'closing': la conectada más antigua
+     * @return null si no queda ninguna otra
+     */
+    public GatewaySession nextAfter(GatewaySession closing) {
+        GatewaySession next = null;
+        for (GatewaySession session : sessions) {
+            if (session != closing && !session.getAddress().isEmpty()
+                    && (next == null || session.getConnectedAt() < next.getConnectedAt())) {
+                next = session;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Cerrar una sesión ya desconectada (enfocar antes otra con nextAfter)
+     * La enfocada se conserva libre; las demás se descartan
+     */
+    public void close(GatewaySession session) {
+        String address = session.getAddress();
+        if (!address.isEmpty()) {
+            arbiter.forget(address);
+        }
+        session.setAddress("");
+
+        if (session != focused && sessions.remove(session)) {
+            session.release();
+        }
+    }
+
+    public GattArbiter getArbiter() {
+        return arbiter;
+    }
+
+    /**
+     * Liberar todas las conexiones (al destruir la Activity)
+     */
+    public void releaseAll() {
+        for (GatewaySession session : sessions) {
+            session.release();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.lora_gtr;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.lora_gtr.models.FileItem;
+import com.example.lora_gtr.models.LoRaConfig;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copia local en disco de lo último que se vio de cada gateway
+ * (listado de archivos y configuración LoRa), indexada por MAC.
+ *
+ * Permite pintar las pantallas al instante al reconectar (marcadas como
+ * desactualizadas hasta revalidar) y consultar sin conexión qué tenía
+ * cada gateway.
+ */
+public class GatewayStore {
+
+    private static final String TAG = "GatewayStore";
+    private static final String DIR_NAME = "gateways";
+
+    /**
+     * Estado guardado de un gateway
+     */
+    public static class Snapshot {
+        public final String address;
+        public final String deviceName;
+        public final List<FileItem> files;
+        public final long generation;
+        public final LoRaConfig config;
+        public final long savedAt;
+
+        Snapshot(String address, String deviceName, List<FileItem> files,
+                 long generation, LoRaConfig config, long savedAt) {
+            this.address = address;
+            this.deviceName = deviceName;
+            this.files = files;
+            this.generation = generation;
+            this.config = config;
+            this.savedAt = savedAt;
+        }
+    }
+
+    private final File dir;
+
+    public GatewayStore(Context context) {
+        dir = new File(context.getFilesDir(), DIR_NAME);
+    }
+
+    // ==================== LECTURA ====================
+
+    /**
+     * Cargar el estado guardado de un gateway
+     * @return null si no hay nada guardado
+     */
+    public synchronized Snapshot load(String address) {
+        File file = fileFor(address);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            return parse(new JSONObject(readText(file)));
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Error leyendo " + file.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Todos los gateways guardados (para navegar sin conexión)
+     */
+    public synchronized List<Snapshot> loadAll() {
+        List<Snapshot> result = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (files == null) {
+            return result;
+        }
+
+        for (File file : files) {
+            try {
+                result.add(parse(new JSONObject(readText(file))));
+            } catch (IOException | JSONException e) {
+                Log.e(TAG, "Error leyendo " + file.getName(), e);
+            }
+        }
+        return result;
+    }
+
+    private Snapshot parse(JSONObject json) throws JSONException {
+        List<FileItem> files = new ArrayList<>();
+        JSONArray array = json.optJSONArray("files");
+        if (array != null) {
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject f = array.getJSONObject(i);
+                files.add(new FileItem(
+                        f.getString("name"),
+                        f.getLong("size"),
+                        f.optString("hash", null),
+                        f.optLong("ts", 0)));
+            }
+        }
+
+        LoRaConfig config = null;
+        JSONObject configJson = json.optJSONObject("config");
+        if (configJson != null) {
+            config = LoRaConfig.fromJson(configJson.toString());
+        }
+
+        return new Snapshot(
+                json.getString("address"),
+                json.optString("name", ""),
+                files,
+                json.optLong("generation", RemoteFileIndex.GENERATION_UNKNOWN),
+                config,
+                json.optLong("savedAt", 0));
+    }
+
+    // ==================== ESCRITURA ====================
+
+    /**
+     * Guardar el estado de un gateway (escritura atómica vía archivo temporal)
+     */
+    public synchronized void save(String address, String deviceName, List<FileItem> files,
+                                  long generation, LoRaConfig config) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("address", address);
+            json.put("name", deviceName);
+            json.put("generation", generation);
+            json.put("savedAt", System.currentTimeMillis());
+
+            JSONArray array = new JSONArray();
+            for (FileItem item : files) {
+                JSONObject f = new JSONObject();
+                f.put("name", item.getFilename());
+                f.put("size", item.getSize());
+                if (item.getHash() != null) {
+                    f.put("hash", item.getHash());
+                }
+                if (item.getModifiedTime() > 0) {
+                    f.put("ts", item.getModifiedTime());
+                }
+                array.put(f);
+            }
+            json.put("files", array);
+
+            if (config != null) {
+                json.put("config", new JSONObject(config.toJson()));
+            }
+
+            if (!dir.exists() && !dir.mkdirs()) {
+                Log.e(TAG, "No se pudo crear " + dir.getPath());
+                return;
+            }
+
+            File target = fileFor(address);
+            File temp = new File(dir, target.getName() + ".tmp");
+            FileOutputStream fos = new FileOutputStream(temp);
+            fos.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            fos.getFD().sync();
+            fos.close();
+
+            if (!temp.renameTo(target)) {
+                Log.e(TAG, "No se pudo renombrar " + temp.getName());
+            }
+
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Error guardando estado de " + address, e);
+        }
+    }
+
+    private File fileFor(String address) {
+        return new File(dir, address.replace(":", "") + ".json");
+    }
+
+    private static String readText(File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        byte[] data = new byte[(int) file.length()];
+        int read = 0;
+        while (read < data.length) {
+            int n = fis.read(data, read, data.length - read);
+            if (n < 0) break;
+            read += n;
+        }
+        fis.close();
+        return new String(data, 0, read, StandardCharsets.UTF_8);
+    }
+}
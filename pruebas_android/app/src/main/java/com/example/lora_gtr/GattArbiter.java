@@ -0,0 +1,110 @@
+package com.example.lora_gtr;
+
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turno de escritura GATT compartido entre las conexiones abiertas.
+ *
+ * La pila BLE de Android atiende mal escrituras simultáneas en varias
+ * conexiones (writeCharacteristic devuelve false si hay otra en vuelo).
+ * Cada BLEService pide turno antes de escribir y lo suelta al recibir la
+ * confirmación. Los turnos se conceden por orden de llegada y cada conexión
+ * tiene un único hilo escritor (su WriteScheduler), así que las conexiones
+ * con algo que enviar se alternan trama a trama: una subida larga a un
+ * gateway no deja sin enlace a los demás.
+ */
+public class GattArbiter {
+
+    /**
+     * Uso del enlace por una conexión
+     */
+    public static class Stats {
+        public long frames;
+        public long totalWaitMs;
+        public long maxWaitMs;
+
+        public long getAverageWaitMs() {
+            return frames > 0 ? totalWaitMs / frames : 0;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final ArrayDeque<String> waiting = new ArrayDeque<>();
+    private final Map<String, Stats> stats = new HashMap<>();
+    private String holder;
+
+    /**
+     * Esperar turno (bloquea el hilo escritor de la conexión)
+     * @param owner Dirección del gateway
+     */
+    public void acquire(String owner) throws InterruptedException {
+        long start = SystemClock.elapsedRealtime();
+        synchronized (lock) {
+            waiting.add(owner);
+            try {
+                while (holder != null || !owner.equals(waiting.peek())) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                waiting.remove(owner);
+                lock.notifyAll();
+                throw e;
+            }
+            waiting.poll();
+            holder = owner;
+
+            long waited = SystemClock.elapsedRealtime() - start;
+            Stats entry = stats.get(owner);
+            if (entry == null) {
+                entry = new Stats();
+                stats.put(owner, entry);
+            }
+            entry.frames++;
+            entry.totalWaitMs += waited;
+            entry.maxWaitMs = Math.max(entry.maxWaitMs, waited);
+        }
+    }
+
+    public void release(String owner) {
+        synchronized (lock) {
+            if (owner.equals(holder)) {
+                holder = null;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Copia de las estadísticas de una conexión
+     */
+    public Stats getStats(String owner) {
+        synchronized (lock) {
+            Stats copy = new Stats();
+            Stats entry = stats.get(owner);
+            if (entry != null) {
+                copy.frames = entry.frames;
+                copy.totalWaitMs = entry.totalWaitMs;
+                copy.maxWaitMs = entry.maxWaitMs;
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Olvidar una conexión cerrada
+     */
+    public void forget(String owner) {
+        synchronized (lock) {
+            stats.remove(owner);
+            waiting.remove(owner);
+            if (owner.equals(holder)) {
+                holder = null;
+            }
+            lock.notifyAll();
+        }
+    }
+}
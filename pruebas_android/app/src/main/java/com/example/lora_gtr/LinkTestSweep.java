@@ -0,0 +1,265 @@
+package com.example.lora_gtr;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.lora_gtr.models.LoRaConfig;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Barrido de prueba de enlace: recorre una matriz de configuraciones LoRa
+ * y mide cada una entre el gateway TX conectado y su RX.
+ *
+ * Por cada punto se envía LINK_TEST:{cfg, count, size}. El TX acuerda la
+ * configuración con el RX, envía count paquetes de prueba de size bytes,
+ * recoge el resumen del RX y vuelve a la configuración base. La respuesta
+ * llega como [LINK_TEST:{"sent":n,"rx":n,"rssi":x,"snr":x,"ms":n}].
+ *
+ * Al terminar se restaura la configuración base y se ordenan los puntos
+ * por goodput (bits útiles entregados por segundo).
+ */
+public class LinkTestSweep {
+
+    private static final String TAG = "LinkTestSweep";
+
+    public static final int DEFAULT_PACKETS_PER_POINT = 20;
+    public static final int DEFAULT_PAYLOAD_BYTES = 64;
+    public static final int[] DEFAULT_SPREADING_FACTORS = {7, 8, 9, 10, 11, 12};
+    public static final float[] DEFAULT_BANDWIDTHS = {125f, 250f, 500f};
+    public static final int[] DEFAULT_CODING_RATES = {5, 8};
+
+    private static final long SWITCH_MARGIN_MS = 10000;   // Cambio de config en ambos extremos + resumen
+    private static final double TIMEOUT_FACTOR = 2.0;
+
+    /**
+     * Resultado de un punto de la matriz
+     */
+    public static class Point {
+        public final LoRaConfig config;
+        public int sent;
+        public int received;
+        public float rssi;
+        public float snr;
+        public long durationMs;
+        public boolean completed;
+
+        Point(LoRaConfig config) {
+            this.config = config;
+        }
+
+        public double getDeliveryRatio() {
+            return sent == 0 ? 0 : (double) received / sent;
+        }
+
+        /**
+         * Bits útiles entregados por segundo
+         */
+        public double getGoodputBps(int payloadBytes) {
+            return durationMs <= 0 ? 0 : received * payloadBytes * 8 * 1000.0 / durationMs;
+        }
+
+        public String describe(int payloadBytes) {
+            if (!completed) {
+                return config + "\n   ✖️ sin respuesta";
+            }
+            return config + "\n   " +
+                    String.format(Locale.ROOT, "PDR %.0f%% | RSSI %.0f dBm | SNR %.1f dB | %.0f bps",
+                            getDeliveryRatio() * 100, rssi, snr, getGoodputBps(payloadBytes));
+        }
+    }
+
+    public interface Listener {
+        void onPointStarted(int index, int total, LoRaConfig config);
+        void onPointFinished(int index, int total, Point point);
+        void onSweepFinished(List<Point> ranked, boolean cancelled);
+    }
+
+    private final LoRaConfigManager configManager;
+    private final LoRaConfig baseConfig;
+    private final List<LoRaConfig> matrix;
+    private final int packetsPerPoint;
+    private final int payloadBytes;
+
+    // Respuestas [LINK_TEST:...] del hilo de protocolo al hilo del barrido
+    // Con cola la respuesta no se pierde si llega antes de que el barrido se ponga a esperar
+    private final LinkedBlockingQueue<String> results = new LinkedBlockingQueue<>();
+    private volatile boolean cancelled = false;
+    private volatile boolean running = false;
+    private Thread worker;
+
+    public LinkTestSweep(LoRaConfigManager configManager, LoRaConfig baseConfig,
+                         List<LoRaConfig> matrix, int packetsPerPoint, int payloadBytes) {
+        this.configManager = configManager;
+        this.baseConfig = baseConfig;
+        this.matrix = matrix;
+        this.packetsPerPoint = packetsPerPoint;
+        this.payloadBytes = payloadBytes;
+    }
+
+    /**
+     * Matriz SF x BW x CR sobre la config base (frecuencia, potencia, etc.).
+     * Se descartan las combinaciones no válidas para la región.
+     */
+    public static List<LoRaConfig> buildMatrix(LoRaConfig base, int[] spreadingFactors,
+                                               float[] bandwidths, int[] codingRates) {
+        List<LoRaConfig> result = new ArrayList<>();
+        for (int sf : spreadingFactors) {
+            for (float bw : bandwidths) {
+                for (int cr : codingRates) {
+                    LoRaConfig config = new LoRaConfig(base);
+                    config.setSpreadingFactor(sf);
+                    config.setBandwidth(bw);
+                    config.setCodingRate(cr);
+                    if (config.isValid()) {
+                        result.add(config);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Duración estimada del barrido completo en ms
+     */
+    public long estimateDurationMs() {
+        long total = 0;
+        for (LoRaConfig config : matrix) {
+            total += estimatePointMs(config);
+        }
+        return total;
+    }
+
+    private long estimatePointMs(LoRaConfig config) {
+        return (long) (packetsPerPoint * config.getTimeOnAirMs(payloadBytes)) + SWITCH_MARGIN_MS;
+    }
+
+    public int getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // ==================== EJECUCIÓN ====================
+
+    public void start(Listener listener) {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        cancelled = false;
+        worker = new Thread(() -> runSweep(listener), TAG);
+        worker.start();
+    }
+
+    /**
+     * Detener tras el punto en curso (se restaura la config base)
+     */
+    public void cancel() {
+        cancelled = true;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Entregar una respuesta [LINK_TEST:{...}] recibida del gateway
+     */
+    public void onResult(String json) {
+        if (!running) {
+            return;
+        }
+
+        results.offer(json);
+    }
+
+    private void runSweep(Listener listener) {
+        List<Point> points = new ArrayList<>();
+        int total = matrix.size();
+
+        Log.d(TAG, "Iniciando barrido de " + total + " puntos, estimado " + estimateDurationMs() / 1000 + " s");
+
+        for (int i = 0; i < total && !cancelled; i++) {
+            LoRaConfig config = matrix.get(i);
+            Point point = new Point(config);
+            listener.onPointStarted(i, total, config);
+
+            // Respuestas tardías de un punto ya expirado no cuentan para este
+            if (!results.isEmpty()) {
+                Log.w(TAG, "Resultados fuera de tiempo descartados: " + results.size());
+                results.clear();
+            }
+
+            long startedAt = SystemClock.elapsedRealtime();
+            configManager.runLinkTest(config, packetsPerPoint, payloadBytes);
+
+            try {
+                long timeout = (long) (estimatePointMs(config) * TIMEOUT_FACTOR);
+                String json = results.poll(timeout, TimeUnit.MILLISECONDS);
+                if (json != null) {
+                    parseResult(point, json, SystemClock.elapsedRealtime() - startedAt);
+                } else {
+                    Log.w(TAG, "Sin respuesta en " + config);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            points.add(point);
+            listener.onPointFinished(i, total, point);
+        }
+
+        // Volver a la configuración de trabajo
+        configManager.setConfig(baseConfig);
+
+        List<Point> ranked = rank(points);
+        for (Point point : ranked) {
+            Log.d(TAG, point.describe(payloadBytes).replace("\n", " "));
+        }
+
+        running = false;
+        listener.onSweepFinished(ranked, cancelled);
+    }
+
+    private void parseResult(Point point, String json, long elapsedMs) {
+        try {
+            JSONObject obj = new JSONObject(json);
+            point.sent = obj.optInt("sent", packetsPerPoint);
+            point.received = obj.optInt("rx", 0);
+            point.rssi = (float) obj.optDouble("rssi", 0);
+            point.snr = (float) obj.optDouble("snr", 0);
+            // Tiempo medido por el gateway; si no lo envía, el de ida y vuelta
+            point.durationMs = obj.optLong("ms", elapsedMs);
+            point.completed = !obj.has("error");
+        } catch (JSONException e) {
+            Log.e(TAG, "Resultado inválido: " + json, e);
+        }
+    }
+
+    /**
+     * Mayor goodput primero; a igualdad, mayor PDR y luego mejor SNR
+     */
+    private List<Point> rank(List<Point> points) {
+        List<Point> ranked = new ArrayList<>(points);
+        Collections.sort(ranked, (a, b) -> {
+            int cmp = Double.compare(b.getGoodputBps(payloadBytes), a.getGoodputBps(payloadBytes));
+            if (cmp != 0) return cmp;
+            cmp = Double.compare(b.getDeliveryRatio(), a.getDeliveryRatio());
+            if (cmp != 0) return cmp;
+            return Float.compare(b.snr, a.snr);
+        });
+        return ranked;
+    }
+}
@@ -10,6 +10,7 @@ import org.json.JSONObject;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.zip.CRC32;
 
 /**
  * Gestor de configuración y comandos LoRa
@@ -27,14 +28,26 @@ public class LoRaConfigManager {
     private static final String CMD_GET_CONFIG = "GET_CONFIG\n";
     private static final String CMD_SET_CONFIG = "SET_CONFIG:";
     private static final String CMD_GET_FILES = "GET_FILES\n";
+    private static final String CMD_GET_FILES_GEN = "GET_FILES_GEN\n";
+    private static final String CMD_GET_FILES_PAGE = "GET_FILES_PAGE:";
+    private static final String CMD_SUBSCRIBE_FILES = "SUBSCRIBE_FILES\n";
     private static final String CMD_UPLOAD_FILE = "UPLOAD_FILE:";
     private static final String CMD_DOWNLOAD_FILE = "DOWNLOAD_FILE:";
+    private static final String CMD_DOWNLOAD_RANGE = "DOWNLOAD_RANGE:";
     private static final String CMD_DELETE_FILE = "DELETE_FILE:";
     private static final String CMD_SEND_LORA = "SEND_LORA:";
+    private static final String CMD_SEND_LORA_PACED = "SEND_LORA_PACED:";
+    private static final String CMD_SEND_LORA_FOUNTAIN = "SEND_LORA_FOUNTAIN:";
+    private static final String CMD_FOUNTAIN_ACK = "FOUNTAIN_ACK:";
+    private static final String CMD_SEND_LORA_FRAMES = "SEND_LORA_FRAMES:";
     private static final String CMD_GET_STATUS = "GET_STATUS\n";
+    private static final String CMD_CANCEL = "CANCEL\n";
+    private static final String CMD_LINK_TEST = "LINK_TEST:";
+    private static final String CMD_SET_LINK_CONFIG = "SET_LINK_CONFIG:";
+    private static final String CMD_SET_ACK = "SET_ACK:";
 
     // ==================== CONFIGURACIÓN ====================
-    private static final int CHUNK_SIZE = 512; // Tamaño de chunks para enviar archivos
+    public static final int CHUNK_SIZE = 512; // Tamaño de chunks para enviar archivos
 
     /**
      * Constructor
@@ -63,10 +76,10 @@ public class LoRaConfigManager {
 
     /**
      * Configurar parámetros LoRa
-     * @param bandwidth Ancho de banda (125, 250, 500 kHz)
-     * @param spreadingFactor Factor de dispersión (7, 9, 12)
-     * @param codingRate Tasa de codificación (5, 7, 8 = 4/5, 4/7, 4/8)
-     * @param ackInterval Intervalo de ACK (3, 5, 7, 10, 15)
+     * @param bandwidth Ancho de banda (7.8 a 500 kHz, ver LoRaConfig.BANDWIDTHS)
+     * @param spreadingFactor Factor de dispersión (5 a 12)
+     * @param codingRate Tasa de codificación (5 a 8 = 4/5 ... 4/8)
+     * @param ackInterval Intervalo de ACK (3 a 15)
      */
     public void setConfig(float bandwidth, int spreadingFactor, int codingRate, int ackInterval) {
         if (!isConnected()) {
@@ -76,7 +89,11 @@ public class LoRaConfigManager {
 
         try {
             JSONObject config = new JSONObject();
-            config.put("bw", (int) bandwidth);
+            if (bandwidth == (int) bandwidth) {
+                config.put("bw", (int) bandwidth);
+            } else {
+                config.put("bw", (double) bandwidth);
+            }
             config.put("sf", spreadingFactor);
             config.put("cr", codingRate);
             config.put("ack", ackInterval);
@@ -101,7 +118,7 @@ public class LoRaConfigManager {
         }
 
         if (!config.isValid()) {
-            Log.e(TAG, "Configuración inválida");
+            Log.e(TAG, "Configuración inválida: " + config.getValidationError());
             return;
         }
 
@@ -111,6 +128,85 @@ public class LoRaConfigManager {
         bluetoothService.write(command);
     }
 
+    /**
+     * Cambiar la configuración en ambos extremos del enlace
+     * El TX la envía al RX con la config actual, espera su confirmación y
+     * cambian los dos a la vez. Respuesta: [LINK_CONFIG_OK] o [LINK_CONFIG_FAIL]
+     * (en caso de fallo ambos siguen con la config anterior)
+     */
+    public void setLinkConfig(LoRaConfig config) {
+        if (!isConnected()) {
+            Log.w(TAG, "No conectado, no se puede configurar el enlace");
+            return;
+        }
+
+        if (!config.isValid()) {
+            Log.e(TAG, "Configuración inválida: " + config.getValidationError());
+            return;
+        }
+
+        String command = CMD_SET_LINK_CONFIG + config.toJson() + "\n";
+
+        Log.d(TAG, "Configurando enlace: " + command);
+        bluetoothService.write(command);
+    }
+
+    /**
+     * Cambiar intervalo de ACK y ventana durante un envío LoRa
+     * El TX lo aplica (y lo anuncia al RX) al empezar la siguiente ráfaga
+     * @param ackInterval Paquetes por ráfaga (3 a 15)
+     * @param window Ráfagas sin confirmar permitidas
+     */
+    public void setAckSettings(int ackInterval, int window) {
+        if (!isConnected()) {
+            Log.w(TAG, "No conectado, no se puede ajustar el ACK");
+            return;
+        }
+
+        try {
+            JSONObject settings = new JSONObject();
+            settings.put("ack", ackInterval);
+            settings.put("win", window);
+
+            String command = CMD_SET_ACK + settings.toString() + "\n";
+
+            Log.d(TAG, "Ajustando ACK: " + command);
+            bluetoothService.write(command);
+
+        } catch (JSONException e) {
+            Log.e(TAG, "Error creando JSON de ACK", e);
+        }
+    }
+
+    /**
+     * Medir un punto de la prueba de enlace
+     * El TX cambia ambos extremos a la config, envía los paquetes de prueba,
+     * responde [LINK_TEST:{...}] con el resumen del RX y vuelve a la config anterior
+     * @param packets Paquetes de prueba a enviar
+     * @param payloadBytes Tamaño de cada paquete
+     */
+    public void runLinkTest(LoRaConfig config, int packets, int payloadBytes) {
+        if (!isConnected()) {
+            Log.w(TAG, "No conectado, no se puede probar el enlace");
+            return;
+        }
+
+        try {
+            JSONObject test = new JSONObject();
+            test.put("cfg", new JSONObject(config.toJson()));
+            test.put("count", packets);
+            test.put("size", payloadBytes);
+
+            String command = CMD_LINK_TEST + test.toString() + "\n";
+
+            Log.d(TAG, "Prueba de enlace: " + command);
+            bluetoothService.write(command);
+
+        } catch (JSONException e) {
+            Log.e(TAG, "Error creando JSON de prueba de enlace", e);
+        }
+    }
+
     // ==================== GESTIÓN DE ARCHIVOS ====================
 
     /**
@@ -126,6 +222,67 @@ public class LoRaConfigManager {
         bluetoothService.write(CMD_GET_FILES);
     }
 
+    /**
+     * Listar una página de archivos
+     * Respuesta: [PAGE_START:offset:total:gen], líneas nombre,tamaño, [PAGE_END:siguienteOffset]
+     * @param offset Primer archivo de la página
+     * @param limit Archivos por página
+     * @param sort Orden en el dispositivo ("name", "size" o "time")
+     * @param filter Prefijo de nombre (vacío = todos)
+     */
+    public void listFilesPage(int offset, int limit, String sort, String filter) {
+        if (!isConnected()) {
+            Log.w(TAG, "No conectado, no se puede listar archivos");
+            return;
+        }
+
+        try {
+            JSONObject query = new JSONObject();
+            query.put("offset", offset);
+            query.put("limit", limit);
+            query.put("sort", sort);
+            if (filter != null && !filter.isEmpty()) {
+                query.put("filter", filter);
+            }
+
+            String command = CMD_GET_FILES_PAGE + query.toString() + "\n";
+
+            Log.d(TAG, "Solicitando página de archivos: " + command);
+            bluetoothService.write(command);
+
+        } catch (JSONException e) {
+            Log.e(TAG, "Error creando JSON de página", e);
+        }
+    }
+
+    /**
+     * Pedir solo la generación del sistema de archivos ([FILES_GEN:n])
+     * Permite saber si el listado cambió sin transferirlo
+     */
+    public void getFilesGeneration() {
+        if (!isConnected()) {
+            Log.w(TAG, "No conectado, no se puede consultar generación");
+            return;
+        }
+
+        Log.d(TAG, "Solicitando generación de archivos");
+        bluetoothService.write(CMD_GET_FILES_GEN);
+    }
+
+    /**
+     * Suscribirse a eventos de archivos ([FILE_EVT:...])
+     * La suscripción dura lo que dure la conexión BLE
+     */
+    public void subscribeFileEvents() {
+        if (!isConnected()) {
+            Log.w(TAG, "No conectado, no se puede suscribir");
+            return;
+        }
+
+        Log.d(TAG, "Suscribiendo a eventos de archivos");
+        bluetoothService.write(CMD_SUBSCRIBE_FILES);
+    }
+
     /**
      * Solicitar descarga de un archivo desde el ESP32
      * @param filename Nombre del archivo (con o sin /)
@@ -147,6 +304,37 @@ public class LoRaConfigManager {
         bluetoothService.write(command);
     }
 
+    /**
+     * Descargar parte de un archivo (respuesta [RANGE_START] ... [RANGE_END])
+     * @param offset Primer byte
+     * @param length Bytes como mucho; el gateway devuelve menos si el archivo no llega
+     */
+    public void downloadRange(String filename, long offset, int length) {
+        if (!isConnected()) {
+            Log.w(TAG, "No conectado, no se puede descargar");
+            return;
+        }
+
+        if (!filename.startsWith("/")) {
+            filename = "/" + filename;
+        }
+
+        try {
+            JSONObject json = new JSONObject();
+            json.put("file", filename);
+            json.put("offset", offset);
+            json.put("len", length);
+
+            String command = CMD_DOWNLOAD_RANGE + json.toString() + "\n";
+
+            Log.d(TAG, "Solicitando rango: " + command);
+            bluetoothService.write(command);
+
+        } catch (JSONException e) {
+            Log.e(TAG, "Error creando comando de rango", e);
+        }
+    }
+
     /**
      * Eliminar archivo del ESP32
      * @param filename Nombre del archivo
@@ -189,21 +377,175 @@ public class LoRaConfigManager {
         bluetoothService.write(command);
     }
 
+    /**
+     * Enviar archivo por LoRa respetando un ciclo de trabajo
+     * El TX espera ToA * (1/dc - 1) tras cada paquete
+     * @param dutyCycle Fracción de tiempo en aire permitida (1.0 = sin pausas)
+     */
+    public void sendFileViaLoRa(String filename, double dutyCycle) {
+        if (dutyCycle >= 1.0) {
+            sendFileViaLoRa(filename);
+            return;
+        }
+
+        if (!isConnected()) {
+            Log.w(TAG, "No conectado, no se puede enviar por LoRa");
+            return;
+        }
+
+        if (!filename.startsWith("/")) {
+            filename = "/" + filename;
+        }
+
+        try {
+            JSONObject json = new JSONObject();
+            json.put("file", filename);
+            json.put("dc", dutyCycle);
+
+            String command = CMD_SEND_LORA_PACED + json.toString() + "\n";
+
+            Log.d(TAG, "Enviando por LoRa con pausas: " + command);
+            bluetoothService.write(command);
+
+        } catch (JSONException e) {
+            Log.e(TAG, "Error creando comando de envío", e);
+        }
+    }
+
+    /**
+     * Emitir por LoRa un archivo de símbolos (FountainCode), sin ACKs por ráfaga
+     * El TX envía cada registro como un paquete, en bucle, hasta ver el ACK de fin
+     * @param filename Archivo de símbolos ya subido al TX
+     * @param recordBytes Bytes de cada registro (un paquete LoRa)
+     * @param symbols Registros en el archivo
+     * @param dutyCycle Fracción de tiempo en aire permitida (1.0 = sin pausas)
+     */
+    public void sendFileViaFountain(String filename, int recordBytes, int symbols, double dutyCycle) {
+        if (!isConnected()) {
+            Log.w(TAG, "No conectado, no se puede enviar por LoRa");
+            return;
+        }
+
+        if (!filename.startsWith("/")) {
+            filename = "/" + filename;
+        }
+
+        try {
+            JSONObject json = new JSONObject();
+            json.put("file", filename);
+            json.put("rec", recordBytes);
+            json.put("n", symbols);
+            if (dutyCycle < 1.0) {
+                json.put("dc", dutyCycle);
+            }
+
+            String command = CMD_SEND_LORA_FOUNTAIN + json.toString() + "\n";
+
+            Log.d(TAG, "Enviando por LoRa con código fuente: " + command);
+            bluetoothService.write(command);
+
+        } catch (JSONException e) {
+            Log.e(TAG, "Error creando comando de envío", e);
+        }
+    }
+
+    /**
+     * Emitir por LoRa un archivo de tramas empaquetado por la app (LoRaPacketizer)
+     * El TX emite cada registro [longitud][trama] tal cual, sin volver a trocear
+     * @param filename Archivo de tramas ya subido al TX
+     * @param frames Tramas en el archivo
+     * @param dutyCycle Fracción de tiempo en aire permitida (1.0 = sin pausas)
+     */
+    public void sendFileViaFrames(String filename, int frames, double dutyCycle) {
+        if (!isConnected()) {
+            Log.w(TAG, "No conectado, no se puede enviar por LoRa");
+            return;
+        }
+
+        if (!filename.startsWith("/")) {
+            filename = "/" + filename;
+        }
+
+        try {
+            JSONObject json = new JSONObject();
+            json.put("file", filename);
+            json.put("n", frames);
+            if (dutyCycle < 1.0) {
+                json.put("dc", dutyCycle);
+            }
+
+            String command = CMD_SEND_LORA_FRAMES + json.toString() + "\n";
+
+            Log.d(TAG, "Enviando tramas por LoRa: " + command);
+            bluetoothService.write(command);
+
+        } catch (JSONException e) {
+            Log.e(TAG, "Error creando comando de envío", e);
+        }
+    }
+
+    /**
+     * Pedir al RX que emita el ACK de fin: el archivo de símbolos ya se decodificó
+     * @param filename Archivo de símbolos guardado en el RX
+     */
+    public void sendFountainAck(String filename) {
+        if (!isConnected()) {
+            Log.w(TAG, "No conectado, no se puede confirmar");
+            return;
+        }
+
+        if (!filename.startsWith("/")) {
+            filename = "/" + filename;
+        }
+
+        String command = CMD_FOUNTAIN_ACK + filename + "\n";
+
+        Log.d(TAG, "Confirmando decodificación: " + command);
+        bluetoothService.write(command);
+    }
+
     // ==================== SUBIDA DE ARCHIVOS ====================
 
     /**
      * Subir archivo al ESP32 por Bluetooth
+     * Bloquea hasta que todos los chunks se hayan escrito (llamar fuera del hilo UI)
      * @param localFile Archivo local a subir
+     * @return true si se envió completo, false si falló o fue cancelado
+     */
+    public boolean uploadFile(File localFile) {
+        return uploadFile(localFile, localFile.getName(), null, null);
+    }
+
+    /**
+     * Subir un archivo preparado en la StagingCache
+     * El SHA-256 ya calculado viaja en la metadata para que el ESP32 pueda verificarlo,
+     * y cada chunk se comprueba antes contra el CRC guardado al prepararlo
+     */
+    public boolean uploadFile(StagingCache.StagedFile staged) {
+        return uploadFile(staged.file, staged.name, staged.sha256, staged.chunkCrcs);
+    }
+
+    /**
+     * Subir archivo con un nombre remoto distinto al local
+     * @param remoteName Nombre con el que se guarda en el ESP32
+     * @param sha256 Hash del contenido (null si no se conoce)
+     */
+    public boolean uploadFile(File localFile, String remoteName, String sha256) {
+        return uploadFile(localFile, remoteName, sha256, null);
+    }
+
+    /**
+     * @param chunkCrcs CRC32 de cada chunk de CHUNK_SIZE (null para no comprobar)
      */
-    public void uploadFile(File localFile) {
+    private boolean uploadFile(File localFile, String remoteName, String sha256, long[] chunkCrcs) {
         if (!isConnected()) {
             Log.w(TAG, "No conectado, no se puede subir archivo");
-            return;
+            return false;
         }
 
         if (!localFile.exists() || !localFile.isFile()) {
             Log.e(TAG, "Archivo no existe: " + localFile.getPath());
-            return;
+            return false;
         }
 
         try {
@@ -212,11 +554,20 @@ public class LoRaConfigManager {
 
             if (fileData == null) {
                 Log.e(TAG, "Error leyendo archivo");
-                return;
+                return false;
+            }
+
+            // Copia en caché dañada: no subir algo que el ESP32 rechazaría por el SHA-256
+            int badChunk = firstBadChunk(fileData, chunkCrcs);
+            if (badChunk >= 0) {
+                Log.e(TAG, "Copia local dañada en el chunk " + (badChunk + 1) + ": " + localFile.getPath());
+                return false;
             }
 
+            int generation = bluetoothService.beginBulkTransfer();
+
             // Enviar metadata primero
-            sendUploadMetadata(localFile.getName(), fileData.length);
+            sendUploadMetadata(remoteName, fileData.length, sha256);
 
             // Esperar un poco antes de enviar datos
             try {
@@ -226,21 +577,42 @@ public class LoRaConfigManager {
             }
 
             // Enviar datos en chunks
-            sendFileInChunks(fileData);
+            return sendFileInChunks(fileData, generation);
 
         } catch (Exception e) {
             Log.e(TAG, "Error subiendo archivo", e);
+            return false;
+        }
+    }
+
+    /**
+     * Cancelar la transferencia en curso
+     * Descarta los chunks pendientes y avisa al ESP32 para que aborte
+     */
+    public void cancelTransfer() {
+        if (bluetoothService == null) {
+            return;
+        }
+
+        Log.d(TAG, "Cancelando transferencia");
+        bluetoothService.cancelBulkTransfer();
+
+        if (isConnected()) {
+            bluetoothService.write(CMD_CANCEL);
         }
     }
 
     /**
      * Enviar metadata de archivo a subir
      */
-    private void sendUploadMetadata(String filename, long fileSize) {
+    private void sendUploadMetadata(String filename, long fileSize, String sha256) {
         try {
             JSONObject metadata = new JSONObject();
             metadata.put("filename", filename);
             metadata.put("size", fileSize);
+            if (sha256 != null) {
+                metadata.put("sha256", sha256);
+            }
 
             String command = CMD_UPLOAD_FILE + metadata.toString() + "\n";
 
@@ -254,8 +626,9 @@ public class LoRaConfigManager {
 
     /**
      * Enviar archivo en chunks por Bluetooth
+     * Los chunks van por la cola BULK; los comandos de control se intercalan entre ellos
      */
-    private void sendFileInChunks(byte[] fileData) {
+    private boolean sendFileInChunks(byte[] fileData, int generation) {
         int totalChunks = (int) Math.ceil((double) fileData.length / CHUNK_SIZE);
 
         Log.d(TAG, "Enviando archivo en " + totalChunks + " chunks");
@@ -276,20 +649,47 @@ public class LoRaConfigManager {
             // Copiar datos
             System.arraycopy(fileData, start, chunk, 5, chunkSize);
 
-            // Enviar chunk
-            bluetoothService.write(chunk);
-
-            Log.d(TAG, "Chunk " + (i + 1) + "/" + totalChunks + " enviado (" + chunkSize + " bytes)");
-
-            // Pequeña pausa entre chunks
-            try {
-                Thread.sleep(50);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            // Encolar chunk (la pausa entre chunks la aplica el WriteScheduler)
+            if (!bluetoothService.writeBulk(chunk, generation)) {
+                Log.w(TAG, "Subida interrumpida en chunk " + (i + 1) + "/" + totalChunks);
+                return false;
             }
         }
 
+        if (!bluetoothService.awaitBulkTransfer(generation)) {
+            Log.w(TAG, "Subida cancelada o con escrituras fallidas");
+            return false;
+        }
+
         Log.d(TAG, "Archivo enviado completamente");
+        Log.d(TAG, "Latencias de cola: " + bluetoothService.getWriteScheduler().getStats());
+        return true;
+    }
+
+    /**
+     * Primer chunk cuyo CRC32 no coincide con el índice guardado
+     * @return -1 si todos coinciden o no hay índice
+     */
+    private static int firstBadChunk(byte[] fileData, long[] chunkCrcs) {
+        if (chunkCrcs == null) {
+            return -1;
+        }
+
+        int totalChunks = (fileData.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (chunkCrcs.length != totalChunks) {
+            return Math.min(chunkCrcs.length, totalChunks);
+        }
+
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < totalChunks; i++) {
+            int start = i * CHUNK_SIZE;
+            crc.reset();
+            crc.update(fileData, start, Math.min(CHUNK_SIZE, fileData.length - start));
+            if (crc.getValue() != chunkCrcs[i]) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
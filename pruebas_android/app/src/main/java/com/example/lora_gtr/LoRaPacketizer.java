@@ -0,0 +1,336 @@
+package com.example.lora_gtr;
+
+import android.util.Log;
+
+import com.example.lora_gtr.models.LoRaConfig;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Empaquetado de archivos en tramas LoRa listas para emitir.
+ *
+ * La app decide el tamaño de trama según el payload máximo de la
+ * configuración (255 bytes o lo que permita el dwell time de la región)
+ * y el gateway solo las emite tal cual. Cada trama lleva una cabecera de
+ * 2 bytes con su número de secuencia; el resto (tamaño del archivo,
+ * tramas por bloque, paridad y CRC32) viaja una vez en la trama
+ * descriptora, que se emite al principio y al final.
+ *
+ * Las tramas se agrupan en bloques de BLOCK_DATA_FRAMES tramas de datos
+ * más, opcionalmente, tramas de paridad Reed-Solomon: con cualquier
+ * combinación de tantas tramas como datos tenga el bloque se recupera
+ * entero sin retransmitir.
+ *
+ * Archivo de tramas (el que se sube al TX y el que guarda el RX):
+ * registros [longitud u8][trama]. Secuencia 0xFFFF = descriptora.
+ */
+public final class LoRaPacketizer {
+
+    private static final String TAG = "LoRaPacketizer";
+
+    public static final String EXTENSION = ".frm";
+    public static final int HEADER_BYTES = 2;
+    public static final int BLOCK_DATA_FRAMES = 16;
+    public static final double[] PARITY_RATIOS = {0, 0.125, 0.25};
+    public static final String[] PARITY_LABELS = {"Sin FEC", "FEC 12.5%", "FEC 25%"};
+
+    private static final int DESCRIPTOR_SEQ = 0xFFFF;
+    private static final int DESCRIPTOR_VERSION = 1;
+    private static final int DESCRIPTOR_BYTES = HEADER_BYTES + 12;
+    private static final int MAX_FRAMES = 0xFFFE;
+
+    /**
+     * Parámetros de un archivo empaquetado
+     */
+    public static class Layout {
+        public final long fileSize;
+        public final int frameData;       // Bytes de datos por trama
+        public final int blockData;       // Tramas de datos por bloque
+        public final int blockParity;     // Tramas de paridad por bloque
+        public final int dataFrames;
+        public final int blocks;
+
+        Layout(long fileSize, int frameData, int blockData, int blockParity) {
+            this.fileSize = fileSize;
+            this.frameData = frameData;
+            this.blockData = blockData;
+            this.blockParity = blockParity;
+            this.dataFrames = (int) Math.max(1, (fileSize + frameData - 1) / frameData);
+            this.blocks = (dataFrames + blockData - 1) / blockData;
+        }
+
+        /**
+         * Tramas de datos del bloque (el último puede ir incompleto)
+         */
+        public int dataInBlock(int block) {
+            return block < blocks - 1 ? blockData : dataFrames - block * blockData;
+        }
+
+        /**
+         * Tramas emitidas en total, con paridad y las dos descriptoras
+         */
+        public int getTotalFrames() {
+            return dataFrames + blocks * blockParity + 2;
+        }
+
+        /**
+         * Bytes de payload LoRa de la trama de datos más habitual
+         */
+        public int getFrameBytes() {
+            return HEADER_BYTES + frameData;
+        }
+    }
+
+    private LoRaPacketizer() {
+    }
+
+    /**
+     * Calcular el empaquetado de un archivo para una configuración
+     * @param parityRatio Tramas de paridad por trama de datos (0 = sin FEC)
+     */
+    public static Layout layoutFor(long fileSize, LoRaConfig config, double parityRatio) {
+        int frameData = Math.max(DESCRIPTOR_BYTES, config.getMaxPayloadBytes()) - HEADER_BYTES;
+        int parity = (int) Math.ceil(BLOCK_DATA_FRAMES * parityRatio);
+        return new Layout(fileSize, frameData, BLOCK_DATA_FRAMES, parity);
+    }
+
+    // ==================== EMPAQUETAR ====================
+
+    /**
+     * Escribir el archivo de tramas
+     * @return el empaquetado usado
+     */
+    public static Layout writeFrames(File source, File target, LoRaConfig config, double parityRatio) throws IOException {
+        byte[] data = readAll(source);
+        Layout layout = layoutFor(data.length, config, parityRatio);
+
+        if (layout.getTotalFrames() > MAX_FRAMES) {
+            throw new IOException("Archivo demasiado grande: " + layout.getTotalFrames() + " tramas");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        byte[] descriptor = descriptor(layout, crc.getValue());
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+            writeRecord(out, descriptor);
+
+            int seq = 0;
+            for (int block = 0; block < layout.blocks; block++) {
+                int count = layout.dataInBlock(block);
+                byte[][] frames = new byte[count][];
+                for (int i = 0; i < count; i++) {
+                    int frame = block * layout.blockData + i;
+                    int offset = frame * layout.frameData;
+                    int length = Math.min(layout.frameData, Math.max(0, data.length - offset));
+
+                    // Con paridad todas las tramas del bloque miden lo mismo
+                    frames[i] = new byte[layout.blockParity > 0 ? layout.frameData : length];
+                    System.arraycopy(data, offset, frames[i], 0, length);
+                    writeRecord(out, frame(seq++, frames[i]));
+                }
+
+                if (layout.blockParity > 0) {
+                    for (byte[] parity : ReedSolomon.encode(frames, layout.blockParity)) {
+                        writeRecord(out, frame(seq++, parity));
+                    }
+                }
+            }
+
+            writeRecord(out, descriptor);
+        }
+
+        Log.d(TAG, source.getName() + ": " + layout.getTotalFrames() + " tramas de " +
+                layout.getFrameBytes() + " bytes, " + layout.blockParity + " de paridad por bloque");
+        return layout;
+    }
+
+    // ==================== DESEMPAQUETAR ====================
+
+    /**
+     * Resultado de reconstruir un archivo de tramas recibido
+     */
+    public static class Result {
+        public final byte[] data;           // null si no se pudo reconstruir
+        public final int received;
+        public final int missing;           // Tramas de datos perdidas
+        public final int recovered;         // Recuperadas con la paridad
+        public final String error;
+
+        Result(byte[] data, int received, int missing, int recovered, String error) {
+            this.data = data;
+            this.received = received;
+            this.missing = missing;
+            this.recovered = recovered;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Reconstruir el archivo con las tramas que guardó el RX
+     */
+    public static Result readFrames(byte[] stored) {
+        Layout layout = null;
+        long expectedCrc = 0;
+        int received = 0;
+
+        // Primera pasada: buscar una descriptora (puede haberse perdido la primera)
+        int offset = 0;
+        while (offset < stored.length) {
+            int length = stored[offset] & 0xFF;
+            if (offset + 1 + length > stored.length || length < HEADER_BYTES) {
+                break;
+            }
+            if (seqOf(stored, offset + 1) == DESCRIPTOR_SEQ && length >= DESCRIPTOR_BYTES) {
+                int p = offset + 1 + HEADER_BYTES;
+                if ((stored[p] & 0xFF) == DESCRIPTOR_VERSION) {
+                    long size = readInt(stored, p + 1) & 0xFFFFFFFFL;
+                    int frameData = stored[p + 5] & 0xFF;
+                    int blockData = stored[p + 6] & 0xFF;
+                    int blockParity = stored[p + 7] & 0xFF;
+                    expectedCrc = readInt(stored, p + 8) & 0xFFFFFFFFL;
+                    layout = new Layout(size, frameData, blockData, blockParity);
+                    break;
+                }
+            }
+            offset += 1 + length;
+        }
+
+        if (layout == null) {
+            return new Result(null, 0, 0, 0, "No llegó ninguna trama descriptora");
+        }
+
+        int perBlock = layout.blockData + layout.blockParity;
+        byte[][][] blocks = new byte[layout.blocks][][];
+        for (int b = 0; b < layout.blocks; b++) {
+            blocks[b] = new byte[layout.dataInBlock(b) + layout.blockParity][];
+        }
+
+        offset = 0;
+        while (offset < stored.length) {
+            int length = stored[offset] & 0xFF;
+            if (offset + 1 + length > stored.length || length < HEADER_BYTES) {
+                break;
+            }
+            int seq = seqOf(stored, offset + 1);
+            if (seq != DESCRIPTOR_SEQ) {
+                int block = seq / perBlock;
+                int index = seq % perBlock;
+                if (block < layout.blocks && index < blocks[block].length) {
+                    // En el último bloque la paridad va justo detrás de sus datos
+                    byte[] payload = new byte[length - HEADER_BYTES];
+                    System.arraycopy(stored, offset + 1 + HEADER_BYTES, payload, 0, payload.length);
+                    if (blocks[block][index] == null) {
+                        received++;
+                    }
+                    blocks[block][index] = payload;
+                }
+            }
+            offset += 1 + length;
+        }
+
+        int missing = 0;
+        int recovered = 0;
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) layout.fileSize);
+
+        for (int b = 0; b < layout.blocks; b++) {
+            int count = layout.dataInBlock(b);
+            int lost = 0;
+            for (int i = 0; i < count; i++) {
+                if (blocks[b][i] == null) {
+                    lost++;
+                }
+            }
+            missing += lost;
+
+            if (lost > 0) {
+                if (layout.blockParity == 0 || !ReedSolomon.decode(blocks[b], count)) {
+                    return new Result(null, received, missing, recovered,
+                            "Bloque " + b + ": faltan " + lost + " tramas y la paridad no alcanza");
+                }
+                recovered += lost;
+            }
+            for (int i = 0; i < count; i++) {
+                out.write(blocks[b][i], 0, blocks[b][i].length);
+            }
+        }
+
+        byte[] all = out.toByteArray();
+        if (all.length < layout.fileSize) {
+            return new Result(null, received, missing, recovered, "Archivo incompleto");
+        }
+        byte[] data = new byte[(int) layout.fileSize];
+        System.arraycopy(all, 0, data, 0, data.length);
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if (crc.getValue() != expectedCrc) {
+            return new Result(null, received, missing, recovered, "CRC del archivo no coincide");
+        }
+        return new Result(data, received, missing, recovered, null);
+    }
+
+    // ==================== TRAMAS ====================
+
+    private static byte[] descriptor(Layout layout, long crc) {
+        byte[] body = new byte[12];
+        body[0] = (byte) DESCRIPTOR_VERSION;
+        writeInt(body, 1, (int) layout.fileSize);
+        body[5] = (byte) layout.frameData;
+        body[6] = (byte) layout.blockData;
+        body[7] = (byte) layout.blockParity;
+        writeInt(body, 8, (int) crc);
+        return frame(DESCRIPTOR_SEQ, body);
+    }
+
+    private static byte[] frame(int seq, byte[] payload) {
+        byte[] frame = new byte[HEADER_BYTES + payload.length];
+        frame[0] = (byte) (seq >> 8);
+        frame[1] = (byte) seq;
+        System.arraycopy(payload, 0, frame, HEADER_BYTES, payload.length);
+        return frame;
+    }
+
+    private static void writeRecord(OutputStream out, byte[] frame) throws IOException {
+        out.write(frame.length);
+        out.write(frame);
+    }
+
+    private static int seqOf(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >> 24);
+        buffer[offset + 1] = (byte) (value >> 16);
+        buffer[offset + 2] = (byte) (value >> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Archivo truncado: " + file.getName());
+                }
+                offset += read;
+            }
+        }
+        return data;
+    }
+}
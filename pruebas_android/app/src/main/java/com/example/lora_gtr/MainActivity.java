@@ -7,7 +7,9 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Environment;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 import android.view.Menu;
@@ -22,9 +24,23 @@ import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
 
+import com.example.lora_gtr.models.FileItem;
+import com.example.lora_gtr.models.LoRaConfig;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 
-public class MainActivity extends AppCompatActivity implements BLEService.ConnectionCallback {
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class MainActivity extends AppCompatActivity implements GatewaySession.Callback {
 
     private static final String TAG = "MainActivity";
 
@@ -39,22 +55,58 @@ public class MainActivity extends AppCompatActivity implements BLEService.Connec
 
     // Componentes Bluetooth
     private BluetoothAdapter bluetoothAdapter;
-    private BLEService bluetoothService;
-    private LoRaConfigManager configManager;
+
+    // Una sesión por gateway conectado (BLE, protocolo, colas, índice);
+    // la interfaz muestra la enfocada y las demás siguen en segundo plano
+    private GatewaySessionManager sessions;
+
+    // Las líneas recibidas se procesan fuera del hilo UI y del hilo de callbacks BLE
+    private final ExecutorService protocolExecutor = Executors.newSingleThreadExecutor();
+
+    // Copia en disco por gateway (listado + config) para arranque instantáneo
+    private static final long STORE_SAVE_DELAY_MS = 2000;
+    private GatewayStore gatewayStore;
+    private final ExecutorService storageExecutor = Executors.newSingleThreadExecutor();
+    private final Handler storeHandler = new Handler(Looper.getMainLooper());
+    private final Runnable saveSnapshotRunnable = this::saveGatewaySnapshots;
+    private final Set<GatewaySession> pendingSnapshots = ConcurrentHashMap.newKeySet();
+    private boolean offlineBrowsing = false;
+
+    // Copias preparadas para subir (cacheDir/staging), con presupuesto LRU
+    private static final long STAGING_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    private StagingCache stagingCache;
+
+    // Diccionarios de compresión compartidos con los gateways
+    private static final String DICTIONARY_DIR = "dictionaries";
+    private CompressionDictionary compressionDictionary;
+
+    // Reducción de imágenes/audio antes de transmitir (hilo propio)
+    private MediaReducer mediaReducer;
+
+    // Principios de archivos ya leídos (vistas previas), para reanudar descargas
+    private static final long PARTIAL_CACHE_MAX_BYTES = 8L * 1024 * 1024;
+    private PartialDownloadCache partialCache;
+
+    // Registro de la sincronización automática (BackgroundSync, una por sesión)
+    private static final int SYNC_LOG_ENTRIES = 20;
 
     // UI Components
     private BottomNavigationView bottomNavigationView;
 
-    // Estado
-    private String connectedDeviceName = "";
-    private int currentMode = MODE_NONE;
-    private boolean isConnected = false;
-
     // Tags para fragments
     private static final String TAG_CONNECTION = "ConnectionFragment";
     private static final String TAG_FILE = "FileFragment";
     private static final String TAG_SETTING = "SettingFragment";
 
+    // Agrupado de comandos BLE (GET_CONFIG + GET_FILES en una escritura)
+    private static final boolean WRITE_COALESCING = true;
+    private static final long WRITE_FLUSH_DELAY_MS = 15;
+    private static final int WRITE_MAX_BATCH = 4;
+
+    // Listado paginado
+    private static final int FILE_PAGE_SIZE = 50;
+    private static final String FILE_SORT = "name";
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -83,10 +135,15 @@ public class MainActivity extends AppCompatActivity implements BLEService.Connec
         // Solicitar permisos
         checkPermissions();
 
-        // Inicializar servicio BLE
-        Log.d(TAG, "🔧 Inicializando BLEService...");
-        bluetoothService = new BLEService(this, handler, this);
-        configManager = new LoRaConfigManager(bluetoothService);
+        // Inicializar servicio BLE (una sesión libre a la espera de conectar)
+        Log.d(TAG, "🔧 Inicializando sesiones BLE...");
+        stagingCache = new StagingCache(getCacheDir(), STAGING_CACHE_MAX_BYTES, LoRaConfigManager.CHUNK_SIZE);
+        storageExecutor.execute(stagingCache::cleanup);
+        sessions = new GatewaySessionManager(this::createSession);
+        gatewayStore = new GatewayStore(this);
+        compressionDictionary = new CompressionDictionary(new File(getFilesDir(), DICTIONARY_DIR));
+        mediaReducer = new MediaReducer(getCacheDir());
+        partialCache = new PartialDownloadCache(getCacheDir(), PARTIAL_CACHE_MAX_BYTES);
         Log.d(TAG, "✅ BLEService y ConfigManager inicializados");
 
         // Setup Bottom Navigation
@@ -112,13 +169,13 @@ public class MainActivity extends AppCompatActivity implements BLEService.Connec
             int itemId = item.getItemId();
 
             Log.d(TAG, "🔘 Bottom nav seleccionado: " + itemId);
-            Log.d(TAG, "   isConnected = " + isConnected);
+            Log.d(TAG, "   isConnected = " + isConnected());
 
             if (itemId == R.id.conn) {
                 loadFragment(TAG_CONNECTION);
                 return true;
             } else if (itemId == R.id.file) {
-                if (!isConnected) {
+                if (!isConnected() && !offlineBrowsing) {
                     Log.w(TAG, "⚠️  Intento de acceder a File sin conexión");
                     Toast.makeText(this, "⚠️ Conecta un dispositivo primero", Toast.LENGTH_SHORT).show();
                     return false;
@@ -127,7 +184,7 @@ public class MainActivity extends AppCompatActivity implements BLEService.Connec
                 loadFragment(TAG_FILE);
                 return true;
             } else if (itemId == R.id.setting) {
-                if (!isConnected) {
+                if (!isConnected()) {
                     Log.w(TAG, "⚠️  Intento de acceder a Setting sin conexión");
                     Toast.makeText(this, "⚠️ Conecta un dispositivo primero", Toast.LENGTH_SHORT).show();
                     return false;
@@ -279,116 +336,290 @@ public class MainActivity extends AppCompatActivity implements BLEService.Connec
         }
     }
 
+    /**
+     * Conectar un gateway en una sesión propia, sin cerrar las que ya hay
+     */
     public void connectToDevice(BluetoothDevice device) {
         Log.d(TAG, "🔌 connectToDevice llamado");
         Log.d(TAG, "   Dispositivo: " + device.getName());
 
-        if (bluetoothService != null) {
-            bluetoothService.connect(device);
-        } else {
-            Log.e(TAG, "❌ bluetoothService es null!");
+        // Ya abierto: solo enfocarlo
+        GatewaySession existing = sessions.find(device.getAddress());
+        if (existing != null) {
+            focusSession(existing);
+            Toast.makeText(this, "Ya conectado a " + device.getName(), Toast.LENGTH_SHORT).show();
+            return;
         }
+
+        if (offlineBrowsing) {
+            offlineBrowsing = false;
+            focused().getFileIndex().clear();
+            focused().setLastConfig(null);
+        }
+
+        GatewaySession session = sessions.open(device.getAddress());
+        if (session == null) {
+            Toast.makeText(this, "⚠️ Máximo " + GatewaySessionManager.MAX_SESSIONS +
+                    " gateways a la vez. Desconecta uno primero.", Toast.LENGTH_LONG).show();
+            return;
+        }
+        session.setPagedListingSupported(true);
+        focusSession(session);
+
+        // Pintar desde la copia en disco mientras se conecta
+        loadGatewaySnapshot(session, device.getAddress());
+        session.getBluetoothService().connect(device);
     }
 
+    /**
+     * Desconectar el gateway enfocado (los demás siguen conectados)
+     */
     public void disconnectDevice() {
         Log.d(TAG, "🔌 disconnectDevice llamado");
+        GatewaySession session = focused();
+
+        // Guardar lo último visto antes de olvidarlo
+        pendingSnapshots.remove(session);
+        saveGatewaySnapshot(session);
 
-        if (bluetoothService != null) {
-            bluetoothService.disconnect();
+        session.getBluetoothService().disconnect();
+        closeSession(session);
+    }
+
+    /**
+     * Olvidar una sesión desconectada y, si era la enfocada, pasar a otra
+     */
+    private void closeSession(GatewaySession session) {
+        if (!sessions.contains(session) || session.getAddress().isEmpty()) {
+            return;
         }
+        session.reset();
 
-        currentMode = MODE_NONE;
-        connectedDeviceName = "";
-        isConnected = false;
+        boolean wasFocused = session == focused();
+        GatewaySession next = sessions.nextAfter(session);
+        if (wasFocused && next != null) {
+            focusSession(next);
+        }
+        sessions.close(session);
 
-        if (getSupportActionBar() != null) {
-            getSupportActionBar().setTitle("LoRa Gateway Controller");
+        if (wasFocused && next == null) {
+            updateTitle();
+            notifyFragmentsDisconnected();
+            bottomNavigationView.setSelectedItemId(R.id.conn);
+        } else {
+            notifySessionsChanged();
         }
+    }
 
-        notifyFragmentsDisconnected();
-        bottomNavigationView.setSelectedItemId(R.id.conn);
+    // ==================== SESIONES ====================
+
+    private GatewaySession createSession(GattArbiter arbiter) {
+        GatewaySession session = new GatewaySession(this, arbiter,
+                Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS), stagingCache, this,
+                WRITE_COALESCING, WRITE_FLUSH_DELAY_MS, WRITE_MAX_BATCH);
+        session.getFileIndex().addListener(files -> scheduleSnapshotSave(session));
+        session.getBackgroundSync().setPageLoader(() -> loadNextFilePage(session));
+        return session;
     }
 
-    private final Handler handler = new Handler(new Handler.Callback() {
-        @Override
-        public boolean handleMessage(@NonNull Message msg) {
-            Log.d(TAG, "📩 Handler recibió mensaje: " + msg.what);
+    private GatewaySession focused() {
+        return sessions.getFocused();
+    }
 
-            switch (msg.what) {
-                case BLEService.MESSAGE_STATE_CHANGE:
-                    Log.d(TAG, "🔄 MESSAGE_STATE_CHANGE recibido, state = " + msg.arg1);
-                    handleStateChange(msg.arg1);
-                    break;
+    /**
+     * Mostrar otra sesión sin tocar su conexión ni la de las demás
+     */
+    private void focusSession(GatewaySession session) {
+        if (session == focused()) {
+            return;
+        }
+        Log.d(TAG, "🔀 Enfocando " + session.getDeviceName() + " (" + session.getAddress() + ")");
 
-                case BLEService.MESSAGE_READ:
-                    Log.d(TAG, "📖 MESSAGE_READ recibido");
-                    byte[] readBuf = (byte[]) msg.obj;
-                    String readMessage = new String(readBuf, 0, msg.arg1);
-                    processReceivedData(readMessage);
-                    break;
+        // Los fragments de archivos y ajustes escuchan a la sesión enfocada:
+        // quitarlos antes de cambiarla para que suelten sus listeners
+        FragmentManager fm = getSupportFragmentManager();
+        FragmentTransaction transaction = fm.beginTransaction();
+        for (String tag : new String[]{TAG_FILE, TAG_SETTING}) {
+            Fragment fragment = fm.findFragmentByTag(tag);
+            if (fragment != null) {
+                transaction.remove(fragment);
+            }
+        }
+        transaction.commitNow();
 
-                case BLEService.MESSAGE_DEVICE_NAME:
-                    Log.d(TAG, "📱 MESSAGE_DEVICE_NAME recibido");
-                    connectedDeviceName = msg.getData().getString("device_name");
-                    Log.d(TAG, "   Nombre del dispositivo: " + connectedDeviceName);
-                    Toast.makeText(MainActivity.this,
-                            "✅ Conectado a " + connectedDeviceName,
-                            Toast.LENGTH_SHORT).show();
-                    detectDeviceType(connectedDeviceName);
-                    break;
+        sessions.focus(session);
+        updateTitle();
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(null);
+        }
 
-                case BLEService.MESSAGE_TOAST:
-                    Log.d(TAG, "💬 MESSAGE_TOAST recibido");
-                    Toast.makeText(MainActivity.this,
-                            msg.getData().getString("toast"),
-                            Toast.LENGTH_SHORT).show();
-                    break;
+        // Volver a la pestaña que se estaba viendo, ya con la nueva sesión
+        int selected = bottomNavigationView.getSelectedItemId();
+        if (!session.isConnected() || selected == R.id.conn) {
+            bottomNavigationView.setSelectedItemId(R.id.conn);
+            loadFragment(TAG_CONNECTION);
+        } else {
+            loadFragment(selected == R.id.setting ? TAG_SETTING : TAG_FILE);
+        }
+        notifySessionsChanged();
+    }
 
-                default:
-                    Log.w(TAG, "⚠️  Mensaje desconocido: " + msg.what);
+    private void updateTitle() {
+        if (getSupportActionBar() == null) {
+            return;
+        }
+        GatewaySession session = focused();
+        String title;
+        if (session.getAddress().isEmpty()) {
+            title = "LoRa Gateway Controller";
+        } else if (!session.isConnected()) {
+            title = "🟡 Conectando...";
+        } else if (session.getMode() == MODE_TRANSMITTER) {
+            title = "📡 TX: " + session.getDeviceName();
+        } else if (session.getMode() == MODE_RECEIVER) {
+            title = "📥 RX: " + session.getDeviceName();
+        } else {
+            title = "🟢 Conectado a " + session.getDeviceName();
+        }
+
+        int others = sessions.getOpenCount() - (session.getAddress().isEmpty() ? 0 : 1);
+        getSupportActionBar().setTitle(others > 0 ? title + " (+" + others + ")" : title);
+    }
+
+    /**
+     * Lista de gateways conectados: enfocar uno, desconectarlo o conectar otro
+     */
+    private void showSessionsDialog() {
+        List<GatewaySession> open = new java.util.ArrayList<>();
+        for (GatewaySession session : sessions.getSessions()) {
+            if (!session.getAddress().isEmpty()) {
+                open.add(session);
             }
-            return true;
         }
-    });
+        if (open.isEmpty()) {
+            Toast.makeText(this, "No hay gateways conectados", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        String[] labels = new String[open.size()];
+        for (int i = 0; i < open.size(); i++) {
+            GatewaySession session = open.get(i);
+            GattArbiter.Stats stats = sessions.getArbiter().getStats(session.getAddress());
+            labels[i] = (session == focused() ? "▶ " : "") + session.describe() + "\n" +
+                    stats.frames + " escrituras · espera media " + stats.getAverageWaitMs() + " ms";
+        }
+
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("🔗 Gateways conectados (" + open.size() + "/" + GatewaySessionManager.MAX_SESSIONS + ")")
+                .setItems(labels, (dialog, which) -> showSessionActions(open.get(which)))
+                .setNeutralButton("➕ Conectar otro", (dialog, which) -> {
+                    bottomNavigationView.setSelectedItemId(R.id.conn);
+                    loadFragment(TAG_CONNECTION);
+                })
+                .setNegativeButton("Cerrar", null)
+                .show();
+    }
+
+    private void showSessionActions(GatewaySession session) {
+        String name = session.getDeviceName().isEmpty() ? session.getAddress() : session.getDeviceName();
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle(name)
+                .setItems(new String[]{"👁️ Mostrar", "🔌 Desconectar"}, (dialog, which) -> {
+                    if (which == 0) {
+                        focusSession(session);
+                    } else if (session == focused()) {
+                        disconnectDevice();
+                    } else {
+                        pendingSnapshots.remove(session);
+                        saveGatewaySnapshot(session);
+                        session.getBluetoothService().disconnect();
+                        closeSession(session);
+                    }
+                })
+                .setNegativeButton("Cancelar", null)
+                .show();
+    }
+
+    /**
+     * Título y pantalla de conexión reflejan cuántas sesiones hay abiertas
+     */
+    private void notifySessionsChanged() {
+        updateTitle();
+        ConnectionFragment connectionFragment =
+                (ConnectionFragment) getSupportFragmentManager().findFragmentByTag(TAG_CONNECTION);
+        if (connectionFragment != null && connectionFragment.isAdded()) {
+            connectionFragment.onConnectionStateChanged(isConnected());
+        }
+    }
+
+    @Override
+    public void onSessionMessage(GatewaySession session, Message msg) {
+        Log.d(TAG, "📩 Handler recibió mensaje: " + msg.what + " (" + session.getAddress() + ")");
+
+        switch (msg.what) {
+            case BLEService.MESSAGE_STATE_CHANGE:
+                Log.d(TAG, "🔄 MESSAGE_STATE_CHANGE recibido, state = " + msg.arg1);
+                handleStateChange(session, msg.arg1);
+                break;
+
+            case BLEService.MESSAGE_READ:
+                // Los datos se procesan en onSessionData(); aquí solo se registran
+                Log.d(TAG, "📖 MESSAGE_READ recibido (" + msg.arg1 + " bytes)");
+                break;
+
+            case BLEService.MESSAGE_DEVICE_NAME:
+                Log.d(TAG, "📱 MESSAGE_DEVICE_NAME recibido");
+                session.setDeviceName(msg.getData().getString("device_name"));
+                Log.d(TAG, "   Nombre del dispositivo: " + session.getDeviceName());
+                Toast.makeText(MainActivity.this,
+                        "✅ Conectado a " + session.getDeviceName(),
+                        Toast.LENGTH_SHORT).show();
+                detectDeviceType(session, session.getDeviceName());
+                break;
+
+            case BLEService.MESSAGE_TOAST:
+                Log.d(TAG, "💬 MESSAGE_TOAST recibido");
+                Toast.makeText(MainActivity.this,
+                        msg.getData().getString("toast"),
+                        Toast.LENGTH_SHORT).show();
+                break;
+
+            default:
+                Log.w(TAG, "⚠️  Mensaje desconocido: " + msg.what);
+        }
+    }
 
-    private void handleStateChange(int state) {
+    private void handleStateChange(GatewaySession session, int state) {
         Log.d(TAG, "📊 handleStateChange llamado con state = " + state);
 
         switch (state) {
             case BLEService.STATE_CONNECTED:
                 Log.d(TAG, "🟢 STATE_CONNECTED");
-                isConnected = true;
+                session.setConnected(true);
                 Log.d(TAG, "✅ isConnected ahora es TRUE");
-
-                if (getSupportActionBar() != null) {
-                    getSupportActionBar().setTitle("🟢 Conectado a " + connectedDeviceName);
-                }
                 break;
 
             case BLEService.STATE_CONNECTING:
                 Log.d(TAG, "🟡 STATE_CONNECTING");
-                if (getSupportActionBar() != null) {
-                    getSupportActionBar().setTitle("🟡 Conectando...");
-                }
                 break;
 
             case BLEService.STATE_NONE:
                 Log.d(TAG, "🔴 STATE_NONE");
-                isConnected = false;
-                currentMode = MODE_NONE;
-                if (getSupportActionBar() != null) {
-                    getSupportActionBar().setTitle("🔴 No conectado");
-                }
+                session.setConnected(false);
+                session.setMode(MODE_NONE);
                 break;
 
             default:
                 Log.w(TAG, "⚠️  Estado desconocido: " + state);
         }
 
-        Log.d(TAG, "Estado final: isConnected = " + isConnected);
+        if (session == focused()) {
+            updateTitle();
+        }
+        Log.d(TAG, "Estado final: isConnected = " + session.isConnected());
     }
 
-    private void detectDeviceType(String deviceName) {
+    private void detectDeviceType(GatewaySession session, String deviceName) {
         Log.d(TAG, "🔍 detectDeviceType llamado");
         Log.d(TAG, "   deviceName = " + deviceName);
 
@@ -399,41 +630,44 @@ public class MainActivity extends AppCompatActivity implements BLEService.Connec
 
         if (deviceName.toUpperCase().contains("TX")) {
             Log.d(TAG, "✅ Dispositivo TX detectado");
-            currentMode = MODE_TRANSMITTER;
-            if (getSupportActionBar() != null) {
-                getSupportActionBar().setTitle("📡 TX: " + deviceName);
-            }
+            session.setMode(MODE_TRANSMITTER);
             Toast.makeText(this, "📡 Modo TRANSMISOR activado", Toast.LENGTH_SHORT).show();
+            session.getBackgroundSync().stop();
 
         } else if (deviceName.toUpperCase().contains("RX")) {
             Log.d(TAG, "✅ Dispositivo RX detectado");
-            currentMode = MODE_RECEIVER;
-            if (getSupportActionBar() != null) {
-                getSupportActionBar().setTitle("📥 RX: " + deviceName);
-            }
+            session.setMode(MODE_RECEIVER);
             Toast.makeText(this, "📥 Modo RECEPTOR activado", Toast.LENGTH_SHORT).show();
+            session.getBackgroundSync().start(session.getAddress());
         } else {
             Log.w(TAG, "⚠️  Tipo de dispositivo desconocido");
-            currentMode = MODE_NONE;
+            session.setMode(MODE_NONE);
+            session.getBackgroundSync().stop();
             Toast.makeText(this, "⚠️ Dispositivo desconocido", Toast.LENGTH_SHORT).show();
         }
 
-        Log.d(TAG, "currentMode final = " + currentMode);
+        Log.d(TAG, "currentMode final = " + session.getMode());
+        if (session != focused()) {
+            // Conectada en segundo plano: la interfaz sigue con la enfocada
+            notifySessionsChanged();
+            return;
+        }
+        updateTitle();
         Log.d(TAG, "🔔 Llamando notifyFragmentsModeChanged()");
         notifyFragmentsModeChanged();
     }
 
     private void notifyFragmentsModeChanged() {
         Log.d(TAG, "🔔 notifyFragmentsModeChanged llamado");
-        Log.d(TAG, "   currentMode = " + currentMode);
-        Log.d(TAG, "   isConnected = " + isConnected);
+        Log.d(TAG, "   currentMode = " + getCurrentMode());
+        Log.d(TAG, "   isConnected = " + isConnected());
 
         FragmentManager fm = getSupportFragmentManager();
 
         FileFragment fileFragment = (FileFragment) fm.findFragmentByTag(TAG_FILE);
         if (fileFragment != null && fileFragment.isAdded()) {
             Log.d(TAG, "✅ Notificando a FileFragment");
-            fileFragment.onModeChanged(currentMode);
+            fileFragment.onModeChanged(getCurrentMode());
         } else {
             Log.d(TAG, "⏭️  FileFragment no disponible (normal si no se ha navegado)");
         }
@@ -441,7 +675,7 @@ public class MainActivity extends AppCompatActivity implements BLEService.Connec
         SettingFragment settingFragment = (SettingFragment) fm.findFragmentByTag(TAG_SETTING);
         if (settingFragment != null && settingFragment.isAdded()) {
             Log.d(TAG, "✅ Notificando a SettingFragment");
-            settingFragment.onModeChanged(currentMode);
+            settingFragment.onModeChanged(getCurrentMode());
         } else {
             Log.d(TAG, "⏭️  SettingFragment no disponible (normal si no se ha navegado)");
         }
@@ -478,87 +712,631 @@ public class MainActivity extends AppCompatActivity implements BLEService.Connec
         }
     }
 
-    private void processReceivedData(String data) {
-        Log.d(TAG, "📥 processReceivedData: " + data);
+    /**
+     * Procesar una línea de cualquier sesión. Su estado se actualiza siempre;
+     * los fragments solo reciben lo de la sesión enfocada
+     */
+    private void processReceivedData(GatewaySession session, String data) {
+        Log.d(TAG, "📥 processReceivedData (" + session.getAddress() + "): " + data);
 
         FragmentManager fm = getSupportFragmentManager();
-
-        if (data.startsWith("[FILES_START]") || data.startsWith("[FILES_END]") || data.contains(",")) {
-            FileFragment fileFragment = (FileFragment) fm.findFragmentByTag(TAG_FILE);
-            if (fileFragment != null && fileFragment.isAdded()) {
-                fileFragment.onDataReceived(data);
+        boolean focused = session == focused();
+        RemoteFileIndex fileIndex = session.getFileIndex();
+        RangeFetcher rangeFetcher = session.getRangeFetcher();
+
+        if (data.startsWith("[FILES_GEN:")) {
+            long generation = parseGeneration(data);
+            if (fileIndex.onGenerationReported(generation)) {
+                requestFileListing(session);
             }
+        } else if (data.startsWith("[FILE_EVT:")) {
+            handleFileEvent(session, data);
+        } else if (data.equals("[FILES_SUBSCRIBED]")) {
+            Log.d(TAG, "🔔 Suscripción a eventos de archivos activa");
+            fileIndex.setLive(true);
+        } else if (data.startsWith("[PAGE_START:")) {
+            handlePageStart(session, data);
+        } else if (data.startsWith("[PAGE_END:")) {
+            int next = (int) parseGeneration(data);
+            if (fileIndex.endPage(next)) {
+                requestFileListing(session);
+            }
+        } else if (data.startsWith("[UNKNOWN_CMD:GET_FILES_PAGE")) {
+            // Firmware sin paginación: listado completo
+            Log.w(TAG, "⚠️  Dispositivo sin GET_FILES_PAGE, usando GET_FILES");
+            session.setPagedListingSupported(false);
+            requestFileListing(session);
+        } else if (data.startsWith("[LINK_TEST:")) {
+            LinkTestSweep sweep = session.getLinkTestSweep();
+            String payload = payloadOf(data, "[LINK_TEST:");
+            if (sweep != null && payload != null) {
+                sweep.onResult(payload);
+            }
+        } else if (data.startsWith("[LINK_STATS:")) {
+            handleLinkStats(session, payloadOf(data, "[LINK_STATS:"));
+        } else if (data.startsWith("[LORA_DONE:")) {
+            handleLoRaDone(session, payloadOf(data, "[LORA_DONE:"));
+        } else if (data.equals("[LINK_CONFIG_OK]")) {
+            Log.d(TAG, "✅ Nueva configuración aplicada en ambos extremos");
+            session.getAdrController().onConfigApplied(true);
+            session.getConfigManager().getConfig();
+        } else if (data.equals("[LINK_CONFIG_FAIL]")) {
+            Log.w(TAG, "⚠️  El enlace no aceptó la nueva configuración");
+            session.getAdrController().onConfigApplied(false);
+        } else if (data.startsWith("[UNKNOWN_CMD:SET_LINK_CONFIG")) {
+            Log.w(TAG, "⚠️  Dispositivo sin SET_LINK_CONFIG, el ADR no puede cambiar la configuración");
+            session.getAdrController().onConfigApplied(false);
+        } else if (data.startsWith("[FILES_START")) {
+            fileIndex.beginListing(parseGeneration(data));
+        } else if (data.startsWith("[FILES_END]")) {
+            fileIndex.endListing();
         } else if (data.startsWith("{") && data.contains("\"bw\"")) {
+            try {
+                LoRaConfig config = LoRaConfig.fromJson(data);
+                session.setLastConfig(config);
+                session.getAdrController().setCurrentConfig(config);
+                scheduleSnapshotSave(session);
+            } catch (JSONException e) {
+                Log.e(TAG, "Error parseando config: " + data, e);
+            }
+
             SettingFragment settingFragment = (SettingFragment) fm.findFragmentByTag(TAG_SETTING);
-            if (settingFragment != null && settingFragment.isAdded()) {
+            if (focused && settingFragment != null && settingFragment.isAdded()) {
                 settingFragment.onConfigReceived(data);
             }
         } else if (data.startsWith("[FILE_START:")) {
+            // Descarga completa en curso: la sincronización espera
+            session.getBackgroundSync().pauseForUser();
             FileFragment fileFragment = (FileFragment) fm.findFragmentByTag(TAG_FILE);
-            if (fileFragment != null && fileFragment.isAdded()) {
+            if (focused && fileFragment != null && fileFragment.isAdded()) {
                 fileFragment.onFileDownloadStart(data);
             }
+        } else if (data.startsWith("[RANGE_START:")) {
+            rangeFetcher.onRangeStart(data);
+        } else if (data.equals("[RANGE_END]")) {
+            rangeFetcher.onRangeEnd();
+        } else if (data.startsWith("[RANGE_ERROR:")) {
+            rangeFetcher.onRangeError(data);
+        } else if (data.startsWith("[FILE_DATA:")) {
+            FileFragment fileFragment = (FileFragment) fm.findFragmentByTag(TAG_FILE);
+            String payload = payloadOf(data, "[FILE_DATA:");
+            // Los bloques son del rango en curso o de la descarga completa
+            if (payload != null && rangeFetcher.isReceiving()) {
+                rangeFetcher.onRangeData(payload);
+            } else if (focused && fileFragment != null && fileFragment.isAdded() && payload != null) {
+                session.getBackgroundSync().pauseForUser();
+                fileFragment.onFileDownloadData(payload);
+            }
         } else if (data.equals("[FILE_END]")) {
             FileFragment fileFragment = (FileFragment) fm.findFragmentByTag(TAG_FILE);
-            if (fileFragment != null && fileFragment.isAdded()) {
+            if (focused && fileFragment != null && fileFragment.isAdded()) {
                 fileFragment.onFileDownloadEnd();
             }
+        } else if (fileIndex.isListing() && data.contains(",") && !data.startsWith("[")) {
+            parseFileLine(session, data);
+        }
+    }
+
+    /**
+     * Contenido de una línea "[TAG:contenido]"
+     * @return null si la línea está mal formada
+     */
+    private static String payloadOf(String data, String prefix) {
+        int end = data.lastIndexOf(']');
+        return end >= prefix.length() ? data.substring(prefix.length(), end) : null;
+    }
+
+    /**
+     * Estadísticas de una ráfaga LoRa [LINK_STATS:{"rssi":x,"snr":x,"sent":n,"lost":n}]
+     */
+    private void handleLinkStats(GatewaySession session, String json) {
+        if (json == null) {
+            return;
+        }
+
+        try {
+            JSONObject stats = new JSONObject(json);
+            int sent = stats.optInt("sent", 0);
+            int lost = stats.optInt("lost", 0);
+
+            session.getAckController().onBurst(sent, lost);
+            session.getAdrController().onLinkStats(
+                    (float) stats.optDouble("rssi", 0),
+                    (float) stats.optDouble("snr", 0),
+                    sent,
+                    lost);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error parseando estadísticas: " + json, e);
+        }
+    }
+
+    /**
+     * Fin de un envío LoRa [LORA_DONE:{"file":..,"ms":n,...}]
+     */
+    private void handleLoRaDone(GatewaySession session, String json) {
+        Log.d(TAG, "📡 Envío LoRa terminado: " + json);
+
+        long durationMs = 0;
+        String filename = null;
+        if (json != null) {
+            try {
+                JSONObject done = new JSONObject(json);
+                durationMs = done.optLong("ms", 0);
+                filename = done.optString("file", null);
+            } catch (JSONException e) {
+                Log.e(TAG, "Error parseando fin de envío: " + json, e);
+            }
+        }
+
+        session.getAckController().onTransferFinished(durationMs);
+        session.getAdrController().onTransferFinished();
+        session.getTxScheduler().onTransferFinished(filename);
+    }
+
+    /**
+     * Aplicar en ambos extremos la configuración que propone el ADR
+     * (se llama entre transferencias)
+     */
+    private void applyLinkConfig(GatewaySession session, LoRaConfig next, String reason) {
+        Log.d(TAG, "📶 ADR " + session.getAddress() + ": " + next + " (" + reason + ")");
+        session.getConfigManager().setLinkConfig(next);
+        if (session == focused()) {
+            runOnUiThread(() -> Toast.makeText(this, "📶 ADR: " + next, Toast.LENGTH_SHORT).show());
+        }
+    }
+
+    /**
+     * Transmitir un archivo por LoRa (el ADR no cambia la config mientras dura)
+     */
+    public void sendFileViaLoRa(String filename) {
+        sendFileViaLoRa(filename, 1.0);
+    }
+
+    /**
+     * Transmitir con pausas entre paquetes para respetar el ciclo de trabajo
+     * (lo decide el DutyCycleScheduler)
+     */
+    public void sendFileViaLoRa(String filename, double dutyCycle) {
+        sendFileViaLoRa(focused(), filename, dutyCycle);
+    }
+
+    private void sendFileViaLoRa(GatewaySession session, String filename, double dutyCycle) {
+        session.getAdrController().onTransferStarted();
+        session.getAckController().onTransferStarted(filename, session.getLastConfig());
+        session.getConfigManager().sendFileViaLoRa(filename, dutyCycle);
+    }
+
+    /**
+     * Emitir un archivo de símbolos (FountainCode): sin ACKs por ráfaga,
+     * así que el control del intervalo de ACK no interviene
+     */
+    private void sendFileViaFountain(GatewaySession session, String filename, int recordBytes, int symbols,
+                                     double dutyCycle) {
+        session.getAdrController().onTransferStarted();
+        session.getConfigManager().sendFileViaFountain(filename, recordBytes, symbols, dutyCycle);
+    }
+
+    /**
+     * Emitir un archivo de tramas empaquetado en la app (LoRaPacketizer)
+     */
+    private void sendFileViaFrames(GatewaySession session, String filename, int frames, double dutyCycle) {
+        session.getAdrController().onTransferStarted();
+        session.getAckController().onTransferStarted(filename, session.getLastConfig());
+        session.getConfigManager().sendFileViaFrames(filename, frames, dutyCycle);
+    }
+
+    /**
+     * Línea de un listado GET_FILES o GET_FILES_PAGE
+     */
+    private void parseFileLine(GatewaySession session, String data) {
+        // nombre,tamaño[,hash[,timestamp]]
+        String[] parts = data.split(",");
+        if (parts.length >= 2 && parts.length <= 4) {
+            try {
+                String hash = parts.length > 2 ? parts[2].trim() : null;
+                long timestamp = parts.length > 3 ? Long.parseLong(parts[3].trim()) : 0;
+                session.getFileIndex().addListed(new FileItem(parts[0].trim(), Long.parseLong(parts[1].trim()),
+                        hash, timestamp));
+            } catch (NumberFormatException e) {
+                Log.e(TAG, "Error parseando archivo: " + data);
+            }
+        }
+    }
+
+    /**
+     * Evento push del ESP32:
+     * [FILE_EVT:CREATED:nombre:tamaño:gen], [FILE_EVT:GROWING:nombre:tamaño:gen],
+     * [FILE_EVT:DELETED:nombre:gen]
+     */
+    private void handleFileEvent(GatewaySession session, String data) {
+        try {
+            String content = data.substring("[FILE_EVT:".length(), data.length() - 1);
+            int typeEnd = content.indexOf(':');
+            String type = content.substring(0, typeEnd);
+            String rest = content.substring(typeEnd + 1);
+
+            int genStart = rest.lastIndexOf(':');
+            long generation = Long.parseLong(rest.substring(genStart + 1));
+            rest = rest.substring(0, genStart);
+
+            long size = 0;
+            String filename = rest;
+            if (!RemoteFileIndex.EVENT_DELETED.equals(type)) {
+                int sizeStart = rest.lastIndexOf(':');
+                size = Long.parseLong(rest.substring(sizeStart + 1));
+                filename = rest.substring(0, sizeStart);
+            }
+
+            Log.d(TAG, "🔔 Evento " + type + ": " + filename);
+
+            if (session.getFileIndex().applyEvent(type, filename, size, generation)) {
+                requestFileListing(session);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error parseando evento: " + data, e);
+        }
+    }
+
+    /**
+     * [PAGE_START:offset:total:gen]
+     */
+    private void handlePageStart(GatewaySession session, String data) {
+        try {
+            String[] parts = data.substring("[PAGE_START:".length(), data.length() - 1).split(":");
+            int offset = Integer.parseInt(parts[0]);
+            int total = Integer.parseInt(parts[1]);
+            long generation = parts.length > 2 ? Long.parseLong(parts[2]) : RemoteFileIndex.GENERATION_UNKNOWN;
+            session.getFileIndex().beginPage(offset, total, generation);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error parseando PAGE_START: " + data, e);
+        }
+    }
+
+    /**
+     * Pedir el listado desde el principio (primera página o listado completo)
+     */
+    private void requestFileListing(GatewaySession session) {
+        if (session.isPagedListingSupported()) {
+            session.getFileIndex().markPageRequested();
+            session.getConfigManager().listFilesPage(0, FILE_PAGE_SIZE, FILE_SORT, "");
+        } else {
+            session.getConfigManager().listFiles();
+        }
+    }
+
+    /**
+     * Pedir la siguiente página (al acercarse al final de la lista)
+     */
+    public void loadNextFilePage() {
+        loadNextFilePage(focused());
+    }
+
+    private void loadNextFilePage(GatewaySession session) {
+        if (!session.isConnected() || !session.isPagedListingSupported()) {
+            return;
+        }
+
+        RemoteFileIndex fileIndex = session.getFileIndex();
+        if (!fileIndex.hasMorePages() || fileIndex.isPageLoading()) {
+            return;
+        }
+
+        fileIndex.markPageRequested();
+        session.getConfigManager().listFilesPage(fileIndex.getNextOffset(), FILE_PAGE_SIZE, FILE_SORT, "");
+    }
+
+    /**
+     * Extraer n de "[FILES_GEN:n]", "[FILES_START:n]" o "[PAGE_END:n]"
+     */
+    private long parseGeneration(String data) {
+        int colon = data.indexOf(':');
+        int end = data.indexOf(']');
+        if (colon < 0 || end <= colon) {
+            return RemoteFileIndex.GENERATION_UNKNOWN;
+        }
+
+        try {
+            return Long.parseLong(data.substring(colon + 1, end).trim());
+        } catch (NumberFormatException e) {
+            return RemoteFileIndex.GENERATION_UNKNOWN;
+        }
+    }
+
+    // ==================== COPIA EN DISCO ====================
+
+    /**
+     * Cargar lo último guardado de este gateway para pintar al instante
+     */
+    private void loadGatewaySnapshot(GatewaySession session, String address) {
+        storageExecutor.execute(() -> {
+            GatewayStore.Snapshot snapshot = gatewayStore.load(address);
+            if (snapshot == null) {
+                Log.d(TAG, "💾 Sin copia local para " + address);
+                return;
+            }
+
+            Log.d(TAG, "💾 Copia local de " + address + ": " + snapshot.files.size() + " archivos");
+            if (snapshot.config != null && session.getLastConfig() == null) {
+                session.setLastConfig(snapshot.config);
+            }
+            session.getFileIndex().loadCached(snapshot.files, snapshot.generation);
+        });
+    }
+
+    /**
+     * Guardar el estado actual (agrupa ráfagas de cambios en una escritura)
+     */
+    private void scheduleSnapshotSave(GatewaySession session) {
+        pendingSnapshots.add(session);
+        storeHandler.removeCallbacks(saveSnapshotRunnable);
+        storeHandler.postDelayed(saveSnapshotRunnable, STORE_SAVE_DELAY_MS);
+    }
+
+    private void saveGatewaySnapshots() {
+        for (GatewaySession session : pendingSnapshots) {
+            pendingSnapshots.remove(session);
+            saveGatewaySnapshot(session);
+        }
+    }
+
+    private void saveGatewaySnapshot(GatewaySession session) {
+        // Solo se guarda lo revalidado contra un gateway conectado
+        RemoteFileIndex fileIndex = session.getFileIndex();
+        if (!session.isConnected() || session.getAddress().isEmpty() || fileIndex.isStale()) {
+            return;
+        }
+
+        String address = session.getAddress();
+        String name = session.getDeviceName();
+        List<FileItem> files = fileIndex.getFiles();
+        long generation = fileIndex.getGeneration();
+        LoRaConfig config = session.getLastConfig();
+
+        storageExecutor.execute(() -> gatewayStore.save(address, name, files, generation, config));
+    }
+
+    /**
+     * Mostrar los gateways guardados y abrir uno sin conexión
+     */
+    private void showSavedGateways() {
+        storageExecutor.execute(() -> {
+            List<GatewayStore.Snapshot> snapshots = gatewayStore.loadAll();
+
+            runOnUiThread(() -> {
+                if (snapshots.isEmpty()) {
+                    Toast.makeText(this, "No hay gateways guardados", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+
+                DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+                String[] labels = new String[snapshots.size()];
+                for (int i = 0; i < snapshots.size(); i++) {
+                    GatewayStore.Snapshot snap = snapshots.get(i);
+                    labels[i] = snap.deviceName + " (" + snap.address + ")\n" +
+                            snap.files.size() + " archivos · " + dateFormat.format(new Date(snap.savedAt));
+                }
+
+                new androidx.appcompat.app.AlertDialog.Builder(this)
+                        .setTitle("💾 Gateways guardados")
+                        .setItems(labels, (dialog, which) -> openOfflineSnapshot(snapshots.get(which)))
+                        .setNegativeButton("Cancelar", null)
+                        .show();
+            });
+        });
+    }
+
+    private void openOfflineSnapshot(GatewayStore.Snapshot snapshot) {
+        if (sessions.getOpenCount() > 0) {
+            Toast.makeText(this, "Desconecta para ver copias guardadas", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        offlineBrowsing = true;
+        GatewaySession session = focused();
+        session.getFileIndex().clear();
+        session.getFileIndex().loadCached(snapshot.files, snapshot.generation);
+        session.setLastConfig(snapshot.config);
+
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setTitle("💾 " + snapshot.deviceName + " (sin conexión)");
+        }
+        bottomNavigationView.setSelectedItemId(R.id.file);
+    }
+
+    /**
+     * Actualizar el listado de archivos solo si cambió en el dispositivo.
+     * Si hay suscripción a eventos no se consulta nada.
+     * Sin generación conocida (firmware antiguo o índice vacío) se lista completo.
+     */
+    public void refreshFileIndex() {
+        refreshFileIndex(false);
+    }
+
+    /**
+     * @param force Consultar aunque el índice reciba eventos push
+     */
+    public void refreshFileIndex(boolean force) {
+        refreshFileIndex(focused(), force);
+    }
+
+    private void refreshFileIndex(GatewaySession session, boolean force) {
+        if (!session.isConnected()) {
+            return;
+        }
+
+        // Con eventos push el índice ya está al día
+        if (!force && session.getFileIndex().isLive()) {
+            return;
+        }
+
+        if (session.getFileIndex().hasGeneration()) {
+            session.getConfigManager().getFilesGeneration();
+        } else {
+            requestFileListing(session);
         }
     }
 
     @Override
-    public void onConnected() {
-        Log.d(TAG, "📞 onConnected() callback");
+    public void onSessionConnected(GatewaySession session) {
+        Log.d(TAG, "📞 onSessionConnected() " + session.getAddress());
         runOnUiThread(() -> {
             Toast.makeText(this, "✅ Conexión establecida", Toast.LENGTH_SHORT).show();
 
             new Handler().postDelayed(() -> {
-                if (configManager != null) {
-                    Log.d(TAG, "📡 Solicitando config y archivos");
-                    configManager.getConfig();
-                    configManager.listFiles();
+                if (!sessions.contains(session) || session.getAddress().isEmpty()) {
+                    return;
                 }
+                Log.d(TAG, "📡 Solicitando config y archivos");
+                session.getConfigManager().getConfig();
+                // Con copia en disco basta comparar la generación
+                if (session.getFileIndex().hasGeneration()) {
+                    refreshFileIndex(session, true);
+                } else {
+                    requestFileListing(session);
+                }
+                session.getConfigManager().subscribeFileEvents();
             }, 500);
         });
     }
 
     @Override
-    public void onDisconnected() {
-        Log.d(TAG, "📞 onDisconnected() callback");
+    public void onSessionDisconnected(GatewaySession session) {
+        Log.d(TAG, "📞 onSessionDisconnected() " + session.getAddress());
         runOnUiThread(() -> {
-            Toast.makeText(this, "🔴 Desconectado", Toast.LENGTH_SHORT).show();
-            currentMode = MODE_NONE;
-            isConnected = false;
-            connectedDeviceName = "";
-
-            if (getSupportActionBar() != null) {
-                getSupportActionBar().setTitle("LoRa Gateway Controller");
-            }
-
-            notifyFragmentsDisconnected();
+            String name = session.getDeviceName().isEmpty() ? session.getAddress() : session.getDeviceName();
+            Toast.makeText(this, "🔴 Desconectado " + name, Toast.LENGTH_SHORT).show();
+            closeSession(session);
         });
     }
 
     @Override
-    public void onDataReceived(byte[] data) {
+    public void onSessionData(GatewaySession session, byte[] data) {
+        // Una notificación puede traer varias líneas
         String message = new String(data);
-        processReceivedData(message);
+        protocolExecutor.execute(() -> {
+            for (String line : message.split("\n")) {
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty()) {
+                    processReceivedData(session, trimmed);
+                }
+            }
+        });
     }
 
     @Override
-    public void onError(String error) {
-        Log.e(TAG, "📞 onError() callback: " + error);
+    public void onSessionError(GatewaySession session, String error) {
+        Log.e(TAG, "📞 onSessionError() " + session.getAddress() + ": " + error);
         runOnUiThread(() -> {
             Toast.makeText(this, "❌ Error: " + error, Toast.LENGTH_LONG).show();
         });
     }
 
+    @Override
+    public void onSessionTransmit(GatewaySession session, DutyCycleScheduler.Job job) {
+        if (job.kind == DutyCycleScheduler.KIND_FOUNTAIN) {
+            sendFileViaFountain(session, job.filename, job.recordBytes, job.packets, job.getPacing());
+        } else if (job.kind == DutyCycleScheduler.KIND_FRAMES) {
+            sendFileViaFrames(session, job.filename, job.packets, job.getPacing());
+        } else {
+            sendFileViaLoRa(session, job.filename, job.getPacing());
+        }
+    }
+
+    @Override
+    public void onSessionLinkConfig(GatewaySession session, LoRaConfig next, String reason) {
+        applyLinkConfig(session, next, reason);
+    }
+
+    @Override
+    public void onSessionSyncProgress(GatewaySession session, String filename, long localSize, long remoteSize) {
+        if (session == focused()) {
+            showSyncProgress(filename, localSize, remoteSize);
+        }
+    }
+
+    // Los fragments trabajan siempre con la sesión enfocada
+
+    /**
+     * Sesión enfocada ahora; las acciones largas la guardan al empezar
+     * para no cambiar de gateway si el usuario cambia el foco a mitad
+     */
+    public GatewaySession getFocusedSession() {
+        return focused();
+    }
+
     public BLEService getBluetoothService() {
-        return bluetoothService;
+        return focused().getBluetoothService();
     }
 
     public LoRaConfigManager getConfigManager() {
-        return configManager;
+        return focused().getConfigManager();
+    }
+
+    public RemoteFileIndex getFileIndex() {
+        return focused().getFileIndex();
+    }
+
+    public DutyCycleScheduler getTxScheduler() {
+        return focused().getTxScheduler();
+    }
+
+    public RangeFetcher getRangeFetcher() {
+        return focused().getRangeFetcher();
+    }
+
+    public FileFollower getFileFollower() {
+        return focused().getFileFollower();
+    }
+
+    public BackgroundSync getBackgroundSync() {
+        return focused().getBackgroundSync();
+    }
+
+    public PartialDownloadCache getPartialCache() {
+        return partialCache;
+    }
+
+    public TransmitBatch getTransmitBatch() {
+        return focused().getTransmitBatch();
+    }
+
+    public StagingCache getStagingCache() {
+        return stagingCache;
+    }
+
+    public CompressionDictionary getCompressionDictionary() {
+        return compressionDictionary;
+    }
+
+    public MediaReducer getMediaReducer() {
+        return mediaReducer;
+    }
+
+    public AdrController getAdrController() {
+        return focused().getAdrController();
+    }
+
+    public AckIntervalController getAckController() {
+        return focused().getAckController();
+    }
+
+    public LinkTestSweep getLinkTestSweep() {
+        return focused().getLinkTestSweep();
+    }
+
+    public void setLinkTestSweep(LinkTestSweep sweep) {
+        focused().setLinkTestSweep(sweep);
+    }
+
+    /**
+     * Última configuración LoRa conocida (recibida o de la copia en disco)
+     */
+    public LoRaConfig getLastConfig() {
+        return focused().getLastConfig();
+    }
+
+    public boolean isOfflineBrowsing() {
+        return offlineBrowsing;
     }
 
     public BluetoothAdapter getBluetoothAdapter() {
@@ -566,15 +1344,26 @@ public class MainActivity extends AppCompatActivity implements BLEService.Connec
     }
 
     public int getCurrentMode() {
-        return currentMode;
+        return focused().getMode();
     }
 
     public boolean isConnected() {
-        return isConnected;
+        return focused().isConnected();
     }
 
     public String getConnectedDeviceName() {
-        return connectedDeviceName;
+        return focused().getDeviceName();
+    }
+
+    public String getConnectedDeviceAddress() {
+        return focused().getAddress();
+    }
+
+    /**
+     * Gateways conectados o conectando, incluido el enfocado
+     */
+    public int getOpenSessionCount() {
+        return sessions.getOpenCount();
     }
 
     @Override
@@ -588,21 +1377,30 @@ public class MainActivity extends AppCompatActivity implements BLEService.Connec
         int id = item.getItemId();
 
         if (id == R.id.action_disconnect) {
-            if (isConnected) {
+            if (!focused().getAddress().isEmpty()) {
                 disconnectDevice();
             } else {
                 Toast.makeText(this, "No hay dispositivo conectado", Toast.LENGTH_SHORT).show();
             }
             return true;
         } else if (id == R.id.action_refresh) {
-            if (isConnected && configManager != null) {
-                configManager.getConfig();
-                configManager.listFiles();
+            if (isConnected()) {
+                getConfigManager().getConfig();
+                refreshFileIndex(true);
                 Toast.makeText(this, "🔄 Actualizando...", Toast.LENGTH_SHORT).show();
             } else {
                 Toast.makeText(this, "Conecta un dispositivo primero", Toast.LENGTH_SHORT).show();
             }
             return true;
+        } else if (id == R.id.action_sessions) {
+            showSessionsDialog();
+            return true;
+        } else if (id == R.id.action_sync) {
+            showSyncDialog();
+            return true;
+        } else if (id == R.id.action_saved_gateways) {
+            showSavedGateways();
+            return true;
         } else if (id == R.id.action_about) {
             showAboutDialog();
             return true;
@@ -611,6 +1409,63 @@ public class MainActivity extends AppCompatActivity implements BLEService.Connec
         return super.onOptionsItemSelected(item);
     }
 
+    // ==================== SINCRONIZACIÓN ====================
+
+    private void showSyncProgress(String filename, long localSize, long remoteSize) {
+        runOnUiThread(() -> {
+            if (getSupportActionBar() == null) {
+                return;
+            }
+            if (filename == null) {
+                getSupportActionBar().setSubtitle(null);
+            } else {
+                getSupportActionBar().setSubtitle("🔄 " + filename + " · " + FileItem.formatSize(localSize) +
+                        " / " + FileItem.formatSize(remoteSize));
+            }
+        });
+    }
+
+    /**
+     * Estado y registro de la sincronización del gateway RX conectado
+     */
+    private void showSyncDialog() {
+        GatewaySession session = focused();
+        BackgroundSync backgroundSync = session.getBackgroundSync();
+        if (!backgroundSync.isActive()) {
+            Toast.makeText(this, "Conecta un gateway RX para sincronizar", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        boolean enabled = backgroundSync.isEnabled();
+        List<BackgroundSync.Record> records = backgroundSync.getRecords();
+        DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+
+        StringBuilder message = new StringBuilder();
+        message.append(enabled ? "✅ Activada" : "⏸️ Desactivada")
+                .append(" para ").append(session.getDeviceName()).append("\n")
+                .append("Carpeta: Descargas/").append(backgroundSync.getTargetDir().getName()).append("\n")
+                .append("Pendiente: ").append(FileItem.formatSize(backgroundSync.getPendingBytes())).append("\n\n");
+        if (records.isEmpty()) {
+            message.append("Nada sincronizado todavía");
+        }
+        for (int i = 0; i < Math.min(records.size(), SYNC_LOG_ENTRIES); i++) {
+            BackgroundSync.Record record = records.get(i);
+            message.append("• ").append(record.name).append(" · ").append(FileItem.formatSize(record.size))
+                    .append(" · ").append(dateFormat.format(new Date(record.syncedAt))).append("\n");
+        }
+        if (records.size() > SYNC_LOG_ENTRIES) {
+            message.append("… y ").append(records.size() - SYNC_LOG_ENTRIES).append(" más");
+        }
+
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("🔄 Sincronización automática")
+                .setMessage(message.toString())
+                .setPositiveButton(enabled ? "Desactivar" : "Activar",
+                        (dialog, which) -> backgroundSync.setEnabled(!enabled))
+                .setNegativeButton("Cerrar", null)
+                .show();
+    }
+
     private void showAboutDialog() {
         new androidx.appcompat.app.AlertDialog.Builder(this)
                 .setTitle("LoRa Gateway Controller")
@@ -627,8 +1482,9 @@ public class MainActivity extends AppCompatActivity implements BLEService.Connec
     protected void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "💥 onDestroy llamado");
-        if (bluetoothService != null) {
-            bluetoothService.disconnect();
-        }
+        sessions.releaseAll();
+        protocolExecutor.shutdown();
+        storageExecutor.shutdown();
+        mediaReducer.shutdown();
     }
 }
\ No newline at end of file
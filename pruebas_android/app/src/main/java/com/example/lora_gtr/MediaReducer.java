@@ -0,0 +1,486 @@
+package com.example.lora_gtr;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageDecoder;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+import android.util.Size;
+
+import com.example.lora_gtr.models.LoRaConfig;
+import com.example.lora_gtr.models.TransferEstimate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reducción de imágenes y audio antes de transmitir por LoRa.
+ *
+ * El presupuesto de bytes sale del modelo de tiempo en aire: el tamaño
+ * máximo que se envía en el tiempo elegido con la configuración actual.
+ *
+ * - Imágenes: se decodifican ya reducidas a MAX_IMAGE_SIDE y se
+ *   recodifican en WebP bajando calidad y, si no basta, resolución.
+ * - Audio: se decodifica, se pasa a mono 8 kHz y se codifica en AMR-NB
+ *   con el modo de mayor bitrate que cabe (archivo .amr, 13-32 bytes
+ *   por cada 20 ms).
+ *
+ * Todo corre en un único hilo propio; el resultado llega por Callback
+ * desde ese hilo.
+ */
+public class MediaReducer {
+
+    private static final String TAG = "MediaReducer";
+
+    public static final int KIND_NONE = 0;
+    public static final int KIND_IMAGE = 1;
+    public static final int KIND_AUDIO = 2;
+
+    // Tiempos en aire que se ofrecen como objetivo
+    public static final long[] AIRTIME_TARGETS_MS = {5 * 60_000L, 15 * 60_000L, 60 * 60_000L};
+
+    private static final String[] IMAGE_EXTENSIONS = {"jpg", "jpeg", "png", "gif", "webp", "bmp", "heic", "heif"};
+    private static final String[] AUDIO_EXTENSIONS = {"mp3", "wav", "m4a", "aac", "ogg", "opus", "flac", "3gp", "amr"};
+
+    private static final int MAX_IMAGE_SIDE = 1600;
+    private static final int MIN_IMAGE_SIDE = 64;
+    private static final int[] QUALITY_STEPS = {80, 65, 50, 40};
+    private static final double SCALE_STEP = 0.75;
+
+    private static final int AMR_SAMPLE_RATE = 8000;
+    private static final long AMR_FRAME_US = 20_000;
+    private static final byte[] AMR_HEADER = "#!AMR\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int[] AMR_BITRATES = {12200, 10200, 7950, 7400, 6700, 5900, 5150, 4750};
+    private static final int[] AMR_FRAME_BYTES = {32, 27, 21, 20, 18, 16, 14, 13};   // Con el byte de cabecera
+    private static final long CODEC_TIMEOUT_US = 10_000;
+
+    /**
+     * Archivo reducido listo para preparar y subir
+     */
+    public static class Result {
+        public final File file;
+        public final String name;
+        public final long originalSize;
+        public final long reducedSize;
+        public final long budget;
+        public final String description;      // Resolución/calidad o bitrate usados
+
+        Result(File file, String name, long originalSize, long budget, String description) {
+            this.file = file;
+            this.name = name;
+            this.originalSize = originalSize;
+            this.reducedSize = file.length();
+            this.budget = budget;
+            this.description = description;
+        }
+
+        public boolean fitsBudget() {
+            return reducedSize <= budget;
+        }
+    }
+
+    public interface Callback {
+        void onReduced(Result result);
+
+        void onError(String message);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final File workDir;
+
+    /**
+     * @param cacheDir Directorio de caché de la app
+     */
+    public MediaReducer(File cacheDir) {
+        this.workDir = new File(cacheDir, "reduced");
+    }
+
+    /**
+     * Tipo de medio según la extensión
+     */
+    public static int kindOf(String filename) {
+        int dot = filename.lastIndexOf('.');
+        String ext = dot >= 0 ? filename.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        for (String image : IMAGE_EXTENSIONS) {
+            if (image.equals(ext)) {
+                return KIND_IMAGE;
+            }
+        }
+        for (String audio : AUDIO_EXTENSIONS) {
+            if (audio.equals(ext)) {
+                return KIND_AUDIO;
+            }
+        }
+        return KIND_NONE;
+    }
+
+    /**
+     * Bytes que caben en un tiempo en aire con la configuración dada
+     */
+    public static long budgetFor(LoRaConfig config, double airtimeMs) {
+        return TransferEstimate.maxSizeFor(airtimeMs, config, TransferEstimate.DEFAULT_PACKET_DATA_BYTES);
+    }
+
+    /**
+     * Reducir en segundo plano hasta el presupuesto (o lo más cerca posible)
+     */
+    public void reduce(File source, String name, long budget, Callback callback) {
+        executor.execute(() -> {
+            try {
+                workDir.mkdirs();
+                Result result;
+                switch (kindOf(name)) {
+                    case KIND_IMAGE:
+                        result = reduceImage(source, name, budget);
+                        break;
+                    case KIND_AUDIO:
+                        result = reduceAudio(source, name, budget);
+                        break;
+                    default:
+                        callback.onError("Tipo de archivo no soportado");
+                        return;
+                }
+                Log.d(TAG, name + ": " + result.originalSize + " → " + result.reducedSize +
+                        " bytes (" + result.description + ")");
+                callback.onReduced(result);
+
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Error reduciendo " + name, e);
+                callback.onError(e.getMessage() != null ? e.getMessage() : e.toString());
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // ==================== IMAGEN ====================
+
+    private Result reduceImage(File source, String name, long budget) throws IOException {
+        // Decodificar ya reducida: una foto de 12 MP no hace falta entera en memoria
+        Bitmap bitmap = ImageDecoder.decodeBitmap(ImageDecoder.createSource(source), (decoder, info, src) -> {
+            decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+            Size size = info.getSize();
+            int longest = Math.max(size.getWidth(), size.getHeight());
+            if (longest > MAX_IMAGE_SIDE) {
+                double scale = MAX_IMAGE_SIDE / (double) longest;
+                decoder.setTargetSize(
+                        Math.max(1, (int) Math.round(size.getWidth() * scale)),
+                        Math.max(1, (int) Math.round(size.getHeight() * scale)));
+            }
+        });
+
+        byte[] best = null;
+        String bestDescription = "";
+        Bitmap current = bitmap;
+        try {
+            while (true) {
+                for (int quality : QUALITY_STEPS) {
+                    byte[] encoded = encodeWebp(current, quality);
+                    if (best == null || encoded.length < best.length) {
+                        best = encoded;
+                        bestDescription = current.getWidth() + "×" + current.getHeight() + " WebP q" + quality;
+                    }
+                    if (encoded.length <= budget) {
+                        return writeResult(encoded, baseName(name) + ".webp", source.length(), budget, bestDescription);
+                    }
+                }
+
+                // Ni con la calidad más baja: bajar resolución
+                int width = (int) (current.getWidth() * SCALE_STEP);
+                int height = (int) (current.getHeight() * SCALE_STEP);
+                if (Math.max(width, height) < MIN_IMAGE_SIDE) {
+                    break;
+                }
+                Bitmap scaled = Bitmap.createScaledBitmap(current, width, height, true);
+                if (current != bitmap) {
+                    current.recycle();
+                }
+                current = scaled;
+            }
+        } finally {
+            if (current != bitmap) {
+                current.recycle();
+            }
+            bitmap.recycle();
+        }
+
+        return writeResult(best, baseName(name) + ".webp", source.length(), budget, bestDescription);
+    }
+
+    private static byte[] encodeWebp(Bitmap bitmap, int quality) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSY, quality, out);
+        return out.toByteArray();
+    }
+
+    // ==================== AUDIO ====================
+
+    private Result reduceAudio(File source, String name, long budget) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec decoder = null;
+        MediaCodec encoder = null;
+        File target = new File(workDir, baseName(name) + ".amr");
+
+        try {
+            extractor.setDataSource(source.getPath());
+            MediaFormat inputFormat = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    inputFormat = format;
+                    break;
+                }
+            }
+            if (inputFormat == null) {
+                throw new IOException("El archivo no tiene pista de audio");
+            }
+
+            long durationUs = inputFormat.containsKey(MediaFormat.KEY_DURATION)
+                    ? inputFormat.getLong(MediaFormat.KEY_DURATION) : 0;
+            if (durationUs <= 0) {
+                throw new IOException("Duración del audio desconocida");
+            }
+            int mode = amrModeFor(budget, durationUs);
+
+            decoder = MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME));
+            decoder.configure(inputFormat, null, null, 0);
+            decoder.start();
+
+            MediaFormat amrFormat = MediaFormat.createAudioFormat(
+                    MediaFormat.MIMETYPE_AUDIO_AMR_NB, AMR_SAMPLE_RATE, 1);
+            amrFormat.setInteger(MediaFormat.KEY_BIT_RATE, AMR_BITRATES[mode]);
+            encoder = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AMR_NB);
+            encoder.configure(amrFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            encoder.start();
+
+            try (OutputStream out = new FileOutputStream(target)) {
+                out.write(AMR_HEADER);
+                transcode(extractor, decoder, encoder, inputFormat, out);
+            }
+
+            String description = String.format(Locale.ROOT, "AMR-NB %.2f kbps, %d s",
+                    AMR_BITRATES[mode] / 1000.0, durationUs / 1_000_000);
+            return new Result(target, target.getName(), source.length(), budget, description);
+
+        } finally {
+            if (decoder != null) {
+                decoder.release();
+            }
+            if (encoder != null) {
+                encoder.release();
+            }
+            extractor.release();
+        }
+    }
+
+    // Modo AMR de más calidad cuyo archivo cabe; si ninguno cabe, el más bajo
+    private static int amrModeFor(long budget, long durationUs) {
+        long frames = (durationUs + AMR_FRAME_US - 1) / AMR_FRAME_US;
+        for (int mode = 0; mode < AMR_BITRATES.length; mode++) {
+            if (AMR_HEADER.length + frames * AMR_FRAME_BYTES[mode] <= budget) {
+                return mode;
+            }
+        }
+        return AMR_BITRATES.length - 1;
+    }
+
+    /**
+     * Extractor → decodificador → mono 8 kHz → codificador AMR-NB → archivo
+     * El codificador AMR-NB de Android entrega cada trama en formato de
+     * almacenamiento (con su byte de cabecera), así que basta con encadenarlas.
+     */
+    private static void transcode(MediaExtractor extractor, MediaCodec decoder, MediaCodec encoder,
+                                  MediaFormat inputFormat, OutputStream out) throws IOException {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        PcmQueue pending = new PcmQueue();
+        Downsampler downsampler = new Downsampler(
+                inputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                inputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+
+        boolean extractorDone = false;
+        boolean decoderDone = false;
+        boolean encoderInputDone = false;
+        boolean encoderDone = false;
+        long samplesQueued = 0;
+
+        while (!encoderDone) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IOException("Cancelado");
+            }
+
+            if (!extractorDone) {
+                int index = decoder.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                if (index >= 0) {
+                    ByteBuffer buffer = decoder.getInputBuffer(index);
+                    int size = extractor.readSampleData(buffer, 0);
+                    if (size < 0) {
+                        decoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        extractorDone = true;
+                    } else {
+                        decoder.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            if (!decoderDone) {
+                int index = decoder.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat format = decoder.getOutputFormat();
+                    downsampler = new Downsampler(
+                            format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                            format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+                } else if (index >= 0) {
+                    ByteBuffer buffer = decoder.getOutputBuffer(index);
+                    if (buffer != null && info.size > 0) {
+                        buffer.position(info.offset);
+                        buffer.limit(info.offset + info.size);
+                        downsampler.process(buffer.order(ByteOrder.LITTLE_ENDIAN), pending);
+                    }
+                    decoder.releaseOutputBuffer(index, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        decoderDone = true;
+                    }
+                }
+            }
+
+            if (!encoderInputDone && (pending.size() > 0 || decoderDone)) {
+                int index = encoder.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                if (index >= 0) {
+                    ByteBuffer buffer = encoder.getInputBuffer(index);
+                    buffer.clear();
+                    buffer.order(ByteOrder.LITTLE_ENDIAN);
+                    int samples = Math.min(pending.size(), buffer.remaining() / 2);
+                    pending.take(buffer, samples);
+
+                    long presentationUs = samplesQueued * 1_000_000L / AMR_SAMPLE_RATE;
+                    samplesQueued += samples;
+                    int flags = 0;
+                    if (decoderDone && pending.size() == 0) {
+                        flags = MediaCodec.BUFFER_FLAG_END_OF_STREAM;
+                        encoderInputDone = true;
+                    }
+                    encoder.queueInputBuffer(index, 0, samples * 2, presentationUs, flags);
+                }
+            }
+
+            int index = encoder.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+            if (index >= 0) {
+                ByteBuffer buffer = encoder.getOutputBuffer(index);
+                if (buffer != null && info.size > 0
+                        && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                    byte[] frame = new byte[info.size];
+                    buffer.position(info.offset);
+                    buffer.get(frame);
+                    out.write(frame);
+                }
+                encoder.releaseOutputBuffer(index, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    encoderDone = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * PCM 16 bits entrelazado → mono a 8 kHz
+     * Promedia las muestras de cada intervalo de salida (filtro de caja),
+     * suficiente como paso bajo para voz antes de diezmar.
+     */
+    private static final class Downsampler {
+        private final int channels;
+        private final double step;      // Muestras de entrada por muestra de salida
+        private double filled = 0;
+        private long sum = 0;
+        private int count = 0;
+
+        Downsampler(int sampleRate, int channels) {
+            this.channels = Math.max(1, channels);
+            this.step = sampleRate / (double) AMR_SAMPLE_RATE;
+        }
+
+        void process(ByteBuffer pcm, PcmQueue out) {
+            while (pcm.remaining() >= 2 * channels) {
+                int mixed = 0;
+                for (int c = 0; c < channels; c++) {
+                    mixed += pcm.getShort();
+                }
+                sum += mixed / channels;
+                count++;
+                filled += 1;
+
+                boolean emitted = false;
+                while (filled >= step) {
+                    out.add((short) (sum / count));
+                    filled -= step;
+                    emitted = true;
+                }
+                if (emitted) {
+                    sum = 0;
+                    count = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cola de muestras entre el decodificador y el codificador
+     */
+    private static final class PcmQueue {
+        private short[] data = new short[8192];
+        private int start = 0;
+        private int end = 0;
+
+        int size() {
+            return end - start;
+        }
+
+        void add(short sample) {
+            if (end == data.length) {
+                int size = size();
+                short[] grown = size * 2 > data.length ? new short[data.length * 2] : data;
+                System.arraycopy(data, start, grown, 0, size);
+                data = grown;
+                start = 0;
+                end = size;
+            }
+            data[end++] = sample;
+        }
+
+        void take(ByteBuffer target, int samples) {
+            for (int i = 0; i < samples; i++) {
+                target.putShort(data[start++]);
+            }
+        }
+    }
+
+    // ==================== UTILIDADES ====================
+
+    private Result writeResult(byte[] data, String name, long originalSize, long budget,
+                               String description) throws IOException {
+        File target = new File(workDir, name);
+        try (OutputStream out = new FileOutputStream(target)) {
+            out.write(data);
+        }
+        return new Result(target, name, originalSize, budget, description);
+    }
+
+    private static String baseName(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
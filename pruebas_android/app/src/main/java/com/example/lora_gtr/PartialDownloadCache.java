@@ -0,0 +1,223 @@
+package com.example.lora_gtr;
+
+import android.util.Log;
+
+import com.example.lora_gtr.models.FileItem;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Caché de los primeros bytes de archivos del gateway (vistas previas y
+ * descargas interrumpidas), por gateway y nombre.
+ *
+ * Una descarga completa posterior solo pide lo que falta a partir de ahí.
+ * Cada entrada guarda los bytes (clave.bin) y el tamaño, fecha y hash que
+ * tenía el archivo remoto (clave.json). Si el listado trae hash se compara
+ * ese; si no, la fecha, y sin fecha conocida en los dos lados no se
+ * reanuda. Si cambia o el archivo es ahora más corto que lo guardado, la
+ * entrada ya no vale y se descarta.
+ */
+public class PartialDownloadCache {
+
+    private static final String TAG = "PartialDownloadCache";
+    private static final String DIR_NAME = "partial";
+
+    private final File dir;
+    private final long maxBytes;
+
+    /**
+     * @param cacheDir Directorio de caché de la app
+     * @param maxBytes Presupuesto total en bytes
+     */
+    public PartialDownloadCache(File cacheDir, long maxBytes) {
+        this.dir = new File(cacheDir, DIR_NAME);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Bytes guardados del principio del archivo
+     * @return null si no hay nada o el archivo remoto cambió
+     */
+    public synchronized byte[] get(String gateway, FileItem file) {
+        String key = keyOf(gateway, file.getDisplayName());
+        File data = dataFile(key);
+        File meta = metaFile(key);
+        if (!data.exists() || !meta.exists()) {
+            return null;
+        }
+
+        try {
+            if (!sameFile(meta, file) || file.getSize() < data.length()) {
+                Log.d(TAG, "Descartando caché de " + file.getDisplayName() + ": el archivo cambió");
+                remove(key);
+                return null;
+            }
+
+            data.setLastModified(System.currentTimeMillis());
+            return readAll(data);
+
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Error leyendo caché de " + file.getDisplayName(), e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Guardar bytes leídos a partir de 'offset'
+     * Solo se aceptan si continúan justo donde acaba lo guardado y el
+     * archivo remoto trae hash o fecha
+     */
+    public synchronized void put(String gateway, FileItem file, long offset, byte[] bytes) {
+        // Sin hash ni fecha no habría forma de saber si sigue siendo el mismo archivo
+        boolean hasHash = file.getHash() != null && !file.getHash().isEmpty();
+        if (!hasHash && file.getModifiedTime() == 0) {
+            return;
+        }
+
+        String key = keyOf(gateway, file.getDisplayName());
+        File data = dataFile(key);
+        File meta = metaFile(key);
+
+        try {
+            // Lo guardado es de otra versión del archivo: empezar de cero
+            if (data.exists() && (!meta.exists() || !sameFile(meta, file))) {
+                remove(key);
+            }
+
+            long cached = data.exists() ? data.length() : 0;
+            if (offset > cached || offset + bytes.length <= cached) {
+                return;
+            }
+
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("No se pudo crear " + dir);
+            }
+            try (RandomAccessFile out = new RandomAccessFile(data, "rw")) {
+                int skip = (int) (cached - offset);
+                out.seek(cached);
+                out.write(bytes, skip, bytes.length - skip);
+            }
+
+            JSONObject json = new JSONObject();
+            json.put("name", file.getDisplayName());
+            json.put("size", file.getSize());
+            json.put("modified", file.getModifiedTime());
+            json.put("hash", file.getHash() != null ? file.getHash() : "");
+            try (FileOutputStream out = new FileOutputStream(meta)) {
+                out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Error guardando caché de " + file.getDisplayName(), e);
+            remove(key);
+            return;
+        }
+
+        evict(key);
+    }
+
+    /**
+     * Olvidar un archivo (ya descargado entero o borrado)
+     */
+    public synchronized void remove(String gateway, String filename) {
+        remove(keyOf(gateway, filename.startsWith("/") ? filename.substring(1) : filename));
+    }
+
+    // ==================== INTERNO ====================
+
+    // Hash si lo hay en los dos lados; si no, fecha conocida e igual
+    private static boolean sameFile(File meta, FileItem file) throws IOException, JSONException {
+        JSONObject json = new JSONObject(new String(readAll(meta), StandardCharsets.UTF_8));
+
+        String hash = json.optString("hash", "");
+        String listed = file.getHash() != null ? file.getHash() : "";
+        if (!hash.isEmpty() && !listed.isEmpty()) {
+            return hash.equalsIgnoreCase(listed);
+        }
+
+        long modified = json.optLong("modified", 0);
+        return modified != 0 && file.getModifiedTime() == modified;
+    }
+
+    private void remove(String key) {
+        dataFile(key).delete();
+        metaFile(key).delete();
+    }
+
+    // LRU por fecha de último uso, sin tocar la entrada recién escrita
+    private void evict(String keep) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".bin"));
+        if (files == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            String key = file.getName().substring(0, file.getName().length() - ".bin".length());
+            if (key.equals(keep)) {
+                continue;
+            }
+            total -= file.length();
+            remove(key);
+        }
+    }
+
+    private File dataFile(String key) {
+        return new File(dir, key + ".bin");
+    }
+
+    private File metaFile(String key) {
+        return new File(dir, key + ".json");
+    }
+
+    private static String keyOf(String gateway, String name) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((gateway + "/" + name).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Archivo truncado: " + file.getName());
+                }
+                offset += read;
+            }
+        }
+        return data;
+    }
+}
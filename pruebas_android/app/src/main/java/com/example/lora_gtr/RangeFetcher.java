@@ -0,0 +1,218 @@
+package com.example.lora_gtr;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+
+/**
+ * Lecturas por rangos de archivos del gateway.
+ *
+ * DOWNLOAD_RANGE:{"file":"/x","offset":n,"len":n} devuelve como mucho
+ * 'len' bytes desde 'offset' (menos si el archivo aún no llega) y el
+ * tamaño actual del archivo:
+ *   [RANGE_START:nombre:offset:longitud:tamaño]
+ *   [FILE_DATA:<base64>] ...
+ *   [RANGE_END]
+ * o [RANGE_ERROR:nombre] si el archivo no existe.
+ *
+ * El gateway atiende un rango cada vez: las peticiones se encolan y se
+ * envían en orden al terminar la anterior. Si no llega respuesta en
+ * RANGE_TIMEOUT_MS se da por fallida y se pasa a la siguiente.
+ */
+public class RangeFetcher {
+
+    private static final String TAG = "RangeFetcher";
+
+    public static final int MAX_RANGE_BYTES = 16 * 1024;
+    private static final long RANGE_TIMEOUT_MS = 30_000;
+
+    public interface Callback {
+        /**
+         * @param data Bytes leídos (puede estar vacío si el archivo no ha crecido)
+         * @param remoteSize Tamaño del archivo en el gateway al leer
+         */
+        void onRange(String filename, long offset, byte[] data, long remoteSize);
+
+        void onRangeFailed(String filename, String reason);
+    }
+
+    private static class Request {
+        final String filename;
+        final long offset;
+        final int length;
+        final Callback callback;
+
+        Request(String filename, long offset, int length, Callback callback) {
+            this.filename = filename;
+            this.offset = offset;
+            this.length = length;
+            this.callback = callback;
+        }
+    }
+
+    private final LoRaConfigManager configManager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Deque<Request> queue = new ArrayDeque<>();
+
+    private Request active;
+    private ByteArrayOutputStream buffer;   // != null entre RANGE_START y RANGE_END
+    private long activeOffset;
+    private long activeRemoteSize;
+
+    private final Runnable timeout = () -> fail("Sin respuesta del gateway");
+
+    public RangeFetcher(LoRaConfigManager configManager) {
+        this.configManager = configManager;
+    }
+
+    /**
+     * Pedir un rango; el callback llega en el hilo principal
+     */
+    public void fetch(String filename, long offset, int length, Callback callback) {
+        synchronized (this) {
+            queue.add(new Request(filename, offset, Math.min(length, MAX_RANGE_BYTES), callback));
+            if (active != null) {
+                return;
+            }
+        }
+        sendNext();
+    }
+
+    /**
+     * Hay un rango recibiéndose: los [FILE_DATA] son suyos
+     */
+    public synchronized boolean isReceiving() {
+        return buffer != null;
+    }
+
+    /**
+     * Nada en vuelo ni en cola
+     */
+    public synchronized boolean isIdle() {
+        return active == null && queue.isEmpty();
+    }
+
+    /**
+     * Descartar lo pendiente (al desconectar)
+     */
+    public void cancelAll() {
+        Request cancelled;
+        synchronized (this) {
+            cancelled = active;
+            queue.clear();
+            active = null;
+            buffer = null;
+        }
+        handler.removeCallbacks(timeout);
+        if (cancelled != null) {
+            handler.post(() -> cancelled.callback.onRangeFailed(cancelled.filename, "Desconectado"));
+        }
+    }
+
+    // ==================== RESPUESTAS ====================
+
+    /**
+     * [RANGE_START:nombre:offset:longitud:tamaño]
+     */
+    public void onRangeStart(String data) {
+        try {
+            String content = data.substring("[RANGE_START:".length(), data.length() - 1);
+            // El nombre puede llevar ':': leer los números desde el final
+            int sizeStart = content.lastIndexOf(':');
+            int lengthStart = content.lastIndexOf(':', sizeStart - 1);
+            int offsetStart = content.lastIndexOf(':', lengthStart - 1);
+
+            synchronized (this) {
+                if (active == null) {
+                    return;
+                }
+                activeOffset = Long.parseLong(content.substring(offsetStart + 1, lengthStart));
+                activeRemoteSize = Long.parseLong(content.substring(sizeStart + 1));
+                buffer = new ByteArrayOutputStream(Integer.parseInt(content.substring(lengthStart + 1, sizeStart)));
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error parseando RANGE_START: " + data, e);
+            fail("Respuesta inválida");
+        }
+    }
+
+    public void onRangeData(String base64) {
+        try {
+            byte[] chunk = Base64.getDecoder().decode(base64);
+            synchronized (this) {
+                if (buffer != null) {
+                    buffer.write(chunk, 0, chunk.length);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Bloque de rango inválido", e);
+        }
+    }
+
+    public void onRangeEnd() {
+        Request done;
+        byte[] data;
+        long offset;
+        long remoteSize;
+
+        synchronized (this) {
+            if (active == null || buffer == null) {
+                return;
+            }
+            done = active;
+            data = buffer.toByteArray();
+            offset = activeOffset;
+            remoteSize = activeRemoteSize;
+            active = null;
+            buffer = null;
+        }
+        handler.removeCallbacks(timeout);
+
+        // Las respuestas llegan en el hilo del protocolo
+        handler.post(() -> done.callback.onRange(done.filename, offset, data, remoteSize));
+        sendNext();
+    }
+
+    /**
+     * [RANGE_ERROR:nombre]
+     */
+    public void onRangeError(String data) {
+        fail("El archivo no existe en el gateway");
+    }
+
+    // ==================== INTERNO ====================
+
+    private void fail(String reason) {
+        Request failed;
+        synchronized (this) {
+            failed = active;
+            active = null;
+            buffer = null;
+        }
+        handler.removeCallbacks(timeout);
+
+        if (failed != null) {
+            Log.w(TAG, "Rango fallido " + failed.filename + "@" + failed.offset + ": " + reason);
+            handler.post(() -> failed.callback.onRangeFailed(failed.filename, reason));
+        }
+        sendNext();
+    }
+
+    private void sendNext() {
+        Request next;
+        synchronized (this) {
+            if (active != null || queue.isEmpty()) {
+                return;
+            }
+            next = queue.poll();
+            active = next;
+        }
+        handler.postDelayed(timeout, RANGE_TIMEOUT_MS);
+        configManager.downloadRange(next.filename, next.offset, next.length);
+    }
+}
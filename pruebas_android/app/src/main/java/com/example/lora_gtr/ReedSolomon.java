@@ -0,0 +1,185 @@
+package com.example.lora_gtr;
+
+/**
+ * Código Reed-Solomon de borrado sobre GF(256) para bloques de tramas.
+ *
+ * Sistemático: las tramas de datos viajan tal cual y se añaden 'parity'
+ * tramas de paridad calculadas con una matriz de Cauchy. Con cualquier
+ * combinación de 'data' tramas del bloque (datos o paridad) se recuperan
+ * los datos. Como LoRa descarta los paquetes con CRC erróneo, las pérdidas
+ * son borrados y no hace falta localizar errores.
+ */
+public final class ReedSolomon {
+
+    public static final int MAX_SHARDS = 255;   // data + parity, límite de GF(256)
+
+    private static final int PRIMITIVE = 0x11D;
+    private static final int[] EXP = new int[512];
+    private static final int[] LOG = new int[256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if ((x & 0x100) != 0) {
+                x ^= PRIMITIVE;
+            }
+        }
+        for (int i = 255; i < EXP.length; i++) {
+            EXP[i] = EXP[i - 255];
+        }
+    }
+
+    private ReedSolomon() {
+    }
+
+    /**
+     * Calcular las tramas de paridad de un bloque
+     * @param data Tramas de datos, todas del mismo tamaño
+     * @return 'parity' tramas del mismo tamaño
+     */
+    public static byte[][] encode(byte[][] data, int parity) {
+        int k = data.length;
+        int size = data[0].length;
+        byte[][] result = new byte[parity][size];
+
+        for (int p = 0; p < parity; p++) {
+            for (int d = 0; d < k; d++) {
+                int coefficient = cauchy(p, d, k);
+                multiplyAdd(result[p], data[d], coefficient);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Recuperar las tramas de datos perdidas de un bloque
+     * @param shards data + parity tramas; null las perdidas. Se rellenan en sitio
+     * @param data Número de tramas de datos del bloque
+     * @return false si se perdieron más tramas de las que cubre la paridad
+     */
+    public static boolean decode(byte[][] shards, int data) {
+        int missing = 0;
+        for (int i = 0; i < data; i++) {
+            if (shards[i] == null) {
+                missing++;
+            }
+        }
+        if (missing == 0) {
+            return true;
+        }
+
+        // Elegir 'data' tramas recibidas, primero las de datos
+        int[] rows = new int[data];
+        int count = 0;
+        for (int i = 0; i < shards.length && count < data; i++) {
+            if (shards[i] != null) {
+                rows[count++] = i;
+            }
+        }
+        if (count < data) {
+            return false;
+        }
+
+        // Submatriz del generador [I; C] con esas filas, e invertirla
+        int[][] matrix = new int[data][data];
+        for (int r = 0; r < data; r++) {
+            int row = rows[r];
+            for (int c = 0; c < data; c++) {
+                matrix[r][c] = row < data ? (row == c ? 1 : 0) : cauchy(row - data, c, data);
+            }
+        }
+        int[][] inverse = invert(matrix);
+        if (inverse == null) {
+            return false;
+        }
+
+        int size = shards[rows[0]].length;
+        for (int d = 0; d < data; d++) {
+            if (shards[d] != null) {
+                continue;
+            }
+            byte[] recovered = new byte[size];
+            for (int r = 0; r < data; r++) {
+                multiplyAdd(recovered, shards[rows[r]], inverse[d][r]);
+            }
+            shards[d] = recovered;
+        }
+        return true;
+    }
+
+    // ==================== GF(256) ====================
+
+    // C[p][d] = 1 / (x_p + y_d) con x_p = k + p, y_d = d: siempre distintos
+    private static int cauchy(int p, int d, int k) {
+        return inverse((k + p) ^ d);
+    }
+
+    private static int multiply(int a, int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return EXP[LOG[a] + LOG[b]];
+    }
+
+    private static int inverse(int a) {
+        return EXP[255 - LOG[a]];
+    }
+
+    private static void multiplyAdd(byte[] target, byte[] source, int coefficient) {
+        if (coefficient == 0) {
+            return;
+        }
+        int logC = LOG[coefficient];
+        for (int i = 0; i < target.length; i++) {
+            int value = source[i] & 0xFF;
+            if (value != 0) {
+                target[i] ^= EXP[LOG[value] + logC];
+            }
+        }
+    }
+
+    // Gauss-Jordan sobre GF(256)
+    private static int[][] invert(int[][] matrix) {
+        int n = matrix.length;
+        int[][] a = new int[n][2 * n];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(matrix[r], 0, a[r], 0, n);
+            a[r][n + r] = 1;
+        }
+
+        for (int c = 0; c < n; c++) {
+            int pivot = c;
+            while (pivot < n && a[pivot][c] == 0) {
+                pivot++;
+            }
+            if (pivot == n) {
+                return null;
+            }
+            int[] tmp = a[c];
+            a[c] = a[pivot];
+            a[pivot] = tmp;
+
+            int scale = inverse(a[c][c]);
+            for (int j = 0; j < 2 * n; j++) {
+                a[c][j] = multiply(a[c][j], scale);
+            }
+            for (int r = 0; r < n; r++) {
+                if (r != c && a[r][c] != 0) {
+                    int factor = a[r][c];
+                    for (int j = 0; j < 2 * n; j++) {
+                        a[r][j] ^= multiply(factor, a[c][j]);
+                    }
+                }
+            }
+        }
+
+        int[][] result = new int[n][n];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(a[r], n, result[r], 0, n);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.lora_gtr;
+
+import android.util.Log;
+
+import com.example.lora_gtr.models.FileItem;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Índice local de los archivos del gateway con número de generación.
+ *
+ * El ESP32 incrementa la generación en cada cambio de su sistema de archivos.
+ * Si la generación reportada coincide con la del índice no hace falta volver
+ * a pedir GET_FILES. Las subidas y borrados hechos desde la app se aplican
+ * localmente y se descuentan de la siguiente comparación.
+ *
+ * Con la suscripción activa (SUBSCRIBE_FILES) el ESP32 envía eventos de
+ * archivo creado, creciendo y eliminado, y el índice se mantiene al día
+ * sin volver a consultar.
+ *
+ * El listado puede llegar completo ([FILES_START]) o por páginas
+ * ([PAGE_START]); cada página se publica en cuanto termina, de modo que
+ * la primera se pinta sin esperar al directorio entero.
+ */
+public class RemoteFileIndex {
+
+    private static final String TAG = "RemoteFileIndex";
+
+    public static final long GENERATION_UNKNOWN = -1;
+    public static final int NO_MORE_PAGES = -1;
+
+    // Tipos de evento push
+    public static final String EVENT_CREATED = "CREATED";
+    public static final String EVENT_GROWING = "GROWING";
+    public static final String EVENT_DELETED = "DELETED";
+
+    public interface Listener {
+        void onIndexChanged(List<FileItem> files);
+    }
+
+    private final Map<String, FileItem> files = new LinkedHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private long generation = GENERATION_UNKNOWN;
+    private int pendingLocalChanges = 0;
+    private boolean live = false;
+    private boolean stale = false;
+
+    // Listado en curso ([FILES_START] ... [FILES_END])
+    private Map<String, FileItem> incoming;
+    private long incomingGeneration = GENERATION_UNKNOWN;
+    private int incomingOffset = 0;
+
+    // Estado de paginación
+    private int nextOffset = NO_MORE_PAGES;
+    private int totalFiles = -1;
+    private boolean pageLoading = false;
+
+    // ==================== LISTENERS ====================
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyChanged() {
+        List<FileItem> snapshot = getFiles();
+        for (Listener listener : listeners) {
+            listener.onIndexChanged(snapshot);
+        }
+    }
+
+    // ==================== CONSULTAS ====================
+
+    public synchronized List<FileItem> getFiles() {
+        return new ArrayList<>(files.values());
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    public synchronized boolean hasGeneration() {
+        return generation != GENERATION_UNKNOWN;
+    }
+
+    public synchronized boolean isListing() {
+        return incoming != null;
+    }
+
+    /**
+     * true si el ESP32 está enviando eventos y el índice está completo
+     */
+    public synchronized boolean isLive() {
+        return live && generation != GENERATION_UNKNOWN;
+    }
+
+    public synchronized void setLive(boolean live) {
+        this.live = live;
+    }
+
+    /**
+     * true si el contenido viene de la caché en disco y aún no se revalidó
+     */
+    public synchronized boolean isStale() {
+        return stale;
+    }
+
+    public synchronized boolean hasMorePages() {
+        return nextOffset != NO_MORE_PAGES;
+    }
+
+    public synchronized int getNextOffset() {
+        return nextOffset;
+    }
+
+    public synchronized boolean isPageLoading() {
+        return pageLoading;
+    }
+
+    /**
+     * Total de archivos en el dispositivo (-1 si no se conoce)
+     */
+    public synchronized int getTotalFiles() {
+        return totalFiles;
+    }
+
+    /**
+     * Marcar una página como pedida (evita pedirla dos veces al hacer scroll)
+     */
+    public synchronized void markPageRequested() {
+        pageLoading = true;
+    }
+
+    /**
+     * Comparar la generación reportada por el ESP32 con la del índice
+     * @return true si hay que volver a pedir GET_FILES
+     */
+    public boolean onGenerationReported(long reported) {
+        synchronized (this) {
+            if (reported != generation) {
+                // Los cambios hechos desde la app ya están aplicados en el índice
+                if (generation != GENERATION_UNKNOWN && reported == generation + pendingLocalChanges) {
+                    Log.d(TAG, "Generación " + reported + " cubierta por cambios locales");
+                    generation = reported;
+                    pendingLocalChanges = 0;
+                    return false;
+                }
+
+                Log.d(TAG, "Generación cambió: " + generation + " -> " + reported);
+                return true;
+            }
+
+            pendingLocalChanges = 0;
+            if (!stale) {
+                return false;
+            }
+
+            // La copia en disco sigue vigente: no hace falta listar
+            Log.d(TAG, "Caché revalidada en generación " + generation);
+            stale = false;
+        }
+        notifyChanged();
+        return false;
+    }
+
+    // ==================== LISTADO COMPLETO ====================
+
+    /**
+     * Inicio de listado. La generación puede venir en [FILES_START:n]
+     */
+    public synchronized void beginListing(long reportedGeneration) {
+        incoming = new LinkedHashMap<>();
+        incomingGeneration = reportedGeneration;
+    }
+
+    public synchronized void addListed(String filename, long size) {
+        addListed(new FileItem(filename, size));
+    }
+
+    public synchronized void addListed(FileItem item) {
+        if (incoming == null) {
+            return;
+        }
+
+        incoming.put(keyOf(item.getFilename()), item);
+    }
+
+    public void endListing() {
+        synchronized (this) {
+            if (incoming == null) {
+                return;
+            }
+
+            files.clear();
+            files.putAll(incoming);
+            generation = incomingGeneration;
+            pendingLocalChanges = 0;
+            incoming = null;
+            nextOffset = NO_MORE_PAGES;
+            totalFiles = files.size();
+            pageLoading = false;
+            stale = false;
+
+            Log.d(TAG, "Índice actualizado: " + files.size() + " archivos, generación " + generation);
+        }
+        notifyChanged();
+    }
+
+    // ==================== LISTADO POR PÁGINAS ====================
+
+    /**
+     * Inicio de página [PAGE_START:offset:total:gen]
+     */
+    public synchronized void beginPage(int offset, int total, long reportedGeneration) {
+        incoming = new LinkedHashMap<>();
+        incomingGeneration = reportedGeneration;
+        incomingOffset = offset;
+        totalFiles = total;
+    }
+
+    /**
+     * Fin de página [PAGE_END:siguienteOffset]
+     * @return true si el directorio cambió entre páginas y hay que empezar de nuevo
+     */
+    public boolean endPage(int next) {
+        synchronized (this) {
+            if (incoming == null) {
+                return false;
+            }
+
+            if (incomingOffset == 0) {
+                files.clear();
+            } else if (generation != GENERATION_UNKNOWN
+                    && incomingGeneration != GENERATION_UNKNOWN
+                    && incomingGeneration != generation
+                    && incomingGeneration != generation + pendingLocalChanges) {
+                Log.d(TAG, "Directorio cambió durante la paginación, reiniciando");
+                incoming = null;
+                pageLoading = false;
+                return true;
+            }
+
+            files.putAll(incoming);
+            generation = incomingGeneration;
+            pendingLocalChanges = 0;
+            nextOffset = next;
+            pageLoading = false;
+            incoming = null;
+            stale = false;
+
+            Log.d(TAG, "Página cargada: " + files.size() + "/" + totalFiles + " archivos");
+        }
+        notifyChanged();
+        return false;
+    }
+
+    // ==================== CAMBIOS LOCALES ====================
+
+    /**
+     * Aplicar una subida completada sin volver a listar
+     */
+    public void applyUpload(String filename, long size) {
+        synchronized (this) {
+            files.put(keyOf(filename), new FileItem(filename, size));
+            pendingLocalChanges++;
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Aplicar un borrado sin volver a listar
+     */
+    public void applyDelete(String filename) {
+        synchronized (this) {
+            if (files.remove(keyOf(filename)) == null) {
+                return;
+            }
+            pendingLocalChanges++;
+        }
+        notifyChanged();
+    }
+
+    // ==================== EVENTOS PUSH ====================
+
+    /**
+     * Aplicar un evento de archivo enviado por el ESP32
+     * @param type EVENT_CREATED, EVENT_GROWING o EVENT_DELETED
+     * @param size Tamaño actual (ignorado en EVENT_DELETED)
+     * @param eventGeneration Generación tras el evento
+     * @return true si se perdieron eventos y hay que volver a listar
+     */
+    public boolean applyEvent(String type, String filename, long size, long eventGeneration) {
+        boolean gap = false;
+
+        synchronized (this) {
+            if (EVENT_DELETED.equals(type)) {
+                files.remove(keyOf(filename));
+            } else if (EVENT_CREATED.equals(type) || EVENT_GROWING.equals(type)) {
+                files.put(keyOf(filename), new FileItem(filename, size));
+            } else {
+                Log.w(TAG, "Evento desconocido: " + type);
+                return false;
+            }
+
+            if (generation != GENERATION_UNKNOWN && eventGeneration != GENERATION_UNKNOWN) {
+                long expected = generation + pendingLocalChanges;
+
+                if (eventGeneration > expected + 1) {
+                    Log.w(TAG, "Eventos perdidos: esperada " + (expected + 1) + ", recibida " + eventGeneration);
+                    gap = true;
+                } else if (eventGeneration > generation) {
+                    // Puede ser el eco de un cambio hecho desde la app
+                    pendingLocalChanges = (int) Math.max(0, expected - eventGeneration);
+                    generation = eventGeneration;
+                }
+            }
+        }
+
+        notifyChanged();
+        return gap;
+    }
+
+    // ==================== CACHÉ EN DISCO ====================
+
+    /**
+     * Cargar el listado guardado en disco, marcado como desactualizado.
+     * No pisa un índice que ya tenga datos frescos.
+     */
+    public void loadCached(List<FileItem> cached, long cachedGeneration) {
+        synchronized (this) {
+            if (generation != GENERATION_UNKNOWN || !files.isEmpty() || incoming != null) {
+                return;
+            }
+
+            for (FileItem item : cached) {
+                files.put(keyOf(item.getFilename()), item);
+            }
+            generation = cachedGeneration;
+            totalFiles = files.size();
+            stale = true;
+
+            Log.d(TAG, "Caché cargada: " + files.size() + " archivos, generación " + generation);
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Olvidar todo (al desconectar)
+     */
+    public void clear() {
+        synchronized (this) {
+            files.clear();
+            generation = GENERATION_UNKNOWN;
+            pendingLocalChanges = 0;
+            incoming = null;
+            live = false;
+            stale = false;
+            nextOffset = NO_MORE_PAGES;
+            totalFiles = -1;
+            pageLoading = false;
+        }
+        notifyChanged();
+    }
+
+    private static String keyOf(String filename) {
+        return filename.startsWith("/") ? filename.substring(1) : filename;
+    }
+}
@@ -1,24 +1,32 @@
 package com.example.lora_gtr;
 
 import android.os.Bundle;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 
 import com.example.lora_gtr.models.LoRaConfig;
+import com.example.lora_gtr.models.LoRaRegion;
+import com.example.lora_gtr.models.TransferEstimate;
 import com.google.android.material.card.MaterialCardView;
 
 import org.json.JSONException;
-import org.json.JSONObject;
+
+import java.util.List;
+import java.util.Locale;
 
 public class SettingFragment extends Fragment {
 
@@ -31,9 +39,21 @@ public class SettingFragment extends Fragment {
     private Spinner spinnerSpreadingFactor;
     private Spinner spinnerCodingRate;
     private Spinner spinnerAckInterval;
+    private Spinner spinnerRegion;
+    private Spinner spinnerSyncWord;
+    private EditText etFrequency;
+    private EditText etTxPower;
+    private EditText etPreamble;
+    private CheckBox cbImplicitHeader;
+    private TextView tvRegionLimits;
 
     private Button btnApplyConfig;
     private Button btnResetConfig;
+    private Button btnLinkTest;
+    private CheckBox cbAdr;
+    private CheckBox cbAutoAck;
+    private CheckBox cbAckWindow;
+    private AlertDialog linkTestDialog;
 
     // Variables
     private MainActivity mainActivity;
@@ -42,20 +62,43 @@ public class SettingFragment extends Fragment {
     private int currentMode = MainActivity.MODE_NONE;
 
     // Valores de los spinners
-    private String[] bandwidthValues = {"125", "250", "500"};
-    private String[] spreadingFactorValues = {"7", "9", "12"};
-    private String[] codingRateValues = {"4/5", "4/7", "4/8"};
+    private String[] bandwidthValues = buildBandwidthValues();
+    private String[] spreadingFactorValues = {"5", "6", "7", "8", "9", "10", "11", "12"};
+    private String[] codingRateValues = {"4/5", "4/6", "4/7", "4/8"};
     private String[] ackIntervalValues = {"3", "5", "7", "10", "15"};
+    private String[] regionValues = buildRegionValues();
+    private String[] syncWordLabels = {"0x12 (privada)", "0x34 (LoRaWAN)"};
+    private int[] syncWordValues = {LoRaConfig.SYNC_WORD_PRIVATE, LoRaConfig.SYNC_WORD_PUBLIC};
 
     public SettingFragment() {
         // Constructor vacío requerido
     }
 
+    private static String[] buildBandwidthValues() {
+        String[] values = new String[LoRaConfig.BANDWIDTHS.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = LoRaConfig.formatBandwidth(LoRaConfig.BANDWIDTHS[i]);
+        }
+        return values;
+    }
+
+    private static String[] buildRegionValues() {
+        String[] values = new String[LoRaRegion.ALL.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = LoRaRegion.ALL[i].name;
+        }
+        return values;
+    }
+
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         mainActivity = (MainActivity) getActivity();
-        currentConfig = new LoRaConfig();
+
+        // Última configuración conocida (puede venir de la caché en disco)
+        currentConfig = mainActivity != null && mainActivity.getLastConfig() != null
+                ? mainActivity.getLastConfig()
+                : new LoRaConfig();
     }
 
     @Override
@@ -80,9 +123,20 @@ public class SettingFragment extends Fragment {
         spinnerSpreadingFactor = view.findViewById(R.id.spinner_sf);
         spinnerCodingRate = view.findViewById(R.id.spinner_cr);
         spinnerAckInterval = view.findViewById(R.id.spinner_ack);
+        spinnerRegion = view.findViewById(R.id.spinner_region);
+        spinnerSyncWord = view.findViewById(R.id.spinner_sync_word);
+        etFrequency = view.findViewById(R.id.et_frequency);
+        etTxPower = view.findViewById(R.id.et_tx_power);
+        etPreamble = view.findViewById(R.id.et_preamble);
+        cbImplicitHeader = view.findViewById(R.id.cb_implicit_header);
+        tvRegionLimits = view.findViewById(R.id.tv_region_limits);
 
         btnApplyConfig = view.findViewById(R.id.btn_apply_config);
         btnResetConfig = view.findViewById(R.id.btn_reset_config);
+        btnLinkTest = view.findViewById(R.id.btn_link_test);
+        cbAdr = view.findViewById(R.id.cb_adr);
+        cbAutoAck = view.findViewById(R.id.cb_auto_ack);
+        cbAckWindow = view.findViewById(R.id.cb_ack_window);
     }
 
     private void setupSpinners() {
@@ -118,11 +172,59 @@ public class SettingFragment extends Fragment {
         ackAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         spinnerAckInterval.setAdapter(ackAdapter);
 
+        ArrayAdapter<String> regionAdapter = new ArrayAdapter<>(
+                requireContext(),
+                android.R.layout.simple_spinner_item,
+                regionValues
+        );
+        regionAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerRegion.setAdapter(regionAdapter);
+
+        ArrayAdapter<String> syncWordAdapter = new ArrayAdapter<>(
+                requireContext(),
+                android.R.layout.simple_spinner_item,
+                syncWordLabels
+        );
+        syncWordAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerSyncWord.setAdapter(syncWordAdapter);
+
         setSpinnersToCurrentConfig();
     }
 
     private void setupListeners() {
         btnApplyConfig.setOnClickListener(v -> applyConfiguration());
+        btnLinkTest.setOnClickListener(v -> confirmLinkTest());
+
+        if (mainActivity != null) {
+            cbAdr.setChecked(mainActivity.getAdrController().isEnabled());
+        }
+        cbAdr.setOnCheckedChangeListener((button, checked) -> {
+            if (mainActivity != null) {
+                mainActivity.getAdrController().setEnabled(checked);
+            }
+        });
+
+        if (mainActivity != null) {
+            cbAutoAck.setChecked(mainActivity.getAckController().isEnabled());
+        }
+        cbAutoAck.setOnCheckedChangeListener((button, checked) -> {
+            if (mainActivity != null) {
+                mainActivity.getAckController().setEnabled(checked);
+            }
+            // El spinner pasa a ser solo el valor de partida
+            spinnerAckInterval.setAlpha(checked ? 0.7f : 1.0f);
+            cbAckWindow.setEnabled(checked);
+        });
+
+        if (mainActivity != null) {
+            cbAckWindow.setChecked(mainActivity.getAckController().isWindowEnabled());
+        }
+        cbAckWindow.setEnabled(cbAutoAck.isChecked());
+        cbAckWindow.setOnCheckedChangeListener((button, checked) -> {
+            if (mainActivity != null) {
+                mainActivity.getAckController().setWindowEnabled(checked);
+            }
+        });
 
         btnResetConfig.setOnClickListener(v -> {
             setSpinnersToCurrentConfig();
@@ -133,6 +235,36 @@ public class SettingFragment extends Fragment {
         spinnerSpreadingFactor.setOnItemSelectedListener(new SpinnerChangeListener());
         spinnerCodingRate.setOnItemSelectedListener(new SpinnerChangeListener());
         spinnerAckInterval.setOnItemSelectedListener(new SpinnerChangeListener());
+        spinnerSyncWord.setOnItemSelectedListener(new SpinnerChangeListener());
+
+        spinnerRegion.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                onRegionSelected(LoRaRegion.ALL[position]);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+    }
+
+    /**
+     * Mostrar los límites de la región y llevar la frecuencia a su banda si queda fuera
+     */
+    private void onRegionSelected(LoRaRegion region) {
+        tvRegionLimits.setText(region.minFrequency + " - " + region.maxFrequency + " MHz, máx. " +
+                region.maxTxPower + " dBm");
+
+        float frequency = parseFloatOr(etFrequency.getText().toString(), -1);
+        if (frequency < region.minFrequency || frequency > region.maxFrequency) {
+            etFrequency.setText(String.valueOf(region.defaultFrequency));
+        }
+
+        int txPower = parseIntOr(etTxPower.getText().toString(), LoRaConfig.DEFAULT_TX_POWER);
+        if (txPower > region.maxTxPower) {
+            etTxPower.setText(String.valueOf(region.maxTxPower));
+        }
     }
 
     private class SpinnerChangeListener implements AdapterView.OnItemSelectedListener {
@@ -162,11 +294,18 @@ public class SettingFragment extends Fragment {
         int ackInterval = Integer.parseInt(ackIntervalValues[spinnerAckInterval.getSelectedItemPosition()]);
 
         LoRaConfig newConfig = new LoRaConfig(bandwidth, spreadingFactor, codingRate, ackInterval);
-
-        if (!newConfig.isValid()) {
+        newConfig.setRegion(regionValues[spinnerRegion.getSelectedItemPosition()]);
+        newConfig.setFrequency(parseFloatOr(etFrequency.getText().toString(), -1));
+        newConfig.setTxPower(parseIntOr(etTxPower.getText().toString(), Integer.MIN_VALUE));
+        newConfig.setPreambleLength(parseIntOr(etPreamble.getText().toString(), -1));
+        newConfig.setSyncWord(syncWordValues[spinnerSyncWord.getSelectedItemPosition()]);
+        newConfig.setImplicitHeader(cbImplicitHeader.isChecked());
+
+        String error = newConfig.getValidationError();
+        if (error != null) {
             Toast.makeText(requireContext(),
-                    "❌ Configuración inválida",
-                    Toast.LENGTH_SHORT).show();
+                    "❌ Configuración inválida\n" + error,
+                    Toast.LENGTH_LONG).show();
             return;
         }
 
@@ -183,7 +322,7 @@ public class SettingFragment extends Fragment {
     }
 
     private void setSpinnersToCurrentConfig() {
-        int bwIndex = getIndexInArray(bandwidthValues, String.valueOf((int)currentConfig.getBandwidth()));
+        int bwIndex = getIndexInArray(bandwidthValues, LoRaConfig.formatBandwidth(currentConfig.getBandwidth()));
         spinnerBandwidth.setSelection(bwIndex);
 
         int sfIndex = getIndexInArray(spreadingFactorValues, String.valueOf(currentConfig.getSpreadingFactor()));
@@ -195,6 +334,29 @@ public class SettingFragment extends Fragment {
 
         int ackIndex = getIndexInArray(ackIntervalValues, String.valueOf(currentConfig.getAckInterval()));
         spinnerAckInterval.setSelection(ackIndex);
+
+        spinnerRegion.setSelection(getIndexInArray(regionValues, currentConfig.getRegion()));
+        etFrequency.setText(String.valueOf(currentConfig.getFrequency()));
+        etTxPower.setText(String.valueOf(currentConfig.getTxPower()));
+        etPreamble.setText(String.valueOf(currentConfig.getPreambleLength()));
+        spinnerSyncWord.setSelection(currentConfig.getSyncWord() == LoRaConfig.SYNC_WORD_PUBLIC ? 1 : 0);
+        cbImplicitHeader.setChecked(currentConfig.isImplicitHeader());
+    }
+
+    private static float parseFloatOr(String text, float fallback) {
+        try {
+            return Float.parseFloat(text.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static int parseIntOr(String text, int fallback) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
     }
 
     private int getIndexInArray(String[] array, String value) {
@@ -208,10 +370,19 @@ public class SettingFragment extends Fragment {
 
     private void updateCurrentConfigDisplay() {
         String configText = "📻 Configuración Actual:\n\n" +
-                "• Bandwidth: " + (int)currentConfig.getBandwidth() + " kHz\n" +
+                "• Bandwidth: " + LoRaConfig.formatBandwidth(currentConfig.getBandwidth()) + " kHz\n" +
                 "• Spreading Factor: " + currentConfig.getSpreadingFactor() + "\n" +
                 "• Coding Rate: 4/" + currentConfig.getCodingRate() + "\n" +
-                "• ACK Interval: " + currentConfig.getAckInterval() + " paquetes";
+                "• ACK Interval: " + currentConfig.getAckInterval() + " paquetes\n" +
+                "• Frecuencia: " + currentConfig.getFrequency() + " MHz (" + currentConfig.getRegion() + ")\n" +
+                "• Potencia: " + currentConfig.getTxPower() + " dBm\n" +
+                "• Preámbulo: " + currentConfig.getPreambleLength() + " | Sync: 0x" +
+                Integer.toHexString(currentConfig.getSyncWord()) +
+                (currentConfig.isImplicitHeader() ? " | Cabecera implícita" : "") + "\n\n" +
+                "⏱️ Tiempo en aire por paquete: " + String.format(Locale.ROOT, "%.0f ms",
+                        currentConfig.getTimeOnAirMs(TransferEstimate.DEFAULT_PACKET_DATA_BYTES
+                                + TransferEstimate.PACKET_HEADER_BYTES)) + "\n" +
+                "• Tasa nominal: " + TransferEstimate.formatBitrate(currentConfig.getBitrate());
 
         tvCurrentConfig.setText(configText);
     }
@@ -229,9 +400,14 @@ public class SettingFragment extends Fragment {
             spinnerSpreadingFactor.setEnabled(true);
             spinnerCodingRate.setEnabled(true);
             spinnerAckInterval.setEnabled(true);
+            setRadioFieldsEnabled(true);
 
             btnApplyConfig.setEnabled(true);
             btnResetConfig.setEnabled(true);
+            btnLinkTest.setEnabled(currentMode == MainActivity.MODE_TRANSMITTER);
+            cbAdr.setEnabled(currentMode == MainActivity.MODE_TRANSMITTER);
+            cbAutoAck.setEnabled(currentMode == MainActivity.MODE_TRANSMITTER);
+            cbAckWindow.setEnabled(currentMode == MainActivity.MODE_TRANSMITTER && cbAutoAck.isChecked());
 
             spinnerBandwidth.setAlpha(1.0f);
             spinnerSpreadingFactor.setAlpha(1.0f);
@@ -247,9 +423,14 @@ public class SettingFragment extends Fragment {
             spinnerSpreadingFactor.setEnabled(false);
             spinnerCodingRate.setEnabled(false);
             spinnerAckInterval.setEnabled(false);
+            setRadioFieldsEnabled(false);
 
             btnApplyConfig.setEnabled(false);
             btnResetConfig.setEnabled(false);
+            btnLinkTest.setEnabled(false);
+            cbAdr.setEnabled(false);
+            cbAutoAck.setEnabled(false);
+            cbAckWindow.setEnabled(false);
 
             spinnerBandwidth.setAlpha(0.5f);
             spinnerSpreadingFactor.setAlpha(0.5f);
@@ -260,6 +441,131 @@ public class SettingFragment extends Fragment {
         }
     }
 
+    // ==================== PRUEBA DE ENLACE ====================
+
+    private void confirmLinkTest() {
+        if (!isConnected || mainActivity == null || currentMode != MainActivity.MODE_TRANSMITTER) {
+            Toast.makeText(requireContext(), "⚠️ Solo disponible en modo TX", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        LinkTestSweep running = mainActivity.getLinkTestSweep();
+        if (running != null && running.isRunning()) {
+            showLinkTestProgress(running, "Barrido en curso...");
+            return;
+        }
+
+        List<LoRaConfig> matrix = LinkTestSweep.buildMatrix(currentConfig,
+                LinkTestSweep.DEFAULT_SPREADING_FACTORS,
+                LinkTestSweep.DEFAULT_BANDWIDTHS,
+                LinkTestSweep.DEFAULT_CODING_RATES);
+
+        LinkTestSweep sweep = new LinkTestSweep(mainActivity.getConfigManager(), currentConfig, matrix,
+                LinkTestSweep.DEFAULT_PACKETS_PER_POINT, LinkTestSweep.DEFAULT_PAYLOAD_BYTES);
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("🧪 Prueba de enlace")
+                .setMessage(matrix.size() + " configuraciones, " +
+                        LinkTestSweep.DEFAULT_PACKETS_PER_POINT + " paquetes de " +
+                        LinkTestSweep.DEFAULT_PAYLOAD_BYTES + " bytes cada una.\n\n" +
+                        "Duración estimada: " + TransferEstimate.formatDuration(sweep.estimateDurationMs()) + "\n\n" +
+                        "El RX debe estar encendido con la configuración actual.")
+                .setPositiveButton("▶️ Iniciar", (dialog, which) -> startLinkTest(sweep))
+                .setNegativeButton("Cancelar", null)
+                .show();
+    }
+
+    private void startLinkTest(LinkTestSweep sweep) {
+        mainActivity.setLinkTestSweep(sweep);
+        showLinkTestProgress(sweep, "Iniciando...");
+
+        sweep.start(new LinkTestSweep.Listener() {
+            @Override
+            public void onPointStarted(int index, int total, LoRaConfig config) {
+                updateLinkTestProgress("Punto " + (index + 1) + "/" + total + "\n" + config);
+            }
+
+            @Override
+            public void onPointFinished(int index, int total, LinkTestSweep.Point point) {
+                Log.d("SettingFragment", "Punto " + (index + 1) + ": " + point.describe(sweep.getPayloadBytes()));
+            }
+
+            @Override
+            public void onSweepFinished(List<LinkTestSweep.Point> ranked, boolean cancelled) {
+                mainActivity.setLinkTestSweep(null);
+                if (!isAdded()) {
+                    return;
+                }
+
+                requireActivity().runOnUiThread(() -> {
+                    if (linkTestDialog != null) {
+                        linkTestDialog.dismiss();
+                        linkTestDialog = null;
+                    }
+                    showLinkTestReport(ranked, cancelled, sweep.getPayloadBytes());
+                });
+            }
+        });
+    }
+
+    private void showLinkTestProgress(LinkTestSweep sweep, String message) {
+        linkTestDialog = new AlertDialog.Builder(requireContext())
+                .setTitle("🧪 Prueba de enlace")
+                .setMessage(message)
+                .setCancelable(false)
+                .setNegativeButton("⏹️ Detener", (dialog, which) -> sweep.cancel())
+                .setPositiveButton("Ocultar", null)
+                .show();
+    }
+
+    private void updateLinkTestProgress(String message) {
+        if (!isAdded()) {
+            return;
+        }
+
+        requireActivity().runOnUiThread(() -> {
+            if (linkTestDialog != null && linkTestDialog.isShowing()) {
+                linkTestDialog.setMessage(message);
+            }
+        });
+    }
+
+    private void showLinkTestReport(List<LinkTestSweep.Point> ranked, boolean cancelled, int payloadBytes) {
+        StringBuilder report = new StringBuilder();
+        if (cancelled) {
+            report.append("⚠️ Barrido detenido, resultados parciales\n\n");
+        }
+
+        int position = 1;
+        for (LinkTestSweep.Point point : ranked) {
+            report.append(position++).append(". ").append(point.describe(payloadBytes)).append("\n\n");
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(requireContext())
+                .setTitle("📊 Ranking por goodput")
+                .setMessage(ranked.isEmpty() ? "Sin resultados" : report.toString().trim())
+                .setNegativeButton("Cerrar", null);
+
+        // Aplicar directamente la mejor configuración
+        if (!ranked.isEmpty() && ranked.get(0).completed && ranked.get(0).received > 0) {
+            LoRaConfig best = ranked.get(0).config;
+            builder.setPositiveButton("✅ Usar la mejor", (dialog, which) -> {
+                currentConfig = best;
+                setSpinnersToCurrentConfig();
+                applyConfiguration();
+            });
+        }
+        builder.show();
+    }
+
+    private void setRadioFieldsEnabled(boolean enabled) {
+        View[] fields = {spinnerRegion, spinnerSyncWord, etFrequency, etTxPower, etPreamble, cbImplicitHeader};
+        for (View field : fields) {
+            field.setEnabled(enabled);
+            field.setAlpha(enabled ? 1.0f : 0.5f);
+        }
+    }
+
     public void onModeChanged(int mode) {
         currentMode = mode;
         isConnected = (mode != MainActivity.MODE_NONE);
@@ -271,14 +577,7 @@ public class SettingFragment extends Fragment {
 
     public void onConfigReceived(String jsonData) {
         try {
-            JSONObject json = new JSONObject(jsonData);
-
-            float bw = (float) json.getInt("bw");
-            int sf = json.getInt("sf");
-            int cr = json.getInt("cr");
-            int ack = json.getInt("ack");
-
-            currentConfig = new LoRaConfig(bw, sf, cr, ack);
+            currentConfig = LoRaConfig.fromJson(jsonData);
 
             requireActivity().runOnUiThread(() -> {
                 setSpinnersToCurrentConfig();
@@ -0,0 +1,377 @@
+package com.example.lora_gtr;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Caché de archivos preparados para subir, con presupuesto de bytes y
+ * expulsión LRU, indexada por el SHA-256 del contenido.
+ *
+ * Cada entrada guarda el archivo (hash.bin) y sus metadatos (hash.json):
+ * nombre original, tamaño, SHA-256 y el CRC32 de cada chunk de subida.
+ * Volver a enviar el mismo contenido a otro gateway reutiliza la copia.
+ * Las entradas fijadas con pin() (lotes aún sin subir) no se expulsan
+ * aunque se pase del presupuesto.
+ */
+public class StagingCache {
+
+    private static final String TAG = "StagingCache";
+    private static final String DIR_NAME = "staging";
+    private static final String PART_SUFFIX = ".part";
+
+    /**
+     * Archivo preparado para subir
+     */
+    public static class StagedFile {
+        public final File file;
+        public final String name;
+        public final long size;
+        public final String sha256;
+        public final long[] chunkCrcs;
+
+        StagedFile(File file, String name, long size, String sha256, long[] chunkCrcs) {
+            this.file = file;
+            this.name = name;
+            this.size = size;
+            this.sha256 = sha256;
+            this.chunkCrcs = chunkCrcs;
+        }
+    }
+
+    private final File dir;
+    private final long maxBytes;
+    private final int chunkSize;
+    private final Map<String, Integer> pins = new HashMap<>();
+
+    /**
+     * @param cacheDir Directorio de caché de la app
+     * @param maxBytes Presupuesto total en bytes
+     * @param chunkSize Tamaño de chunk de subida (para el índice de CRCs)
+     */
+    public StagingCache(File cacheDir, long maxBytes, int chunkSize) {
+        this.dir = new File(cacheDir, DIR_NAME);
+        this.maxBytes = maxBytes;
+        this.chunkSize = chunkSize;
+    }
+
+    // ==================== PREPARACIÓN ====================
+
+    /**
+     * Copiar un contenido a la caché calculando hashes en el mismo paso.
+     * Si ya existe una entrada con el mismo SHA-256 se reutiliza.
+     * @param name Nombre con el que se subirá al gateway
+     */
+    public synchronized StagedFile stage(InputStream input, String name) throws IOException {
+        ensureDir();
+
+        File part = new File(dir, UUID.randomUUID() + PART_SUFFIX);
+        MessageDigest digest = newDigest();
+        List<Long> crcs = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        int inChunk = 0;
+        long total = 0;
+
+        try (FileOutputStream output = new FileOutputStream(part)) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                digest.update(buffer, 0, read);
+                total += read;
+
+                // CRC por chunk de subida
+                int offset = 0;
+                while (offset < read) {
+                    int n = Math.min(chunkSize - inChunk, read - offset);
+                    crc.update(buffer, offset, n);
+                    inChunk += n;
+                    offset += n;
+                    if (inChunk == chunkSize) {
+                        crcs.add(crc.getValue());
+                        crc.reset();
+                        inChunk = 0;
+                    }
+                }
+            }
+            output.getFD().sync();
+        } catch (IOException e) {
+            part.delete();
+            throw e;
+        }
+
+        if (inChunk > 0) {
+            crcs.add(crc.getValue());
+        }
+
+        String sha256 = toHex(digest.digest());
+        File data = dataFile(sha256);
+
+        if (data.exists()) {
+            // Mismo contenido ya preparado: reutilizar
+            part.delete();
+            StagedFile existing = load(sha256);
+            if (existing != null) {
+                Log.d(TAG, "Reutilizando " + sha256.substring(0, 8) + " para " + name);
+                touch(existing);
+                return existing.name.equals(name) ? existing : writeMeta(data, name, existing.size, sha256, existing.chunkCrcs);
+            }
+        }
+
+        if (!part.renameTo(data)) {
+            part.delete();
+            throw new IOException("No se pudo mover " + part.getName());
+        }
+
+        long[] chunkCrcs = new long[crcs.size()];
+        for (int i = 0; i < chunkCrcs.length; i++) {
+            chunkCrcs[i] = crcs.get(i);
+        }
+
+        StagedFile staged = writeMeta(data, name, total, sha256, chunkCrcs);
+        evict(sha256);
+        return staged;
+    }
+
+    /**
+     * Buscar una entrada por SHA-256 (y marcarla como usada)
+     */
+    public synchronized StagedFile get(String sha256) {
+        StagedFile staged = load(sha256);
+        if (staged != null) {
+            touch(staged);
+        }
+        return staged;
+    }
+
+    /**
+     * Entradas de la caché, la más reciente primero
+     */
+    public synchronized List<StagedFile> list() {
+        List<StagedFile> result = new ArrayList<>();
+        File[] metas = dir.listFiles((d, n) -> n.endsWith(".json"));
+        if (metas == null) {
+            return result;
+        }
+
+        Arrays.sort(metas, (a, b) -> Long.compare(
+                dataFile(hashOf(b)).lastModified(), dataFile(hashOf(a)).lastModified()));
+        for (File meta : metas) {
+            StagedFile staged = load(hashOf(meta));
+            if (staged != null) {
+                result.add(staged);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Proteger una entrada de la expulsión hasta el unpin() correspondiente
+     */
+    public synchronized void pin(StagedFile staged) {
+        pins.merge(staged.sha256, 1, Integer::sum);
+    }
+
+    public synchronized void unpin(StagedFile staged) {
+        Integer count = pins.get(staged.sha256);
+        if (count == null) {
+            return;
+        }
+        if (count <= 1) {
+            pins.remove(staged.sha256);
+        } else {
+            pins.put(staged.sha256, count - 1);
+        }
+    }
+
+    // ==================== LIMPIEZA ====================
+
+    /**
+     * Borrar restos de subidas interrumpidas (.part y entradas incompletas)
+     * y ajustar al presupuesto. Llamar al arrancar, fuera del hilo UI.
+     */
+    public synchronized void cleanup() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        int removed = 0;
+        for (File file : files) {
+            String n = file.getName();
+            boolean orphan;
+            if (n.endsWith(PART_SUFFIX)) {
+                orphan = true;
+            } else if (n.endsWith(".bin")) {
+                orphan = !metaFile(hashOf(file)).exists();
+            } else if (n.endsWith(".json")) {
+                orphan = !dataFile(hashOf(file)).exists();
+            } else {
+                orphan = true;
+            }
+
+            if (orphan && file.delete()) {
+                removed++;
+            }
+        }
+
+        if (removed > 0) {
+            Log.d(TAG, removed + " archivos huérfanos eliminados");
+        }
+        evict(null);
+    }
+
+    /**
+     * Expulsar las entradas menos usadas hasta entrar en el presupuesto
+     * @param keep Entrada recién preparada que no se expulsa (o null)
+     * Las fijadas tampoco: el lote las necesita para subirlas
+     */
+    private void evict(String keep) {
+        File[] data = dir.listFiles((d, n) -> n.endsWith(".bin"));
+        if (data == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File file : data) {
+            total += file.length();
+        }
+
+        // Menos usado primero
+        Arrays.sort(data, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+
+        for (File file : data) {
+            if (total <= maxBytes) {
+                break;
+            }
+
+            String sha256 = hashOf(file);
+            if (sha256.equals(keep) || pins.containsKey(sha256)) {
+                continue;
+            }
+
+            total -= file.length();
+            file.delete();
+            metaFile(sha256).delete();
+            Log.d(TAG, "Expulsado " + sha256.substring(0, 8));
+        }
+    }
+
+    // ==================== METADATOS ====================
+
+    private StagedFile writeMeta(File data, String name, long size, String sha256, long[] chunkCrcs)
+            throws IOException {
+        try {
+            JSONObject meta = new JSONObject();
+            meta.put("name", name);
+            meta.put("size", size);
+            meta.put("sha256", sha256);
+            meta.put("chunkSize", chunkSize);
+            JSONArray crcs = new JSONArray();
+            for (long c : chunkCrcs) {
+                crcs.put(c);
+            }
+            meta.put("chunkCrcs", crcs);
+
+            try (FileOutputStream fos = new FileOutputStream(metaFile(sha256))) {
+                fos.write(meta.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (JSONException e) {
+            throw new IOException("Error escribiendo metadatos", e);
+        }
+
+        return new StagedFile(data, name, size, sha256, chunkCrcs);
+    }
+
+    private StagedFile load(String sha256) {
+        File data = dataFile(sha256);
+        File meta = metaFile(sha256);
+        if (!data.exists() || !meta.exists()) {
+            return null;
+        }
+
+        try (FileInputStream fis = new FileInputStream(meta)) {
+            byte[] bytes = new byte[(int) meta.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = fis.read(bytes, read, bytes.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+
+            JSONObject json = new JSONObject(new String(bytes, 0, read, StandardCharsets.UTF_8));
+            if (json.optInt("chunkSize", chunkSize) != chunkSize) {
+                return null;
+            }
+
+            JSONArray crcs = json.getJSONArray("chunkCrcs");
+            long[] chunkCrcs = new long[crcs.length()];
+            for (int i = 0; i < chunkCrcs.length; i++) {
+                chunkCrcs[i] = crcs.getLong(i);
+            }
+            return new StagedFile(data, json.getString("name"), json.getLong("size"), sha256, chunkCrcs);
+
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Metadatos corruptos: " + meta.getName(), e);
+            return null;
+        }
+    }
+
+    private void touch(StagedFile staged) {
+        staged.file.setLastModified(System.currentTimeMillis());
+    }
+
+    private void ensureDir() throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("No se pudo crear " + dir.getPath());
+        }
+    }
+
+    private File dataFile(String sha256) {
+        return new File(dir, sha256 + ".bin");
+    }
+
+    private File metaFile(String sha256) {
+        return new File(dir, sha256 + ".json");
+    }
+
+    private static String hashOf(File file) {
+        String n = file.getName();
+        int dot = n.indexOf('.');
+        return dot > 0 ? n.substring(0, dot) : n;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,426 @@
+package com.example.lora_gtr;
+
+import android.util.Log;
+
+import com.example.lora_gtr.models.FileItem;
+import com.example.lora_gtr.models.LoRaConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Lote de archivos para subir al TX y transmitir por LoRa.
+ *
+ * Dos etapas en tubería: un hilo sube los archivos por BLE (cola BULK) y,
+ * en cuanto uno termina, lo pasa al DutyCycleScheduler para transmitirlo.
+ * Mientras el gateway transmite el archivo N, la app ya está subiendo el
+ * N+1, así la etapa LoRa (la lenta) no queda parada esperando al BLE.
+ * Como mucho MAX_AHEAD archivos van por delante del que se transmite,
+ * para no llenar el almacenamiento del gateway.
+ *
+ * Los archivos pendientes se pueden reordenar y cualquiera que no se esté
+ * transmitiendo se puede quitar. Su copia en la StagingCache queda fijada
+ * hasta que termina su subida.
+ */
+public class TransmitBatch implements DutyCycleScheduler.Listener {
+
+    private static final String TAG = "TransmitBatch";
+
+    private static final int MAX_AHEAD = 2;   // Subidos o subiendo, esperando aire
+
+    public static final int STATE_PENDING = 0;     // Esperando subida
+    public static final int STATE_UPLOADING = 1;
+    public static final int STATE_QUEUED = 2;      // Subido, en la cola de transmisión
+    public static final int STATE_AIRING = 3;
+    public static final int STATE_DONE = 4;
+    public static final int STATE_FAILED = 5;
+    public static final int STATE_CANCELLED = 6;
+
+    public static class Item {
+        public final StagingCache.StagedFile staged;
+        public final boolean transmit;      // false: solo subir
+        private int state = STATE_PENDING;
+        private DutyCycleScheduler.Job job;
+
+        Item(StagingCache.StagedFile staged, boolean transmit) {
+            this.staged = staged;
+            this.transmit = transmit;
+        }
+
+        public int getState() {
+            return state;
+        }
+
+        public DutyCycleScheduler.Job getJob() {
+            return job;
+        }
+
+        public boolean isFinished() {
+            return state >= STATE_DONE;
+        }
+    }
+
+    public interface Listener {
+        void onBatchChanged(List<Item> items);
+    }
+
+    private final LoRaConfigManager configManager;
+    private final StagingCache stagingCache;
+    private final RemoteFileIndex fileIndex;
+    private final DutyCycleScheduler scheduler;
+    private final Supplier<LoRaConfig> configSupplier;
+    private final ExecutorService uploader = Executors.newSingleThreadExecutor();
+    private final List<Item> items = new ArrayList<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private boolean workerRunning = false;
+
+    public TransmitBatch(LoRaConfigManager configManager, StagingCache stagingCache, RemoteFileIndex fileIndex,
+                         DutyCycleScheduler scheduler, Supplier<LoRaConfig> configSupplier) {
+        this.configManager = configManager;
+        this.stagingCache = stagingCache;
+        this.fileIndex = fileIndex;
+        this.scheduler = scheduler;
+        this.configSupplier = configSupplier;
+        scheduler.addListener(this);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // ==================== LOTE ====================
+
+    /**
+     * Añadir archivos al final del lote (si hay uno en marcha se suman a él)
+     * @param transmit true para transmitir por LoRa tras subir
+     */
+    public void add(List<StagingCache.StagedFile> files, boolean transmit) {
+        synchronized (this) {
+            // Empezar limpio si el lote anterior ya terminó
+            if (!isActive()) {
+                items.clear();
+            }
+            for (StagingCache.StagedFile staged : files) {
+                stagingCache.pin(staged);
+                items.add(new Item(staged, transmit));
+            }
+            Log.d(TAG, "Lote: +" + files.size() + " archivos, " + items.size() + " en total");
+
+            if (!workerRunning) {
+                workerRunning = true;
+                uploader.execute(this::uploadLoop);
+            }
+            notifyAll();
+        }
+        notifyChanged();
+    }
+
+    public synchronized List<Item> getItems() {
+        return new ArrayList<>(items);
+    }
+
+    /**
+     * Queda algún archivo sin terminar
+     */
+    public synchronized boolean isActive() {
+        for (Item item : items) {
+            if (!item.isFinished()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Al lote le quedan subidas: la cola BULK está o estará ocupada
+     */
+    public synchronized boolean isUploading() {
+        for (Item item : items) {
+            if (item.state == STATE_PENDING || item.state == STATE_UPLOADING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mover un archivo pendiente de subir una posición
+     * @param delta -1 para adelantarlo, +1 para retrasarlo
+     */
+    public boolean move(Item item, int delta) {
+        synchronized (this) {
+            if (item.state != STATE_PENDING) {
+                return false;
+            }
+
+            // Solo se intercambia con otro pendiente: lo subido ya tiene su turno
+            int index = items.indexOf(item);
+            int target = index + delta;
+            if (index < 0 || target < 0 || target >= items.size()
+                    || items.get(target).state != STATE_PENDING) {
+                return false;
+            }
+            items.set(index, items.get(target));
+            items.set(target, item);
+        }
+        notifyChanged();
+        return true;
+    }
+
+    /**
+     * Quitar un archivo del lote
+     * @return false si ya se está transmitiendo o terminó
+     */
+    public boolean cancel(Item item) {
+        DutyCycleScheduler.Job job = null;
+        boolean abortUpload = false;
+        boolean release = false;
+
+        synchronized (this) {
+            switch (item.state) {
+                case STATE_PENDING:
+                    release = true;
+                    break;
+                case STATE_UPLOADING:
+                    abortUpload = true;
+                    break;
+                case STATE_QUEUED:
+                    job = item.job;
+                    break;
+                default:
+                    return false;
+            }
+            item.state = STATE_CANCELLED;
+            notifyAll();
+        }
+
+        // Si se estaba subiendo, la libera el hilo de subida al terminar
+        if (release) {
+            stagingCache.unpin(item.staged);
+        }
+        if (abortUpload) {
+            configManager.cancelTransfer();
+        }
+        if (job != null) {
+            scheduler.cancel(job);
+        }
+        Log.d(TAG, "Quitado del lote: " + item.staged.name);
+        notifyChanged();
+        return true;
+    }
+
+    /**
+     * Cancelar todo lo que no se esté transmitiendo (al desconectar o a petición)
+     */
+    public void cancelAll() {
+        for (Item item : getItems()) {
+            if (item.state != STATE_AIRING && !item.isFinished()) {
+                cancel(item);
+            }
+        }
+    }
+
+    // ==================== PROGRESO ====================
+
+    /**
+     * Fracción completada del lote, por bytes (0..1)
+     * El archivo en el aire cuenta según su tiempo estimado transcurrido
+     */
+    public synchronized double getProgress() {
+        long now = System.currentTimeMillis();
+        double total = 0;
+        double done = 0;
+
+        for (Item item : items) {
+            if (item.state == STATE_CANCELLED) {
+                continue;
+            }
+            total += item.staged.size;
+            if (item.isFinished()) {
+                done += item.staged.size;
+            } else if (item.state == STATE_AIRING && item.job != null) {
+                long span = Math.max(1, item.job.finishAt - item.job.startAt);
+                double fraction = Math.min(1.0, Math.max(0, now - item.job.startAt) / (double) span);
+                done += item.staged.size * fraction;
+            }
+        }
+        return total > 0 ? done / total : 1.0;
+    }
+
+    /**
+     * Hora estimada de fin del lote, con el ciclo de trabajo incluido
+     */
+    public long estimateFinishAt() {
+        List<FileItem> pending = new ArrayList<>();
+        long finishAt = System.currentTimeMillis();
+
+        synchronized (this) {
+            for (Item item : items) {
+                if (item.job != null && !item.isFinished()) {
+                    finishAt = Math.max(finishAt, item.job.finishAt);
+                } else if (item.transmit && (item.state == STATE_PENDING || item.state == STATE_UPLOADING)) {
+                    pending.add(new FileItem(item.staged.name, item.staged.size));
+                }
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            List<DutyCycleScheduler.Job> projected = scheduler.preview(pending, currentConfig());
+            finishAt = Math.max(finishAt, projected.get(projected.size() - 1).finishAt);
+        }
+        return finishAt;
+    }
+
+    // ==================== ETAPA BLE ====================
+
+    private void uploadLoop() {
+        while (true) {
+            Item next = null;
+
+            synchronized (this) {
+                // No adelantarse demasiado a la etapa LoRa
+                while (aheadCount() >= MAX_AHEAD && hasPending()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        workerRunning = false;
+                        return;
+                    }
+                }
+
+                for (Item item : items) {
+                    if (item.state == STATE_PENDING) {
+                        next = item;
+                        break;
+                    }
+                }
+                if (next == null) {
+                    workerRunning = false;
+                    break;
+                }
+                next.state = STATE_UPLOADING;
+            }
+            notifyChanged();
+
+            Log.d(TAG, "Subiendo " + next.staged.name);
+            boolean completed = configManager.uploadFile(next.staged);
+            stagingCache.unpin(next.staged);
+            if (completed) {
+                fileIndex.applyUpload(next.staged.name, next.staged.size);
+            }
+
+            boolean transmit;
+            synchronized (this) {
+                if (next.state == STATE_CANCELLED) {
+                    continue;
+                }
+                if (!completed) {
+                    Log.w(TAG, "Falló la subida de " + next.staged.name);
+                    next.state = STATE_FAILED;
+                    transmit = false;
+                } else if (next.transmit) {
+                    next.state = STATE_QUEUED;
+                    transmit = true;
+                } else {
+                    next.state = STATE_DONE;
+                    transmit = false;
+                }
+            }
+
+            if (transmit) {
+                // Fuera del lock: el scheduler avisa a onQueueChanged desde aquí
+                DutyCycleScheduler.Job job = scheduler.enqueue(
+                        new FileItem(next.staged.name, next.staged.size), currentConfig());
+                boolean cancelled;
+                synchronized (this) {
+                    next.job = job;
+                    cancelled = next.state == STATE_CANCELLED;
+                }
+                if (cancelled) {
+                    scheduler.cancel(job);
+                }
+                onQueueChanged(scheduler.getJobs());
+            }
+            notifyChanged();
+        }
+        notifyChanged();
+    }
+
+    private int aheadCount() {
+        int count = 0;
+        for (Item item : items) {
+            if (item.state == STATE_UPLOADING || item.state == STATE_QUEUED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean hasPending() {
+        for (Item item : items) {
+            if (item.state == STATE_PENDING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private LoRaConfig currentConfig() {
+        LoRaConfig config = configSupplier.get();
+        return config != null ? config : new LoRaConfig();
+    }
+
+    // ==================== ETAPA LoRa ====================
+
+    @Override
+    public void onQueueChanged(List<DutyCycleScheduler.Job> jobs) {
+        boolean changed = false;
+
+        synchronized (this) {
+            for (Item item : items) {
+                if (item.job == null || (item.state != STATE_QUEUED && item.state != STATE_AIRING)) {
+                    continue;
+                }
+
+                int state;
+                if (!jobs.contains(item.job)) {
+                    state = item.job.cancelled ? STATE_CANCELLED : STATE_DONE;
+                } else if (item.job.state == DutyCycleScheduler.STATE_SENDING) {
+                    state = STATE_AIRING;
+                } else {
+                    state = STATE_QUEUED;
+                }
+
+                if (state != item.state) {
+                    item.state = state;
+                    changed = true;
+                }
+            }
+
+            if (changed) {
+                // Hay hueco para subir el siguiente
+                notifyAll();
+            }
+        }
+
+        if (changed) {
+            notifyChanged();
+        }
+    }
+
+    private void notifyChanged() {
+        List<Item> snapshot = getItems();
+        for (Listener listener : listeners) {
+            listener.onBatchChanged(snapshot);
+        }
+    }
+}
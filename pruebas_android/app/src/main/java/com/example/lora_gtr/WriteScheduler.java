@@ -0,0 +1,403 @@
+package com.example.lora_gtr;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Planificador de escrituras BLE con dos clases de prioridad:
+ * CONTROL (comandos interactivos) y BULK (chunks de archivos).
+ *
+ * Solo hay una escritura GATT en vuelo a la vez. Entre cada chunk BULK
+ * se atienden primero los comandos CONTROL pendientes, de modo que un
+ * DELETE o SET_CONFIG espera como mucho un chunk y no toda la subida.
+ *
+ * Opcionalmente agrupa comandos de control cortos (terminados en \n) que
+ * llegan dentro de un plazo breve en una sola escritura del tamaño del MTU,
+ * al estilo de Nagle: GET_CONFIG + GET_FILES cuestan un solo round trip.
+ */
+public class WriteScheduler {
+
+    private static final String TAG = "WriteScheduler";
+
+    // Clases de prioridad
+    public static final int PRIORITY_CONTROL = 0;
+    public static final int PRIORITY_BULK = 1;
+
+    // ==================== CONFIGURACIÓN ====================
+    private static final int MAX_BULK_QUEUE = 8;             // Backpressure para el productor de chunks
+    private static final long DEFAULT_BULK_GAP_MS = 50;      // Pausa entre chunks (el ESP32 escribe en flash)
+    private static final long CONTROL_LATENCY_TARGET_MS = 100;
+    private static final int DEFAULT_MAX_FRAME_SIZE = 20;    // MTU por defecto (23) - 3 bytes de cabecera ATT
+    private static final long DEFAULT_FLUSH_DELAY_MS = 15;
+    private static final int DEFAULT_MAX_BATCH = 4;
+
+    /**
+     * Escritor real de frames (la escritura GATT)
+     * Debe bloquear hasta que el frame se haya confirmado o falle
+     */
+    public interface FrameWriter {
+        boolean writeFrame(byte[] data);
+    }
+
+    private static class Frame {
+        final byte[] data;
+        final int priority;
+        final long enqueuedAt;
+
+        Frame(byte[] data, int priority) {
+            this.data = data;
+            this.priority = priority;
+            this.enqueuedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    private final FrameWriter writer;
+    private final Object lock = new Object();
+    private final ArrayDeque<Frame> controlQueue = new ArrayDeque<>();
+    private final ArrayDeque<Frame> bulkQueue = new ArrayDeque<>();
+
+    private Thread worker;
+    private boolean running = false;
+    private boolean bulkInFlight = false;
+    private long bulkGapMs = DEFAULT_BULK_GAP_MS;
+    private long nextBulkAllowedAt = 0;
+    private int cancelGeneration = 0;
+
+    // Agrupado de comandos cortos
+    private boolean coalescingEnabled = false;
+    private long flushDelayMs = DEFAULT_FLUSH_DELAY_MS;
+    private int maxBatch = DEFAULT_MAX_BATCH;
+    private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+    // Estadísticas de espera en cola por clase
+    private final long[] framesSent = new long[2];
+    private final long[] totalDelayMs = new long[2];
+    private final long[] maxDelayMs = new long[2];
+
+    public WriteScheduler(FrameWriter writer) {
+        this.writer = writer;
+    }
+
+    // ==================== CICLO DE VIDA ====================
+
+    public void start() {
+        synchronized (lock) {
+            if (running) return;
+            running = true;
+            worker = new Thread(this::runLoop, TAG);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            running = false;
+            controlQueue.clear();
+            bulkQueue.clear();
+            cancelGeneration++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Descartar todo lo pendiente (por ejemplo al desconectar)
+     */
+    public void clear() {
+        synchronized (lock) {
+            controlQueue.clear();
+            bulkQueue.clear();
+            cancelGeneration++;
+            lock.notifyAll();
+        }
+    }
+
+    // ==================== ENCOLADO ====================
+
+    /**
+     * Encolar un comando de control (no bloquea)
+     */
+    public void enqueueControl(byte[] data) {
+        synchronized (lock) {
+            controlQueue.add(new Frame(data, PRIORITY_CONTROL));
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Encolar un chunk de datos. Bloquea mientras la cola BULK esté llena.
+     * @param generation Generación obtenida con beginBulk()
+     * @return false si la transferencia fue cancelada
+     */
+    public boolean enqueueBulk(byte[] data, int generation) {
+        synchronized (lock) {
+            while (running && generation == cancelGeneration && bulkQueue.size() >= MAX_BULK_QUEUE) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+
+            if (!running || generation != cancelGeneration) {
+                return false;
+            }
+
+            bulkQueue.add(new Frame(data, PRIORITY_BULK));
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Iniciar una transferencia BULK
+     * @return Generación actual, usada para detectar cancelaciones
+     */
+    public int beginBulk() {
+        synchronized (lock) {
+            return cancelGeneration;
+        }
+    }
+
+    /**
+     * Esperar a que se vacíe la cola BULK
+     * @return false si la transferencia fue cancelada o falló la escritura de un chunk
+     */
+    public boolean awaitBulkDrained(int generation) {
+        synchronized (lock) {
+            while (running && generation == cancelGeneration && (!bulkQueue.isEmpty() || bulkInFlight)) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return running && generation == cancelGeneration;
+        }
+    }
+
+    /**
+     * Cancelar la transferencia BULK en curso.
+     * Los chunks pendientes se descartan; el chunk en vuelo termina.
+     */
+    public void cancelBulk() {
+        synchronized (lock) {
+            int dropped = bulkQueue.size();
+            bulkQueue.clear();
+            cancelGeneration++;
+            lock.notifyAll();
+            Log.d(TAG, "Transferencia cancelada, " + dropped + " chunks descartados");
+        }
+    }
+
+    public void setBulkGapMs(long bulkGapMs) {
+        synchronized (lock) {
+            this.bulkGapMs = Math.max(0, bulkGapMs);
+        }
+    }
+
+    /**
+     * Configurar el agrupado de comandos cortos
+     * @param enabled Activar o desactivar el agrupado
+     * @param flushDelayMs Plazo máximo que espera el primer comando antes de enviarse
+     * @param maxBatch Número máximo de comandos por escritura
+     */
+    public void setCoalescing(boolean enabled, long flushDelayMs, int maxBatch) {
+        synchronized (lock) {
+            this.coalescingEnabled = enabled;
+            this.flushDelayMs = Math.max(0, flushDelayMs);
+            this.maxBatch = Math.max(1, maxBatch);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Tamaño máximo de una escritura (MTU negociado - 3)
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        synchronized (lock) {
+            this.maxFrameSize = Math.max(DEFAULT_MAX_FRAME_SIZE, maxFrameSize);
+        }
+    }
+
+    // ==================== BUCLE DE ESCRITURA ====================
+
+    private void runLoop() {
+        while (true) {
+            Frame frame;
+            List<Frame> batch = null;
+
+            synchronized (lock) {
+                frame = null;
+                while (running) {
+                    frame = controlQueue.poll();
+                    if (frame != null) {
+                        batch = collectControlBatch(frame);
+                        break;
+                    }
+
+                    if (!bulkQueue.isEmpty()) {
+                        long wait = nextBulkAllowedAt - SystemClock.elapsedRealtime();
+                        if (wait <= 0) {
+                            frame = bulkQueue.poll();
+                            bulkInFlight = true;
+                            lock.notifyAll();  // Hay hueco para el productor
+                            break;
+                        }
+                        waitOnLock(wait);
+                    } else {
+                        waitOnLock(0);
+                    }
+                }
+
+                if (!running) return;
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            boolean success;
+
+            if (batch != null) {
+                success = writer.writeFrame(concat(batch));
+
+                synchronized (lock) {
+                    for (Frame f : batch) {
+                        recordDelay(f.priority, now - f.enqueuedAt);
+                    }
+                }
+
+                if (batch.size() > 1) {
+                    Log.d(TAG, batch.size() + " comandos agrupados en una escritura");
+                }
+            } else {
+                success = writer.writeFrame(frame.data);
+
+                synchronized (lock) {
+                    recordDelay(frame.priority, now - frame.enqueuedAt);
+                    bulkInFlight = false;
+                    // Punto de preempción: los comandos de control pueden pasar durante la pausa
+                    nextBulkAllowedAt = SystemClock.elapsedRealtime() + bulkGapMs;
+                    lock.notifyAll();
+                }
+            }
+
+            if (!success) {
+                Log.w(TAG, "Escritura fallida (prioridad " + frame.priority + ")");
+                // Un chunk perdido deja el archivo incompleto: abortar la transferencia
+                if (batch == null) {
+                    cancelBulk();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reunir comandos de control cortos que caben en una escritura.
+     * Espera hasta flushDelayMs desde que se encoló el primero. Llamar con lock tomado.
+     */
+    private List<Frame> collectControlBatch(Frame first) {
+        List<Frame> batch = new ArrayList<>();
+        batch.add(first);
+
+        if (!coalescingEnabled || !isCoalescable(first.data)) {
+            return batch;
+        }
+
+        int size = first.data.length;
+        long deadline = first.enqueuedAt + flushDelayMs;
+
+        while (running && batch.size() < maxBatch && size < maxFrameSize) {
+            Frame next = controlQueue.peek();
+
+            if (next != null) {
+                if (!isCoalescable(next.data) || size + next.data.length > maxFrameSize) {
+                    break;
+                }
+                controlQueue.poll();
+                batch.add(next);
+                size += next.data.length;
+                continue;
+            }
+
+            long wait = deadline - SystemClock.elapsedRealtime();
+            if (wait <= 0) {
+                break;
+            }
+            waitOnLock(wait);
+        }
+
+        return batch;
+    }
+
+    private boolean isCoalescable(byte[] data) {
+        return data.length > 0 && data.length < maxFrameSize && data[data.length - 1] == '\n';
+    }
+
+    private static byte[] concat(List<Frame> batch) {
+        if (batch.size() == 1) {
+            return batch.get(0).data;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Frame f : batch) {
+            out.write(f.data, 0, f.data.length);
+        }
+        return out.toByteArray();
+    }
+
+    private void waitOnLock(long timeoutMs) {
+        try {
+            lock.wait(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private void recordDelay(int priority, long delay) {
+        framesSent[priority]++;
+        totalDelayMs[priority] += delay;
+        if (delay > maxDelayMs[priority]) {
+            maxDelayMs[priority] = delay;
+        }
+
+        if (priority == PRIORITY_CONTROL && delay > CONTROL_LATENCY_TARGET_MS) {
+            Log.w(TAG, "Comando de control esperó " + delay + " ms en cola");
+        }
+    }
+
+    // ==================== ESTADÍSTICAS ====================
+
+    /**
+     * Tiempo medio de espera en cola (ms) para una clase
+     */
+    public long getAverageDelayMs(int priority) {
+        synchronized (lock) {
+            return framesSent[priority] == 0 ? 0 : totalDelayMs[priority] / framesSent[priority];
+        }
+    }
+
+    /**
+     * Tiempo máximo de espera en cola (ms) para una clase
+     */
+    public long getMaxDelayMs(int priority) {
+        synchronized (lock) {
+            return maxDelayMs[priority];
+        }
+    }
+
+    public String getStats() {
+        synchronized (lock) {
+            return "CONTROL: " + framesSent[PRIORITY_CONTROL] + " frames, media " +
+                    getAverageDelayMs(PRIORITY_CONTROL) + " ms, máx " + maxDelayMs[PRIORITY_CONTROL] + " ms | " +
+                    "BULK: " + framesSent[PRIORITY_BULK] + " frames, media " +
+                    getAverageDelayMs(PRIORITY_BULK) + " ms, máx " + maxDelayMs[PRIORITY_BULK] + " ms";
+        }
+    }
+}
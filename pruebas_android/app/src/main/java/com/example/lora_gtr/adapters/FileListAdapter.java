@@ -4,38 +4,128 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.lora_gtr.MainActivity;
 import com.example.lora_gtr.R;
 import com.example.lora_gtr.models.FileItem;
+import com.google.android.material.card.MaterialCardView;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-public class FileListAdapter extends RecyclerView.Adapter<FileListAdapter.FileViewHolder> {
+/**
+ * Adapter de archivos con diff asíncrono (DiffUtil en hilo de fondo),
+ * IDs estables por nombre y rebinds parciales por payload.
+ */
+public class FileListAdapter extends ListAdapter<FileItem, FileListAdapter.FileViewHolder> {
+
+    // Payloads para rebinds parciales
+    private static final String PAYLOAD_MODE = "mode";
+    private static final String PAYLOAD_SIZE = "size";
+    private static final String PAYLOAD_PROGRESS = "progress";
+    private static final String PAYLOAD_SELECTION = "selection";
+
+    private static final int STROKE_DEFAULT = 0xFFE0E0E0;
+    private static final int STROKE_SELECTED = 0xFF2196F3;
 
-    private List<FileItem> fileList;
     private OnFileActionListener listener;
     private int currentMode;
 
+    // Progreso por archivo (0-100), fuera de FileItem para no romper el diff
+    private final Map<String, Integer> progressByFile = new HashMap<>();
+
     public interface OnFileActionListener {
         void onSendLoRa(FileItem file);
         void onDownload(FileItem file);
         void onDelete(FileItem file);
+        void onPreview(FileItem file);
     }
 
-    public FileListAdapter(List<FileItem> fileList, OnFileActionListener listener, int currentMode) {
-        this.fileList = fileList;
+    private static final DiffUtil.ItemCallback<FileItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<FileItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull FileItem oldItem, @NonNull FileItem newItem) {
+            return oldItem.getDisplayName().equals(newItem.getDisplayName());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull FileItem oldItem, @NonNull FileItem newItem) {
+            return oldItem.getSize() == newItem.getSize() &&
+                    oldItem.isSelected() == newItem.isSelected();
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull FileItem oldItem, @NonNull FileItem newItem) {
+            if (oldItem.isSelected() == newItem.isSelected()) {
+                return PAYLOAD_SIZE;
+            }
+            return null;
+        }
+    };
+
+    public FileListAdapter(OnFileActionListener listener, int currentMode) {
+        super(DIFF_CALLBACK);
         this.listener = listener;
         this.currentMode = currentMode;
+        setHasStableIds(true);
     }
 
     public void setCurrentMode(int mode) {
+        if (this.currentMode == mode) {
+            return;
+        }
         this.currentMode = mode;
-        notifyDataSetChanged();
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_MODE);
+    }
+
+    /**
+     * Progreso de transferencia de un archivo
+     * @param percent 0-100, o -1 para ocultar la barra
+     */
+    public void setProgress(String filename, int percent) {
+        String key = keyOf(filename);
+        if (percent < 0) {
+            progressByFile.remove(key);
+        } else {
+            progressByFile.put(key, percent);
+        }
+
+        int position = findPosition(key);
+        if (position != RecyclerView.NO_POSITION) {
+            notifyItemChanged(position, PAYLOAD_PROGRESS);
+        }
+    }
+
+    public void toggleSelection(int position) {
+        FileItem file = getItem(position);
+        file.setSelected(!file.isSelected());
+        notifyItemChanged(position, PAYLOAD_SELECTION);
+    }
+
+    private int findPosition(String key) {
+        List<FileItem> items = getCurrentList();
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).getDisplayName().equals(key)) {
+                return i;
+            }
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    private static String keyOf(String filename) {
+        return filename.startsWith("/") ? filename.substring(1) : filename;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getStableId();
     }
 
     @NonNull
@@ -43,17 +133,93 @@ public class FileListAdapter extends RecyclerView.Adapter<FileListAdapter.FileVi
     public FileViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_file, parent, false);
-        return new FileViewHolder(view);
+        FileViewHolder holder = new FileViewHolder(view);
+
+        // Listeners creados una sola vez por ViewHolder
+        holder.btnSendLora.setOnClickListener(v -> {
+            FileItem file = itemAt(holder);
+            if (file != null && listener != null) {
+                listener.onSendLoRa(file);
+            }
+        });
+
+        holder.btnDownload.setOnClickListener(v -> {
+            FileItem file = itemAt(holder);
+            if (file != null && listener != null) {
+                listener.onDownload(file);
+            }
+        });
+
+        holder.btnDelete.setOnClickListener(v -> {
+            FileItem file = itemAt(holder);
+            if (file != null && listener != null) {
+                listener.onDelete(file);
+            }
+        });
+
+        // Toque: vista previa con los primeros bytes del archivo
+        holder.itemView.setOnClickListener(v -> {
+            FileItem file = itemAt(holder);
+            if (file != null && listener != null) {
+                listener.onPreview(file);
+            }
+        });
+
+        holder.itemView.setOnLongClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return false;
+            }
+            toggleSelection(position);
+            return true;
+        });
+
+        return holder;
+    }
+
+    private FileItem itemAt(FileViewHolder holder) {
+        int position = holder.getBindingAdapterPosition();
+        return position == RecyclerView.NO_POSITION ? null : getItem(position);
     }
 
     @Override
     public void onBindViewHolder(@NonNull FileViewHolder holder, int position) {
-        FileItem file = fileList.get(position);
+        FileItem file = getItem(position);
 
         holder.tvFilename.setText(file.getDisplayName());
-        holder.tvFilesize.setText(file.getFormattedSize());
         holder.tvFileIcon.setText(file.getFileType());
+        bindSize(holder, file);
+        bindMode(holder);
+        bindProgress(holder, file);
+        bindSelection(holder, file);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull FileViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
 
+        FileItem file = getItem(position);
+        for (Object payload : payloads) {
+            if (PAYLOAD_MODE.equals(payload)) {
+                bindMode(holder);
+            } else if (PAYLOAD_SIZE.equals(payload)) {
+                bindSize(holder, file);
+            } else if (PAYLOAD_PROGRESS.equals(payload)) {
+                bindProgress(holder, file);
+            } else if (PAYLOAD_SELECTION.equals(payload)) {
+                bindSelection(holder, file);
+            }
+        }
+    }
+
+    private void bindSize(FileViewHolder holder, FileItem file) {
+        holder.tvFilesize.setText(file.getFormattedSize());
+    }
+
+    private void bindMode(FileViewHolder holder) {
         // Configurar botones según modo
         if (currentMode == MainActivity.MODE_TRANSMITTER) {
             // Modo TX: Mostrar botón "Enviar LoRa"
@@ -68,48 +234,42 @@ public class FileListAdapter extends RecyclerView.Adapter<FileListAdapter.FileVi
             holder.btnSendLora.setVisibility(View.GONE);
             holder.btnDownload.setVisibility(View.GONE);
         }
+    }
 
-        // Listeners
-        holder.btnSendLora.setOnClickListener(v -> {
-            if (listener != null) {
-                listener.onSendLoRa(file);
-            }
-        });
-
-        holder.btnDownload.setOnClickListener(v -> {
-            if (listener != null) {
-                listener.onDownload(file);
-            }
-        });
-
-        holder.btnDelete.setOnClickListener(v -> {
-            if (listener != null) {
-                listener.onDelete(file);
-            }
-        });
+    private void bindProgress(FileViewHolder holder, FileItem file) {
+        Integer percent = progressByFile.get(file.getDisplayName());
+        if (percent == null) {
+            holder.progressFile.setVisibility(View.GONE);
+        } else {
+            holder.progressFile.setVisibility(View.VISIBLE);
+            holder.progressFile.setProgress(percent);
+        }
     }
 
-    @Override
-    public int getItemCount() {
-        return fileList.size();
+    private void bindSelection(FileViewHolder holder, FileItem file) {
+        holder.card.setStrokeColor(file.isSelected() ? STROKE_SELECTED : STROKE_DEFAULT);
     }
 
     static class FileViewHolder extends RecyclerView.ViewHolder {
+        MaterialCardView card;
         TextView tvFileIcon;
         TextView tvFilename;
         TextView tvFilesize;
+        ProgressBar progressFile;
         Button btnSendLora;
         Button btnDownload;
         Button btnDelete;
 
         public FileViewHolder(@NonNull View itemView) {
             super(itemView);
+            card = (MaterialCardView) itemView;
             tvFileIcon = itemView.findViewById(R.id.tv_file_icon);
             tvFilename = itemView.findViewById(R.id.tv_filename);
             tvFilesize = itemView.findViewById(R.id.tv_filesize);
+            progressFile = itemView.findViewById(R.id.progress_file);
             btnSendLora = itemView.findViewById(R.id.btn_send_lora);
             btnDownload = itemView.findViewById(R.id.btn_download);
             btnDelete = itemView.findViewById(R.id.btn_delete);
         }
     }
-}
\ No newline at end of file
+}
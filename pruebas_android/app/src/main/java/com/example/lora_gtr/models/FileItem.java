@@ -3,6 +3,12 @@ public class FileItem {
     private String filename;
     private long size;           // Tamaño en bytes
     private boolean isSelected;  // Para selección múltiple (opcional)
+    private String hash;         // Hash del contenido reportado por el ESP32 (opcional)
+    private long modifiedTime;   // Última modificación en ms (0 = desconocida)
+
+    // Textos de presentación cacheados (se calculan una vez, no en cada bind)
+    private String formattedSize;
+    private String displayName;
 
     // Constructor vacío
     public FileItem() {
@@ -18,6 +24,13 @@ public class FileItem {
         this.isSelected = false;
     }
 
+    // Constructor con hash y fecha
+    public FileItem(String filename, long size, String hash, long modifiedTime) {
+        this(filename, size);
+        this.hash = hash;
+        this.modifiedTime = modifiedTime;
+    }
+
     // Getters
     public String getFilename() {
         return filename;
@@ -31,29 +44,65 @@ public class FileItem {
         return isSelected;
     }
 
+    public String getHash() {
+        return hash;
+    }
+
+    public long getModifiedTime() {
+        return modifiedTime;
+    }
+
     // Setters
     public void setFilename(String filename) {
         this.filename = filename;
+        this.displayName = null;
     }
 
     public void setSize(long size) {
         this.size = size;
+        this.formattedSize = null;
     }
 
     public void setSelected(boolean selected) {
         isSelected = selected;
     }
 
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public void setModifiedTime(long modifiedTime) {
+        this.modifiedTime = modifiedTime;
+    }
+
     // Obtener nombre sin ruta (si viene con /)
     public String getDisplayName() {
-        if (filename.startsWith("/")) {
-            return filename.substring(1);
+        if (displayName == null) {
+            displayName = filename.startsWith("/") ? filename.substring(1) : filename;
         }
-        return filename;
+        return displayName;
+    }
+
+    // ID estable para RecyclerView derivado del nombre (FNV-1a de 64 bits)
+    public long getStableId() {
+        String name = getDisplayName();
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
     }
 
     // Formatear tamaño en formato legible
     public String getFormattedSize() {
+        if (formattedSize == null) {
+            formattedSize = formatSize(size);
+        }
+        return formattedSize;
+    }
+
+    public static String formatSize(long size) {
         if (size < 1024) {
             return size + " B";
         } else if (size < 1024 * 1024) {
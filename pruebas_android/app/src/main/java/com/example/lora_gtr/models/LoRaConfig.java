@@ -1,17 +1,45 @@
 package com.example.lora_gtr.models;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
 public class LoRaConfig {
-    private float bandwidth;        // 125, 250, 500 kHz
-    private int spreadingFactor;    // 7, 9, 12
-    private int codingRate;         // 5, 7, 8 (representa 4/5, 4/7, 4/8)
-    private int ackInterval;        // 3, 5, 7, 10, 15
+    // ==================== RANGOS SX126x ====================
+    public static final float[] BANDWIDTHS = {7.8f, 10.4f, 15.6f, 20.8f, 31.25f, 41.7f, 62.5f, 125f, 250f, 500f};
+    public static final int MIN_SPREADING_FACTOR = 5;
+    public static final int MAX_SPREADING_FACTOR = 12;
+    public static final int MIN_CODING_RATE = 5;
+    public static final int MAX_CODING_RATE = 8;
+    public static final int MIN_ACK_INTERVAL = 3;
+    public static final int MAX_ACK_INTERVAL = 15;
+    public static final int MIN_PREAMBLE_LENGTH = 6;
+    public static final int MAX_PREAMBLE_LENGTH = 65535;
+
+    public static final int SYNC_WORD_PRIVATE = 0x12;
+    public static final int SYNC_WORD_PUBLIC = 0x34;   // Redes LoRaWAN
+
+    public static final int DEFAULT_PREAMBLE_LENGTH = 8;
+    public static final int DEFAULT_TX_POWER = 14;
+    public static final boolean CRC_ENABLED = true;
+    public static final int MAX_PAYLOAD_BYTES = 255;   // Límite del SX126x
+    public static final int MIN_PAYLOAD_BYTES = 16;    // Por debajo no compensa la cabecera
+    private static final double LDRO_SYMBOL_TIME_MS = 16.0;  // Por encima se activa la optimización de baja tasa
+
+    private float bandwidth;        // kHz, uno de BANDWIDTHS
+    private int spreadingFactor;    // 5 - 12
+    private int codingRate;         // 5 - 8 (representa 4/5 ... 4/8)
+    private int ackInterval;        // 3 - 15
+    private String region;          // Nombre de LoRaRegion
+    private float frequency;        // MHz
+    private int txPower;            // dBm
+    private int preambleLength;     // Símbolos
+    private int syncWord;           // 0x00 - 0xFF
+    private boolean implicitHeader; // Sin cabecera: el receptor debe conocer el tamaño del paquete
 
     // Constructor vacío
     public LoRaConfig() {
         // Valores por defecto
-        this.bandwidth = 125.0f;
-        this.spreadingFactor = 9;
-        this.codingRate = 7;
-        this.ackInterval = 5;
+        this(125.0f, 9, 7, 5);
     }
 
     // Constructor con parámetros
@@ -20,6 +48,26 @@ public class LoRaConfig {
         this.spreadingFactor = spreadingFactor;
         this.codingRate = codingRate;
         this.ackInterval = ackInterval;
+        this.region = LoRaRegion.DEFAULT.name;
+        this.frequency = LoRaRegion.DEFAULT.defaultFrequency;
+        this.txPower = DEFAULT_TX_POWER;
+        this.preambleLength = DEFAULT_PREAMBLE_LENGTH;
+        this.syncWord = SYNC_WORD_PRIVATE;
+        this.implicitHeader = false;
+    }
+
+    // Copia
+    public LoRaConfig(LoRaConfig other) {
+        this.bandwidth = other.bandwidth;
+        this.spreadingFactor = other.spreadingFactor;
+        this.codingRate = other.codingRate;
+        this.ackInterval = other.ackInterval;
+        this.region = other.region;
+        this.frequency = other.frequency;
+        this.txPower = other.txPower;
+        this.preambleLength = other.preambleLength;
+        this.syncWord = other.syncWord;
+        this.implicitHeader = other.implicitHeader;
     }
 
     // Getters
@@ -39,6 +87,30 @@ public class LoRaConfig {
         return ackInterval;
     }
 
+    public String getRegion() {
+        return region;
+    }
+
+    public float getFrequency() {
+        return frequency;
+    }
+
+    public int getTxPower() {
+        return txPower;
+    }
+
+    public int getPreambleLength() {
+        return preambleLength;
+    }
+
+    public int getSyncWord() {
+        return syncWord;
+    }
+
+    public boolean isImplicitHeader() {
+        return implicitHeader;
+    }
+
     // Setters
     public void setBandwidth(float bandwidth) {
         this.bandwidth = bandwidth;
@@ -56,18 +128,145 @@ public class LoRaConfig {
         this.ackInterval = ackInterval;
     }
 
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public void setFrequency(float frequency) {
+        this.frequency = frequency;
+    }
+
+    public void setTxPower(int txPower) {
+        this.txPower = txPower;
+    }
+
+    public void setPreambleLength(int preambleLength) {
+        this.preambleLength = preambleLength;
+    }
+
+    public void setSyncWord(int syncWord) {
+        this.syncWord = syncWord;
+    }
+
+    public void setImplicitHeader(boolean implicitHeader) {
+        this.implicitHeader = implicitHeader;
+    }
+
+    // ==================== TIEMPO EN AIRE ====================
+
+    /**
+     * Duración de un símbolo en ms: 2^SF / BW
+     */
+    public double getSymbolTimeMs() {
+        return (1 << spreadingFactor) / (double) bandwidth;
+    }
+
+    /**
+     * Low Data Rate Optimization: obligatoria con símbolos de más de 16 ms
+     * (SF11/SF12 a 125 kHz)
+     */
+    public boolean isLowDataRateOptimized() {
+        return getSymbolTimeMs() > LDRO_SYMBOL_TIME_MS;
+    }
+
+    /**
+     * Número de símbolos de payload (fórmula de Semtech, datasheet SX126x 6.1.4)
+     * SF5 y SF6 no llevan los 8 bits extra de la cabecera ni usan LDRO
+     * @param payloadBytes Bytes de payload del paquete LoRa
+     */
+    public int getPayloadSymbols(int payloadBytes) {
+        boolean lowSf = spreadingFactor < 7;
+        int de = !lowSf && isLowDataRateOptimized() ? 1 : 0;
+        int header = implicitHeader ? 0 : 20;
+        int crc = CRC_ENABLED ? 16 : 0;
+
+        double numerator = 8.0 * payloadBytes + crc - 4.0 * spreadingFactor + header + (lowSf ? 0 : 8);
+        double denominator = 4.0 * (spreadingFactor - 2 * de);
+        int blocks = (int) Math.ceil(Math.max(numerator, 0) / denominator);
+
+        return 8 + blocks * codingRate;
+    }
+
+    /**
+     * Tiempo en aire de un paquete en ms (preámbulo + cabecera + payload)
+     * @param payloadBytes Bytes de payload del paquete LoRa
+     */
+    public double getTimeOnAirMs(int payloadBytes) {
+        double symbolTime = getSymbolTimeMs();
+        double preamble = (preambleLength + (spreadingFactor < 7 ? 6.25 : 4.25)) * symbolTime;
+        return preamble + getPayloadSymbols(payloadBytes) * symbolTime;
+    }
+
+    /**
+     * Payload más grande que admite un paquete con esta configuración:
+     * 255 bytes, o menos si la región limita el tiempo en aire por paquete
+     */
+    public int getMaxPayloadBytes() {
+        LoRaRegion plan = LoRaRegion.byName(region);
+        if (plan == null || plan.maxDwellTimeMs == LoRaRegion.NO_DWELL_LIMIT) {
+            return MAX_PAYLOAD_BYTES;
+        }
+
+        int bytes = MAX_PAYLOAD_BYTES;
+        while (bytes > MIN_PAYLOAD_BYTES && getTimeOnAirMs(bytes) > plan.maxDwellTimeMs) {
+            bytes--;
+        }
+        return bytes;
+    }
+
+    /**
+     * Tasa de bits nominal en bps: SF * (4/CR) * BW / 2^SF
+     */
+    public double getBitrate() {
+        return spreadingFactor * (4.0 / codingRate) * bandwidth * 1000.0 / (1 << spreadingFactor);
+    }
+
     // Convertir a JSON String para enviar por Bluetooth
     public String toJson() {
-        return "{\"bw\":" + (int)bandwidth +
+        return "{\"bw\":" + formatBandwidth(bandwidth) +
                 ",\"sf\":" + spreadingFactor +
                 ",\"cr\":" + codingRate +
-                ",\"ack\":" + ackInterval + "}";
+                ",\"ack\":" + ackInterval +
+                ",\"region\":\"" + region + "\"" +
+                ",\"freq\":" + frequency +
+                ",\"pwr\":" + txPower +
+                ",\"pre\":" + preambleLength +
+                ",\"sw\":" + syncWord +
+                ",\"ih\":" + implicitHeader + "}";
+    }
+
+    // Crear desde el JSON que envía el ESP32
+    // Los campos nuevos son opcionales: un firmware antiguo solo envía bw/sf/cr/ack
+    public static LoRaConfig fromJson(String json) throws JSONException {
+        JSONObject obj = new JSONObject(json);
+        LoRaConfig config = new LoRaConfig(
+                (float) obj.getDouble("bw"),
+                obj.getInt("sf"),
+                obj.getInt("cr"),
+                obj.getInt("ack"));
+
+        config.region = obj.optString("region", config.region);
+        LoRaRegion region = LoRaRegion.byName(config.region);
+        config.frequency = (float) obj.optDouble("freq",
+                region != null ? region.defaultFrequency : config.frequency);
+        config.txPower = obj.optInt("pwr", config.txPower);
+        config.preambleLength = obj.optInt("pre", config.preambleLength);
+        config.syncWord = obj.optInt("sw", config.syncWord);
+        config.implicitHeader = obj.optBoolean("ih", config.implicitHeader);
+        return config;
+    }
+
+    /**
+     * Ancho de banda sin decimales cuando es entero (125, no 125.0)
+     */
+    public static String formatBandwidth(float bandwidth) {
+        return bandwidth == (int) bandwidth ? String.valueOf((int) bandwidth) : String.valueOf(bandwidth);
     }
 
     // Método para mostrar configuración como texto
     @Override
     public String toString() {
-        return "BW: " + (int)bandwidth + " kHz | " +
+        return "BW: " + formatBandwidth(bandwidth) + " kHz | " +
                 "SF: " + spreadingFactor + " | " +
                 "CR: 4/" + codingRate + " | " +
                 "ACK: " + ackInterval;
@@ -75,9 +274,53 @@ public class LoRaConfig {
 
     // Validar configuración
     public boolean isValid() {
-        return (bandwidth == 125.0f || bandwidth == 250.0f || bandwidth == 500.0f) &&
-                (spreadingFactor == 7 || spreadingFactor == 9 || spreadingFactor == 12) &&
-                (codingRate == 5 || codingRate == 7 || codingRate == 8) &&
-                (ackInterval >= 3 && ackInterval <= 15);
+        return getValidationError() == null;
+    }
+
+    /**
+     * Motivo por el que la configuración no es válida
+     * @return null si es válida
+     */
+    public String getValidationError() {
+        boolean bandwidthOk = false;
+        for (float bw : BANDWIDTHS) {
+            if (bw == bandwidth) {
+                bandwidthOk = true;
+                break;
+            }
+        }
+        if (!bandwidthOk) {
+            return "Bandwidth no soportado: " + bandwidth + " kHz";
+        }
+
+        if (spreadingFactor < MIN_SPREADING_FACTOR || spreadingFactor > MAX_SPREADING_FACTOR) {
+            return "SF fuera de rango (" + MIN_SPREADING_FACTOR + "-" + MAX_SPREADING_FACTOR + ")";
+        }
+        if (codingRate < MIN_CODING_RATE || codingRate > MAX_CODING_RATE) {
+            return "CR fuera de rango (4/" + MIN_CODING_RATE + "-4/" + MAX_CODING_RATE + ")";
+        }
+        if (ackInterval < MIN_ACK_INTERVAL || ackInterval > MAX_ACK_INTERVAL) {
+            return "ACK fuera de rango (" + MIN_ACK_INTERVAL + "-" + MAX_ACK_INTERVAL + ")";
+        }
+        if (preambleLength < MIN_PREAMBLE_LENGTH || preambleLength > MAX_PREAMBLE_LENGTH) {
+            return "Preámbulo fuera de rango (" + MIN_PREAMBLE_LENGTH + "-" + MAX_PREAMBLE_LENGTH + ")";
+        }
+        if (syncWord < 0 || syncWord > 0xFF) {
+            return "Sync word fuera de rango (0x00-0xFF)";
+        }
+
+        LoRaRegion loRaRegion = LoRaRegion.byName(region);
+        if (loRaRegion == null) {
+            return "Región desconocida: " + region;
+        }
+        if (!loRaRegion.allowsFrequency(frequency, bandwidth)) {
+            return "Frecuencia fuera de la banda " + loRaRegion.name + " (" +
+                    loRaRegion.minFrequency + "-" + loRaRegion.maxFrequency + " MHz)";
+        }
+        if (!loRaRegion.allowsTxPower(txPower)) {
+            return "Potencia fuera de rango para " + loRaRegion.name + " (" +
+                    LoRaRegion.CHIP_MIN_TX_POWER + " a " + loRaRegion.maxTxPower + " dBm)";
+        }
+        return null;
     }
-}
\ No newline at end of file
+}
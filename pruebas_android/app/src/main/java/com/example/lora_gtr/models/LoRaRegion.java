@@ -0,0 +1,139 @@
+package com.example.lora_gtr.models;
+
+/**
+ * Plan regional de frecuencias: rango permitido, potencia máxima,
+ * sub-bandas con límite de ciclo de trabajo (ETSI EN 300 220 en EU) y
+ * tiempo máximo por paquete (dwell time) donde lo hay.
+ * La potencia se limita además al rango del SX1262 (-9 a +22 dBm).
+ */
+public class LoRaRegion {
+
+    /**
+     * Sub-banda con ciclo de trabajo máximo (fracción del tiempo en una hora)
+     */
+    public static class SubBand {
+        public final String name;
+        public final float minFrequency;
+        public final float maxFrequency;
+        public final double dutyCycle;
+
+        SubBand(String name, float minFrequency, float maxFrequency, double dutyCycle) {
+            this.name = name;
+            this.minFrequency = minFrequency;
+            this.maxFrequency = maxFrequency;
+            this.dutyCycle = dutyCycle;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + (dutyCycle * 100) + "%)";
+        }
+    }
+
+    // Sin límite de ciclo de trabajo (regiones con otras reglas, p. ej. dwell time)
+    public static final SubBand UNRESTRICTED = new SubBand("libre", 0f, Float.MAX_VALUE, 1.0);
+
+    private static final SubBand[] EU868_SUB_BANDS = {
+            new SubBand("g", 863.0f, 868.0f, 0.01),
+            new SubBand("g1", 868.0f, 868.6f, 0.01),
+            new SubBand("g2", 868.7f, 869.2f, 0.001),
+            new SubBand("g3", 869.4f, 869.65f, 0.10),
+            new SubBand("g4", 869.7f, 870.0f, 0.01),
+    };
+    private static final SubBand[] EU433_SUB_BANDS = {
+            new SubBand("433", 433.05f, 434.79f, 0.10),
+    };
+    private static final SubBand[] NO_SUB_BANDS = {};
+
+    public static final int CHIP_MIN_TX_POWER = -9;
+    public static final int CHIP_MAX_TX_POWER = 22;
+
+    public static final int NO_DWELL_LIMIT = 0;
+    public static final int DWELL_400_MS = 400;
+
+    public static final LoRaRegion EU433 = new LoRaRegion("EU433", 433.05f, 434.79f, 433.175f, 10, EU433_SUB_BANDS, NO_DWELL_LIMIT);
+    public static final LoRaRegion EU868 = new LoRaRegion("EU868", 863.0f, 870.0f, 868.1f, 14, EU868_SUB_BANDS, NO_DWELL_LIMIT);
+    public static final LoRaRegion US915 = new LoRaRegion("US915", 902.0f, 928.0f, 915.0f, 22, NO_SUB_BANDS, DWELL_400_MS);
+    public static final LoRaRegion AU915 = new LoRaRegion("AU915", 915.0f, 928.0f, 916.8f, 22, NO_SUB_BANDS, DWELL_400_MS);
+    public static final LoRaRegion AS923 = new LoRaRegion("AS923", 915.0f, 928.0f, 923.2f, 16, NO_SUB_BANDS, DWELL_400_MS);
+    public static final LoRaRegion KR920 = new LoRaRegion("KR920", 920.9f, 923.3f, 922.1f, 14, NO_SUB_BANDS, NO_DWELL_LIMIT);
+    public static final LoRaRegion IN865 = new LoRaRegion("IN865", 865.0f, 867.0f, 865.0625f, 22, NO_SUB_BANDS, NO_DWELL_LIMIT);
+
+    public static final LoRaRegion[] ALL = {EU433, EU868, US915, AU915, AS923, KR920, IN865};
+    public static final LoRaRegion DEFAULT = US915;
+
+    public final String name;
+    public final float minFrequency;      // MHz
+    public final float maxFrequency;      // MHz
+    public final float defaultFrequency;  // MHz
+    public final int maxTxPower;          // dBm
+    public final int maxDwellTimeMs;      // Tiempo máximo en aire por paquete (0 = sin límite)
+    private final SubBand[] subBands;
+
+    private LoRaRegion(String name, float minFrequency, float maxFrequency,
+                       float defaultFrequency, int maxTxPower, SubBand[] subBands, int maxDwellTimeMs) {
+        this.name = name;
+        this.minFrequency = minFrequency;
+        this.maxFrequency = maxFrequency;
+        this.defaultFrequency = defaultFrequency;
+        this.maxTxPower = Math.min(maxTxPower, CHIP_MAX_TX_POWER);
+        this.subBands = subBands;
+        this.maxDwellTimeMs = maxDwellTimeMs;
+    }
+
+    /**
+     * Buscar una región por nombre
+     * @return null si no se conoce
+     */
+    public static LoRaRegion byName(String name) {
+        for (LoRaRegion region : ALL) {
+            if (region.name.equalsIgnoreCase(name)) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Comprobar que la frecuencia cabe en la banda, incluido el ancho de banda
+     * @param bandwidth Ancho de banda en kHz
+     */
+    public boolean allowsFrequency(float frequency, float bandwidth) {
+        float halfBw = bandwidth / 2000f;
+        return frequency - halfBw >= minFrequency && frequency + halfBw <= maxFrequency;
+    }
+
+    /**
+     * Sub-banda de ciclo de trabajo que contiene la frecuencia
+     * @return UNRESTRICTED si la región no limita el ciclo de trabajo
+     */
+    public SubBand subBandFor(float frequency) {
+        if (subBands.length == 0) {
+            return UNRESTRICTED;
+        }
+
+        for (SubBand band : subBands) {
+            if (frequency >= band.minFrequency && frequency <= band.maxFrequency) {
+                return band;
+            }
+        }
+
+        // Entre sub-bandas: aplicar el límite más estricto
+        SubBand strictest = subBands[0];
+        for (SubBand band : subBands) {
+            if (band.dutyCycle < strictest.dutyCycle) {
+                strictest = band;
+            }
+        }
+        return strictest;
+    }
+
+    public boolean allowsTxPower(int txPower) {
+        return txPower >= CHIP_MIN_TX_POWER && txPower <= maxTxPower;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
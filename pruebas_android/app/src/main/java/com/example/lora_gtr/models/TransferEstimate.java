@@ -0,0 +1,174 @@
+package com.example.lora_gtr.models;
+
+import java.util.Locale;
+
+/**
+ * Estimación del coste en aire de enviar un archivo por LoRa con una configuración.
+ *
+ * Modelo del protocolo del gateway: un paquete de inicio con nombre y tamaño,
+ * paquetes de datos con cabecera de secuencia y, cada ackInterval paquetes,
+ * un ACK del receptor que el transmisor espera antes de seguir.
+ */
+public class TransferEstimate {
+
+    // ==================== MODELO DEL PROTOCOLO ====================
+    public static final int DEFAULT_PACKET_DATA_BYTES = 200;   // Datos útiles por paquete
+    public static final int PACKET_HEADER_BYTES = 4;           // Secuencia (2) + total (2)
+    public static final int START_PACKET_BYTES = 40;           // Nombre + tamaño
+    public static final int ACK_PACKET_BYTES = 4;
+    public static final double TURNAROUND_MS = 30;             // Cambio TX/RX y procesado en cada ACK
+    private static final long MAX_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    public final long fileSize;
+    public final int packetDataBytes;
+    public final int packets;
+    public final int acks;
+    public final double packetAirtimeMs;
+    public final double totalAirtimeMs;     // Solo tiempo transmitiendo (ambos extremos)
+    public final double txAirtimeMs;        // Tiempo transmitiendo el TX (sin los ACK del RX)
+    public final double totalTimeMs;        // Incluye esperas de ACK
+    public final double effectiveBitrate;   // bps de datos útiles
+
+    private TransferEstimate(long fileSize, int packetDataBytes, int packets, int acks,
+                             double packetAirtimeMs, double totalAirtimeMs, double txAirtimeMs,
+                             double totalTimeMs) {
+        this.fileSize = fileSize;
+        this.packetDataBytes = packetDataBytes;
+        this.packets = packets;
+        this.acks = acks;
+        this.packetAirtimeMs = packetAirtimeMs;
+        this.totalAirtimeMs = totalAirtimeMs;
+        this.txAirtimeMs = txAirtimeMs;
+        this.totalTimeMs = totalTimeMs;
+        this.effectiveBitrate = totalTimeMs > 0 ? fileSize * 8 * 1000.0 / totalTimeMs : 0;
+    }
+
+    /**
+     * Estimar con el tamaño de paquete por defecto
+     */
+    public static TransferEstimate forFile(FileItem file, LoRaConfig config) {
+        return forSize(file.getSize(), config, DEFAULT_PACKET_DATA_BYTES);
+    }
+
+    /**
+     * Estimar el envío de un número de bytes
+     * @param packetDataBytes Datos útiles por paquete LoRa
+     */
+    public static TransferEstimate forSize(long size, LoRaConfig config, int packetDataBytes) {
+        int packets = (int) Math.max(1, (size + packetDataBytes - 1) / packetDataBytes);
+        int ackInterval = Math.max(1, config.getAckInterval());
+        int acks = (packets + ackInterval - 1) / ackInterval;
+
+        // El último paquete puede ir incompleto
+        int lastData = (int) (size - (long) (packets - 1) * packetDataBytes);
+        double fullPacket = config.getTimeOnAirMs(packetDataBytes + PACKET_HEADER_BYTES);
+        double lastPacket = config.getTimeOnAirMs(Math.max(0, lastData) + PACKET_HEADER_BYTES);
+        double ackPacket = config.getTimeOnAirMs(ACK_PACKET_BYTES);
+
+        double txAirtime = config.getTimeOnAirMs(START_PACKET_BYTES)
+                + (packets - 1) * fullPacket + lastPacket;
+        double airtime = txAirtime + acks * ackPacket;
+        double total = airtime + (acks + 1) * TURNAROUND_MS;
+
+        return new TransferEstimate(size, packetDataBytes, packets, acks, fullPacket, airtime, txAirtime, total);
+    }
+
+    /**
+     * Estimar el envío de tramas ya empaquetadas por la app
+     * @param frames Tramas a emitir (datos, paridad y descriptoras)
+     * @param frameBytes Payload LoRa de cada trama
+     */
+    public static TransferEstimate forFrames(long size, LoRaConfig config, int frames, int frameBytes) {
+        int ackInterval = Math.max(1, config.getAckInterval());
+        int acks = (frames + ackInterval - 1) / ackInterval;
+
+        double packetAirtime = config.getTimeOnAirMs(frameBytes);
+        double txAirtime = frames * packetAirtime;
+        double airtime = txAirtime + acks * config.getTimeOnAirMs(ACK_PACKET_BYTES);
+        double total = airtime + (acks + 1) * TURNAROUND_MS;
+
+        return new TransferEstimate(size, frameBytes, frames, acks, packetAirtime, airtime, txAirtime, total);
+    }
+
+    /**
+     * Estimar la emisión de un archivo de símbolos ya codificado: una pasada
+     * por todos sus registros y un único ACK al final
+     * @param records Registros en el archivo (un paquete LoRa cada uno)
+     * @param recordBytes Bytes por registro (cabecera del símbolo incluida)
+     */
+    public static TransferEstimate forSymbols(long size, LoRaConfig config, int records, int recordBytes) {
+        double packetAirtime = config.getTimeOnAirMs(recordBytes);
+        double txAirtime = records * packetAirtime;
+        double airtime = txAirtime + config.getTimeOnAirMs(ACK_PACKET_BYTES);
+        double total = airtime + TURNAROUND_MS;
+
+        return new TransferEstimate(size, recordBytes, records, 1, packetAirtime, airtime, txAirtime, total);
+    }
+
+    /**
+     * Estimar un envío con código fuente: sin ACKs por ráfaga, solo uno al final
+     * @param recordBytes Bytes por paquete (cabecera del símbolo incluida)
+     * @param lossRatio Pérdidas esperadas (0..1)
+     */
+    public static TransferEstimate forFountain(long size, LoRaConfig config, int symbolSize,
+                                               int recordBytes, double lossRatio) {
+        int sourceSymbols = (int) Math.max(1, (size + symbolSize - 1) / symbolSize);
+        // Unos pocos símbolos de más para que el decodificador complete
+        int needed = (int) Math.ceil(sourceSymbols * 1.02 + 2);
+        int packets = (int) Math.ceil(needed / Math.max(0.05, 1 - lossRatio));
+
+        double packetAirtime = config.getTimeOnAirMs(recordBytes);
+        double txAirtime = packets * packetAirtime;
+        double airtime = txAirtime + config.getTimeOnAirMs(ACK_PACKET_BYTES);
+        double total = airtime + TURNAROUND_MS;
+
+        return new TransferEstimate(size, symbolSize, packets, 1, packetAirtime, airtime, txAirtime, total);
+    }
+
+    /**
+     * Tamaño máximo que cabe en un tiempo de envío (inversa de forSize)
+     * @return 0 si ni el paquete de inicio cabe
+     */
+    public static long maxSizeFor(double totalTimeMs, LoRaConfig config, int packetDataBytes) {
+        long low = 0;
+        long high = MAX_BUDGET_BYTES;
+        while (low < high) {
+            long mid = (low + high + 1) / 2;
+            if (forSize(mid, config, packetDataBytes).totalTimeMs <= totalTimeMs) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // ==================== FORMATO ====================
+
+    public static String formatDuration(double ms) {
+        long seconds = Math.round(ms / 1000.0);
+        if (ms < 1000) {
+            return String.format(Locale.ROOT, "%.0f ms", ms);
+        } else if (seconds < 60) {
+            return String.format(Locale.ROOT, "%.1f s", ms / 1000.0);
+        } else if (seconds < 3600) {
+            return String.format(Locale.ROOT, "%d min %02d s", seconds / 60, seconds % 60);
+        }
+        return String.format(Locale.ROOT, "%d h %02d min", seconds / 3600, (seconds % 3600) / 60);
+    }
+
+    public static String formatBitrate(double bps) {
+        if (bps < 1000) {
+            return String.format(Locale.ROOT, "%.0f bps", bps);
+        }
+        return String.format(Locale.ROOT, "%.2f kbps", bps / 1000.0);
+    }
+
+    @Override
+    public String toString() {
+        return packets + " paquetes (" + String.format(Locale.ROOT, "%.0f", packetAirtimeMs) + " ms c/u), " +
+                acks + " ACKs\n" +
+                "Tiempo estimado: " + formatDuration(totalTimeMs) + "\n" +
+                "Tasa efectiva: " + formatBitrate(effectiveBitrate);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.lora_gtr;
+
+import com.example.lora_gtr.models.FileItem;
+import com.example.lora_gtr.models.LoRaConfig;
+import com.example.lora_gtr.models.LoRaRegion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Planificación de la cola en la sub-banda g1 de EU868 (1%: 36 s por hora)
+ */
+public class DutyCycleSchedulerTest {
+
+    private static final long WINDOW_MS = 60 * 60 * 1000;
+    private static final double BUDGET_MS = 36_000;
+    private static final double DELTA_MS = 1;
+
+    private static LoRaConfig eu868() {
+        LoRaConfig config = new LoRaConfig(125f, 9, 5, 5);
+        config.setRegion(LoRaRegion.EU868.name);
+        config.setFrequency(868.1f);
+        return config;
+    }
+
+    /**
+     * Tiempo en aire de la cola en la hora más cargada: las ráfagas cuentan
+     * al empezar y los envíos pausados se reparten por igual en su duración
+     */
+    private static double busiestWindowMs(List<DutyCycleScheduler.Job> jobs) {
+        List<Long> starts = new ArrayList<>();
+        for (DutyCycleScheduler.Job job : jobs) {
+            for (long edge : new long[]{job.startAt, job.finishAt}) {
+                starts.add(edge);
+                starts.add(edge - WINDOW_MS);
+            }
+        }
+
+        double busiest = 0;
+        for (long from : starts) {
+            long to = from + WINDOW_MS;
+            double used = 0;
+            for (DutyCycleScheduler.Job job : jobs) {
+                double air = job.estimate.txAirtimeMs;
+                if (!job.paced) {
+                    used += job.startAt >= from && job.startAt < to ? air : 0;
+                } else {
+                    long overlap = Math.min(to, job.finishAt) - Math.max(from, job.startAt);
+                    used += air * Math.max(0, overlap) / (job.finishAt - job.startAt);
+                }
+            }
+            busiest = Math.max(busiest, used);
+        }
+        return busiest;
+    }
+
+    @Test
+    public void eu868_burstsPacedFileAndBurstStayWithinBudget() {
+        DutyCycleScheduler scheduler = new DutyCycleScheduler(job -> { });
+        List<FileItem> files = Arrays.asList(
+                new FileItem("rafaga1.txt", 3_000),
+                new FileItem("rafaga2.txt", 3_000),
+                new FileItem("grande.bin", 40_000),
+                new FileItem("rafaga3.txt", 2_000));
+
+        List<DutyCycleScheduler.Job> jobs = scheduler.preview(files, eu868());
+
+        for (DutyCycleScheduler.Job job : jobs) {
+            assertEquals(0.01, job.band.dutyCycle, 0);
+        }
+        // Las dos primeras caben en ráfaga, una detrás de otra
+        assertFalse(jobs.get(0).paced);
+        assertFalse(jobs.get(1).paced);
+        assertEquals(jobs.get(0).finishAt, jobs.get(1).startAt);
+        // El grande no cabe en lo que queda y va pausado como mucho al 1%
+        assertTrue(jobs.get(2).estimate.txAirtimeMs > BUDGET_MS);
+        assertTrue(jobs.get(2).paced);
+        assertTrue(jobs.get(2).pacing <= 0.01 + 1e-9);
+        // El último espera a que el pausado acabe
+        assertTrue(jobs.get(3).startAt >= jobs.get(2).finishAt);
+
+        assertTrue(busiestWindowMs(jobs) <= BUDGET_MS + DELTA_MS);
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.lora_gtr;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Codificar, perder símbolos al azar y decodificar
+ */
+public class FountainCodeTest {
+
+    private static byte[] randomData(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Entregar al decodificador los símbolos 0..count-1 perdiendo 'loss' de ellos
+     */
+    private static FountainCode.Decoder transmit(FountainCode.Encoder encoder, int count, double loss, long seed) {
+        Random random = new Random(seed);
+        FountainCode.Decoder decoder = new FountainCode.Decoder();
+        for (int id = 0; id < count; id++) {
+            if (random.nextDouble() < loss) {
+                continue;
+            }
+            byte[] record = encoder.symbol(id);
+            assertTrue(decoder.addRecord(record, 0));
+        }
+        return decoder;
+    }
+
+    @Test
+    public void roundTrip_withoutLosses() {
+        byte[] data = randomData(4000, 1);
+        FountainCode.Encoder encoder = new FountainCode.Encoder(data, 200);
+        int k = encoder.getSourceSymbols();
+
+        FountainCode.Decoder decoder = transmit(encoder, k, 0, 1);
+
+        // Sistemático: los K primeros símbolos son el archivo tal cual
+        assertTrue(decoder.isComplete());
+        assertArrayEquals(data, decoder.getData());
+    }
+
+    @Test
+    public void roundTrip_randomLoss() {
+        byte[] data = randomData(20000, 2);
+        FountainCode.Encoder encoder = new FountainCode.Encoder(data, 200);
+        int count = FountainCode.symbolsFor(encoder.getSourceSymbols(), FountainCode.DEFAULT_REPAIR_RATIO);
+
+        for (long seed = 0; seed < 20; seed++) {
+            FountainCode.Decoder decoder = transmit(encoder, count, 0.2, seed);
+            assertTrue("semilla " + seed, decoder.decode());
+            assertArrayEquals("semilla " + seed, data, decoder.getData());
+        }
+    }
+
+    @Test
+    public void roundTrip_paddedLastSymbol() {
+        // 10 símbolos completos y uno de 37 bytes
+        byte[] data = randomData(2037, 3);
+        FountainCode.Encoder encoder = new FountainCode.Encoder(data, 200);
+        assertEquals(11, encoder.getSourceSymbols());
+
+        // Se pierden el bloque con relleno y otro; se reconstruyen con reparación
+        FountainCode.Decoder decoder = new FountainCode.Decoder();
+        for (int id = 0; id < 10; id++) {
+            if (id != 4) {
+                decoder.addRecord(encoder.symbol(id), 0);
+            }
+        }
+        int id = 11;
+        while (!decoder.decode() && id < 50) {
+            decoder.addRecord(encoder.symbol(id++), 0);
+        }
+
+        assertTrue(decoder.isComplete());
+        assertEquals(data.length, decoder.getData().length);
+        assertArrayEquals(data, decoder.getData());
+    }
+
+    @Test
+    public void roundTrip_singleSymbol() {
+        byte[] data = randomData(50, 4);
+        FountainCode.Encoder encoder = new FountainCode.Encoder(data, 200);
+        assertEquals(1, encoder.getSourceSymbols());
+
+        // Se pierde el símbolo fuente; basta cualquiera de reparación
+        FountainCode.Decoder decoder = new FountainCode.Decoder();
+        assertTrue(decoder.addRecord(encoder.symbol(2), 0));
+
+        assertTrue(decoder.decode());
+        assertArrayEquals(data, decoder.getData());
+    }
+
+    @Test
+    public void roundTrip_emptyFile() {
+        FountainCode.Encoder encoder = new FountainCode.Encoder(new byte[0], 200);
+        assertEquals(1, encoder.getSourceSymbols());
+
+        FountainCode.Decoder decoder = transmit(encoder, 1, 0, 5);
+
+        assertTrue(decoder.decode());
+        assertEquals(0, decoder.getData().length);
+    }
+
+    @Test
+    public void addStored_ignoresDuplicates() throws IOException {
+        byte[] data = randomData(3000, 6);
+        FountainCode.Encoder encoder = new FountainCode.Encoder(data, 200);
+        int k = encoder.getSourceSymbols();
+
+        // El TX repite símbolos al final: el RX los guarda dos veces
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        for (int id = 1; id < k + 4; id++) {
+            stored.write(encoder.symbol(id));
+            if (id % 3 == 0) {
+                stored.write(encoder.symbol(id));
+            }
+        }
+
+        FountainCode.Decoder decoder = new FountainCode.Decoder();
+        int records = decoder.addStored(stored.toByteArray());
+
+        assertEquals(k + 3 + (k + 3) / 3, records);
+        assertEquals(k + 3, decoder.getReceived());
+        assertTrue(decoder.decode());
+        assertArrayEquals(data, decoder.getData());
+    }
+
+    @Test
+    public void decode_notEnoughSymbols() {
+        byte[] data = randomData(3000, 7);
+        FountainCode.Encoder encoder = new FountainCode.Encoder(data, 200);
+
+        FountainCode.Decoder decoder = transmit(encoder, encoder.getSourceSymbols() - 1, 0, 7);
+
+        assertFalse(decoder.decode());
+        assertNull(decoder.getData());
+    }
+
+    @Test
+    public void addRecord_rejectsOtherFile() {
+        FountainCode.Encoder first = new FountainCode.Encoder(randomData(3000, 8), 200);
+        FountainCode.Encoder second = new FountainCode.Encoder(randomData(5000, 9), 200);
+
+        FountainCode.Decoder decoder = new FountainCode.Decoder();
+        assertTrue(decoder.addRecord(first.symbol(0), 0));
+        assertFalse(decoder.addRecord(second.symbol(1), 0));
+        assertEquals(1, decoder.getReceived());
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.lora_gtr;
+
+import com.example.lora_gtr.models.LoRaConfig;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Empaquetar un archivo, perder tramas por el camino y reconstruirlo
+ */
+public class LoRaPacketizerTest {
+
+    private static final int DESCRIPTOR_SEQ = 0xFFFF;
+
+    private LoRaPacketizer.Layout layout;
+
+    /**
+     * Empaquetar 'data' y devolver los registros del archivo que se sube al TX
+     */
+    private List<byte[]> pack(byte[] data, double parityRatio) throws IOException {
+        File source = File.createTempFile("packetizer", ".bin");
+        File target = File.createTempFile("packetizer", LoRaPacketizer.EXTENSION);
+        try {
+            try (FileOutputStream out = new FileOutputStream(source)) {
+                out.write(data);
+            }
+            layout = LoRaPacketizer.writeFrames(source, target, new LoRaConfig(), parityRatio);
+            return records(readAll(target));
+        } finally {
+            source.delete();
+            target.delete();
+        }
+    }
+
+    private static byte[] randomData(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    // Registros [longitud][trama] del archivo, en orden
+    private static List<byte[]> records(byte[] stored) {
+        List<byte[]> records = new ArrayList<>();
+        int offset = 0;
+        while (offset < stored.length) {
+            int length = stored[offset] & 0xFF;
+            byte[] record = new byte[1 + length];
+            System.arraycopy(stored, offset, record, 0, record.length);
+            records.add(record);
+            offset += record.length;
+        }
+        return records;
+    }
+
+    private static int seqOf(byte[] record) {
+        return ((record[1] & 0xFF) << 8) | (record[2] & 0xFF);
+    }
+
+    // Lo que guardaría el RX sin las tramas perdidas
+    private static byte[] receive(List<byte[]> records, List<Integer> lostSeqs, int lostDescriptors) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int descriptors = 0;
+        for (byte[] record : records) {
+            int seq = seqOf(record);
+            if (seq == DESCRIPTOR_SEQ && descriptors++ < lostDescriptors) {
+                continue;
+            }
+            if (lostSeqs.contains(seq)) {
+                continue;
+            }
+            out.write(record, 0, record.length);
+        }
+        return out.toByteArray();
+    }
+
+    // Secuencia de la trama de datos 'index' del bloque 'block'
+    private int dataSeq(int block, int index) {
+        return block * (layout.blockData + layout.blockParity) + index;
+    }
+
+    private static List<Integer> seqs(int... values) {
+        List<Integer> list = new ArrayList<>();
+        for (int value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    public void roundTrip_withoutLosses() throws IOException {
+        byte[] data = randomData(5000, 1);
+        List<byte[]> records = pack(data, 0);
+
+        assertEquals(layout.getTotalFrames(), records.size());
+
+        LoRaPacketizer.Result result = LoRaPacketizer.readFrames(receive(records, seqs(), 0));
+        assertNull(result.error, result.error);
+        assertArrayEquals(data, result.data);
+        assertEquals(0, result.missing);
+    }
+
+    @Test
+    public void roundTrip_emptyFile() throws IOException {
+        List<byte[]> records = pack(new byte[0], 0.25);
+
+        LoRaPacketizer.Result result = LoRaPacketizer.readFrames(receive(records, seqs(), 0));
+        assertNull(result.error, result.error);
+        assertEquals(0, result.data.length);
+    }
+
+    @Test
+    public void parity_recoversLossesInFullBlock() throws IOException {
+        byte[] data = randomData(40000, 2);
+        List<byte[]> records = pack(data, 0.25);
+        assertEquals(4, layout.blockParity);
+
+        // Cuatro tramas de datos del primer bloque y una del segundo
+        List<Integer> lost = seqs(dataSeq(0, 0), dataSeq(0, 3), dataSeq(0, 7), dataSeq(0, 15), dataSeq(1, 2));
+        LoRaPacketizer.Result result = LoRaPacketizer.readFrames(receive(records, lost, 0));
+
+        assertNull(result.error, result.error);
+        assertArrayEquals(data, result.data);
+        assertEquals(5, result.missing);
+        assertEquals(5, result.recovered);
+    }
+
+    @Test
+    public void parity_recoversLossesInShortFinalBlock() throws IOException {
+        byte[] data = randomData(40000, 3);
+        List<byte[]> records = pack(data, 0.25);
+
+        int last = layout.blocks - 1;
+        int count = layout.dataInBlock(last);
+        assertTrue("el último bloque debe ir incompleto", count < layout.blockData);
+
+        // Su paridad va justo detrás de sus datos: perder datos y una de paridad
+        int lastParity = dataSeq(last, count);
+        List<Integer> lost = seqs(dataSeq(last, 0), dataSeq(last, count - 1), lastParity);
+        LoRaPacketizer.Result result = LoRaPacketizer.readFrames(receive(records, lost, 0));
+
+        assertNull(result.error, result.error);
+        assertArrayEquals(data, result.data);
+        assertEquals(2, result.recovered);
+    }
+
+    @Test
+    public void descriptor_firstLost() throws IOException {
+        byte[] data = randomData(3000, 4);
+        List<byte[]> records = pack(data, 0.125);
+
+        LoRaPacketizer.Result result = LoRaPacketizer.readFrames(receive(records, seqs(), 1));
+
+        assertNull(result.error, result.error);
+        assertArrayEquals(data, result.data);
+    }
+
+    @Test
+    public void descriptor_bothLost() throws IOException {
+        byte[] data = randomData(3000, 5);
+        List<byte[]> records = pack(data, 0.125);
+
+        LoRaPacketizer.Result result = LoRaPacketizer.readFrames(receive(records, seqs(), 2));
+
+        assertNull(result.data);
+        assertNotNull(result.error);
+    }
+
+    @Test
+    public void parity_failsWithMoreLossesThanParity() throws IOException {
+        byte[] data = randomData(10000, 6);
+        List<byte[]> records = pack(data, 0.125);
+        assertEquals(2, layout.blockParity);
+
+        List<Integer> lost = seqs(dataSeq(0, 1), dataSeq(0, 2), dataSeq(0, 3));
+        LoRaPacketizer.Result result = LoRaPacketizer.readFrames(receive(records, lost, 0));
+
+        assertNull(result.data);
+        assertNotNull(result.error);
+        assertEquals(3, result.missing);
+    }
+
+    @Test
+    public void noParity_anyLossFails() throws IOException {
+        byte[] data = randomData(3000, 7);
+        List<byte[]> records = pack(data, 0);
+
+        LoRaPacketizer.Result result = LoRaPacketizer.readFrames(receive(records, seqs(dataSeq(0, 1)), 0));
+
+        assertNull(result.data);
+        assertEquals(1, result.missing);
+    }
+}
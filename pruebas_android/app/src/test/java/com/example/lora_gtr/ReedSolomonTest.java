@@ -0,0 +1,108 @@
+package com.example.lora_gtr;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reed-Solomon de borrado: codificar, perder tramas y recuperarlas
+ */
+public class ReedSolomonTest {
+
+    private static byte[][] randomShards(int count, int size, long seed) {
+        Random random = new Random(seed);
+        byte[][] shards = new byte[count][size];
+        for (byte[] shard : shards) {
+            random.nextBytes(shard);
+        }
+        return shards;
+    }
+
+    private static byte[][] block(byte[][] data, byte[][] parity) {
+        byte[][] shards = new byte[data.length + parity.length][];
+        for (int i = 0; i < data.length; i++) {
+            shards[i] = data[i].clone();
+        }
+        for (int i = 0; i < parity.length; i++) {
+            shards[data.length + i] = parity[i].clone();
+        }
+        return shards;
+    }
+
+    @Test
+    public void decode_recoversAsManyLossesAsParity() {
+        byte[][] data = randomShards(16, 64, 1);
+        byte[][] parity = ReedSolomon.encode(data, 4);
+
+        // Todas las combinaciones de 4 tramas de datos perdidas en las 8 primeras
+        for (int mask = 0; mask < 256; mask++) {
+            if (Integer.bitCount(mask) != 4) {
+                continue;
+            }
+            byte[][] shards = block(data, parity);
+            for (int i = 0; i < 8; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    shards[i] = null;
+                }
+            }
+            assertTrue(ReedSolomon.decode(shards, data.length));
+            for (int i = 0; i < data.length; i++) {
+                assertArrayEquals("trama " + i + ", máscara " + mask, data[i], shards[i]);
+            }
+        }
+    }
+
+    @Test
+    public void decode_mixedDataAndParityLosses() {
+        byte[][] data = randomShards(16, 32, 2);
+        byte[][] parity = ReedSolomon.encode(data, 4);
+
+        byte[][] shards = block(data, parity);
+        shards[0] = null;
+        shards[15] = null;
+        shards[16] = null;
+        shards[19] = null;
+
+        assertTrue(ReedSolomon.decode(shards, data.length));
+        assertArrayEquals(data[0], shards[0]);
+        assertArrayEquals(data[15], shards[15]);
+    }
+
+    @Test
+    public void decode_shortBlock() {
+        // Último bloque de un archivo: menos tramas de datos que BLOCK_DATA_FRAMES
+        byte[][] data = randomShards(3, 40, 3);
+        byte[][] parity = ReedSolomon.encode(data, 2);
+
+        byte[][] shards = block(data, parity);
+        shards[0] = null;
+        shards[2] = null;
+
+        assertTrue(ReedSolomon.decode(shards, data.length));
+        assertArrayEquals(data[0], shards[0]);
+        assertArrayEquals(data[2], shards[2]);
+    }
+
+    @Test
+    public void decode_failsWithMoreLossesThanParity() {
+        byte[][] data = randomShards(16, 32, 4);
+        byte[][] parity = ReedSolomon.encode(data, 2);
+
+        byte[][] shards = block(data, parity);
+        shards[1] = null;
+        shards[5] = null;
+        shards[9] = null;
+
+        assertFalse(ReedSolomon.decode(shards, data.length));
+    }
+
+    @Test
+    public void decode_nothingLost() {
+        byte[][] data = randomShards(4, 16, 5);
+        byte[][] shards = block(data, new byte[0][]);
+
+        assertTrue(ReedSolomon.decode(shards, data.length));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.lora_gtr.models;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tiempo en aire frente a la calculadora de Semtech (SX126x, CRC activo,
+ * preámbulo de 8 símbolos salvo que se indique otro)
+ */
+public class LoRaConfigTest {
+
+    private static final double DELTA = 0.001;
+
+    private static LoRaConfig config(float bandwidth, int spreadingFactor, int codingRate) {
+        return new LoRaConfig(bandwidth, spreadingFactor, codingRate, 5);
+    }
+
+    @Test
+    public void timeOnAir_sf7() {
+        LoRaConfig config = config(125f, 7, 5);
+
+        assertFalse(config.isLowDataRateOptimized());
+        assertEquals(28, config.getPayloadSymbols(10));
+        assertEquals(41.216, config.getTimeOnAirMs(10), DELTA);
+        assertEquals(103, config.getPayloadSymbols(64));
+        assertEquals(118.016, config.getTimeOnAirMs(64), DELTA);
+    }
+
+    @Test
+    public void timeOnAir_sf5AndSf6UseShortPreamble() {
+        // 6.25 símbolos de sincronización y sin los 8 bits extra de cabecera
+        LoRaConfig sf5 = config(125f, 5, 5);
+        assertEquals(33, sf5.getPayloadSymbols(10));
+        assertEquals(12.096, sf5.getTimeOnAirMs(10), DELTA);
+
+        LoRaConfig sf5Wide = config(500f, 5, 5);
+        assertEquals(143, sf5Wide.getPayloadSymbols(64));
+        assertEquals(10.064, sf5Wide.getTimeOnAirMs(64), DELTA);
+
+        LoRaConfig sf6 = config(125f, 6, 5);
+        assertEquals(438, sf6.getPayloadSymbols(255));
+        assertEquals(231.552, sf6.getTimeOnAirMs(255), DELTA);
+
+        LoRaConfig sf6Cr8 = config(125f, 6, 8);
+        assertEquals(184, sf6Cr8.getPayloadSymbols(64));
+        assertEquals(101.504, sf6Cr8.getTimeOnAirMs(64), DELTA);
+    }
+
+    @Test
+    public void timeOnAir_sf11AndSf12UseLdro() {
+        LoRaConfig sf11 = config(125f, 11, 5);
+        assertTrue(sf11.isLowDataRateOptimized());
+        assertEquals(83, sf11.getPayloadSymbols(64));
+        assertEquals(1560.576, sf11.getTimeOnAirMs(64), DELTA);
+
+        LoRaConfig sf12 = config(125f, 12, 5);
+        assertTrue(sf12.isLowDataRateOptimized());
+        assertEquals(28, sf12.getPayloadSymbols(20));
+        assertEquals(1318.912, sf12.getTimeOnAirMs(20), DELTA);
+        assertEquals(73, sf12.getPayloadSymbols(64));
+        assertEquals(2793.472, sf12.getTimeOnAirMs(64), DELTA);
+    }
+
+    @Test
+    public void timeOnAir_noLdroWithShortSymbols() {
+        // SF10 a 125 kHz y SF12 a 500 kHz quedan por debajo de 16 ms por símbolo
+        LoRaConfig sf10 = config(125f, 10, 5);
+        assertFalse(sf10.isLowDataRateOptimized());
+        assertEquals(698.368, sf10.getTimeOnAirMs(64), DELTA);
+
+        LoRaConfig sf12Wide = config(500f, 12, 5);
+        assertFalse(sf12Wide.isLowDataRateOptimized());
+        assertEquals(63, sf12Wide.getPayloadSymbols(64));
+        assertEquals(616.448, sf12Wide.getTimeOnAirMs(64), DELTA);
+    }
+
+    @Test
+    public void timeOnAir_implicitHeader() {
+        LoRaConfig sf7 = config(125f, 7, 5);
+        sf7.setImplicitHeader(true);
+        assertEquals(23, sf7.getPayloadSymbols(10));
+        assertEquals(36.096, sf7.getTimeOnAirMs(10), DELTA);
+
+        LoRaConfig sf6 = config(125f, 6, 5);
+        sf6.setImplicitHeader(true);
+        assertEquals(23, sf6.getPayloadSymbols(10));
+        assertEquals(19.072, sf6.getTimeOnAirMs(10), DELTA);
+
+        LoRaConfig sf12 = config(125f, 12, 5);
+        sf12.setImplicitHeader(true);
+        assertEquals(18, sf12.getPayloadSymbols(10));
+        assertEquals(991.232, sf12.getTimeOnAirMs(10), DELTA);
+    }
+
+    @Test
+    public void timeOnAir_preambleLength() {
+        LoRaConfig sf5 = config(125f, 5, 5);
+        sf5.setPreambleLength(12);
+        sf5.setImplicitHeader(true);
+
+        assertEquals(138, sf5.getPayloadSymbols(64));
+        assertEquals(40.0, sf5.getTimeOnAirMs(64), DELTA);
+    }
+}